@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+/**
+ * A {@link ResultSetProvider} that supplies its rows a batch at a time, rather
+ * than one per call.
+ *<p>
+ * PL/Java will call {@link #assignRowValues(ResultSet,int,int)} whenever it
+ * needs more rows, and form all of the rows supplied in one call into tuples
+ * together, which saves a good deal of overhead per row for a function
+ * returning many rows. The rows are still delivered to PostgreSQL one at a
+ * time or all at once, according to how the function is called, exactly as
+ * for a {@code ResultSetProvider}.
+ *<p>
+ * A method returning a {@code BatchResultSetProvider} may declare its return
+ * type as {@code BatchResultSetProvider} or as {@code ResultSetProvider}.
+ */
+public interface BatchResultSetProvider extends ResultSetProvider
+{
+	/**
+	 * Called whenever more rows are needed, to supply up to {@code batchSize}
+	 * of them.
+	 *<p>
+	 * Each row is supplied by using the {@code updateXxx} methods of
+	 * {@code receiver} to set its column values, and then calling
+	 * {@link ResultSet#insertRow() insertRow} to add it to the batch. Any
+	 * number of rows from zero to {@code batchSize} may be added in one call.
+	 * As for {@link ResultSetProvider#assignRowValues(ResultSet,int)
+	 * assignRowValues} in the single-row case, the
+	 * {@link ResultSet#getMetaData() ResultSetMetaData} of {@code receiver}
+	 * can be used to learn the number, names, and types of columns expected.
+	 * @param receiver Receiver of values for the rows in the batch.
+	 * @param currentRow Row number of the first row in the batch, zero on the
+	 * first call, and advanced by the number of rows supplied on each
+	 * subsequent call.
+	 * @param batchSize The greatest number of rows that may be added in this
+	 * call.
+	 * @return {@code true} if further rows may follow, {@code false} if the
+	 * rows added in this call (possibly none) are the last.
+	 * @throws SQLException
+	 */
+	boolean assignRowValues(ResultSet receiver, int currentRow, int batchSize)
+	throws SQLException;
+
+	/**
+	 * Not used for a {@code BatchResultSetProvider}; PL/Java calls
+	 * {@link #assignRowValues(ResultSet,int,int)} instead.
+	 * @throws SQLFeatureNotSupportedException always.
+	 */
+	@Override
+	default boolean assignRowValues(ResultSet receiver, int currentRow)
+	throws SQLException
+	{
+		throw new SQLFeatureNotSupportedException(
+			"single-row assignRowValues on a BatchResultSetProvider", "0A000");
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * A {@link ResultSet} whose numeric columns can be read many rows at a time,
+ * straight into primitive arrays.
+ *<p>
+ * A {@code ResultSet} obtained from a query through PL/Java's internal JDBC
+ * driver can be unwrapped to this interface:
+ *<pre>
+ * ColumnarResultSet crs = rs.unwrap(ColumnarResultSet.class);
+ *</pre>
+ * Each call of {@link #fetchColumns fetchColumns} then copies the values of
+ * the chosen columns, for as many following rows as requested, into arrays
+ * the caller supplies, with no object created for any row or value, which
+ * suits a function that reads a great many numeric values and processes them
+ * in plain loops over arrays.
+ *<p>
+ * Only columns of the types {@code smallint}, {@code integer},
+ * {@code bigint}, {@code real}, and {@code double precision} can be read this
+ * way.
+ */
+public interface ColumnarResultSet
+{
+	/**
+	 * Copy the values of the chosen columns, from up to {@code rows} of the
+	 * rows following the current one, into primitive arrays.
+	 *<p>
+	 * {@code values[i]} receives the values of column {@code columns[i]}, and
+	 * must be an {@code int[]}, a {@code long[]}, or a {@code double[]} with
+	 * room for {@code rows} elements starting at {@code offset}. A value is
+	 * converted to the element type as {@link ResultSet#getInt getInt},
+	 * {@link ResultSet#getLong getLong}, or
+	 * {@link ResultSet#getDouble getDouble} would convert it, and a null value
+	 * is stored as zero.
+	 *<p>
+	 * If {@code nulls} is not null, and {@code nulls[i]} is not null, it
+	 * receives, at the same positions, {@code true} for each value of column
+	 * {@code columns[i]} that was null, and {@code false} for the others.
+	 *<p>
+	 * The rows copied are consumed, as if {@link ResultSet#next next} had been
+	 * called for each, and afterward the result set is positioned on no row;
+	 * a following {@code next} moves to the row after the last one copied.
+	 * @param columns Indices (one based) of the columns to copy.
+	 * @param values Arrays to receive the values, one for each column.
+	 * @param nulls Null, or arrays to receive the null flags, one for each
+	 * column, any of which may be null.
+	 * @param offset Position in each array of the first row's value.
+	 * @param rows The greatest number of rows to copy.
+	 * @return The number of rows copied, which is less than {@code rows} only
+	 * if the result set has no more, and zero when it is exhausted.
+	 * @throws SQLException if a column is not of one of the supported types,
+	 * or an array is of the wrong type or too short, or the values cannot be
+	 * read.
+	 */
+	int fetchColumns(
+		int[] columns, Object[] values, boolean[][] nulls, int offset, int rows)
+	throws SQLException;
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Receives, one at a time, the rows of a query run with
+ * {@link StreamingStatement#forEachRow(RowConsumer) forEachRow}.
+ */
+@FunctionalInterface
+public interface RowConsumer
+{
+	/**
+	 * Called once for each row of the query's result.
+	 *<p>
+	 * {@code row} is positioned on the row, and its getters read the row's
+	 * values as those of any {@code ResultSet} would. The same
+	 * {@code ResultSet} is passed for every row, and is only valid during the
+	 * call; it cannot be moved with {@link ResultSet#next next} or updated,
+	 * and the consumer should not keep it.
+	 * @param row Read-only view of the current row.
+	 * @throws SQLException to stop the query, which {@code forEachRow} then
+	 * throws.
+	 */
+	void accept(ResultSet row) throws SQLException;
+}
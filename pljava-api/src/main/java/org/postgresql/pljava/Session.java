@@ -49,6 +49,33 @@ public interface Session
 	 */
 	void addTransactionListener(TransactionListener listener);
 
+	/**
+	 * Throw an exception if PostgreSQL has a query cancel or backend
+	 * termination pending, as when the user cancels the query or
+	 * {@code statement_timeout} expires.
+	 *<p>
+	 * PostgreSQL only acts on such a request when it next checks for one, and
+	 * cannot do so while Java code is running and not calling into it. A
+	 * function that may compute for a long time without doing so should call
+	 * this method now and then; when nothing is pending, it returns at the
+	 * cost of reading one flag, without entering PostgreSQL, so it can be
+	 * called often, even in a tight loop.
+	 *<p>
+	 * On the thread that called the function, a pending interrupt is handled
+	 * as PostgreSQL would handle it, and the error it raises is thrown. Any
+	 * other thread the function has started may also call this method, and
+	 * will be thrown an {@code SQLException} (with SQLSTATE 57014 for a
+	 * cancel, or 57P01 for a termination) without entering PostgreSQL, so
+	 * helper threads can stop their work and the calling thread, when it
+	 * next calls this method or PostgreSQL, will see the request handled.
+	 *<p>
+	 * On Windows, PostgreSQL only notices a request when it checks for one,
+	 * so there this method always enters PostgreSQL on the calling thread, and
+	 * never throws on other threads.
+	 * @throws SQLException if a cancel or termination is pending
+	 */
+	void checkForInterrupts() throws SQLException;
+
 	/**
 	 * Obtain an attribute from the current session.
 	 *
@@ -64,6 +91,31 @@ public interface Session
 	@Deprecated(since="1.5.3", forRemoval=true)
 	Object getAttribute(String attributeName);
 
+	/**
+	 * Return the object saved with {@link #setCallSiteState setCallSiteState}
+	 * by an earlier call from the same call site as the function now
+	 * executing, or null.
+	 *<p>
+	 * A call site is one appearance of a function in a query, and lasts as
+	 * long as the query. A function can keep there what it would otherwise
+	 * compute again for every row, such as a pattern compiled from an argument
+	 * that is the same constant each time, and should check that the argument
+	 * has not changed before reusing it.
+	 * @return The saved object, or null
+	 */
+	Object getCallSiteState() throws SQLException;
+
+	/**
+	 * Save an object to be returned by {@link #getCallSiteState
+	 * getCallSiteState} in later calls from the same call site as the function
+	 * now executing. The object is released when the query ends.
+	 *<p>
+	 * The call site of a set-returning function lasts across the scans of it
+	 * in the query, as when it is called again for each row of a lateral join.
+	 * @param state The object to save, or null to release any saved one
+	 */
+	void setCallSiteState(Object state) throws SQLException;
+
 	/**
 	 * Return an object pool for the given class.
 	 * @param cls The class of object to be managed by this pool. It must
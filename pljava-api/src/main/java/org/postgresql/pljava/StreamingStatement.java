@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A {@link Statement} that can deliver the rows of a query to a
+ * {@link RowConsumer}, rather than as a {@code ResultSet} to be read.
+ *<p>
+ * A {@code Statement} or {@code PreparedStatement} obtained from PL/Java's
+ * internal JDBC driver can be unwrapped to this interface:
+ *<pre>
+ * StreamingStatement ss = stmt.unwrap(StreamingStatement.class);
+ *</pre>
+ * The query's rows are then collected straight from the executor as it
+ * produces them, a batch of {@link Statement#getFetchSize fetch size} rows
+ * at a time, without first being stored as tuples, and without any object
+ * made for each row, which roughly halves the memory traffic of reading a
+ * large result. Values of types {@code smallint}, {@code integer},
+ * {@code bigint}, {@code real}, and {@code double precision} are read without
+ * boxing by the {@code ResultSet} primitive getters; values of other types
+ * are copied as the rows are collected, and converted to their default Java
+ * classes once the executor has returned the batch, so that no Java code
+ * runs inside the executor. Such a value can also be had as any other class
+ * {@code getObject} would offer for a {@code ResultSet}.
+ *<p>
+ * The {@link Statement#setMaxRows maximum rows} of the statement are
+ * respected, and the consumer may itself run queries.
+ */
+public interface StreamingStatement
+{
+	/**
+	 * Execute the given query, passing each row of its result to
+	 * {@code consumer}.
+	 *<p>
+	 * Not supported on a {@link PreparedStatement}, whose own query is run by
+	 * {@link #forEachRow(RowConsumer)}.
+	 * @param sql A query that returns rows.
+	 * @param consumer Receiver of the rows.
+	 * @return The number of rows passed to {@code consumer}.
+	 * @throws SQLException if the statement does not return rows, or the
+	 * query or the consumer fails.
+	 */
+	long forEachRow(String sql, RowConsumer consumer) throws SQLException;
+
+	/**
+	 * Execute this {@link PreparedStatement}, with the parameters that have
+	 * been set, passing each row of its result to {@code consumer}.
+	 *<p>
+	 * Not supported on a {@code Statement} that is not prepared.
+	 * @param consumer Receiver of the rows.
+	 * @return The number of rows passed to {@code consumer}.
+	 * @throws SQLException if not all parameters have been set, the statement
+	 * does not return rows, or the query or the consumer fails.
+	 */
+	long forEachRow(RowConsumer consumer) throws SQLException;
+}
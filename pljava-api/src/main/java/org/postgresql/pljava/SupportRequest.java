@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava;
+
+import java.sql.SQLException;
+
+/**
+ * A request from the PostgreSQL planner for an estimate about a call of a
+ * function, passed to the function's planner support function.
+ *<p>
+ * A planner support function (PostgreSQL 12 or later) is implemented by a
+ * public static method that takes one {@code SupportRequest} and returns
+ * {@code boolean}, and is attached to the function it supports with
+ * {@link org.postgresql.pljava.annotation.Function#support Function.support}.
+ * The method looks at the {@link #getKind kind} of request and the arguments
+ * of the call being planned, supplies an estimate with the matching setter,
+ * and returns true; it returns false for any request it does not answer, and
+ * the planner then falls back on the function's declared {@code COST} and
+ * {@code ROWS}, or its default selectivity.
+ *<p>
+ * The arguments of the call are often expressions not known until execution;
+ * those that the planner can reduce to constants are available through
+ * {@link #getConstant getConstant}.
+ *<p>
+ * A {@code SupportRequest} is only valid during the call it is passed to.
+ */
+public interface SupportRequest
+{
+	/**
+	 * The kinds of request a PL/Java support function can answer.
+	 */
+	enum Kind
+	{
+		/** For the number of rows a set-returning function will return. */
+		ROWS,
+		/** For the startup and per-row cost of executing the function. */
+		COST,
+		/** For the selectivity of the function used as a boolean condition. */
+		SELECTIVITY,
+		/** Any other request, which should be answered by returning false. */
+		OTHER
+	}
+
+	/**
+	 * What this request asks for.
+	 */
+	Kind getKind() throws SQLException;
+
+	/**
+	 * Number of arguments in the call being planned, or zero if the planner
+	 * has not supplied the call.
+	 */
+	int getArgCount() throws SQLException;
+
+	/**
+	 * Whether an argument of the call is known, at planning time, to be a
+	 * constant.
+	 * @param argno the argument, counting from zero
+	 */
+	boolean isConstant(int argno) throws SQLException;
+
+	/**
+	 * The value of an argument of the call that is known to be constant, as
+	 * the Java object it would be passed to a function as; null if the
+	 * constant is null, or the argument is not constant.
+	 * @param argno the argument, counting from zero
+	 */
+	Object getConstant(int argno) throws SQLException;
+
+	/**
+	 * Answer a {@link Kind#ROWS ROWS} request.
+	 */
+	void setRows(double rows) throws SQLException;
+
+	/**
+	 * Answer a {@link Kind#COST COST} request, in units of
+	 * {@code cpu_operator_cost}.
+	 */
+	void setCost(double startup, double perTuple) throws SQLException;
+
+	/**
+	 * Answer a {@link Kind#SELECTIVITY SELECTIVITY} request with the fraction,
+	 * from 0 to 1, of rows for which the function is expected to return true.
+	 */
+	void setSelectivity(double selectivity) throws SQLException;
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava;
+
+import java.sql.SQLException;
+
+/**
+ * Access to the partition and frame of rows seen by a window function.
+ *<p>
+ * A function declared {@code WINDOW} in SQL is implemented by a public static
+ * method whose first parameter is a {@code WindowObject}; its remaining
+ * parameters correspond to the function's SQL parameters, and are passed the
+ * values of the arguments for the current row. Values of the arguments for
+ * other rows of the partition or frame are fetched through this object, and
+ * only when asked for.
+ *<p>
+ * Rows are addressed as PostgreSQL's window API addresses them: a fetch is
+ * made at a position relative to the current row, or to the first or last row
+ * of the partition or of the frame, as chosen by one of the {@code seek}
+ * methods. The typed getters then fetch one argument's value at that
+ * position; {@link #wasNull wasNull} and {@link #isOut isOut} report on the
+ * last value fetched.
+ *<p>
+ * A {@code WindowObject} is only valid during the call it is passed to.
+ */
+public interface WindowObject
+{
+	/**
+	 * The origin from which a relative position is counted.
+	 */
+	enum Seek
+	{
+		/** Relative to the current row. */
+		CURRENT,
+		/** Relative to the first row of the partition or frame. */
+		HEAD,
+		/** Relative to the last row of the partition or frame. */
+		TAIL
+	}
+
+	/**
+	 * Number of rows in the current partition.
+	 */
+	long getPartitionRowCount() throws SQLException;
+
+	/**
+	 * Position of the current row within the partition, counting from zero.
+	 */
+	long getCurrentPosition() throws SQLException;
+
+	/**
+	 * Promise that no row before {@code pos} in the partition will be fetched
+	 * again, so PostgreSQL may discard it.
+	 */
+	void setMarkPosition(long pos) throws SQLException;
+
+	/**
+	 * Whether the rows at two positions in the partition are peers under the
+	 * window's ordering.
+	 */
+	boolean rowsArePeers(long pos1, long pos2) throws SQLException;
+
+	/**
+	 * Number of arguments the window function was called with.
+	 */
+	int getArgCount() throws SQLException;
+
+	/**
+	 * Make later getters fetch from the current row (the default).
+	 */
+	void seekCurrent();
+
+	/**
+	 * Make later getters fetch from a row of the partition.
+	 * @param relpos the row's position, relative to {@code seek}
+	 * @param seek where {@code relpos} counts from
+	 * @param setMark whether each fetch should also set the mark position
+	 * to the row fetched
+	 */
+	void seekInPartition(long relpos, Seek seek, boolean setMark);
+
+	/**
+	 * Make later getters fetch from a row of the window frame of the current
+	 * row.
+	 * @param relpos the row's position, relative to {@code seek}
+	 * @param seek where {@code relpos} counts from
+	 * @param setMark whether each fetch should also set the mark position
+	 * to the row fetched
+	 */
+	void seekInFrame(long relpos, Seek seek, boolean setMark);
+
+	/**
+	 * Whether the last value fetched was SQL null (or the row was out of the
+	 * partition or frame).
+	 */
+	boolean wasNull();
+
+	/**
+	 * Whether the row for the last value fetched was outside the partition or
+	 * frame. In that case, the value was null.
+	 */
+	boolean isOut();
+
+	/**
+	 * Fetch an argument of type {@code boolean} at the current seek position.
+	 * @param argno the argument, counting from zero
+	 */
+	boolean getBoolean(int argno) throws SQLException;
+
+	/**
+	 * Fetch an argument of any integral type at the current seek position,
+	 * as an {@code int}.
+	 * @param argno the argument, counting from zero
+	 */
+	int getInt(int argno) throws SQLException;
+
+	/**
+	 * Fetch an argument of any integral type at the current seek position.
+	 * @param argno the argument, counting from zero
+	 */
+	long getLong(int argno) throws SQLException;
+
+	/**
+	 * Fetch an argument of any integral or floating type at the current seek
+	 * position, as a {@code float}.
+	 * @param argno the argument, counting from zero
+	 */
+	float getFloat(int argno) throws SQLException;
+
+	/**
+	 * Fetch an argument of any integral or floating type at the current seek
+	 * position.
+	 * @param argno the argument, counting from zero
+	 */
+	double getDouble(int argno) throws SQLException;
+
+	/**
+	 * Fetch an argument of any type at the current seek position, as the
+	 * Java object it would be passed to a function as.
+	 * @param argno the argument, counting from zero
+	 */
+	Object getObject(int argno) throws SQLException;
+
+	/**
+	 * The object saved with {@link #setPartitionState setPartitionState} by an
+	 * earlier call for a row of the same partition, or null.
+	 */
+	Object getPartitionState() throws SQLException;
+
+	/**
+	 * Save an object to be returned by {@link #getPartitionState
+	 * getPartitionState} in later calls for rows of the same partition.
+	 * It is released when the partition ends.
+	 */
+	void setPartitionState(Object state) throws SQLException;
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation on a PL/Java class whose instances are the transition state of
+ * an aggregate function, for which an SQL {@code CREATE AGGREGATE} should be
+ * generated into the deployment descriptor file.
+ *<p>
+ * The class must have a public static {@link #accumulate accumulate} method
+ * whose first parameter and return type are the annotated class, and whose
+ * remaining parameters are the arguments of the aggregate, and a public static
+ * {@link #finish finish} method taking one parameter of the annotated class
+ * and returning the aggregate's result. For example:
+ *<pre>
+ * &#64;Aggregate
+ * public class Avg
+ * {
+ *     private double sum;
+ *     private long count;
+ *
+ *     public static Avg accumulate(Avg state, double x)
+ *     {
+ *         if ( null == state )
+ *             state = new Avg();
+ *         state.sum += x;
+ *         ++ state.count;
+ *         return state;
+ *     }
+ *
+ *     public static Double finish(Avg state)
+ *     {
+ *         return null == state ? null : state.sum / state.count;
+ *     }
+ * }
+ *</pre>
+ *<p>
+ * The state is kept as a live Java object from row to row, passed to SQL as
+ * the type {@code internal}; it is never converted to an SQL value. The
+ * {@code accumulate} method is passed null for the first row of each group,
+ * and should create a new state then; it may update and return the state it
+ * was passed, or return a new one. {@code finish} is called once per group,
+ * and is passed null if there were no rows.
+ *<p>
+ * Two functions are declared in SQL besides the aggregate, with the name of
+ * the aggregate suffixed by {@code _accumulate} and {@code _finish}.
+ *<p>
+ * If a {@link #combine combine} method is named, PostgreSQL can compute
+ * partial aggregates and combine them. If the class also implements
+ * {@link java.sql.SQLData SQLData}, functions suffixed {@code _serialize} and
+ * {@code _deserialize} are declared as well, which use its {@code writeSQL}
+ * and {@code readSQL} methods, so that partial aggregates can be computed in
+ * parallel workers when the aggregate is declared
+ * {@link #parallel parallel} {@code SAFE}.
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.CLASS)
+public @interface Aggregate
+{
+	/**
+	 * Name of the aggregate in SQL, if it is not to be the simple name of
+	 * the class. By default, the class name will be used, subject to
+	 * PostgreSQL's normal case-folding and case-insensitive matching.
+	 */
+	String name() default "";
+
+	/**
+	 * Schema in which the aggregate and its functions are declared.
+	 * If not given, the names will not be schema qualified.
+	 */
+	String schema() default "";
+
+	/**
+	 * Name of the static method that adds one row's arguments to the state.
+	 */
+	String accumulate() default "accumulate";
+
+	/**
+	 * Name of the static method that computes the result from the state.
+	 */
+	String finish() default "finish";
+
+	/**
+	 * Name of a public static method that merges two states, taking two
+	 * parameters of the annotated class and returning one, or {@code ""}
+	 * (the default) if there is none. The first parameter may be null, in
+	 * which case the second can be returned; either state can be updated and
+	 * returned.
+	 */
+	String combine() default "";
+
+	/**
+	 * The SQL result type of the aggregate, if it is not to be inferred from
+	 * the return type of the {@link #finish finish} method.
+	 */
+	String type() default "";
+
+	/**
+	 * Whether the aggregate can appear in a parallel query plan, as for
+	 * {@link Function#parallel Function.parallel}.
+	 */
+	Function.Parallel parallel() default Function.Parallel.UNSAFE;
+
+	/**
+	 * One or more arbitrary labels that will be considered 'provided' by the
+	 * object carrying this annotation. The deployment descriptor will be
+	 * generated in such an order that other objects that 'require' labels
+	 * 'provided' by this come later in the output for install actions, and
+	 * earlier for remove actions.
+	 */
+	String[] provides() default {};
+
+	/**
+	 * One or more arbitrary labels that will be considered 'required' by the
+	 * object carrying this annotation. The deployment descriptor will be
+	 * generated in such an order that other objects that 'provide' labels
+	 * 'required' by this come earlier in the output for install actions, and
+	 * later for remove actions.
+	 */
+	String[] requires() default {};
+
+	/**
+	 * The {@code <implementor name>} to be used around SQL code generated
+	 * for this aggregate. Defaults to {@code PostgreSQL}. Set explicitly to
+	 * {@code ""} to emit code not wrapped in an {@code <implementor block>}.
+	 */
+	String implementor() default "";
+
+	/**
+	 * A comment to be associated with the aggregate. If left to default,
+	 * and the Java class has a doc comment, its first sentence will be used.
+	 * If an empty string is explicitly given, no comment will be set.
+	 */
+	String comment() default "";
+}
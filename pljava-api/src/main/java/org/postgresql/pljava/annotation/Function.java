@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2004-2016 Tada AB and other contributors, as listed below.
+ * Copyright (c) 2004-2020 Tada AB and other contributors, as listed below.
  *
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the The BSD 3-Clause License
@@ -192,6 +192,43 @@ category</a>
 	 */
 	String[] settings() default {};
 
+	/**
+	 * Whether a set-returning function should produce all of its rows in one
+	 * call, when the caller allows it, rather than being called back once for
+	 * each row.
+	 *<p>
+	 * The rows are saved in a tuplestore that spills to disk beyond
+	 * {@code work_mem}. This saves a round trip between PostgreSQL and Java for
+	 * each row, but the function will produce all of its rows even if the
+	 * query needs only some of them. Implemented by adding
+	 * {@code SET pljava.materialize_srf TO on} to the generated declaration.
+	 */
+	boolean materialize() default false;
+
+	/**
+	 * Whether the function is a window function, declared {@code WINDOW} in
+	 * SQL. Its method must take a {@link org.postgresql.pljava.WindowObject
+	 * WindowObject} as the first parameter, ahead of those that correspond to
+	 * the function's SQL parameters.
+	 */
+	boolean window() default false;
+
+	/**
+	 * Name of a public static method of the same class to be the function's
+	 * planner support function (PostgreSQL 12 or later), or {@code ""} (the
+	 * default) for none. The method must take one
+	 * {@link org.postgresql.pljava.SupportRequest SupportRequest} and return
+	 * {@code boolean}; it can estimate the rows, cost or selectivity of each
+	 * call from the call's constant arguments, where {@link #cost cost} and
+	 * {@link #rows rows} can only give one fixed estimate.
+	 *<p>
+	 * The support method is declared in SQL as a function with the name of
+	 * this function suffixed by {@code _support}, taking and returning type
+	 * {@code internal}, and attached with a {@code SUPPORT} clause, which
+	 * needs superuser privilege.
+	 */
+	String support() default "";
+
 	/**
 	 * The Triggers that will call this function (if any).
 	 */
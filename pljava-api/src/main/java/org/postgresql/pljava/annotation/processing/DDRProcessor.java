@@ -55,6 +55,7 @@ import java.util.NoSuchElementException;
 import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
+import java.util.TreeMap;
 
 import java.util.regex.Pattern;
 
@@ -91,8 +92,11 @@ import static javax.tools.Diagnostic.Kind;
 
 import org.postgresql.pljava.ResultSetHandle;
 import org.postgresql.pljava.ResultSetProvider;
+import org.postgresql.pljava.SupportRequest;
 import org.postgresql.pljava.TriggerData;
+import org.postgresql.pljava.WindowObject;
 
+import org.postgresql.pljava.annotation.Aggregate;
 import org.postgresql.pljava.annotation.Function;
 import org.postgresql.pljava.annotation.SQLAction;
 import org.postgresql.pljava.annotation.SQLActions;
@@ -122,7 +126,8 @@ import org.postgresql.pljava.sqlgen.Lexicals;
   "ddr.name.trusted",    // default "java"
   "ddr.name.untrusted",  // default "javaU"
   "ddr.implementor",     // implementor when not annotated, default "PostgreSQL"
-  "ddr.output"           // name of ddr file to write
+  "ddr.output",          // name of ddr file to write
+  "ddr.signature.index"  // true to write the signature index, default true
 })
 @SupportedSourceVersion(SourceVersion.RELEASE_9)
 public class DDRProcessor extends AbstractProcessor
@@ -176,10 +181,14 @@ class DDRProcessorImpl
 	final String output;
 	final String defaultImplementor;
 	final boolean reproducible;
+	final boolean signatureIndex;
 	
 	// Certain known types that need to be recognized in the processed code
 	//
+	final DeclaredType TY_DOUBLESTREAM;
+	final DeclaredType TY_INTSTREAM;
 	final DeclaredType TY_ITERATOR;
+	final DeclaredType TY_LONGSTREAM;
 	final DeclaredType TY_OBJECT;
 	final DeclaredType TY_RESULTSET;
 	final DeclaredType TY_RESULTSETPROVIDER;
@@ -187,12 +196,16 @@ class DDRProcessorImpl
 	final DeclaredType TY_SQLDATA;
 	final DeclaredType TY_SQLINPUT;
 	final DeclaredType TY_SQLOUTPUT;
+	final DeclaredType TY_STREAM;
 	final DeclaredType TY_STRING;
 	final DeclaredType TY_TRIGGERDATA;
+	final DeclaredType TY_WINDOWOBJECT;
+	final DeclaredType TY_SUPPORTREQUEST;
 	final       NoType TY_VOID;
 	
 	// Our own annotations
 	//
+	final TypeElement  AN_AGGREGATE;
 	final TypeElement  AN_FUNCTION;
 	final TypeElement  AN_SQLACTION;
 	final TypeElement  AN_SQLACTIONS;
@@ -239,6 +252,12 @@ class DDRProcessorImpl
 		else
 			output = "pljava.ddr";
 
+		optv = opts.get( "ddr.signature.index");
+		if ( null != optv )
+			signatureIndex = Boolean.parseBoolean( optv);
+		else
+			signatureIndex = true;
+
 		optv = opts.get( "ddr.reproducible");
 		if ( null != optv )
 			reproducible = Boolean.parseBoolean( optv);
@@ -247,8 +266,14 @@ class DDRProcessorImpl
 
 		snippetTiebreaker = reproducible ? new SnippetTiebreaker() : null;
 		
+		TY_DOUBLESTREAM = typu.getDeclaredType(elmu.getTypeElement(
+			java.util.stream.DoubleStream.class.getName()));
+		TY_INTSTREAM = typu.getDeclaredType(elmu.getTypeElement(
+			java.util.stream.IntStream.class.getName()));
 		TY_ITERATOR = typu.getDeclaredType(
 			elmu.getTypeElement( java.util.Iterator.class.getName()));
+		TY_LONGSTREAM = typu.getDeclaredType(elmu.getTypeElement(
+			java.util.stream.LongStream.class.getName()));
 		TY_OBJECT = typu.getDeclaredType(
 			elmu.getTypeElement( Object.class.getName()));
 		TY_RESULTSET = typu.getDeclaredType(
@@ -263,12 +288,19 @@ class DDRProcessorImpl
 			elmu.getTypeElement( SQLInput.class.getName()));
 		TY_SQLOUTPUT = typu.getDeclaredType(
 			elmu.getTypeElement( SQLOutput.class.getName()));
+		TY_STREAM = typu.getDeclaredType(
+			elmu.getTypeElement( java.util.stream.Stream.class.getName()));
 		TY_STRING = typu.getDeclaredType(
 			elmu.getTypeElement( String.class.getName()));
 		TY_TRIGGERDATA = typu.getDeclaredType(
 			elmu.getTypeElement( TriggerData.class.getName()));
+		TY_WINDOWOBJECT = typu.getDeclaredType(
+			elmu.getTypeElement( WindowObject.class.getName()));
+		TY_SUPPORTREQUEST = typu.getDeclaredType(
+			elmu.getTypeElement( SupportRequest.class.getName()));
 		TY_VOID = typu.getNoType( TypeKind.VOID);
 
+		AN_AGGREGATE   = elmu.getTypeElement( Aggregate.class.getName());
 		AN_FUNCTION    = elmu.getTypeElement( Function.class.getName());
 		AN_SQLACTION   = elmu.getTypeElement( SQLAction.class.getName());
 		AN_SQLACTIONS  = elmu.getTypeElement( SQLActions.class.getName());
@@ -368,6 +400,65 @@ class DDRProcessorImpl
 	 * same reason {@code snippetQueue} does.
 	 */
 	Map<String, VertexPair<Snippet>> provider = new HashMap<>();
+
+	/**
+	 * Map from the AS string of each function declared with a Java method to
+	 * the JVM descriptor of that method, to be written as the signature index
+	 * alongside the deployment descriptor. Sorted, so the index is
+	 * reproducible. Filled in as the functions' deploy strings are generated,
+	 * which first happens (in {@code characterize}) while the method symbols
+	 * are still at hand.
+	 */
+	Map<String, String> signatures = new TreeMap<>();
+
+	/**
+	 * Enter a function's AS string and method in {@code signatures}. The AS
+	 * string is entered with its whitespace removed, as PL/Java will look it
+	 * up. One naming a parameterized type is left out, as PL/Java would not
+	 * accept it.
+	 */
+	void noteSignature( CharSequence as, ExecutableElement func)
+	{
+		if ( -1 != as.toString().indexOf( '<') )
+			return;
+		StringBuilder sb = new StringBuilder( "(");
+		for ( VariableElement ve : func.getParameters() )
+			appendDescriptor( sb, ve.asType());
+		appendDescriptor( sb.append( ')'), func.getReturnType());
+		signatures.put(
+			WHITESPACE.matcher( as).replaceAll( ""), sb.toString());
+	}
+
+	private static final Pattern WHITESPACE = Pattern.compile( "\\s++");
+
+	/**
+	 * Append the JVM descriptor of the erasure of a type.
+	 */
+	void appendDescriptor( StringBuilder sb, TypeMirror tm)
+	{
+		tm = typu.erasure( tm);
+		switch ( tm.getKind() )
+		{
+		case BOOLEAN: sb.append( 'Z'); break;
+		case    BYTE: sb.append( 'B'); break;
+		case   SHORT: sb.append( 'S'); break;
+		case     INT: sb.append( 'I'); break;
+		case    LONG: sb.append( 'J'); break;
+		case    CHAR: sb.append( 'C'); break;
+		case   FLOAT: sb.append( 'F'); break;
+		case  DOUBLE: sb.append( 'D'); break;
+		case    VOID: sb.append( 'V'); break;
+		case   ARRAY:
+			appendDescriptor( sb.append( '['),
+				((ArrayType)tm).getComponentType());
+			break;
+		default:
+			TypeElement te = (TypeElement)typu.asElement( tm);
+			sb.append( 'L')
+			  .append( elmu.getBinaryName( te).toString().replace( '.', '/'))
+			  .append( ';');
+		}
+	}
 	
 	/**
 	 * Find the elements in each round that carry any of the annotations of
@@ -381,6 +472,7 @@ class DDRProcessorImpl
 		boolean sqlActionsPresent = false;
 		boolean baseUDTPresent = false;
 		boolean mappedUDTPresent = false;
+		boolean aggregatePresent = false;
 		
 		boolean willClaim = true;
 		
@@ -396,6 +488,8 @@ class DDRProcessorImpl
 				baseUDTPresent = true;
 			else if ( AN_MAPPEDUDT.equals( te) )
 				mappedUDTPresent = true;
+			else if ( AN_AGGREGATE.equals( te) )
+				aggregatePresent = true;
 			else if ( AN_SQLTYPE.equals( te) )
 				; // these are handled within FunctionImpl
 			else
@@ -418,6 +512,10 @@ class DDRProcessorImpl
 		if ( functionPresent )
 			for ( Element e : re.getElementsAnnotatedWith( AN_FUNCTION) )
 				processFunction( e);
+
+		if ( aggregatePresent )
+			for ( Element e : re.getElementsAnnotatedWith( AN_AGGREGATE) )
+				processAggregate( e);
 		
 		if ( sqlActionPresent )
 			for ( Element e : re.getElementsAnnotatedWith( AN_SQLACTION) )
@@ -582,6 +680,8 @@ class DDRProcessorImpl
 		try
 		{
 			DDRWriter.emit( fwdSnips, revSnips, this);
+			if ( signatureIndex )
+				DDRWriter.emitSignatureIndex( signatures, filr);
 		}
 		catch ( IOException ioe )
 		{
@@ -877,6 +977,54 @@ hunt:	for ( ExecutableElement ee : ees )
 		}
 	}
 
+	/**
+	 * Process a single element annotated with @Aggregate. The class must be
+	 * public, and static if nested; its methods are found later, in
+	 * {@code characterize}.
+	 */
+	void processAggregate( Element e)
+	{
+		/*
+		 * As for UDTs, TYPE is the allowed target type, of which only CLASS
+		 * is valid here.
+		 */
+		switch ( e.getKind() )
+		{
+			case CLASS:
+				break;
+			case ANNOTATION_TYPE:
+			case ENUM:
+			case INTERFACE:
+				msg( Kind.ERROR, e, "A pljava aggregate must be a class");
+				return;
+			default:
+				return;
+		}
+		Set<Modifier> mods = e.getModifiers();
+		if ( ! mods.contains( Modifier.PUBLIC) )
+		{
+			msg( Kind.ERROR, e, "A pljava aggregate must be public");
+		}
+		if ( ! ((TypeElement)e).getNestingKind().equals( NestingKind.TOP_LEVEL)
+			&& ! mods.contains( Modifier.STATIC) )
+		{
+			msg( Kind.ERROR, e,
+				"When nested, a pljava aggregate must be static (not inner)");
+		}
+
+		AggregateImpl ai = getSnippet( e, AggregateImpl.class);
+		if ( null == ai )
+		{
+			ai = new AggregateImpl( (TypeElement)e);
+			putSnippet( e, ai);
+		}
+		for ( AnnotationMirror am : elmu.getAllAnnotationMirrors( e) )
+		{
+			if ( am.getAnnotationType().asElement().equals( AN_AGGREGATE) )
+				populateAnnotationImpl( ai, e, am);
+		}
+	}
+
 	/**
 	 * Populate an array of specified type from an annotation value
 	 * representing an array.
@@ -1452,6 +1600,9 @@ hunt:	for ( ExecutableElement ee : ees )
 		public Trust             trust() { return _trust; }
 		public Parallel       parallel() { return _parallel; }
 		public boolean       leakproof() { return _leakproof; }
+		public boolean     materialize() { return _materialize; }
+		public boolean          window() { return _window; }
+		public String          support() { return _support; }
 		public int                cost() { return _cost; }
 		public int                rows() { return _rows; }
 		public String[]       settings() { return _settings; }
@@ -1470,6 +1621,9 @@ hunt:	for ( ExecutableElement ee : ees )
 		public Trust       _trust;
 		public Parallel    _parallel;
 		public Boolean     _leakproof;
+		public Boolean     _materialize;
+		public Boolean     _window;
+		public String      _support;
 		int                _cost;
 		int                _rows;
 		public String[]    _settings;
@@ -1483,6 +1637,7 @@ hunt:	for ( ExecutableElement ee : ees )
 		boolean trigger = false;
 		TypeMirror returnTypeMapKey = null;
 		SQLType[] paramTypeAnnotations;
+		SupportFunctionImpl supporter;
 
 		FunctionImpl(ExecutableElement e)
 		{
@@ -1572,6 +1727,45 @@ hunt:	for ( ExecutableElement ee : ees )
 					return false;
 				}
 			}
+			else if ( null != (typeArgs = specialization( ret, TY_STREAM)) )
+			{
+				setof = true;
+				if ( 1 != typeArgs.size() )
+				{
+					msg( Kind.ERROR, func,
+						"Need one type argument for Stream return type");
+					return false;
+				}
+				setofComponent = typeArgs.get( 0);
+				if ( null == setofComponent )
+				{
+					msg( Kind.ERROR, func,
+						"Failed to find setof component type");
+					return false;
+				}
+				/*
+				 * A Stream of Object[] supplies rows of a composite type,
+				 * which has to be named by type= or else is RECORD.
+				 */
+				if ( typu.isSameType( setofComponent,
+					typu.getArrayType( TY_OBJECT)) )
+					setofComponent = null;
+			}
+			else if ( typu.isAssignable( ret, TY_INTSTREAM) )
+			{
+				setof = true;
+				setofComponent = typu.getPrimitiveType( TypeKind.INT);
+			}
+			else if ( typu.isAssignable( ret, TY_LONGSTREAM) )
+			{
+				setof = true;
+				setofComponent = typu.getPrimitiveType( TypeKind.LONG);
+			}
+			else if ( typu.isAssignable( ret, TY_DOUBLESTREAM) )
+			{
+				setof = true;
+				setofComponent = typu.getPrimitiveType( TypeKind.DOUBLE);
+			}
 			else if ( typu.isAssignable( ret, TY_RESULTSETPROVIDER)
 				|| typu.isAssignable( ret, TY_RESULTSETHANDLE) )
 			{
@@ -1594,13 +1788,52 @@ hunt:	for ( ExecutableElement ee : ees )
 				msg( Kind.ERROR, func,
 					"ROWS specified on a function not returning SETOF");
 
+			if ( ! setof && materialize() )
+				msg( Kind.ERROR, func,
+					"materialize specified on a function not returning SETOF");
+
 			if ( ! trigger && 0 != _triggers.length )
 				msg( Kind.ERROR, func,
 					"a function with triggers needs void return and " +
 					"one TriggerData parameter");
 
+			if ( window() )
+			{
+				if ( 0 == arity
+					|| ptms.get( 0).getKind().equals( TypeKind.ERROR)
+					|| ! typu.isSameType( ptms.get( 0), TY_WINDOWOBJECT) )
+				{
+					msg( Kind.ERROR, func,
+						"a window function needs a WindowObject as its " +
+						"first parameter");
+					return false;
+				}
+				if ( setof || trigger )
+					msg( Kind.ERROR, func,
+						"a window function cannot return a set or be a " +
+						"trigger");
+			}
+
 			collectParameterTypeAnnotations();
 
+			if ( ! "".equals( support()) )
+			{
+				ExecutableElement sup = huntFor(
+					methodsIn( func.getEnclosingElement().getEnclosedElements()),
+					support(), true, typu.getPrimitiveType( TypeKind.BOOLEAN),
+					TY_SUPPORTREQUEST);
+				if ( null == sup )
+				{
+					msg( Kind.ERROR, func,
+						"A planner support method %s must be public static, " +
+						"take one SupportRequest, and return boolean",
+						support());
+					return false;
+				}
+				supporter = new SupportFunctionImpl( this, sup);
+				supporter.characterize();
+			}
+
 			/*
 			 * Report any unmappable types now that could appear in
 			 * deployStrings (return type or parameter types) ... so that the
@@ -1674,7 +1907,13 @@ hunt:	for ( ExecutableElement ee : ees )
 					tms = tms.subList( 0, tms.size() - 1);
 				int s = tms.size();
 				int i = 0;
-				for ( TypeMirror tm : tms )
+				if ( window() )
+				{
+					/* the WindowObject is not an SQL parameter */
+					ves.next();
+					++ i;
+				}
+				for ( TypeMirror tm : tms.subList( i, s) )
 				{
 					VariableElement ve = ves.next();
 					/*
@@ -1712,6 +1951,8 @@ hunt:	for ( ExecutableElement ee : ees )
 		public String[] deployStrings()
 		{
 			ArrayList<String> al = new ArrayList<>();
+			if ( null != supporter )
+				al.addAll( Arrays.asList( supporter.deployStrings()));
 			StringBuilder sb = new StringBuilder();
 			sb.append( "CREATE OR REPLACE FUNCTION ");
 			appendNameAndParams( sb, true);
@@ -1737,6 +1978,8 @@ hunt:	for ( ExecutableElement ee : ees )
 			else
 				sb.append( nameUntrusted);
 			sb.append( ' ').append( effects());
+			if ( window() )
+				sb.append( " WINDOW");
 			if ( leakproof() )
 				sb.append( " LEAKPROOF");
 			sb.append( '\n');
@@ -1750,10 +1993,18 @@ hunt:	for ( ExecutableElement ee : ees )
 				sb.append( "\tCOST ").append( cost()).append( '\n');
 			if ( -1 != rows() )
 				sb.append( "\tROWS ").append( rows()).append( '\n');
+			if ( null != supporter )
+				sb.append( "\tSUPPORT ").append( supporter.qname())
+				  .append( '\n');
 			for ( String s : settings() )
 				sb.append( "\tSET ").append( s).append( '\n');
+			if ( materialize() )
+				sb.append( "\tSET pljava.materialize_srf TO on\n");
 			sb.append( "\tAS '");
+			int asStart = sb.length();
 			appendAS( sb);
+			if ( null != func ) // no Java method of its own for UDT[] / AGG[]
+				noteSignature( sb.subSequence( asStart, sb.length()), func);
 			sb.append( '\'');
 			al.add( sb.toString());
 
@@ -1786,6 +2037,12 @@ hunt:	for ( ExecutableElement ee : ees )
 			sb.append( "DROP FUNCTION ");
 			appendNameAndParams( sb, false);
 			rslt [ rslt.length - 1 ] = sb.toString();
+			if ( null != supporter )
+			{
+				ArrayList<String> al = new ArrayList<>( Arrays.asList( rslt));
+				al.addAll( Arrays.asList( supporter.undeployStrings()));
+				return al.toArray( new String [ al.size() ]);
+			}
 			return rslt;
 		}
 
@@ -1874,6 +2131,9 @@ hunt:	for ( ExecutableElement ee : ees )
 			_trust = Trust.SANDBOXED;
 			_parallel = Parallel.UNSAFE;
 			_leakproof = false;
+			_materialize = false;
+			_window = false;
+			_support = "";
 			_settings = new String[0];
 			_triggers = new Trigger[0];
 			_provides = _settings;
@@ -2334,6 +2594,406 @@ hunt:	for ( ExecutableElement ee : ees )
 		}
 	}
 
+	/**
+	 * One of the functions declared in SQL for an aggregate; parameters of the
+	 * state class are declared as {@code internal}, and so is the result of
+	 * the accumulate and combine functions.
+	 */
+	class AggregateFunctionImpl extends FunctionImpl
+	{
+		AggregateFunctionImpl(
+			AggregateImpl ai, ExecutableElement e, String suffix,
+			boolean returnsState)
+		{
+			super( e);
+			this.ai = ai;
+
+			_type = returnsState ? "pg_catalog.internal" : ai.type();
+			_name = ai.name() + '_' + suffix;
+			_schema = ai.schema();
+			_cost = -1;
+			_rows = -1;
+			_onNullInput = OnNullInput.CALLED;
+			_security = Security.INVOKER;
+			_effects = Effects.VOLATILE;
+			_trust = Trust.SANDBOXED;
+			_parallel = ai.parallel();
+			_leakproof = false;
+			_materialize = false;
+			_window = false;
+			_support = "";
+			_settings = new String[0];
+			_triggers = new Trigger[0];
+			_provides = _settings;
+			_requires = _settings;
+		}
+
+		AggregateImpl ai;
+
+		@Override
+		public boolean characterize()
+		{
+			returnTypeMapKey = func.getReturnType();
+			collectParameterTypeAnnotations();
+			return false;
+		}
+
+		@Override
+		void appendParams( StringBuilder sb, boolean dflts)
+		{
+			appendParams( sb, dflts, 0);
+		}
+
+		/**
+		 * Append the parameters following the state, which are the arguments
+		 * of the aggregate itself.
+		 */
+		void appendArguments( StringBuilder sb)
+		{
+			appendParams( sb, false, 1);
+		}
+
+		void appendParams( StringBuilder sb, boolean dflts, int from)
+		{
+			ExecutableType et = (ExecutableType)func.asType();
+			List<? extends TypeMirror> tms = et.getParameterTypes();
+			List<? extends VariableElement> ves = func.getParameters();
+			TypeMirror state = ai.tclass.asType();
+			int s = tms.size();
+			for ( int i = from; i < s; ++ i )
+			{
+				VariableElement ve = ves.get( i);
+				SQLType st = paramTypeAnnotations[i];
+				String name = null == st ? null : st.name();
+				if ( null == name )
+					name = ve.getSimpleName().toString();
+				sb.append( "\n\t").append( name).append( ' ');
+				if ( typu.isSameType( tms.get( i), state) )
+					sb.append( "pg_catalog.internal");
+				else
+					sb.append(
+						tmpr.getSQLType( tms.get( i), ve, st, true, dflts));
+				if ( i + 1 < s )
+					sb.append( ',');
+			}
+		}
+
+		String qname()
+		{
+			return "".equals( schema()) ? name() : schema() + '.' + name();
+		}
+
+		public String implementor()
+		{
+			return ai.implementor();
+		}
+	}
+
+	/**
+	 * The planner support function named by {@code support} in a
+	 * {@code @Function} annotation, declared with the name of the supported
+	 * function suffixed by {@code _support}, taking and returning
+	 * {@code internal}.
+	 */
+	class SupportFunctionImpl extends FunctionImpl
+	{
+		SupportFunctionImpl( FunctionImpl fi, ExecutableElement e)
+		{
+			super( e);
+			this.fi = fi;
+
+			_type = "pg_catalog.internal";
+			_name = fi.name() + "_support";
+			_schema = fi.schema();
+			_cost = -1;
+			_rows = -1;
+			_onNullInput = OnNullInput.RETURNS_NULL;
+			_security = Security.INVOKER;
+			_effects = Effects.VOLATILE;
+			_trust = fi.trust();
+			_parallel = Parallel.UNSAFE;
+			_leakproof = false;
+			_materialize = false;
+			_window = false;
+			_support = "";
+			_settings = new String[0];
+			_triggers = new Trigger[0];
+			_provides = _settings;
+			_requires = _settings;
+			_comment = derivedComment( e);
+		}
+
+		FunctionImpl fi;
+
+		@Override
+		public boolean characterize()
+		{
+			returnTypeMapKey = func.getReturnType();
+			collectParameterTypeAnnotations();
+			return false;
+		}
+
+		@Override
+		void appendParams( StringBuilder sb, boolean dflts)
+		{
+			sb.append( "\n\t").append( func.getParameters().get( 0)
+				.getSimpleName()).append( " pg_catalog.internal");
+		}
+
+		String qname()
+		{
+			return "".equals( schema()) ? name() : schema() + '.' + name();
+		}
+
+		public String implementor()
+		{
+			return fi.implementor();
+		}
+	}
+
+	/**
+	 * The serialize or deserialize function of an aggregate whose state class
+	 * implements {@code SQLData}, which has no Java method of its own; the
+	 * {@code AGG[class]} notation asks PL/Java to use the class's
+	 * {@code writeSQL} or {@code readSQL}.
+	 */
+	class AggregateSerialImpl extends AggregateFunctionImpl
+	{
+		AggregateSerialImpl( AggregateImpl ai, boolean isSerialize)
+		{
+			super( ai, null, isSerialize ? "serialize" : "deserialize", false);
+			this.isSerialize = isSerialize;
+			_type = isSerialize ? "pg_catalog.bytea" : "pg_catalog.internal";
+			_onNullInput = OnNullInput.RETURNS_NULL;
+		}
+
+		boolean isSerialize;
+
+		@Override
+		public boolean characterize()
+		{
+			return false;
+		}
+
+		@Override
+		void appendParams( StringBuilder sb, boolean dflts)
+		{
+			if ( isSerialize )
+				sb.append( "\n\tstate pg_catalog.internal");
+			else
+				sb.append( "\n\tbytes pg_catalog.bytea,")
+				  .append( "\n\tunused pg_catalog.internal");
+		}
+
+		@Override
+		void appendAS( StringBuilder sb)
+		{
+			sb.append( "AGG[").append( ai.tclass.toString()).append( "] ");
+			sb.append( isSerialize ? "serialize" : "deserialize");
+		}
+	}
+
+	class AggregateImpl
+	extends AbstractAnnotationImpl
+	implements Aggregate, Snippet, Commentable
+	{
+		public String                 name() { return _name; }
+		public String               schema() { return _schema; }
+		public String           accumulate() { return _accumulate; }
+		public String               finish() { return _finish; }
+		public String              combine() { return _combine; }
+		public String                 type() { return _type; }
+		public Function.Parallel  parallel() { return _parallel; }
+		public String[]           provides() { return _provides; }
+		public String[]           requires() { return _requires; }
+
+		public String            _name;
+		public String            _schema;
+		public String            _accumulate;
+		public String            _finish;
+		public String            _combine;
+		public String            _type;
+		public Function.Parallel _parallel;
+		public String[]          _provides;
+		public String[]          _requires;
+
+		TypeElement tclass;
+		String qname;
+		AggregateFunctionImpl accumulator;
+		AggregateFunctionImpl finisher;
+		AggregateFunctionImpl combiner;
+		AggregateFunctionImpl serializer;
+		AggregateFunctionImpl deserializer;
+
+		AggregateImpl(TypeElement e)
+		{
+			tclass = e;
+		}
+
+		public boolean characterize()
+		{
+			if ( "".equals( _name) )
+				_name = tclass.getSimpleName().toString();
+			qname = "".equals( _schema) ? _name : _schema + "." + _name;
+
+			List<ExecutableElement> ms =
+				methodsIn( tclass.getEnclosedElements());
+			TypeMirror state = tclass.asType();
+
+			ExecutableElement acc = null;
+			for ( ExecutableElement ee : ms )
+			{
+				if ( ! ee.getSimpleName().contentEquals( _accumulate) )
+					continue;
+				List<? extends TypeMirror> pts =
+					((ExecutableType)ee.asType()).getParameterTypes();
+				if ( pts.isEmpty()
+					|| ! typu.isSameType( pts.get( 0), state)
+					|| ! typu.isSameType( ee.getReturnType(), state) )
+					continue;
+				Set<Modifier> mods = ee.getModifiers();
+				if ( ! mods.contains( Modifier.PUBLIC)
+					|| ! mods.contains( Modifier.STATIC) )
+					continue;
+				if ( null != acc )
+					msg( Kind.ERROR, ee,
+						"Found more than one candidate %s method", _accumulate);
+				acc = ee;
+			}
+
+			ExecutableElement fin = huntFor( ms, _finish, true, null, state);
+			ExecutableElement comb = "".equals( _combine) ? null
+				: huntFor( ms, _combine, true, state, state, state);
+
+			if ( null == acc )
+				msg( Kind.ERROR, tclass,
+					"A pljava aggregate must have a public static %s method " +
+					"with the aggregate class as its first parameter and " +
+					"return type", _accumulate);
+			if ( null == fin )
+				msg( Kind.ERROR, tclass,
+					"A pljava aggregate must have a public static %s method " +
+					"taking only the aggregate class", _finish);
+			if ( ! "".equals( _combine)  &&  null == comb )
+				msg( Kind.ERROR, tclass,
+					"A pljava aggregate must have a public static %s method " +
+					"taking and returning the aggregate class", _combine);
+			if ( null == acc  ||  null == fin )
+				return false;
+			if ( ! "".equals( _combine)  &&  null == comb )
+				return false;
+
+			accumulator =
+				new AggregateFunctionImpl( this, acc, "accumulate", true);
+			finisher = new AggregateFunctionImpl( this, fin, "finish", false);
+			accumulator.characterize();
+			finisher.characterize();
+
+			if ( null != comb )
+			{
+				combiner =
+					new AggregateFunctionImpl( this, comb, "combine", true);
+				combiner.characterize();
+				TypeMirror sqlData =
+					elmu.getTypeElement( "java.sql.SQLData").asType();
+				if ( typu.isAssignable( state, sqlData) )
+				{
+					serializer = new AggregateSerialImpl( this, true);
+					deserializer = new AggregateSerialImpl( this, false);
+				}
+				else if ( ! Function.Parallel.UNSAFE.equals( _parallel) )
+					msg( Kind.WARNING, tclass,
+						"Without implementing SQLData, the state of a pljava " +
+						"aggregate cannot be passed between parallel workers");
+			}
+
+			/*
+			 * As FunctionImpl does, call deployStrings now so any unmappable
+			 * types are reported while source locations are still known.
+			 */
+			deployStrings();
+			return true;
+		}
+
+		/**
+		 * Append the aggregate's name and arguments, or {@code (*)} if it
+		 * has none.
+		 */
+		void appendNameAndArguments( StringBuilder sb)
+		{
+			sb.append( qname).append( '(');
+			if ( 1 < accumulator.func.getParameters().size() )
+				accumulator.appendArguments( sb);
+			else
+				sb.append( '*');
+			sb.append( ')');
+		}
+
+		public String[] deployStrings()
+		{
+			ArrayList<String> al = new ArrayList<>();
+			al.addAll( Arrays.asList( accumulator.deployStrings()));
+			al.addAll( Arrays.asList( finisher.deployStrings()));
+			if ( null != combiner )
+				al.addAll( Arrays.asList( combiner.deployStrings()));
+			if ( null != serializer )
+			{
+				al.addAll( Arrays.asList( serializer.deployStrings()));
+				al.addAll( Arrays.asList( deserializer.deployStrings()));
+			}
+
+			StringBuilder sb = new StringBuilder();
+			sb.append( "CREATE AGGREGATE ");
+			appendNameAndArguments( sb);
+			sb.append( " (\n\tSFUNC = ").append( accumulator.qname());
+			sb.append( ",\n\tSTYPE = pg_catalog.internal");
+			sb.append( ",\n\tFINALFUNC = ").append( finisher.qname());
+			if ( null != combiner )
+				sb.append( ",\n\tCOMBINEFUNC = ").append( combiner.qname());
+			if ( null != serializer )
+			{
+				sb.append( ",\n\tSERIALFUNC = ").append( serializer.qname());
+				sb.append( ",\n\tDESERIALFUNC = ")
+				  .append( deserializer.qname());
+			}
+			if ( ! Function.Parallel.UNSAFE.equals( parallel()) )
+				sb.append( ",\n\tPARALLEL = ").append( parallel());
+			sb.append( "\n)");
+			al.add( sb.toString());
+
+			String comm = comment();
+			if ( null != comm )
+			{
+				sb.setLength( 0);
+				sb.append( "COMMENT ON AGGREGATE ");
+				appendNameAndArguments( sb);
+				sb.append( "\nIS ");
+				sb.append( DDRWriter.eQuote( comm));
+				al.add( sb.toString());
+			}
+			return al.toArray( new String [ al.size() ]);
+		}
+
+		public String[] undeployStrings()
+		{
+			ArrayList<String> al = new ArrayList<>();
+			StringBuilder sb = new StringBuilder();
+			sb.append( "DROP AGGREGATE ");
+			appendNameAndArguments( sb);
+			al.add( sb.toString());
+			if ( null != serializer )
+			{
+				al.addAll( Arrays.asList( deserializer.undeployStrings()));
+				al.addAll( Arrays.asList( serializer.undeployStrings()));
+			}
+			if ( null != combiner )
+				al.addAll( Arrays.asList( combiner.undeployStrings()));
+			al.addAll( Arrays.asList( finisher.undeployStrings()));
+			al.addAll( Arrays.asList( accumulator.undeployStrings()));
+			return al.toArray( new String [ al.size() ]);
+		}
+	}
+
 	/**
 	 * Provides the default mappings from Java types to SQL types.
 	 */
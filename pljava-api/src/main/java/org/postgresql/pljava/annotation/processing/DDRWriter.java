@@ -13,11 +13,17 @@
 package org.postgresql.pljava.annotation.processing;
 
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.annotation.processing.Filer;
+
 import static javax.tools.Diagnostic.Kind.ERROR;
 import static javax.tools.StandardLocation.CLASS_OUTPUT;
 
@@ -34,6 +40,17 @@ import static org.postgresql.pljava.sqlgen.Lexicals.ISO_PG_JAVA_IDENTIFIER;
  */
 public class DDRWriter
 {
+	/**
+	 * Name of the resource, at the root of the jar like the deployment
+	 * descriptor, in which the signature index is written.
+	 *<p>
+	 * The index has one line, in UTF-8, for each function declared with a
+	 * Java method: the function's AS string with whitespace removed, a tab,
+	 * and the JVM descriptor of the method, so PL/Java can find the method
+	 * without searching for it among the signatures it might have.
+	 */
+	public static final String SIGNATURE_INDEX = "pljava.sigidx";
+
 	/**
 	 * Generate the deployment descriptor file.
 	 *<p>
@@ -77,6 +94,34 @@ public class DDRWriter
 		w.close();
 	}
 	
+	/**
+	 * Generate the signature index, if any functions were declared with Java
+	 * methods.
+	 *
+	 * @param signatures Map from whitespace-free AS string to JVM descriptor.
+	 * @param filr The processing environment's Filer, to create the file.
+	 */
+	static void emitSignatureIndex( Map<String,String> signatures,
+		Filer filr) throws IOException
+	{
+		if ( signatures.isEmpty() )
+			return;
+
+		Writer w = new OutputStreamWriter(
+			filr.createResource( CLASS_OUTPUT, "", SIGNATURE_INDEX)
+				.openOutputStream(), UTF_8);
+
+		for ( Map.Entry<String,String> e : signatures.entrySet() )
+		{
+			w.write( e.getKey());
+			w.write( '\t');
+			w.write( e.getValue());
+			w.write( '\n');
+		}
+
+		w.close();
+	}
+
 	/**
 	 * Write a single command into the current (install or remove) action group.
 	 * Can emit either the implementor-specific or non-specific command form.
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.example;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Random;
+
+import org.postgresql.pljava.BatchResultSetProvider;
+
+/**
+ * Example implementing {@code BatchResultSetProvider} to produce the same rows
+ * as {@link HugeResultSet}, a batch at a time.
+ */
+public class HugeBatchResultSet implements BatchResultSetProvider {
+	public static BatchResultSetProvider executeSelect(int rowCount)
+			throws SQLException {
+		return new HugeBatchResultSet(rowCount);
+	}
+
+	private final int m_rowCount;
+
+	private final Random m_random;
+
+	public HugeBatchResultSet(int rowCount) throws SQLException {
+		m_rowCount = rowCount;
+		m_random = new Random(System.currentTimeMillis());
+	}
+
+	@Override
+	public boolean assignRowValues(
+			ResultSet receiver, int currentRow, int batchSize)
+			throws SQLException {
+		int end = Math.min(m_rowCount, currentRow + batchSize);
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		for (int row = currentRow; row < end; ++row) {
+			receiver.updateInt(1, row);
+			receiver.updateInt(2, m_random.nextInt());
+			receiver.updateTimestamp(3, now);
+			receiver.insertRow();
+		}
+		return end < m_rowCount;
+	}
+
+	@Override
+	public void close() {
+	}
+}
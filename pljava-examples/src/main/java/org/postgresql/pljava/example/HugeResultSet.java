@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2004-2013 Tada AB and other contributors, as listed below.
+ * Copyright (c) 2004-2020 Tada AB and other contributors, as listed below.
  *
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the The BSD 3-Clause License
@@ -11,6 +11,9 @@
  */
 package org.postgresql.pljava.example;
 
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
@@ -23,6 +26,11 @@ import org.postgresql.pljava.ResultSetProvider;
  * Example implementing {@code ResultSetProvider} to provide a function that
  * generates and returns a lot of rows (caller passes the desired row count)
  * each containing the row number, a random integer, and a timestamp.
+ *<p>
+ * The same method is declared both as {@code javatest.hugeResult}, returning
+ * its rows one per call, and as {@code javatest.hugeMaterializedResult}, with
+ * {@code pljava.materialize_srf} set so it produces them all in one call;
+ * {@link #compareModes compareModes} times the two.
  */
 public class HugeResultSet implements ResultSetProvider {
 	public static ResultSetProvider executeSelect(int rowCount)
@@ -30,6 +38,43 @@ public class HugeResultSet implements ResultSetProvider {
 		return new HugeResultSet(rowCount);
 	}
 
+	/**
+	 * Times {@code repeats} scans of {@code rowCount} rows from each of
+	 * {@code javatest.hugeResult} and {@code javatest.hugeMaterializedResult},
+	 * returning a line reporting the milliseconds each took.
+	 */
+	public static String compareModes(int rowCount, int repeats)
+			throws SQLException {
+		Connection conn =
+			DriverManager.getConnection("jdbc:default:connection");
+		long valuePerCall = timeScans(conn,
+			"SELECT count(*) FROM javatest.hugeResult(?)", rowCount, repeats);
+		long materialize = timeScans(conn,
+			"SELECT count(*) FROM javatest.hugeMaterializedResult(?)",
+			rowCount, repeats);
+		return String.format(
+			"%d x %d rows: value-per-call %d ms, materialize %d ms",
+			repeats, rowCount, valuePerCall, materialize);
+	}
+
+	private static long timeScans(
+			Connection conn, String query, int rowCount, int repeats)
+			throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement(query)) {
+			ps.setInt(1, rowCount);
+			long start = System.nanoTime();
+			for (int i = 0; i < repeats; ++i) {
+				try (ResultSet rs = ps.executeQuery()) {
+					rs.next();
+					if (rs.getLong(1) != rowCount)
+						throw new SQLException(
+							"unexpected row count from " + query);
+				}
+			}
+			return (System.nanoTime() - start) / 1000000;
+		}
+	}
+
 	private final int m_rowCount;
 
 	private final Random m_random;
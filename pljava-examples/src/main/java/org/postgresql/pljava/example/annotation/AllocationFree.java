@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.example.annotation;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import java.sql.SQLException;
+
+import org.postgresql.pljava.annotation.Function;
+import org.postgresql.pljava.annotation.SQLAction;
+
+/**
+ * Checks that the steady-state path for calling a PL/Java function with only
+ * primitive parameters and result allocates no Java objects.
+ *<p>
+ * {@link #allocationProbe allocationProbe} notes the bytes allocated by the
+ * current thread when called with {@code i} equal to 1, and again when called
+ * with {@code i} equal to {@code last}; the difference, less the overhead of
+ * reading it, is what a million calls in between allocated, and is expected to
+ * be zero, as {@link #assertAllocationFree assertAllocationFree} checks. The
+ * measurement needs a JVM supporting thread allocation counting through
+ * {@code com.sun.management.ThreadMXBean}; without one,
+ * {@link #allocatedBytes allocatedBytes} returns -1 and the check is skipped.
+ */
+@SQLAction(requires={"allocationProbe", "assertAllocationFree"}, install={
+" SELECT count(javatest.allocationProbe(i, 1000000)) " +
+"  FROM generate_series(1, 1000000) AS i",
+
+" SELECT " +
+"  CASE WHEN javatest.assertAllocationFree() " +
+"  THEN javatest.logmessage('INFO', 'AllocationFree ok') " +
+"  ELSE javatest.logmessage('INFO', 'AllocationFree not measurable') " +
+"  END"
+})
+public class AllocationFree
+{
+	private static long s_start = -1;
+	private static long s_overhead;
+	private static long s_allocated = -1;
+
+	/**
+	 * Return {@code i}, noting the thread's allocated bytes on the first and
+	 * {@code last} calls.
+	 */
+	@Function(schema="javatest", provides="allocationProbe")
+	public static int allocationProbe(int i, int last)
+	{
+		if ( 1 == i )
+		{
+			/*
+			 * What one reading allocates after taking its sample, plus what
+			 * the next allocates before taking its own, is the cost of one
+			 * reading, which is also counted between s_start and the last.
+			 */
+			long before = allocatedSoFar();
+			s_start = allocatedSoFar();
+			s_overhead = s_start - before;
+		}
+		else if ( last == i  &&  -1 != s_start )
+			s_allocated = allocatedSoFar() - s_start - s_overhead;
+		return i;
+	}
+
+	/**
+	 * Return the bytes allocated between the first and last calls of
+	 * {@link #allocationProbe allocationProbe}, or -1 if not measurable.
+	 */
+	@Function(schema="javatest", provides="allocatedBytes")
+	public static long allocatedBytes()
+	{
+		return s_allocated;
+	}
+
+	/**
+	 * Return true if the calls of {@link #allocationProbe allocationProbe}
+	 * were measured and allocated nothing, false if they could not be
+	 * measured.
+	 * @throws SQLException if they allocated anything
+	 */
+	@Function(schema="javatest", provides="assertAllocationFree")
+	public static boolean assertAllocationFree() throws SQLException
+	{
+		if ( 0 < s_allocated )
+			throw new SQLException("AllocationFree fails: " +
+				s_allocated + " bytes allocated");
+		return 0 == s_allocated;
+	}
+
+	private static long allocatedSoFar()
+	{
+		try
+		{
+			ThreadMXBean b = ManagementFactory.getThreadMXBean();
+			if ( b instanceof com.sun.management.ThreadMXBean )
+			{
+				com.sun.management.ThreadMXBean sb =
+					(com.sun.management.ThreadMXBean)b;
+				if ( sb.isThreadAllocatedMemorySupported()
+					&& sb.isThreadAllocatedMemoryEnabled() )
+					return sb.getThreadAllocatedBytes(
+						Thread.currentThread().getId());
+			}
+		}
+		catch ( SecurityException e )
+		{
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.example.annotation;
+
+import java.sql.Connection;
+import static java.sql.DriverManager.getConnection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+
+import java.util.concurrent.TimeUnit;
+
+import org.postgresql.pljava.Session;
+import org.postgresql.pljava.SessionManager;
+import org.postgresql.pljava.annotation.Function;
+import org.postgresql.pljava.annotation.SQLAction;
+
+/**
+ * Example of a long-running Java loop that stops promptly when its query is
+ * cancelled, by polling {@link Session#checkForInterrupts}.
+ *<p>
+ * {@link #cancelTightLoop cancelTightLoop} cancels its own query, with
+ * {@code pg_cancel_backend}, while a helper thread spins, and reports how long
+ * the helper took to notice. The same loop, run on the function's own thread,
+ * would instead end with PostgreSQL's own "canceling statement" error, as it
+ * would for a {@code statement_timeout}.
+ */
+@SQLAction(requires="cancelTightLoop", install=
+"SELECT " +
+" CASE WHEN javatest.cancelTightLoop() BETWEEN 0 AND 100 " +
+" THEN javatest.logmessage('INFO', 'Cancellation ok') " +
+" ELSE javatest.logmessage('WARNING', 'Cancellation not ok') " +
+" END"
+)
+public class Cancellation implements Runnable
+{
+	/**
+	 * Cancel the current query while a helper thread spins polling for the
+	 * cancel, and return the milliseconds from the cancel request until the
+	 * helper saw it, or -1 if it never did.
+	 */
+	@Function(schema="javatest", provides="cancelTightLoop")
+	public static long cancelTightLoop() throws SQLException
+	{
+		Session s = SessionManager.current();
+		Connection c = getConnection("jdbc:default:connection");
+		Cancellation spinner = new Cancellation(s);
+		Thread t = new Thread(spinner);
+		Savepoint sp = c.setSavepoint();
+		long sent = 0;
+
+		t.start();
+		try
+		{
+			try ( Statement st = c.createStatement() )
+			{
+				/*
+				 * Fetch the one row and no further, so the executor has no
+				 * chance to check for (and consume) the cancel itself.
+				 */
+				st.setFetchSize(1);
+				sent = System.nanoTime();
+				try ( ResultSet rs = st.executeQuery(
+					"SELECT pg_catalog.pg_cancel_backend(" +
+					"pg_catalog.pg_backend_pid())") )
+				{
+					rs.next();
+				}
+			}
+			join(t);
+			s.checkForInterrupts(); // the cancel is handled here, and throws
+			return -1;
+		}
+		catch ( SQLException e )
+		{
+			if ( ! "57014".equals(e.getSQLState()) )
+				throw e;
+			c.rollback(sp);
+		}
+		finally
+		{
+			spinner.m_stop = true;
+			join(t);
+		}
+
+		if ( 0 == spinner.m_noticed )
+			return -1;
+		return TimeUnit.NANOSECONDS.toMillis(spinner.m_noticed - sent);
+	}
+
+	private static void join(Thread t)
+	{
+		while ( true )
+		{
+			try
+			{
+				t.join();
+			}
+			catch ( InterruptedException ie )
+			{
+				continue;
+			}
+			break;
+		}
+	}
+
+	private final Session m_session;
+	private volatile boolean m_stop;
+	private volatile long m_noticed;
+
+	private Cancellation(Session s)
+	{
+		m_session = s;
+	}
+
+	/**
+	 * Spin until a cancel is seen, or for at most five seconds.
+	 */
+	public void run()
+	{
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		try
+		{
+			while ( ! m_stop && System.nanoTime() < deadline )
+				m_session.checkForInterrupts();
+		}
+		catch ( SQLException e )
+		{
+			if ( "57014".equals(e.getSQLState()) )
+				m_noticed = System.nanoTime();
+		}
+	}
+}
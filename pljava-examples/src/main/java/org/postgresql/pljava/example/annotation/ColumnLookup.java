@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.example.annotation;
+
+import java.sql.Connection;
+import static java.sql.DriverManager.getConnection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.logging.Logger;
+
+import org.postgresql.pljava.annotation.Function;
+import org.postgresql.pljava.annotation.SQLAction;
+
+/**
+ * Example checking how a column of a query result is found by name: exactly,
+ * as a double-quoted identifier, or folded to lower case as PostgreSQL folds
+ * an unquoted identifier, falling back to a match without regard to case.
+ */
+@SQLAction(requires="columnLookup", install=
+"SELECT " +
+" CASE WHEN javatest.columnLookup() " +
+" THEN javatest.logmessage('INFO', 'ColumnLookup ok') " +
+" ELSE javatest.logmessage('WARNING', 'ColumnLookup not ok') " +
+" END"
+)
+public class ColumnLookup
+{
+	/**
+	 * Look up columns of one row by a variety of names, and return true if
+	 * each finds the column expected, and the names of no column are
+	 * refused with SQLSTATE 42703 (undefined column).
+	 */
+	@Function(schema="javatest", provides="columnLookup")
+	public static boolean columnLookup() throws SQLException
+	{
+		Connection c = getConnection("jdbc:default:connection");
+		try (
+			Statement s = c.createStatement();
+			ResultSet rs = s.executeQuery(
+				"SELECT 1 AS \"MixedCase\", 2 AS \"Twin\", 3 AS twin," +
+				" 4 AS plain")
+		)
+		{
+			rs.next();
+			return
+				found(rs, "MixedCase", 1)
+				& found(rs, "\"MixedCase\"", 1)
+				& found(rs, "mixedcase", 1)  // only without regard to case
+				& found(rs, "Twin", 2)
+				& found(rs, "\"Twin\"", 2)
+				& found(rs, "twin", 3)
+				& found(rs, "TWIN", 3)       // folded, as unquoted
+				& found(rs, "\"twin\"", 3)
+				& found(rs, "PLAIN", 4)
+				& refused(rs, "nosuch")
+				& refused(rs, "\"mixedcase\"")  // quoted, so exact only
+				& refused(rs, "\"PLAIN\"");
+		}
+	}
+
+	private static boolean found(ResultSet rs, String name, int expected)
+	throws SQLException
+	{
+		int actual = rs.getInt(name);
+		if ( expected == actual )
+			return true;
+		Logger.getAnonymousLogger().warning(
+			"column " + name + ": " + actual + ", expected " + expected);
+		return false;
+	}
+
+	private static boolean refused(ResultSet rs, String name)
+	{
+		try
+		{
+			rs.getInt(name);
+		}
+		catch ( SQLException e )
+		{
+			if ( "42703".equals(e.getSQLState()) )
+				return true;
+		}
+		Logger.getAnonymousLogger().warning(
+			"column " + name + ": not refused with 42703");
+		return false;
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.example.annotation;
+
+import java.sql.Connection;
+import static java.sql.DriverManager.getConnection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.postgresql.pljava.ColumnarResultSet;
+import org.postgresql.pljava.annotation.Function;
+import org.postgresql.pljava.annotation.SQLAction;
+import org.postgresql.pljava.annotation.SQLActions;
+
+/**
+ * Example of reading numeric columns of a query many rows at a time, into
+ * primitive arrays, through {@link ColumnarResultSet}.
+ *<p>
+ * {@link #columnarSums columnarSums} reads the first row in the usual way, and
+ * the rest in batches, and checks the sums and null count it gets against the
+ * ones known for the query.
+ *<p>
+ * {@link #columnarMixed columnarMixed} interleaves {@code next} and
+ * {@code fetchColumns} calls that take fewer rows than the result set holds
+ * already fetched, and checks that no row is skipped or read twice.
+ */
+@SQLActions({
+	@SQLAction(requires="columnarSums", install=
+	"SELECT " +
+	" CASE WHEN javatest.columnarSums() " +
+	" THEN javatest.logmessage('INFO', 'ColumnarFetch ok') " +
+	" ELSE javatest.logmessage('WARNING', 'ColumnarFetch not ok') " +
+	" END"
+	),
+	@SQLAction(requires="columnarMixed", install=
+	"SELECT " +
+	" CASE WHEN javatest.columnarMixed() " +
+	" THEN javatest.logmessage('INFO', 'ColumnarFetch mixed ok') " +
+	" ELSE javatest.logmessage('WARNING', 'ColumnarFetch mixed not ok') " +
+	" END"
+	)
+})
+public class ColumnarFetch
+{
+	private static final int BATCH = 1000;
+
+	/**
+	 * Sum three columns of 10,000 rows, one of them a tenth null, reading
+	 * all but the first row with {@code fetchColumns}, and return true if the
+	 * results are as expected.
+	 */
+	@Function(schema="javatest", provides="columnarSums")
+	public static boolean columnarSums() throws SQLException
+	{
+		Connection c = getConnection("jdbc:default:connection");
+		try (
+			Statement s = c.createStatement();
+			ResultSet rs = s.executeQuery(
+				"SELECT i, i * 0.5::float8," +
+				" CASE WHEN i % 10 = 0 THEN NULL ELSE i::int8 END" +
+				" FROM generate_series(1, 10000) AS i")
+		)
+		{
+			ColumnarResultSet crs = rs.unwrap(ColumnarResultSet.class);
+			int[] ints = new int[BATCH];
+			double[] halves = new double[BATCH];
+			long[] longs = new long[BATCH];
+			boolean[] longNulls = new boolean[BATCH];
+
+			int[] columns = { 1, 2, 3 };
+			Object[] values = { ints, halves, longs };
+			boolean[][] nulls = { null, null, longNulls };
+
+			rs.next();
+			long intSum = rs.getInt(1);
+			double halfSum = rs.getDouble(2);
+			long longSum = rs.getLong(3);
+			int nullCount = 0;
+
+			for ( int n; 0 < (n = crs.fetchColumns(
+				columns, values, nulls, 0, BATCH)); )
+			{
+				for ( int i = 0; i < n; ++ i )
+				{
+					intSum += ints[i];
+					halfSum += halves[i];
+					longSum += longs[i];
+					if ( longNulls[i] )
+						++ nullCount;
+				}
+			}
+
+			return 50005000 == intSum && 25002500.0 == halfSum
+				&& 45000000 == longSum && 1000 == nullCount
+				&& ! rs.next();
+		}
+	}
+
+	/**
+	 * Read the integers 1 to 1000, fetched 100 at a time, alternately with
+	 * {@code next} and with {@code fetchColumns} calls for 7 rows or none,
+	 * and return true if every one was read, once, in order.
+	 */
+	@Function(schema="javatest", provides="columnarMixed")
+	public static boolean columnarMixed() throws SQLException
+	{
+		Connection c = getConnection("jdbc:default:connection");
+		try ( Statement s = c.createStatement() )
+		{
+			s.setFetchSize(100);
+			try ( ResultSet rs = s.executeQuery(
+				"SELECT i FROM generate_series(1, 1000) AS i") )
+			{
+				ColumnarResultSet crs = rs.unwrap(ColumnarResultSet.class);
+				int[] columns = { 1 };
+				int[] ints = new int[7];
+				Object[] values = { ints };
+				int expected = 1;
+
+				while ( rs.next() )
+				{
+					if ( expected++ != rs.getInt(1) )
+						return false;
+					if ( 0 != crs.fetchColumns(columns, values, null, 0, 0) )
+						return false;
+					int n = crs.fetchColumns(columns, values, null, 0, 7);
+					for ( int i = 0; i < n; ++ i )
+						if ( expected++ != ints[i] )
+							return false;
+				}
+				return 1001 == expected;
+			}
+		}
+	}
+}
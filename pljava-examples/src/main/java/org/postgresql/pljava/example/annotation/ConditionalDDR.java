@@ -127,6 +127,14 @@ import org.postgresql.pljava.annotation.SQLActions;
 		"END"
 	),
 
+	@SQLAction(provides="postgresql_ge_90600", install=
+		"SELECT CASE WHEN" +
+		" 90600 <= CAST(current_setting('server_version_num') AS integer)" +
+		" THEN set_config('pljava.implementors', 'postgresql_ge_90600,' || " +
+		" current_setting('pljava.implementors'), true) " +
+		"END"
+	),
+
 	@SQLAction(provides="postgresql_ge_100000", install=
 		"SELECT CASE WHEN" +
 		" 100000 <= CAST(current_setting('server_version_num') AS integer)" +
@@ -134,5 +142,21 @@ import org.postgresql.pljava.annotation.SQLActions;
 		" current_setting('pljava.implementors'), true) " +
 		"END"
 	),
+
+	@SQLAction(provides="postgresql_ge_110000", install=
+		"SELECT CASE WHEN" +
+		" 110000 <= CAST(current_setting('server_version_num') AS integer)" +
+		" THEN set_config('pljava.implementors', 'postgresql_ge_110000,' || " +
+		" current_setting('pljava.implementors'), true) " +
+		"END"
+	),
+
+	@SQLAction(provides="postgresql_ge_120000", install=
+		"SELECT CASE WHEN" +
+		" 120000 <= CAST(current_setting('server_version_num') AS integer)" +
+		" THEN set_config('pljava.implementors', 'postgresql_ge_120000,' || " +
+		" current_setting('pljava.implementors'), true) " +
+		"END"
+	),
 })
 public class ConditionalDDR { }
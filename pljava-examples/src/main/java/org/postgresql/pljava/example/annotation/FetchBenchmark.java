@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.example.annotation;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.postgresql.pljava.annotation.Function;
+
+/**
+ * Compares reading narrow and wide rows through a {@code ResultSet} with the
+ * fixed fetch size to reading them with fetches sized by
+ * {@code pljava.fetch_memory_budget}.
+ *<p>
+ * {@link #fetchBenchmark fetchBenchmark} sets the budget, locally to the
+ * transaction, before each run, so it can be called in any session.
+ */
+public class FetchBenchmark
+{
+	/**
+	 * Read {@code rows} rows of a narrow query and of a wide one, each with no
+	 * budget and with the given one, returning a line per query reporting
+	 * nanoseconds per row for each.
+	 */
+	@Function(schema="javatest")
+	public static String fetchBenchmark(int rows, String budget)
+	throws SQLException
+	{
+		Connection c = DriverManager.getConnection("jdbc:default:connection");
+		StringBuilder sb = new StringBuilder();
+		String[][] queries =
+		{
+			{ "narrow", "SELECT i FROM generate_series(1, ?) AS i" },
+			{ "wide", "SELECT i, repeat(md5(i::text), 60)" +
+				" FROM generate_series(1, ?) AS i" }
+		};
+
+		for ( String[] q : queries )
+		{
+			long fixed = time(c, q[1], rows, "0");
+			long budgeted = time(c, q[1], rows, budget);
+			sb.append(String.format(
+				"%s: fetch size %d ns/row, fetch budget %s %d ns/row%n",
+				q[0], fixed / rows, budget, budgeted / rows));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Return the nanoseconds taken to read every row of {@code query} for
+	 * {@code rows} rows under the given budget, after one warm-up run.
+	 */
+	private static long time(
+		Connection c, String query, int rows, String budget)
+	throws SQLException
+	{
+		try (
+			PreparedStatement set = c.prepareStatement(
+				"SELECT set_config('pljava.fetch_memory_budget', ?, true)");
+			PreparedStatement ps = c.prepareStatement(query)
+		)
+		{
+			set.setString(1, budget);
+			set.executeQuery().close();
+			ps.setInt(1, rows);
+			long start = 0;
+			for ( int run = 0; run < 2; ++ run )
+			{
+				start = System.nanoTime();
+				try ( ResultSet rs = ps.executeQuery() )
+				{
+					while ( rs.next() )
+						rs.getInt(1);
+				}
+			}
+			return System.nanoTime() - start;
+		}
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.example.annotation;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.postgresql.pljava.annotation.Function.Effects.IMMUTABLE;
+
+import org.postgresql.pljava.annotation.Function;
+import org.postgresql.pljava.annotation.SQLType;
+
+/**
+ * Compares the per-call overhead of PL/Java functions invoked through the
+ * shared entry point with that of the same functions invoked through classes
+ * generated for them when {@code pljava.invoker_classes} is on.
+ *<p>
+ * Each trivial function is declared twice, once with a name ending in
+ * {@code Gen}. {@link #invokerBenchmark invokerBenchmark} calls the plain ones
+ * first with the setting off, then turns it on (locally to the transaction)
+ * before first calling the {@code Gen} ones, so that only they get generated
+ * invoker classes. That works only in a session where none of these functions
+ * has yet been called.
+ *<p>
+ * {@link #polymorphicBenchmark polymorphicBenchmark} compares a function with
+ * {@code anyelement} parameter and result to the same function declared for
+ * {@code text}, to show the cost of resolving the actual types, which should
+ * be paid once per call site rather than once per row.
+ */
+public class InvokerBenchmark
+{
+	@Function(schema="javatest", effects=IMMUTABLE)
+	public static int invokeInt(int i)
+	{
+		return i;
+	}
+
+	@Function(schema="javatest", effects=IMMUTABLE)
+	public static int invokeIntGen(int i)
+	{
+		return i;
+	}
+
+	@Function(schema="javatest", effects=IMMUTABLE)
+	public static double invokeDouble(double d)
+	{
+		return d;
+	}
+
+	@Function(schema="javatest", effects=IMMUTABLE)
+	public static double invokeDoubleGen(double d)
+	{
+		return d;
+	}
+
+	@Function(schema="javatest", effects=IMMUTABLE)
+	public static String invokeString(String s)
+	{
+		return s;
+	}
+
+	@Function(schema="javatest", effects=IMMUTABLE)
+	public static String invokeStringGen(String s)
+	{
+		return s;
+	}
+
+	@Function(schema="javatest", type="pg_catalog.anyelement",
+		effects=IMMUTABLE)
+	public static Object invokeAnyElement(
+		@SQLType("pg_catalog.anyelement") Object o)
+	{
+		return o;
+	}
+
+	/**
+	 * Time {@code calls} calls of a polymorphic identity function and of a
+	 * monomorphic one on the same {@code text} values, returning a line
+	 * reporting nanoseconds per call for each.
+	 */
+	@Function(schema="javatest")
+	public static String polymorphicBenchmark(int calls) throws SQLException
+	{
+		Connection c = DriverManager.getConnection("jdbc:default:connection");
+		long mono = time(c, "javatest.invokeString(i::text)", calls);
+		long poly = time(c, "javatest.invokeAnyElement(i::text)", calls);
+		return String.format(
+			"text: monomorphic %d ns/call, anyelement %d ns/call%n",
+			mono / calls, poly / calls);
+	}
+
+	/**
+	 * Time {@code calls} calls of each function, with and without a generated
+	 * invoker class, returning a line per signature reporting nanoseconds per
+	 * call for each.
+	 */
+	@Function(schema="javatest")
+	public static String invokerBenchmark(int calls) throws SQLException
+	{
+		Connection c = DriverManager.getConnection("jdbc:default:connection");
+		StringBuilder sb = new StringBuilder();
+		String[][] pairs =
+		{
+			{ "int", "javatest.invokeInt(i)" },
+			{ "double", "javatest.invokeDouble(i::float8)" },
+			{ "String", "javatest.invokeString('x')" }
+		};
+
+		long[] plain = new long [ pairs.length ];
+		for ( int i = 0; i < pairs.length; ++ i )
+			plain[i] = time(c, pairs[i][1], calls);
+
+		try ( Statement s = c.createStatement() )
+		{
+			s.execute(
+				"SELECT set_config('pljava.invoker_classes', 'on', true)");
+		}
+
+		for ( int i = 0; i < pairs.length; ++ i )
+		{
+			long generated =
+				time(c, pairs[i][1].replace("(", "Gen("), calls);
+			sb.append(String.format(
+				"%s: shared entry %d ns/call, generated class %d ns/call%n",
+				pairs[i][0], plain[i] / calls, generated / calls));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Return the nanoseconds taken by a query calling {@code expr} for each of
+	 * {@code calls} rows, after one warm-up run.
+	 */
+	private static long time(Connection c, String expr, int calls)
+	throws SQLException
+	{
+		try ( PreparedStatement ps = c.prepareStatement(
+			"SELECT count(" + expr + ") FROM generate_series(1, ?) AS i") )
+		{
+			ps.setInt(1, calls);
+			long start = 0;
+			for ( int run = 0; run < 2; ++ run )
+			{
+				start = System.nanoTime();
+				try ( ResultSet rs = ps.executeQuery() )
+				{
+					rs.next();
+				}
+			}
+			return System.nanoTime() - start;
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.example.annotation;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLData;
+import java.sql.SQLException;
+import java.sql.SQLInput;
+import java.sql.SQLOutput;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import org.postgresql.pljava.annotation.Aggregate;
+import org.postgresql.pljava.annotation.Function;
+import static org.postgresql.pljava.annotation.Function.Parallel.SAFE;
+import org.postgresql.pljava.annotation.SQLAction;
+import org.postgresql.pljava.annotation.SQLActions;
+
+/**
+ * The median of a set of float8 values, as an example aggregate whose
+ * transition state is a live Java object.
+ *<p>
+ * The inputs are collected into a growing {@code double} array, kept from row
+ * to row without being converted to an SQL value; a state that would be costly
+ * to serialize on every row. Because the class names a {@code combine} method
+ * and implements {@code SQLData}, partial states can also be computed in
+ * parallel workers, serialized once each, and combined.
+ *<p>
+ * The first check runs the aggregate over a few rows. The second computes the
+ * median of a table with settings that favour a parallel plan, and reports
+ * whether the plan had a {@code Partial Aggregate}, which is what makes the
+ * combine, serialize, and deserialize functions run; where the server offers
+ * no parallel plan, it says so rather than reporting success. Combining
+ * partial aggregates needs PostgreSQL 9.6 or later, and the plan check 10 or
+ * later, where queries run through SPI may be parallel.
+ */
+@SQLActions({
+@SQLAction(implementor="postgresql_ge_90600", requires="javaMedian", install=
+"SELECT " +
+" CASE WHEN javatest.median(x) = 3 AND javatest.median(x) FILTER (WHERE x < 5) " +
+"  = 2.5 AND javatest.median(x) FILTER (WHERE x > 9) IS NULL " +
+" THEN javatest.logmessage('INFO', 'Median ok') " +
+" ELSE javatest.logmessage('WARNING', 'Median not ok') " +
+" END " +
+"FROM (VALUES (1::float8), (2), (3), (4), (5)) AS t(x)"
+),
+@SQLAction(implementor="postgresql_ge_100000", provides="medianinput",
+	install=
+"CREATE TABLE javatest.medianinput AS " +
+"SELECT x::float8 FROM generate_series(1, 100000) AS t(x)",
+	remove=
+"DROP TABLE javatest.medianinput"
+),
+@SQLAction(implementor="postgresql_ge_100000", requires="medianParallel",
+	install=
+"SELECT " +
+" CASE javatest.medianParallel() " +
+"  WHEN '50000.5' THEN javatest.logmessage('INFO', 'Median parallel ok') " +
+"  WHEN 'not planned' THEN javatest.logmessage('INFO', " +
+"   'Median parallel not planned here; combine not exercised') " +
+"  ELSE javatest.logmessage('WARNING', 'Median parallel not ok') " +
+" END"
+)
+})
+@Aggregate(schema="javatest", provides="javaMedian", combine="combine",
+	parallel=SAFE, implementor="postgresql_ge_90600")
+public class Median implements SQLData
+{
+	private double[] values = new double[16];
+	private int count;
+
+	public static Median accumulate(Median state, double x)
+	{
+		if ( null == state )
+			state = new Median();
+		state.ensureRoom(1);
+		state.values[state.count++] = x;
+		return state;
+	}
+
+	public static Median combine(Median a, Median b)
+	{
+		if ( null == a )
+			return b;
+		if ( null == b )
+			return a;
+		a.ensureRoom(b.count);
+		System.arraycopy(b.values, 0, a.values, a.count, b.count);
+		a.count += b.count;
+		return a;
+	}
+
+	public static Double finish(Median state)
+	{
+		if ( null == state )
+			return null;
+		double[] v = state.values;
+		int n = state.count;
+		Arrays.sort(v, 0, n);
+		if ( 1 == n % 2 )
+			return v[n / 2];
+		return (v[n / 2 - 1] + v[n / 2]) / 2;
+	}
+
+	/**
+	 * The median of {@code javatest.medianinput}, as text, computed with
+	 * settings (local to the transaction) that favour a parallel plan; or
+	 * {@code not planned} if the plan has no {@code Partial Aggregate}, so the
+	 * combine, serialize, and deserialize functions would not be used.
+	 */
+	@Function(schema="javatest", implementor="postgresql_ge_100000",
+		requires={"javaMedian", "medianinput"}, provides="medianParallel")
+	public static String medianParallel() throws SQLException
+	{
+		String query = "SELECT javatest.median(x) FROM javatest.medianinput";
+		String[][] settings =
+		{
+			{ "parallel_setup_cost", "0" },
+			{ "parallel_tuple_cost", "0" },
+			{ "min_parallel_table_scan_size", "0" },
+			{ "max_parallel_workers_per_gather", "2" },
+			{ "force_parallel_mode", "on" },
+			{ "debug_parallel_query", "on" }
+		};
+
+		Connection c = DriverManager.getConnection("jdbc:default:connection");
+		try (
+			PreparedStatement set = c.prepareStatement(
+				"SELECT set_config(name, ?, true) FROM pg_settings" +
+				" WHERE name = ?");
+			Statement s = c.createStatement()
+		)
+		{
+			for ( String[] setting : settings )
+			{
+				set.setString(1, setting[1]);
+				set.setString(2, setting[0]);
+				set.executeQuery().close();
+			}
+
+			boolean partial = false;
+			try ( ResultSet rs = s.executeQuery("EXPLAIN " + query) )
+			{
+				while ( rs.next() )
+					if ( rs.getString(1).contains("Partial Aggregate") )
+						partial = true;
+			}
+			if ( ! partial )
+				return "not planned";
+
+			try ( ResultSet rs = s.executeQuery(query) )
+			{
+				rs.next();
+				return String.valueOf(rs.getDouble(1));
+			}
+		}
+	}
+
+	private void ensureRoom(int more)
+	{
+		if ( count + more > values.length )
+			values = Arrays.copyOf(values,
+				Math.max(count + more, 2 * values.length));
+	}
+
+	@Override
+	public String getSQLTypeName()
+	{
+		return "javatest.median";
+	}
+
+	@Override
+	public void readSQL(SQLInput stream, String typeName) throws SQLException
+	{
+		count = stream.readInt();
+		values = new double[Math.max(count, 16)];
+		for ( int i = 0; i < count; ++ i )
+			values[i] = stream.readDouble();
+	}
+
+	@Override
+	public void writeSQL(SQLOutput stream) throws SQLException
+	{
+		stream.writeInt(count);
+		for ( int i = 0; i < count; ++ i )
+			stream.writeDouble(values[i]);
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.example.annotation;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.postgresql.pljava.SupportRequest;
+import org.postgresql.pljava.annotation.Function;
+import org.postgresql.pljava.annotation.SQLAction;
+
+/**
+ * Example of a planner support function written in Java.
+ *<p>
+ * {@link #repeatText repeatText} returns a set of {@code n} copies of a string,
+ * and its support function tells the planner so, when {@code n} is known at
+ * planning time, where a fixed {@code ROWS} declaration could only guess.
+ * Needs PostgreSQL 12 or later, and superuser privilege to deploy.
+ *<p>
+ * The check compares the planner's row estimate for a call with a constant
+ * count to that count; without the support function, the estimate would be
+ * the default {@code ROWS} of 1000.
+ */
+@SQLAction(implementor="postgresql_ge_120000",
+	requires={"repeatText", "planRows"}, install={
+"SELECT " +
+" CASE WHEN count(*) = 7" +
+"  AND javatest.planRows('SELECT * FROM javatest.repeatText(''x'', 7)') = 7" +
+" THEN javatest.logmessage('INFO', 'PlannerSupport ok') " +
+" ELSE javatest.logmessage('WARNING', 'PlannerSupport not ok') " +
+" END " +
+"FROM javatest.repeatText('x', 7)"
+})
+public class PlannerSupport
+{
+	/**
+	 * Return a set of n copies of a string.
+	 */
+	@Function(schema="javatest", provides="repeatText",
+		implementor="postgresql_ge_120000", support="repeatTextSupport")
+	public static Iterator<String> repeatText(String s, int n)
+	{
+		return Collections.nCopies(Math.max(n, 0), s).iterator();
+	}
+
+	/**
+	 * Return the planner's row estimate for the top node of a query's plan.
+	 */
+	@Function(schema="javatest", provides="planRows",
+		implementor="postgresql_ge_120000")
+	public static double planRows(String query) throws SQLException
+	{
+		Connection c = DriverManager.getConnection("jdbc:default:connection");
+		try (
+			Statement s = c.createStatement();
+			ResultSet rs = s.executeQuery("EXPLAIN (FORMAT JSON) " + query)
+		)
+		{
+			rs.next();
+			Matcher m = s_planRows.matcher(rs.getString(1));
+			if ( ! m.find() )
+				throw new SQLException(
+					"No \"Plan Rows\" in plan of: " + query, "XX000");
+			return Double.parseDouble(m.group(1));
+		}
+	}
+
+	private static final Pattern s_planRows =
+		Pattern.compile("\"Plan Rows\":\\s*+([0-9.eE+-]++)");
+
+	/**
+	 * Estimate rows and cost for repeatText from its count argument.
+	 */
+	public static boolean repeatTextSupport(SupportRequest req)
+	throws SQLException
+	{
+		Object n;
+
+		switch ( req.getKind() )
+		{
+		case ROWS:
+			if ( 2 > req.getArgCount() || ! req.isConstant(1) )
+				return false;
+			n = req.getConstant(1);
+			req.setRows(null == n ? 0 : Math.max((Integer)n, 0));
+			return true;
+		case COST:
+			req.setCost(1, 1);
+			return true;
+		default:
+			return false;
+		}
+	}
+}
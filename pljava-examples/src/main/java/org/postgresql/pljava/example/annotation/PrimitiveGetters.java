@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.example.annotation;
+
+import java.sql.Connection;
+import static java.sql.DriverManager.getConnection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.logging.Logger;
+
+import org.postgresql.pljava.annotation.Function;
+import org.postgresql.pljava.annotation.SQLAction;
+
+/**
+ * Example checking the numeric getters of a query result set, which read
+ * {@code int2}, {@code int4}, {@code int8}, {@code float4}, and {@code float8}
+ * columns without boxing.
+ *<p>
+ * Each getter is checked against the narrowing of the boxed value from
+ * {@code getObject}, which it must match, and against NULL, for which it
+ * must return zero and set {@code wasNull}.
+ */
+@SQLAction(requires="primitiveGetters", install=
+"SELECT " +
+" CASE WHEN javatest.primitiveGetters() " +
+" THEN javatest.logmessage('INFO', 'PrimitiveGetters ok') " +
+" ELSE javatest.logmessage('WARNING', 'PrimitiveGetters not ok') " +
+" END"
+)
+public class PrimitiveGetters
+{
+	/**
+	 * Read one row of values, some needing narrowing for some getters, and
+	 * two nulls, and return true if every getter gives what is expected.
+	 */
+	@Function(schema="javatest", provides="primitiveGetters")
+	public static boolean primitiveGetters() throws SQLException
+	{
+		Connection c = getConnection("jdbc:default:connection");
+		try (
+			Statement s = c.createStatement();
+			ResultSet rs = s.executeQuery(
+				"SELECT CAST(300 AS int2), CAST(70000 AS int4)," +
+				" CAST(3000000000 AS int8), CAST(1.5 AS float4)," +
+				" CAST(-2.7 AS float8), CAST(NULL AS int4)," +
+				" CAST(NULL AS float8)")
+		)
+		{
+			rs.next();
+			boolean ok = true;
+
+			for ( int col = 1; col <= 5; ++ col )
+			{
+				Number n = (Number)rs.getObject(col);
+				ok &= check(col, "getByte", n.byteValue(), rs.getByte(col));
+				ok &= check(col, "getShort", n.shortValue(), rs.getShort(col));
+				ok &= check(col, "getInt", n.intValue(), rs.getInt(col));
+				ok &= check(col, "getLong", n.longValue(), rs.getLong(col));
+				ok &= check(col, "getFloat", n.floatValue(), rs.getFloat(col));
+				ok &= check(col, "getDouble",
+					n.doubleValue(), rs.getDouble(col));
+				ok &= check(col, "wasNull", false, rs.wasNull());
+			}
+
+			ok &= check(2, "getShort", (short)4464, rs.getShort(2));
+			ok &= check(3, "getInt", -1294967296, rs.getInt(3));
+			ok &= check(4, "getInt", 1, rs.getInt(4));
+			ok &= check(5, "getLong", -2L, rs.getLong(5));
+
+			ok &= check(6, "getInt", 0, rs.getInt(6));
+			ok &= check(6, "wasNull", true, rs.wasNull());
+			ok &= check(1, "getShort", (short)300, rs.getShort(1));
+			ok &= check(1, "wasNull", false, rs.wasNull());
+			ok &= check(7, "getDouble", 0.0, rs.getDouble(7));
+			ok &= check(7, "wasNull", true, rs.wasNull());
+			ok &= check(6, "getLong", 0L, rs.getLong(6));
+			ok &= check(6, "wasNull", true, rs.wasNull());
+
+			return ok;
+		}
+	}
+
+	private static boolean check(
+		int col, String getter, Object expected, Object actual)
+	{
+		if ( expected.equals(actual) )
+			return true;
+		Logger.getAnonymousLogger().warning(
+			"column " + col + " " + getter + ": " + actual +
+			", expected " + expected);
+		return false;
+	}
+}
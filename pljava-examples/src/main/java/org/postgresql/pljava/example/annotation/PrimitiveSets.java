@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.example.annotation;
+
+import java.sql.Connection;
+import static java.sql.DriverManager.getConnection;
+import java.sql.ResultSet;
+import java.sql.Savepoint;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.PrimitiveIterator;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import org.postgresql.pljava.annotation.Function;
+import org.postgresql.pljava.annotation.SQLAction;
+
+/**
+ * Examples of set-returning functions declared to return primitive streams
+ * or primitive iterators, whose values are delivered without boxing.
+ */
+@SQLAction(requires={"intRange", "longRange", "intRangeIterator", "halves",
+	"longsAsInts", "narrowingRefused"},
+install={
+" SELECT " +
+"  CASE WHEN (SELECT sum(i) FROM javatest.intRange(1, 101) AS i) = 5050 " +
+"   AND (SELECT sum(l) FROM javatest.longRange(1, 101) AS l) = 5050 " +
+"   AND (SELECT count(*) FROM javatest.intRangeIterator(0, 10)) = 10 " +
+"   AND (SELECT sum(d) FROM javatest.halves(4) AS d) = 0.9375 " +
+"   AND (SELECT i FROM javatest.intRange(7, 1000000) AS i LIMIT 1) = 7 " +
+"   AND (SELECT sum(i) FROM javatest.longsAsInts(1, 101) AS i) = 5050 " +
+"   AND javatest.narrowingRefused() " +
+"  THEN javatest.logmessage('INFO', 'PrimitiveSets ok') " +
+"  ELSE javatest.logmessage('WARNING', 'PrimitiveSets not ok') " +
+"  END"
+})
+public class PrimitiveSets
+{
+	/**
+	 * Return the integers from {@code lo} (inclusive) to {@code hi}
+	 * (exclusive) as an {@code IntStream}.
+	 */
+	@Function(schema="javatest", provides="intRange")
+	public static IntStream intRange(int lo, int hi)
+	{
+		return IntStream.range(lo, hi);
+	}
+
+	/**
+	 * Return the integers from {@code lo} (inclusive) to {@code hi}
+	 * (exclusive) as a {@code LongStream}.
+	 */
+	@Function(schema="javatest", provides="longRange")
+	public static LongStream longRange(long lo, long hi)
+	{
+		return LongStream.range(lo, hi);
+	}
+
+	/**
+	 * Return the integers from {@code lo} (inclusive) to {@code hi}
+	 * (exclusive) as a {@code PrimitiveIterator.OfInt}.
+	 */
+	@Function(schema="javatest", provides="intRangeIterator")
+	public static PrimitiveIterator.OfInt intRangeIterator(int lo, int hi)
+	{
+		return IntStream.range(lo, hi).iterator();
+	}
+
+	/**
+	 * Return {@code count} successive halvings of one, starting at one half.
+	 */
+	@Function(schema="javatest", provides="halves")
+	public static DoubleStream halves(int count)
+	{
+		return DoubleStream.iterate(0.5, d -> d / 2).limit(count);
+	}
+
+	/**
+	 * Return the integers from {@code lo} (inclusive) to {@code hi}
+	 * (exclusive) as a {@code LongStream}, for a result declared
+	 * {@code SETOF integer}; each value is range checked on the way.
+	 */
+	@Function(schema="javatest", type="integer", provides="longsAsInts")
+	public static LongStream longsAsInts(long lo, long hi)
+	{
+		return LongStream.range(lo, hi);
+	}
+
+	/**
+	 * Confirm that a {@code long} too big for an {@code integer} result fails
+	 * with SQLSTATE 22003 (numeric value out of range) instead of being
+	 * truncated.
+	 */
+	@Function(schema="javatest", provides="narrowingRefused",
+		requires="longsAsInts")
+	public static boolean narrowingRefused() throws SQLException
+	{
+		Connection c = getConnection("jdbc:default:connection");
+		Savepoint sp = c.setSavepoint();
+		try (
+			Statement s = c.createStatement();
+			ResultSet rs = s.executeQuery(
+				"SELECT count(*) FROM javatest.longsAsInts(" +
+				"2147483647, 2147483649)")
+		)
+		{
+			rs.next();
+			c.releaseSavepoint(sp);
+			return false;
+		}
+		catch ( SQLException e )
+		{
+			c.rollback(sp);
+			return "22003".equals(e.getSQLState());
+		}
+	}
+}
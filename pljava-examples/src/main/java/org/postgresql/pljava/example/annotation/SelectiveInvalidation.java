@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.example.annotation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.sql.Connection;
+import static java.sql.DriverManager.getConnection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.postgresql.pljava.annotation.Function;
+import org.postgresql.pljava.annotation.SQLAction;
+
+/**
+ * Check that installing, replacing, and removing a jar that is on no schema's
+ * class path leaves the functions already loaded from other jars alone.
+ *<p>
+ * {@link #loaderIdentity loaderIdentity} reports the identity of its own
+ * class, which would change if the schema's class loader, and with it the
+ * cached function, were thrown away and the class loaded again.
+ */
+@SQLAction(requires={"loaderIdentity", "unrelatedJarChanges"}, install=
+"SELECT " +
+" CASE WHEN javatest.unrelatedJarChanges() " +
+" THEN javatest.logmessage('INFO', 'SelectiveInvalidation ok') " +
+" ELSE javatest.logmessage('WARNING', 'SelectiveInvalidation not ok') " +
+" END"
+)
+public class SelectiveInvalidation
+{
+	private static final String JAR_NAME = "selective_invalidation_test";
+
+	/**
+	 * Return the identity hash of this class, as loaded in this session.
+	 */
+	@Function(schema="javatest", provides="loaderIdentity")
+	public static int loaderIdentity()
+	{
+		return System.identityHashCode(SelectiveInvalidation.class);
+	}
+
+	/**
+	 * Install, replace, and remove a small unrelated jar, and return true if
+	 * {@link #loaderIdentity loaderIdentity} reports the same class before
+	 * and after.
+	 */
+	@Function(schema="javatest", provides="unrelatedJarChanges")
+	public static boolean unrelatedJarChanges() throws SQLException
+	{
+		Connection c = getConnection("jdbc:default:connection");
+		byte[] jar = tinyJar();
+
+		int before = identity(c);
+
+		try ( PreparedStatement ps =
+			c.prepareStatement("SELECT sqlj.install_jar(?, ?, false)") )
+		{
+			ps.setBytes(1, jar);
+			ps.setString(2, JAR_NAME);
+			ps.execute();
+		}
+		try ( PreparedStatement ps =
+			c.prepareStatement("SELECT sqlj.replace_jar(?, ?, false)") )
+		{
+			ps.setBytes(1, jar);
+			ps.setString(2, JAR_NAME);
+			ps.execute();
+		}
+		try ( PreparedStatement ps =
+			c.prepareStatement("SELECT sqlj.remove_jar(?, false)") )
+		{
+			ps.setString(1, JAR_NAME);
+			ps.execute();
+		}
+
+		return before == identity(c);
+	}
+
+	private static int identity(Connection c) throws SQLException
+	{
+		try ( PreparedStatement ps =
+				c.prepareStatement("SELECT javatest.loaderIdentity()");
+			ResultSet rs = ps.executeQuery() )
+		{
+			rs.next();
+			return rs.getInt(1);
+		}
+	}
+
+	/**
+	 * A jar holding nothing but a manifest and one small resource.
+	 */
+	private static byte[] tinyJar() throws SQLException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Manifest m = new Manifest();
+		m.getMainAttributes().putValue("Manifest-Version", "1.0");
+		try ( JarOutputStream jos = new JarOutputStream(bytes, m) )
+		{
+			jos.putNextEntry(new JarEntry("selective/invalidation.txt"));
+			jos.write("unrelated\n".getBytes("US-ASCII"));
+			jos.closeEntry();
+		}
+		catch ( IOException e )
+		{
+			throw new SQLException("building test jar: " + e, "58030", e);
+		}
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.example.annotation;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.postgresql.pljava.annotation.Function;
+import org.postgresql.pljava.annotation.SQLAction;
+
+/**
+ * Examples of set-returning functions declared to return a {@code Stream},
+ * from which rows are pulled lazily.
+ *<p>
+ * {@link #naturals naturals} returns an infinite stream, which is usable
+ * because PL/Java stops pulling from it when a {@code LIMIT} is satisfied,
+ * and closes it. That requires calling it in a {@code SELECT} list, as
+ * PostgreSQL reads every row of a function called in {@code FROM}.
+ */
+@SQLAction(requires={"naturals", "squares", "closedCount"}, install={
+" SELECT " +
+"  CASE WHEN (SELECT array_agg(n) FROM " +
+"              (SELECT javatest.naturals() AS n LIMIT 5) AS s) " +
+"             = '{1,2,3,4,5}' " +
+"   AND (SELECT sum(sq) FROM javatest.squares(10) AS (n int, sq bigint)) " +
+"       = 385 " +
+"  THEN javatest.logmessage('INFO', 'StreamSets ok') " +
+"  ELSE javatest.logmessage('WARNING', 'StreamSets not ok') " +
+"  END",
+
+" SELECT " +
+"  CASE WHEN javatest.closedCount() > 0 " +
+"  THEN javatest.logmessage('INFO', 'StreamSets closed on LIMIT ok') " +
+"  ELSE javatest.logmessage('WARNING', 'StreamSets not closed on LIMIT') " +
+"  END"
+})
+public class StreamSets
+{
+	private static int s_closedCount;
+
+	/**
+	 * Return the natural numbers, without end, as strings.
+	 */
+	@Function(schema="javatest", provides="naturals")
+	public static Stream<String> naturals()
+	{
+		AtomicBoolean closed = new AtomicBoolean();
+		return Stream.iterate(1L, n -> n + 1)
+			.map(String::valueOf)
+			.onClose(() ->
+			{
+				if ( ! closed.getAndSet(true) )
+					++ s_closedCount;
+			});
+	}
+
+	/**
+	 * Return rows of the integers 1 through {@code count} and their squares.
+	 */
+	@Function(schema="javatest", provides="squares")
+	public static Stream<Object[]> squares(int count)
+	{
+		return Stream.iterate(1, n -> n + 1).limit(count)
+			.map(n -> new Object[] { n, (long)n * n });
+	}
+
+	/**
+	 * Return the number of streams returned by {@link #naturals naturals} that
+	 * have been closed.
+	 */
+	@Function(schema="javatest", provides="closedCount")
+	public static int closedCount()
+	{
+		return s_closedCount;
+	}
+}
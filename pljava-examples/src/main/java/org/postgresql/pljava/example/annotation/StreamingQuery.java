@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.example.annotation;
+
+import java.sql.Connection;
+import static java.sql.DriverManager.getConnection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.postgresql.pljava.StreamingStatement;
+import org.postgresql.pljava.annotation.Function;
+import org.postgresql.pljava.annotation.SQLAction;
+
+/**
+ * Example of reading a query's rows as they are pushed to a
+ * {@link org.postgresql.pljava.RowConsumer RowConsumer}, through
+ * {@link StreamingStatement}.
+ *<p>
+ * {@link #streamedTotals streamedTotals} runs a prepared query over 10,000
+ * rows, in batches smaller than that, and checks the totals it computes from
+ * an integer, a nullable float, and a text column, and then that the
+ * statement's maximum rows limit the rows pushed.
+ */
+@SQLAction(requires="streamedTotals", install=
+"SELECT " +
+" CASE WHEN javatest.streamedTotals() " +
+" THEN javatest.logmessage('INFO', 'StreamingQuery ok') " +
+" ELSE javatest.logmessage('WARNING', 'StreamingQuery not ok') " +
+" END"
+)
+public class StreamingQuery
+{
+	/**
+	 * Push the rows of a query to a consumer and return true if the totals
+	 * and row counts are as expected.
+	 */
+	@Function(schema="javatest", provides="streamedTotals")
+	public static boolean streamedTotals() throws SQLException
+	{
+		Connection c = getConnection("jdbc:default:connection");
+		try ( PreparedStatement ps = c.prepareStatement(
+			"SELECT i," +
+			" CASE WHEN i % 4 = 0 THEN NULL ELSE i * 0.25::float8 END," +
+			" i::text FROM generate_series(1, ?) AS i") )
+		{
+			StreamingStatement ss = ps.unwrap(StreamingStatement.class);
+			long[] ints = new long[1];
+			double[] quarters = new double[1];
+			long[] nullsAndChars = new long[2];
+
+			ps.setFetchSize(300);
+			ps.setInt(1, 10000);
+			long rows = ss.forEachRow(row ->
+			{
+				ints[0] += row.getInt(1);
+				quarters[0] += row.getDouble(2);
+				if ( row.wasNull() )
+					++ nullsAndChars[0];
+				nullsAndChars[1] += row.getString(3).length();
+			});
+
+			ps.setMaxRows(42);
+			ps.setInt(1, 10000);
+			long limited = ss.forEachRow(row -> {});
+
+			/*
+			 * 10,000 rows; the integers sum to 50005000; the quarters are a
+			 * quarter of that sum less the 2500 multiples of four, which sum
+			 * to 12502000; the text of 1..10000 is 9 + 180 + 2700 + 36000 + 5
+			 * characters.
+			 */
+			return 10000 == rows && 50005000 == ints[0]
+				&& (50005000 - 12502000) * 0.25 == quarters[0]
+				&& 2500 == nullsAndChars[0] && 38894 == nullsAndChars[1]
+				&& 42 == limited;
+		}
+	}
+}
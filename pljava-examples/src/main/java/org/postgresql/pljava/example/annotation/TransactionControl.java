@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.example.annotation;
+
+import java.sql.Connection;
+import static java.sql.DriverManager.getConnection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+
+import org.postgresql.pljava.annotation.Function;
+import org.postgresql.pljava.annotation.SQLAction;
+
+/**
+ * Example of a procedure that commits its work in chunks, as a long-running
+ * loader might, so a late failure does not roll back everything, and the
+ * dead tuples and WAL of one huge transaction do not pile up.
+ *<p>
+ * Transaction control is only permitted in a procedure invoked by a
+ * {@code CALL} not itself within a transaction block, which the deployment
+ * descriptor is; so the only thing checked at deployment is that a commit is
+ * refused, with the expected SQLSTATE, from a function. The procedure itself
+ * can be tried with, for example,
+ *<pre>
+ * CALL javatest.chunkedInsert(1000000, 10000);
+ *</pre>
+ * after which {@code javatest.chunked_rows} will have a million rows,
+ * committed in a hundred transactions.
+ *<p>
+ * The transaction control itself is checked by a second procedure, which must
+ * likewise be called outside a transaction block:
+ *<pre>
+ * CALL javatest.transactionControlCheck();
+ *</pre>
+ * It commits and rolls back work through one prepared statement, confirms
+ * that the statement survives each boundary and that only the committed rows
+ * remain, and reports {@code TransactionControl procedure ok} at
+ * {@code INFO}, or a {@code WARNING} otherwise. Needs PostgreSQL 11 or later.
+ */
+@SQLAction(implementor="postgresql_ge_110000", requires="commitRefused",
+	provides="chunkedInsert",
+	install={
+		"CREATE TABLE javatest.chunked_rows (n integer)",
+
+		"CREATE PROCEDURE javatest.chunkedInsert(total integer, chunk integer)" +
+		" LANGUAGE java" +
+		" AS 'org.postgresql.pljava.example.annotation.TransactionControl" +
+		".chunkedInsert(int,int)'",
+
+		"CREATE PROCEDURE javatest.transactionControlCheck()" +
+		" LANGUAGE java" +
+		" AS 'org.postgresql.pljava.example.annotation.TransactionControl" +
+		".transactionControlCheck()'",
+
+		"SELECT" +
+		" CASE WHEN javatest.commitRefused()" +
+		" THEN javatest.logmessage('INFO', 'TransactionControl ok')" +
+		" ELSE javatest.logmessage('WARNING', 'TransactionControl not ok')" +
+		" END"
+	},
+	remove={
+		"DROP PROCEDURE javatest.transactionControlCheck()",
+		"DROP PROCEDURE javatest.chunkedInsert(integer,integer)",
+		"DROP TABLE javatest.chunked_rows"
+	}
+)
+public class TransactionControl
+{
+	/**
+	 * Insert the integers from 1 to {@code total} into
+	 * {@code javatest.chunked_rows}, committing after every {@code chunk}.
+	 */
+	public static void chunkedInsert(int total, int chunk) throws SQLException
+	{
+		Connection c = getConnection("jdbc:default:connection");
+
+		try ( PreparedStatement ps = c.prepareStatement(
+			"INSERT INTO javatest.chunked_rows (n) VALUES (?)") )
+		{
+			for ( int n = 1; n <= total; ++ n )
+			{
+				ps.setInt(1, n);
+				ps.executeUpdate();
+				if ( 0 == n % chunk )
+					c.commit();
+			}
+		}
+		c.commit();
+	}
+
+	/**
+	 * Commit and roll back rows inserted through one prepared statement, and
+	 * report whether the statement stayed usable across each boundary and
+	 * only the committed rows remain. Leaves {@code javatest.chunked_rows}
+	 * empty.
+	 */
+	public static void transactionControlCheck() throws SQLException
+	{
+		Connection c = getConnection("jdbc:default:connection");
+		boolean ok;
+
+		try (
+			Statement s = c.createStatement();
+			PreparedStatement ps = c.prepareStatement(
+				"INSERT INTO javatest.chunked_rows (n) VALUES (?)")
+		)
+		{
+			s.executeUpdate("DELETE FROM javatest.chunked_rows");
+			c.commit();
+
+			for ( int n = 1; n <= 3; ++ n )
+			{
+				ps.setInt(1, n);
+				ps.executeUpdate();
+			}
+			c.commit();
+
+			ps.setInt(1, 4);
+			ps.executeUpdate();
+			c.rollback();
+
+			ps.setInt(1, 5);
+			ps.executeUpdate();
+			c.commit();
+
+			try ( ResultSet rs = s.executeQuery(
+				"SELECT count(*), sum(n) FROM javatest.chunked_rows") )
+			{
+				rs.next();
+				ok = 4 == rs.getInt(1)  &&  11 == rs.getInt(2);
+			}
+
+			s.executeUpdate("DELETE FROM javatest.chunked_rows");
+			c.commit();
+
+			s.executeQuery(ok
+				? "SELECT javatest.logmessage('INFO'," +
+					" 'TransactionControl procedure ok')"
+				: "SELECT javatest.logmessage('WARNING'," +
+					" 'TransactionControl procedure not ok')").close();
+		}
+	}
+
+	/**
+	 * Confirm that a commit from a function, where transaction control is
+	 * not permitted, fails with SQLSTATE 2D000 (invalid transaction
+	 * termination), and leaves the transaction usable.
+	 */
+	@Function(schema="javatest", provides="commitRefused",
+		implementor="postgresql_ge_110000")
+	public static boolean commitRefused() throws SQLException
+	{
+		Connection c = getConnection("jdbc:default:connection");
+		Savepoint sp = c.setSavepoint();
+		try
+		{
+			c.commit();
+			return false;
+		}
+		catch ( SQLException e )
+		{
+			c.rollback(sp);
+			return "2D000".equals(e.getSQLState());
+		}
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.example.annotation;
+
+import java.sql.Connection;
+import static java.sql.DriverManager.getConnection;
+import java.sql.ResultSet;
+import java.sql.Savepoint;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.postgresql.pljava.WindowObject;
+import static org.postgresql.pljava.WindowObject.Seek.CURRENT;
+import static org.postgresql.pljava.WindowObject.Seek.HEAD;
+import org.postgresql.pljava.annotation.Function;
+import org.postgresql.pljava.annotation.SQLAction;
+
+/**
+ * Example window functions using {@link WindowObject WindowObject} to look at
+ * other rows of the partition or frame, without querying for them.
+ *<p>
+ * {@link #frameAvg frameAvg} averages its argument over the window frame,
+ * and {@link #sessionNumber sessionNumber} numbers sessions: runs of rows
+ * whose timestamps are within a given gap of the row before, keeping the
+ * count in the partition state. {@link #previousInt previousInt} fetches a
+ * {@code bigint} argument with {@code getInt}, which must refuse a value that
+ * an {@code int} cannot hold.
+ */
+@SQLAction(requires={"frameAvg", "sessionNumber", "previousIntRefused"},
+install={
+"SELECT " +
+" CASE WHEN array_agg(a ORDER BY x) = ARRAY[1.5, 2, 3, 4, 4.5]::float8[] " +
+" THEN javatest.logmessage('INFO', 'WindowFunctions frameAvg ok') " +
+" ELSE javatest.logmessage('WARNING', 'WindowFunctions frameAvg not ok') " +
+" END " +
+"FROM (" +
+" SELECT x, javatest.frameAvg(x) OVER (" +
+"  ORDER BY x ROWS BETWEEN 1 PRECEDING AND 1 FOLLOWING) " +
+" FROM (VALUES (1::float8), (2), (3), (4), (5)) AS t(x)" +
+") AS s(x, a)",
+
+"SELECT " +
+" CASE WHEN array_agg(s ORDER BY u, ts) = ARRAY[1, 1, 2, 2, 3, 1, 2] " +
+" THEN javatest.logmessage('INFO', 'WindowFunctions sessionNumber ok') " +
+" ELSE javatest.logmessage('WARNING', " +
+"  'WindowFunctions sessionNumber not ok') " +
+" END " +
+"FROM (" +
+" SELECT u, ts, javatest.sessionNumber(ts, 10) OVER (" +
+"  PARTITION BY u ORDER BY ts) " +
+" FROM (VALUES (1, 0::bigint), (1, 5), (1, 30), (1, 35), (1, 100), " +
+"  (2, 0), (2, 50)) AS t(u, ts)" +
+") AS q(u, ts, s)",
+
+"SELECT " +
+" CASE WHEN array_agg(p ORDER BY x) IS NOT DISTINCT FROM ARRAY[NULL, 1, 2] " +
+"  AND javatest.previousIntRefused() " +
+" THEN javatest.logmessage('INFO', 'WindowFunctions previousInt ok') " +
+" ELSE javatest.logmessage('WARNING', 'WindowFunctions previousInt not ok') " +
+" END " +
+"FROM (" +
+" SELECT x, javatest.previousInt(x) OVER (ORDER BY x) " +
+" FROM (VALUES (1::bigint), (2), (3)) AS t(x)" +
+") AS q(x, p)"
+})
+public class WindowFunctions
+{
+	/**
+	 * Average of the argument over the rows of the window frame.
+	 */
+	@Function(schema="javatest", window=true, provides="frameAvg")
+	public static Double frameAvg(WindowObject w, Double x)
+	throws SQLException
+	{
+		double sum = 0;
+		long n = 0;
+		for ( long i = 0 ; ; ++ i )
+		{
+			w.seekInFrame(i, HEAD, false);
+			double v = w.getDouble(0);
+			if ( w.isOut() )
+				break;
+			if ( w.wasNull() )
+				continue;
+			sum += v;
+			++ n;
+		}
+		return 0 == n ? null : sum / n;
+	}
+
+	/**
+	 * Number of the session the current row belongs to, a new session
+	 * starting whenever {@code ts} is more than {@code gap} past the
+	 * {@code ts} of the row before.
+	 */
+	@Function(schema="javatest", window=true, provides="sessionNumber")
+	public static int sessionNumber(WindowObject w, long ts, long gap)
+	throws SQLException
+	{
+		int[] session = (int[])w.getPartitionState();
+		if ( null == session )
+		{
+			session = new int[] { 1 };
+			w.setPartitionState(session);
+			return session[0];
+		}
+		w.seekInPartition(-1, CURRENT, true);
+		long prev = w.getLong(0);
+		if ( ! w.isOut()  &&  ts - prev > gap )
+			++ session[0];
+		return session[0];
+	}
+
+	/**
+	 * The argument's value in the row before, fetched with {@code getInt}
+	 * though declared {@code bigint}, or null in the first row.
+	 */
+	@Function(schema="javatest", window=true, provides="previousInt")
+	public static Integer previousInt(WindowObject w, long x)
+	throws SQLException
+	{
+		w.seekInPartition(-1, CURRENT, false);
+		int prev = w.getInt(0);
+		return w.isOut() ? null : prev;
+	}
+
+	/**
+	 * Confirm that {@link #previousInt previousInt} over a {@code bigint} too
+	 * big for an {@code int} fails with SQLSTATE 22003 (numeric value out of
+	 * range) instead of returning a truncated value.
+	 */
+	@Function(schema="javatest", provides="previousIntRefused",
+		requires="previousInt")
+	public static boolean previousIntRefused() throws SQLException
+	{
+		Connection c = getConnection("jdbc:default:connection");
+		Savepoint sp = c.setSavepoint();
+		try (
+			Statement s = c.createStatement();
+			ResultSet rs = s.executeQuery(
+				"SELECT javatest.previousInt(x) OVER (ORDER BY x) " +
+				"FROM (VALUES (2147483648::bigint), (2147483649)) AS t(x)")
+		)
+		{
+			while ( rs.next() )
+				;
+			c.releaseSavepoint(sp);
+			return false;
+		}
+		catch ( SQLException e )
+		{
+			c.rollback(sp);
+			return "22003".equals(e.getSQLState());
+		}
+	}
+}
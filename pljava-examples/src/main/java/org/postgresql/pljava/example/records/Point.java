@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.example.records;
+
+/**
+ * A point in the plane, corresponding to the composite type
+ * {@code javatest.recpoint}.
+ */
+public record Point(double x, double y) { }
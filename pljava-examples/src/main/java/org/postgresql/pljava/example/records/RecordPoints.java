@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.example.records;
+
+import java.util.stream.Stream;
+
+import org.postgresql.pljava.annotation.Function;
+import org.postgresql.pljava.annotation.SQLAction;
+import org.postgresql.pljava.annotation.SQLActions;
+import org.postgresql.pljava.annotation.SQLType;
+
+/**
+ * Functions taking and returning a Java record in place of a composite type.
+ *<p>
+ * The components of the record {@link Point Point} correspond by position to
+ * the attributes of the composite type {@code javatest.recpoint}, and to the
+ * attributes of {@code javatest.recpointd} that remain after one between them
+ * is dropped.
+ */
+@SQLActions({
+	@SQLAction(provides="recpoint type", install=
+		"CREATE TYPE javatest.recpoint AS (x float8, y float8)",
+		remove="DROP TYPE javatest.recpoint"
+	),
+	@SQLAction(provides="recpointd type", install={
+		"CREATE TYPE javatest.recpointd AS (x float8, gone int4, y float8)",
+		"ALTER TYPE javatest.recpointd DROP ATTRIBUTE gone"
+		},
+		remove="DROP TYPE javatest.recpointd"
+	),
+	@SQLAction(requires="recPointDScale", install=
+		"SELECT" +
+		" CASE WHEN" +
+		"  javatest.recPointDScale((3,4)::javatest.recpointd, 2)" +
+		"    = (6,8)::javatest.recpointd" +
+		" THEN javatest.logmessage('INFO', 'RecordPoints dropped ok')" +
+		" ELSE javatest.logmessage('WARNING', 'RecordPoints dropped not ok')" +
+		" END"
+	),
+	@SQLAction(requires={"recPointScale", "recPointLine"}, install=
+		"SELECT" +
+		" CASE WHEN" +
+		"  javatest.recPointScale((3,4)::javatest.recpoint, 2)" +
+		"    = (6,8)::javatest.recpoint" +
+		"  AND (SELECT sum(y) FROM javatest.recPointLine(4)) = 6" +
+		" THEN javatest.logmessage('INFO', 'RecordPoints ok')" +
+		" ELSE javatest.logmessage('WARNING', 'RecordPoints not ok')" +
+		" END"
+	)
+})
+public class RecordPoints
+{
+	/**
+	 * Scale a point by a factor.
+	 */
+	@Function(schema="javatest", type="javatest.recpoint",
+		requires="recpoint type", provides="recPointScale")
+	public static Point recPointScale(
+		@SQLType("javatest.recpoint") Point p, double factor)
+	{
+		return new Point(p.x() * factor, p.y() * factor);
+	}
+
+	/**
+	 * Scale a point by a factor, as a composite type with a dropped attribute.
+	 */
+	@Function(schema="javatest", type="javatest.recpointd",
+		requires="recpointd type", provides="recPointDScale")
+	public static Point recPointDScale(
+		@SQLType("javatest.recpointd") Point p, double factor)
+	{
+		return new Point(p.x() * factor, p.y() * factor);
+	}
+
+	/**
+	 * Return {@code count} points on the line {@code y = x}, starting at the
+	 * origin.
+	 */
+	@Function(schema="javatest", type="javatest.recpoint",
+		requires="recpoint type", provides="recPointLine")
+	public static Stream<Point> recPointLine(int count)
+	{
+		return Stream.iterate(0, i -> i + 1).limit(count)
+			.map(i -> new Point(i, i));
+	}
+}
@@ -0,0 +1,8 @@
+/**
+ * Examples using Java records as PostgreSQL composite values.
+ * Only built when the build is run on Java 16 or later, which activates the
+ * {@code record-examples} profile. They are compiled in their own execution,
+ * for Java 16, with their own deployment descriptor, {@code records.ddr}, so
+ * the rest of the examples still build for the older release.
+ */
+package org.postgresql.pljava.example.records;
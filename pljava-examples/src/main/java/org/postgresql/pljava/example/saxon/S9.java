@@ -38,12 +38,15 @@ import static java.time.ZoneOffset.UTC;
 
 import static java.util.Arrays.asList;
 import static java.util.Arrays.fill;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
 
 import java.util.regex.Matcher;
@@ -106,8 +109,11 @@ import net.sf.saxon.value.StringValue;
 import static net.sf.saxon.value.StringValue.getStringLength;
 
 import org.postgresql.pljava.ResultSetProvider;
+import org.postgresql.pljava.Session;
+import org.postgresql.pljava.SessionManager;
 
 import org.postgresql.pljava.annotation.Function;
+import org.postgresql.pljava.annotation.SQLAction;
 import org.postgresql.pljava.annotation.SQLType;
 import static org.postgresql.pljava.annotation.Function.OnNullInput.CALLED;
 
@@ -285,6 +291,31 @@ import org.xml.sax.SAXException;
  * XQuery regular-expression methods provided here.
  * @author Chapman Flack
  */
+@SQLAction(requires={"regex_compilations", "like_regex"}, install={
+"SELECT javatest.regex_compilations()",
+
+"SELECT" +
+" CASE WHEN count(*) = 100 AND javatest.regex_compilations() = 1" +
+" THEN javatest.logmessage('INFO', 'S9 call site state reused ok')" +
+" ELSE javatest.logmessage('WARNING', 'S9 call site state not reused')" +
+" END" +
+" FROM generate_series(1, 100) AS g" +
+" WHERE javatest.like_regex(g::text, '^[0-9]+$', w3cNewlines => true)",
+
+"SELECT javatest.regex_compilations()",
+
+"SELECT" +
+" CASE WHEN" +
+"  count(*) FILTER (WHERE" +
+"   javatest.like_regex(g::text, '1', w3cNewlines => true)) = 20" +
+"  AND count(*) FILTER (WHERE" +
+"   javatest.like_regex(g::text, '0$', w3cNewlines => true)) = 10" +
+"  AND javatest.regex_compilations() = 2" +
+" THEN javatest.logmessage('INFO', 'S9 call sites kept apart ok')" +
+" ELSE javatest.logmessage('WARNING', 'S9 call sites not kept apart')" +
+" END" +
+" FROM generate_series(1, 100) AS g"
+})
 public class S9 implements ResultSetProvider
 {
 	private S9(
@@ -828,6 +859,11 @@ public class S9 implements ResultSetProvider
 	 * and supplying the default <em>D</em> as another query parameter, though
 	 * such defaults will be evaluated only once when {@code xmltable} is called
 	 * and will not be able to refer to other values in an output row.
+	 *<p>
+	 * The compiled expressions are kept as the call site state, and used again
+	 * by later calls from the same place in a query (as for each outer row of
+	 * a lateral join) when the expressions, namespaces, and types of the
+	 * passed values are unchanged.
 	 * @param rows The single XQuery expression whose result sequence generates
 	 * the rows of the resulting table. Must not be null.
 	 * @param columns Array of XQuery expressions, exactly as many as result
@@ -878,56 +914,50 @@ public class S9 implements ResultSetProvider
 
 		Binding.Assemblage rowBindings =
 			new BindingsFromResultSet(passing, true);
+		List<String> passedTypes = passedTypes(rowBindings);
 
-		Iterable<Map.Entry<String,String>> namespacepairs =
-			namespaceBindings(namespaces);
-
-		XQueryEvaluator[] columnXQEs = new XQueryEvaluator[ columns.length ];
-		SequenceType[] columnStaticTypes = new SequenceType[ columns.length ];
+		Session session = SessionManager.current();
+		Object o = session.getCallSiteState();
+		CompiledXMLTable compiled = null;
+		if ( o instanceof CompiledXMLTable )
+		{
+			compiled = (CompiledXMLTable)o;
+			if ( ! compiled.matches(rows, columns, namespaces, passedTypes) )
+				compiled = null;
+		}
 
 		try
 		{
-			XQueryCompiler rowXQC = createStaticContextWithPassedTypes(
-				rowBindings, namespacepairs);
-
-			XQueryExecutable rowXQX = rowXQC.compile(rows);
+			if ( null == compiled )
+			{
+				compiled = compileXMLTable(
+					rows, columns, namespaces, rowBindings, passedTypes);
+				session.setCallSiteState(compiled);
+			}
 
 			Binding.Assemblage columnBindings =
-				new BindingsFromXQX(rowXQX, rowBindings);
+				new BindingsFromXQX(compiled.rowXQX, rowBindings);
 
-			XQueryCompiler columnXQC = createStaticContextWithPassedTypes(
-				columnBindings, namespacepairs);
-
-			boolean ordinalitySeen = false;
+			XQueryEvaluator[] columnXQEs =
+				new XQueryEvaluator[ columns.length ];
 			for ( int i = 0; i < columns.length; ++ i )
 			{
-				String expr = columns[i];
-				if ( null == expr )
-				{
-					if ( ordinalitySeen )
-						throw new SQLSyntaxErrorException(
-							"No more than one column expression may be null " +
-							"(=> \"for ordinality\")", "42611");
-					ordinalitySeen = true;
+				if ( null == compiled.columnXQXs[i] )
 					continue;
-				}
-				XQueryExecutable columnXQX = columnXQC.compile(expr);
-				columnStaticTypes[i] = makeSequenceType(
-					columnXQX.getResultItemType(),
-					columnXQX.getResultCardinality());
-				columnXQEs[i] = columnXQX.load();
+				columnXQEs[i] = compiled.columnXQXs[i].load();
 				storePassedValuesInDynamicContext(
 					columnXQEs[i], columnBindings, false);
 			}
 
-			XQueryEvaluator rowXQE = rowXQX.load();
+			XQueryEvaluator rowXQE = compiled.rowXQX.load();
 			XdmSequenceIterator rowIterator;
 			if ( storePassedValuesInDynamicContext(rowXQE, rowBindings, true) )
 				rowIterator = (XdmSequenceIterator)
 					XdmEmptySequence.getInstance().iterator();
 			else
 				rowIterator = rowXQE.iterator();
-			return new S9(rowIterator, columnXQEs, columnStaticTypes, enc);
+			return new S9(
+				rowIterator, columnXQEs, compiled.columnStaticTypes, enc);
 		}
 		catch ( SaxonApiException | XPathException e )
 		{
@@ -935,6 +965,116 @@ public class S9 implements ResultSetProvider
 		}
 	}
 
+	/**
+	 * The compiled row and column expressions of an {@code xmltable} call,
+	 * kept as its call site state, with what they were compiled from.
+	 */
+	private static final class CompiledXMLTable
+	{
+		final String rows;
+		final String[] columns;
+		final String[] namespaces;
+		final List<String> passedTypes;
+		final XQueryExecutable rowXQX;
+		final XQueryExecutable[] columnXQXs;
+		final SequenceType[] columnStaticTypes;
+
+		CompiledXMLTable(
+			String rows, String[] columns, String[] namespaces,
+			List<String> passedTypes, XQueryExecutable rowXQX,
+			XQueryExecutable[] columnXQXs, SequenceType[] columnStaticTypes)
+		{
+			this.rows = rows;
+			this.columns = columns.clone();
+			this.namespaces = null == namespaces ? null : namespaces.clone();
+			this.passedTypes = passedTypes;
+			this.rowXQX = rowXQX;
+			this.columnXQXs = columnXQXs;
+			this.columnStaticTypes = columnStaticTypes;
+		}
+
+		boolean matches(
+			String rows, String[] columns, String[] namespaces,
+			List<String> passedTypes)
+		{
+			return this.rows.equals(rows)
+				&& Arrays.equals(this.columns, columns)
+				&& Arrays.equals(this.namespaces, namespaces)
+				&& this.passedTypes.equals(passedTypes);
+		}
+	}
+
+	/**
+	 * Compile the row and column expressions of an {@code xmltable} call.
+	 */
+	private static CompiledXMLTable compileXMLTable(
+		String rows, String[] columns, String[] namespaces,
+		Binding.Assemblage rowBindings, List<String> passedTypes)
+		throws SQLException, SaxonApiException, XPathException
+	{
+		Iterable<Map.Entry<String,String>> namespacepairs =
+			namespaceBindings(namespaces);
+
+		XQueryExecutable[] columnXQXs = new XQueryExecutable[ columns.length ];
+		SequenceType[] columnStaticTypes = new SequenceType[ columns.length ];
+
+		XQueryCompiler rowXQC = createStaticContextWithPassedTypes(
+			rowBindings, namespacepairs);
+
+		XQueryExecutable rowXQX = rowXQC.compile(rows);
+
+		Binding.Assemblage columnBindings =
+			new BindingsFromXQX(rowXQX, rowBindings);
+
+		XQueryCompiler columnXQC = createStaticContextWithPassedTypes(
+			columnBindings, namespacepairs);
+
+		boolean ordinalitySeen = false;
+		for ( int i = 0; i < columns.length; ++ i )
+		{
+			String expr = columns[i];
+			if ( null == expr )
+			{
+				if ( ordinalitySeen )
+					throw new SQLSyntaxErrorException(
+						"No more than one column expression may be null " +
+						"(=> \"for ordinality\")", "42611");
+				ordinalitySeen = true;
+				continue;
+			}
+			columnXQXs[i] = columnXQC.compile(expr);
+			columnStaticTypes[i] = makeSequenceType(
+				columnXQXs[i].getResultItemType(),
+				columnXQXs[i].getResultCardinality());
+		}
+
+		return new CompiledXMLTable(rows, columns, namespaces, passedTypes,
+			rowXQX, columnXQXs, columnStaticTypes);
+	}
+
+	/**
+	 * Describe the names and types of passed values that determine the static
+	 * context an expression is compiled in, so compiled expressions are not
+	 * reused for values of different types.
+	 */
+	private static List<String> passedTypes(Binding.Assemblage passing)
+	throws SQLException
+	{
+		List<String> types = new ArrayList<>();
+		Binding.ContextItem ci = passing.contextItem();
+		if ( null != ci )
+			types.add(". " + describeType(ci));
+		for ( Binding.Parameter p : passing )
+			types.add(p.name() + ' ' + describeType(p));
+		return types;
+	}
+
+	private static String describeType(Binding b) throws SQLException
+	{
+		return b.typePG() + ' ' + b.typeJDBC() + ' ' + b.scale() + ' ' +
+			b.knownNonNull();
+	}
+
 	@Override
 	public void close()
 	{
@@ -2715,9 +2855,66 @@ public class S9 implements ResultSetProvider
 				" (HINT: pass w3cNewlines => true)", "0A000");
 	}
 
+	/**
+	 * A compiled regular expression, kept as the call site state of a function
+	 * so it is compiled only once when the pattern and flags are the same on
+	 * every row of a query.
+	 */
+	private static final class CompiledRE
+	{
+		final String pattern;
+		final String flags;
+		final RegularExpression re;
+
+		CompiledRE(String pattern, String flags, RegularExpression re)
+		{
+			this.pattern = pattern;
+			this.flags = flags;
+			this.re = re;
+		}
+	}
+
 	private static RegularExpression compileRE(String pattern, String flags)
 	throws SQLException
 	{
+		Session session = SessionManager.current();
+		Object o = session.getCallSiteState();
+		if ( o instanceof CompiledRE )
+		{
+			CompiledRE c = (CompiledRE)o;
+			if ( c.pattern.equals(pattern) && Objects.equals(c.flags, flags) )
+				return c.re;
+		}
+		RegularExpression re = compileREUncached(pattern, flags);
+		session.setCallSiteState(new CompiledRE(pattern, flags, re));
+		return re;
+	}
+
+	/**
+	 * Count of regular expressions compiled, rather than found already
+	 * compiled in a call site's state.
+	 */
+	private static int s_regexCompilations;
+
+	/**
+	 * Return the number of regular expressions compiled since the last call
+	 * of this function, rather than reused from the state of the call site
+	 * where they were compiled; one call site of a regular-expression function
+	 * in a query, given the same pattern on every row, compiles it once.
+	 */
+	@Function(schema="javatest", provides="regex_compilations")
+	public static int regex_compilations()
+	{
+		int n = s_regexCompilations;
+		s_regexCompilations = 0;
+		return n;
+	}
+
+	private static RegularExpression compileREUncached(
+		String pattern, String flags)
+	throws SQLException
+	{
+		++ s_regexCompilations;
 		try
 		{
 			return s_s9p.getUnderlyingConfiguration()
@@ -2978,7 +3175,7 @@ public class S9 implements ResultSetProvider
 	 * SQLFeatureNotSupportedException (0A000) if (in the current
 	 * implementation) w3cNewlines is false or omitted.
 	 */
-	@Function(schema="javatest")
+	@Function(schema="javatest", provides="like_regex")
 	public static boolean like_regex(
 		String value,                          //strict
 		String pattern,                        //strict
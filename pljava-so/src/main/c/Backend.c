@@ -22,6 +22,7 @@
 #include <utils/guc.h>
 #include <fmgr.h>
 #include <access/heapam.h>
+#include <access/xact.h>
 #include <utils/syscache.h>
 #include <catalog/catalog.h>
 #include <catalog/pg_proc.h>
@@ -52,6 +53,7 @@
 #include "pljava/InstallHelper.h"
 #include "pljava/Function.h"
 #include "pljava/HashMap.h"
+#include "pljava/Memo.h"
 #include "pljava/Exception.h"
 #include "pljava/Backend.h"
 #include "pljava/Session.h"
@@ -118,9 +120,14 @@ static char* vmoptions;
 static char* modulepath;
 static char* implementors;
 static int   statementCacheSize;
+static int   fetchMemoryBudget;
 static bool  pljavaDebug;
 static bool  pljavaReleaseLingeringSavepoints;
 static bool  pljavaEnabled;
+static char* preloadFunctions;
+static int   preloadWarmupCalls;
+bool         pljavaMaterializeSRF;
+bool         pljavaInvokerClasses;
 
 #if PG_VERSION_NUM >= 80400
 static int   java_thread_pg_entry;
@@ -227,6 +234,7 @@ static char const moduleMainPrefix[] = "-Djdk.module.main=";
 static bool deferInit = false;
 
 static void initsequencer(enum initstage is, bool tolerant);
+static void preloadListedFunctions(void);
 
 #if PG_VERSION_NUM >= 90100
 	static bool check_libjvm_location(
@@ -705,6 +713,12 @@ static void initsequencer(enum initstage is, bool tolerant)
 		initstage = IS_COMPLETE;
 
 	case IS_COMPLETE:
+		/*
+		 * Not when PL/Java is being installed or validated, as the listed
+		 * functions' jars may not be, yet.
+		 */
+		if ( NULL == pljavaLoadPath )
+			preloadListedFunctions();
 		pljavaLoadingAsExtension = false;
 		if ( alteredSettingsWereNeeded )
 		{
@@ -793,6 +807,48 @@ check_tolerant:
 	}
 }
 
+/*
+ * Create the functions listed in pljava.preload_functions, as soon as PL/Java
+ * has started, so the first calls to them in the session do not pay for class
+ * loading and method lookup. When PL/Java is started by the first call of a
+ * function, that happens within the transaction, but when loaded from
+ * session_preload_libraries it is not in one, and this starts and commits its
+ * own, and reports any error as a warning, as there is no query to fail.
+ */
+static void preloadListedFunctions(void)
+{
+	Invocation ctx;
+	MemoryContext oldcxt = CurrentMemoryContext;
+	bool ownXact;
+
+	if ( NULL == preloadFunctions  ||  '\0' == *preloadFunctions )
+		return;
+
+	ownXact = ! IsTransactionState();
+	if ( ownXact )
+		StartTransactionCommand();
+
+	Invocation_pushInvocation(&ctx, false);
+	PG_TRY();
+	{
+		Function_preload(preloadFunctions, preloadWarmupCalls);
+		Invocation_popInvocation(false);
+		if ( ownXact )
+			CommitTransactionCommand();
+	}
+	PG_CATCH();
+	{
+		Invocation_popInvocation(true);
+		if ( ! ownXact )
+			PG_RE_THROW();
+		MemoryContextSwitchTo(oldcxt); /* leave ErrorContext */
+		reLogWithChangedLevel(WARNING);
+		AbortCurrentTransaction();
+	}
+	PG_END_TRY();
+	MemoryContextSwitchTo(oldcxt);
+}
+
 /*
  * A function having everything to do with logging, which ought to be factored
  * out one day to make a start on the Thoughts-on-logging wiki ideas.
@@ -929,6 +985,11 @@ static void initPLJavaClasses(void)
 		Java_org_postgresql_pljava_internal_Backend__1getStatementCacheSize
 		},
 		{
+		"_getFetchMemoryBudget",
+		"()I",
+		Java_org_postgresql_pljava_internal_Backend__1getFetchMemoryBudget
+		},
+		{
 		"_log",
 		"(ILjava/lang/String;)V",
 		Java_org_postgresql_pljava_internal_Backend__1log
@@ -939,6 +1000,11 @@ static void initPLJavaClasses(void)
 		Java_org_postgresql_pljava_internal_Backend__1clearFunctionCache
 		},
 		{
+		"_evictFunctions",
+		"([Ljava/lang/ClassLoader;)V",
+		Java_org_postgresql_pljava_internal_Backend__1evictFunctions
+		},
+		{
 		"_isCreatingExtension",
 		"()Z",
 		Java_org_postgresql_pljava_internal_Backend__1isCreatingExtension
@@ -985,6 +1051,7 @@ static void initPLJavaClasses(void)
 	Type_initialize();
 	pljava_DualState_initialize();
 	Function_initialize();
+	pljava_Memo_initialize();
 	Session_initialize();
 	PgSavepoint_initialize();
 	XactListener_initialize();
@@ -1600,6 +1667,67 @@ static void registerGUCOptions(void)
 		NULL, /* check hook */
 		NULL, NULL); /* assign hook, show hook */
 
+	INT_GUC(
+		"pljava.fetch_memory_budget",
+		"Memory to aim for in each batch of rows fetched for a ResultSet",
+		"When nonzero, a ResultSet from PL/Java's internal JDBC driver "
+		"sizes each fetch of rows after the first to this much memory, "
+		"by the average width of the rows fetched last, instead of always "
+		"fetching the statement's fetch size.",
+		&fetchMemoryBudget,
+		0,    /* boot value */
+		0, 1048576, /* min, max values */
+		PGC_USERSET,
+		GUC_UNIT_KB,    /* flags */
+		NULL, /* check hook */
+		NULL, NULL); /* assign hook, show hook */
+
+	INT_GUC(
+		"pljava.memoize_cache_size",
+		"Number of results of each IMMUTABLE PL/Java function to remember",
+		"When nonzero, the results of IMMUTABLE functions that have "
+		"arguments and return neither a set nor a composite are kept in a "
+		"least-recently-used cache of this many entries per function, "
+		"keyed by the argument values, and a call with arguments found there "
+		"returns the remembered result without entering Java.",
+		&pljavaMemoizeCacheSize,
+		0,    /* boot value */
+		0, 1048576, /* min, max values */
+		PGC_USERSET,
+		0,    /* flags */
+		NULL, /* check hook */
+		NULL, NULL); /* assign hook, show hook */
+
+	STRING_GUC(
+		"pljava.preload_functions",
+		"PL/Java functions to create as soon as PL/Java has started",
+		"A comma-separated list of functions, each given as a regprocedure "
+		"signature, such as myschema.myfunc(integer,text), or as schema.* "
+		"for all PL/Java functions in a schema. Their classes are loaded "
+		"and their methods found when the session starts PL/Java, rather "
+		"than on their first calls. The time taken is logged.",
+		&preloadFunctions,
+		NULL, /* boot value */
+		PGC_SUSET,
+		0,    /* flags */
+		NULL, /* check hook */
+		NULL, NULL); /* assign hook, show hook */
+
+	INT_GUC(
+		"pljava.preload_warmup_calls",
+		"Times to call each preloaded function that takes no arguments",
+		"Each function named in pljava.preload_functions that takes no "
+		"arguments and returns no set is called this many times after it is "
+		"created, so its code, and whatever it calls, has been exercised "
+		"before its first real use.",
+		&preloadWarmupCalls,
+		0,    /* boot value */
+		0, 100000, /* min, max values */
+		PGC_SUSET,
+		0,    /* flags */
+		NULL, /* check hook */
+		NULL, NULL); /* assign hook, show hook */
+
 	BOOL_GUC(
 		"pljava.release_lingering_savepoints",
 		"If true, lingering savepoints will be released on function exit. "
@@ -1612,6 +1740,36 @@ static void registerGUCOptions(void)
 		NULL, /* check hook */
 		NULL, NULL); /* assign hook, show hook */
 
+	BOOL_GUC(
+		"pljava.invoker_classes",
+		"Whether to generate a class for each PL/Java function to invoke it.",
+		"When on as a function is first called in a session, a small class "
+		"is generated that invokes only that function, which allows the "
+		"Java JIT compiler to inline the function's method into the entry "
+		"point. Each generated class remains loaded for the session.",
+		&pljavaInvokerClasses,
+		false, /* boot value */
+		PGC_USERSET,
+		0,    /* flags */
+		NULL, /* check hook */
+		NULL, NULL); /* assign hook, show hook */
+
+	BOOL_GUC(
+		"pljava.materialize_srf",
+		"If true, set-returning functions produce all their rows at once "
+		"when the caller allows it",
+		"When on (typically by a SET clause on the function itself), a "
+		"set-returning function called where the SFRM_Materialize protocol "
+		"is allowed will be run to completion in one call, saving its rows "
+		"in a tuplestore that spills to disk beyond work_mem, instead of "
+		"being called back once per row.",
+		&pljavaMaterializeSRF,
+		false, /* boot value */
+		PGC_USERSET,
+		0,    /* flags */
+		NULL, /* check hook */
+		NULL, NULL); /* assign hook, show hook */
+
 	BOOL_GUC(
 		"pljava.enable",
 		"If off, the Java virtual machine will not be started until set on.",
@@ -1719,10 +1877,14 @@ static Datum internalCallHandler(bool trusted, PG_FUNCTION_ARGS)
 	}
 
 	Invocation_pushInvocation(&ctx, trusted);
+#if PG_VERSION_NUM >= 110000
+	ctx.nonAtomic = NULL != fcinfo->context
+		&& IsA(fcinfo->context, CallContext)
+		&& ! castNode(CallContext, fcinfo->context)->atomic;
+#endif
 	PG_TRY();
 	{
-		Function function =
-			Function_getFunction(funcoid, forTrigger, false, true);
+		Function function = Function_getFunctionForCall(fcinfo, forTrigger);
 		if(forTrigger)
 		{
 			/* Called as a trigger procedure
@@ -1869,6 +2031,17 @@ Java_org_postgresql_pljava_internal_Backend__1getStatementCacheSize(JNIEnv* env,
 	return statementCacheSize;
 }
 
+/*
+ * Class:     org_postgresql_pljava_internal_Backend
+ * Method:    _getFetchMemoryBudget
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL
+Java_org_postgresql_pljava_internal_Backend__1getFetchMemoryBudget(JNIEnv* env, jclass cls)
+{
+	return fetchMemoryBudget;
+}
+
 /*
  * Class:     org_postgresql_pljava_internal_Backend
  * Method:    _log
@@ -1930,6 +2103,19 @@ Java_org_postgresql_pljava_internal_Backend__1clearFunctionCache(JNIEnv* env, jc
 	END_NATIVE
 }
 
+/*
+ * Class:     org_postgresql_pljava_internal_Backend
+ * Method:    _evictFunctions
+ * Signature: ([Ljava/lang/ClassLoader;)V
+ */
+JNIEXPORT void JNICALL
+Java_org_postgresql_pljava_internal_Backend__1evictFunctions(JNIEnv* env, jclass cls, jobjectArray loaders)
+{
+	BEGIN_NATIVE_NO_ERRCHECK
+	Function_evictForLoaders(loaders);
+	END_NATIVE
+}
+
 /*
  * Class:     org_postgresql_pljava_internal_Backend
  * Method:    _isCreatingExtension
@@ -18,6 +18,7 @@
 #include "org_postgresql_pljava_internal_DualState_SingleFreeErrorData.h"
 #include "org_postgresql_pljava_internal_DualState_SingleSPIfreeplan.h"
 #include "org_postgresql_pljava_internal_DualState_SingleSPIcursorClose.h"
+#include "org_postgresql_pljava_internal_DualState_SingleSPIfreetuptable.h"
 #include "pljava/DualState.h"
 
 #include "pljava/Exception.h"
@@ -37,9 +38,11 @@ extern void pljava_ExecutionPlan_initialize(void);
 #include "pljava/type/Portal.h"
 #include "pljava/type/Relation.h"
 #include "pljava/type/SingleRowReader.h"
+#include "pljava/type/SupportRequest.h"
 #include "pljava/type/TriggerData.h"
 #include "pljava/type/Tuple.h"
 #include "pljava/type/TupleDesc.h"
+#include "pljava/type/WindowObject.h"
 #include "pljava/SQLInputFromTuple.h"
 #include "pljava/VarlenaWrapper.h"
 
@@ -182,6 +185,16 @@ void pljava_DualState_initialize(void)
 		{ 0, 0, 0 }
 	};
 
+	JNINativeMethod singleSPIfreetuptableMethods[] =
+	{
+		{
+		"_spiFreeTupTable",
+		"(JJ)V",
+		Java_org_postgresql_pljava_internal_DualState_00024SingleSPIfreetuptable__1spiFreeTupTable
+		},
+		{ 0, 0, 0 }
+	};
+
 	s_DualState_class = (jclass)JNI_newGlobalRef(PgObject_getJavaClass(
 		"org/postgresql/pljava/internal/DualState"));
 	s_DualState_resourceOwnerRelease = PgObject_getStaticJavaMethod(
@@ -230,6 +243,11 @@ void pljava_DualState_initialize(void)
 	PgObject_registerNatives2(clazz, singleSPIcursorCloseMethods);
 	JNI_deleteLocalRef(clazz);
 
+	clazz = (jclass)PgObject_getJavaClass(
+		"org/postgresql/pljava/internal/DualState$SingleSPIfreetuptable");
+	PgObject_registerNatives2(clazz, singleSPIfreetuptableMethods);
+	JNI_deleteLocalRef(clazz);
+
 	RegisterResourceReleaseCallback(resourceReleaseCB, NULL);
 
 	/*
@@ -241,10 +259,12 @@ void pljava_DualState_initialize(void)
 	pljava_Relation_initialize();
 	pljava_SingleRowReader_initialize();
 	pljava_SQLInputFromTuple_initialize();
+	pljava_SupportRequest_initialize();
 	pljava_TriggerData_initialize();
 	pljava_TupleDesc_initialize();
 	pljava_Tuple_initialize();
 	pljava_VarlenaWrapper_initialize();
+	pljava_WindowObject_initialize();
 }
 
 void pljava_DualState_unregister(void)
@@ -422,3 +442,37 @@ Java_org_postgresql_pljava_internal_DualState_00024SingleSPIcursorClose__1spiCur
 	PG_END_TRY();
 	END_NATIVE
 }
+
+
+
+/*
+ * Class:     org_postgresql_pljava_internal_DualState_SingleSPIfreetuptable
+ * Method:    _spiFreeTupTable
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL
+Java_org_postgresql_pljava_internal_DualState_00024SingleSPIfreetuptable__1spiFreeTupTable(
+	JNIEnv* env, jobject _this, jlong pointer, jlong invocation)
+{
+	BEGIN_NATIVE_NO_ERRCHECK
+	Ptr2Long p2l;
+	Ptr2Long p2li;
+	p2l.longVal = pointer;
+	p2li.longVal = invocation;
+	PG_TRY();
+	{
+		/*
+		 * SPI_freetuptable only frees a table belonging to the innermost SPI
+		 * connection, and warns of any other; a table from the connection of
+		 * an Invocation further out is left for that one's SPI_finish.
+		 */
+		if ( p2li.ptrVal == currentInvocation )
+			SPI_freetuptable(p2l.ptrVal);
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR("SPI_freetuptable");
+	}
+	PG_END_TRY();
+	END_NATIVE
+}
@@ -13,6 +13,7 @@
 #include "org_postgresql_pljava_internal_Function.h"
 #include "org_postgresql_pljava_internal_Function_EarlyNatives.h"
 #include "pljava/PgObject_priv.h"
+#include "pljava/Backend.h"
 #include "pljava/Exception.h"
 #include "pljava/InstallHelper.h"
 #include "pljava/Invocation.h"
@@ -20,19 +21,32 @@
 #include "pljava/HashMap.h"
 #include "pljava/Iterator.h"
 #include "pljava/JNICalls.h"
+#include "pljava/Memo.h"
 #include "pljava/type/Composite.h"
+#include "pljava/type/Internal.h"
 #include "pljava/type/Oid.h"
 #include "pljava/type/String.h"
+#include "pljava/type/SupportRequest.h"
 #include "pljava/type/TriggerData.h"
 #include "pljava/type/UDT.h"
+#include "pljava/type/WindowObject.h"
 
+#if PG_VERSION_NUM >= 90300
+#include <access/htup_details.h>
+#else
+#include <access/htup.h>
+#endif
 #include <catalog/pg_proc.h>
 #include <catalog/pg_language.h>
 #include <catalog/pg_namespace.h>
+#include <nodes/pg_list.h>
 #include <utils/builtins.h>
+#include <utils/inval.h>
+#include <utils/syscache.h>
 #include <ctype.h>
 #include <funcapi.h>
 #include <utils/typcache.h>
+#include <windowapi.h>
 
 #ifdef _MSC_VER
 #	define strcasecmp _stricmp
@@ -50,6 +64,10 @@
 #error "Need fallback for heap_copy_tuple_as_datum"
 #endif
 
+#if PG_VERSION_NUM < 90400
+#define HeapTupleHeaderGetRawXmin(tup) HeapTupleHeaderGetXmin(tup)
+#endif
+
 #define COUNTCHECK(refs, prims) ((jshort)(((refs) << 8) | ((prims) & 0xff)))
 
 static jclass s_Loader_class;
@@ -57,11 +75,13 @@ static jclass s_ClassLoader_class;
 static jclass s_Function_class;
 static jclass s_ParameterFrame_class;
 static jclass s_EntryPoints_class;
+static jclass s_InvokerClasses_class;
 static jmethodID s_Loader_getSchemaLoader;
 static jmethodID s_Loader_getTypeMap;
 static jmethodID s_ClassLoader_loadClass;
 static jmethodID s_Function_create;
 static jmethodID s_Function_getClassIfUDT;
+static jmethodID s_Function_preload;
 static jmethodID s_Function_udtReadHandle;
 static jmethodID s_Function_udtParseHandle;
 static jmethodID s_ParameterFrame_push;
@@ -72,6 +92,7 @@ static jmethodID s_EntryPoints_udtWriteInvoke;
 static jmethodID s_EntryPoints_udtToStringInvoke;
 static jmethodID s_EntryPoints_udtReadInvoke;
 static jmethodID s_EntryPoints_udtParseInvoke;
+static jmethodID s_InvokerClasses_invokerClass;
 static PgObjectClass s_FunctionClass;
 static Type s_pgproc_Type;
 
@@ -110,6 +131,15 @@ struct Function_
 	 */
 	jweak schemaLoader;
 
+	/**
+	 * The hash value of the function's pg_proc syscache entry, to recognize
+	 * invalidations of it, and whether one (or the eviction of its schema
+	 * loader) has been seen while the function was in use, so it must be
+	 * created afresh when next looked up.
+	 */
+	uint32 procHash;
+	bool   stale;
+
 	union
 	{
 		struct
@@ -151,6 +181,21 @@ struct Function_
 		 * MethodHandle to the resolved Java method implementing the function.
 		 */
 		jobject methodHandle;
+
+		/**
+		 * A class generated to invoke only methodHandle, with its two entry
+		 * points, when pljava.invoker_classes was on as the function was
+		 * created; otherwise null, and the shared EntryPoints are used.
+		 */
+		jclass invokerClass;
+		jmethodID invokerRefInvoke;
+		jmethodID invokerInvoke;
+
+		/*
+		 * Cache of results by arguments, if the function is eligible to
+		 * have its results memoized; otherwise null.
+		 */
+		Memo memo;
 		} nonudt;
 		
 		struct
@@ -177,6 +222,12 @@ static struct Function_ s_initWriter;
 Function Function_INIT_WRITER = &s_initWriter;
 
 static HashMap s_funcMap = 0;
+static uint32 s_funcCacheGeneration;
+
+static bool Function_inUse(Function func);
+#if PG_VERSION_NUM >= 90200
+static void _procInvalidated(Datum arg, int cacheId, uint32 hashValue);
+#endif
 
 static jclass s_Loader_class;
 static jmethodID s_Loader_getSchemaLoader;
@@ -188,10 +239,14 @@ static void _Function_finalize(PgObject func)
 	if(!self->isUDT)
 	{
 		JNI_deleteGlobalRef(self->func.nonudt.methodHandle);
+		if(self->func.nonudt.invokerClass != 0)
+			JNI_deleteGlobalRef(self->func.nonudt.invokerClass);
 		if(self->func.nonudt.typeMap != 0)
 			JNI_deleteGlobalRef(self->func.nonudt.typeMap);
 		if(self->func.nonudt.paramTypes != 0)
 			pfree(self->func.nonudt.paramTypes);
+		if(self->func.nonudt.memo != 0)
+			pljava_Memo_free(self->func.nonudt.memo);
 	}
 }
 
@@ -216,6 +271,11 @@ void Function_initialize(void)
 		Java_org_postgresql_pljava_internal_Function__1storeToNonUDT
 		},
 		{
+		"_storeToAggSerial",
+		"(JZ)V",
+		Java_org_postgresql_pljava_internal_Function__1storeToAggSerial
+		},
+		{
 		"_storeToUDT",
 		"(JLjava/lang/ClassLoader;Ljava/lang/Class;ZII"
 		"Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodHandle;)V",
@@ -226,6 +286,11 @@ void Function_initialize(void)
 		"(J[Ljava/lang/String;[Ljava/lang/String;I)V",
 		Java_org_postgresql_pljava_internal_Function__1reconcileTypes
 		},
+		{
+		"_preload",
+		"(IZ)V",
+		Java_org_postgresql_pljava_internal_Function__1preload
+		},
 		{ 0, 0, 0 }
 	};
 
@@ -235,6 +300,9 @@ void Function_initialize(void)
 		== sizeof (jvalue), "Function.java has wrong size for Java JNI jvalue");
 
 	s_funcMap = HashMap_create(59, TopMemoryContext);
+#if PG_VERSION_NUM >= 90200
+	CacheRegisterSyscacheCallback(PROCOID, _procInvalidated, (Datum)0);
+#endif
 
 	s_Loader_class = JNI_newGlobalRef(PgObject_getJavaClass("org/postgresql/pljava/sqlj/Loader"));
 	s_Loader_getSchemaLoader = PgObject_getStaticJavaMethod(s_Loader_class, "getSchemaLoader", "(Ljava/lang/String;)Ljava/lang/ClassLoader;");
@@ -264,6 +332,8 @@ void Function_initialize(void)
 		"getClassIfUDT",
 		"(Ljava/sql/ResultSet;Ljava/lang/String;)"
 		"Ljava/lang/Class;");
+	s_Function_preload = PgObject_getStaticJavaMethod(s_Function_class,
+		"preload", "(Ljava/lang/String;I)V");
 
 	s_EntryPoints_class = JNI_newGlobalRef(PgObject_getJavaClass(
 		"org/postgresql/pljava/internal/EntryPoints"));
@@ -289,6 +359,13 @@ void Function_initialize(void)
 		"udtParseInvoke", "(Ljava/lang/invoke/MethodHandle;Ljava/lang/String;"
 		"Ljava/lang/String;)Ljava/sql/SQLData;");
 
+	s_InvokerClasses_class = JNI_newGlobalRef(PgObject_getJavaClass(
+		"org/postgresql/pljava/internal/InvokerClasses"));
+	s_InvokerClasses_invokerClass = PgObject_getStaticJavaMethod(
+		s_InvokerClasses_class, "invokerClass",
+		"(Ljava/lang/invoke/MethodHandle;Ljava/lang/String;IIZ)"
+		"Ljava/lang/Class;");
+
 	s_Function_udtReadHandle = PgObject_getStaticJavaMethod(s_Function_class,
 		"udtReadHandle", "(Ljava/lang/Class;)Ljava/lang/invoke/MethodHandle;");
 	s_Function_udtParseHandle = PgObject_getStaticJavaMethod(s_Function_class,
@@ -303,69 +380,68 @@ void Function_initialize(void)
 
 jobject pljava_Function_refInvoke(Function self)
 {
+	if ( 0 != self->func.nonudt.invokerClass )
+		return JNI_callStaticObjectMethod(self->func.nonudt.invokerClass,
+			self->func.nonudt.invokerRefInvoke);
 	return JNI_callStaticObjectMethod(s_EntryPoints_class,
 		s_EntryPoints_refInvoke, self->func.nonudt.methodHandle);
 }
 
 void pljava_Function_voidInvoke(Function self)
 {
-	JNI_callStaticVoidMethod(s_EntryPoints_class,
-		s_EntryPoints_invoke, self->func.nonudt.methodHandle);
+	if ( 0 != self->func.nonudt.invokerClass )
+		JNI_callStaticVoidMethod(self->func.nonudt.invokerClass,
+			self->func.nonudt.invokerInvoke);
+	else
+		JNI_callStaticVoidMethod(s_EntryPoints_class,
+			s_EntryPoints_invoke, self->func.nonudt.methodHandle);
 }
 
 jboolean pljava_Function_booleanInvoke(Function self)
 {
-	JNI_callStaticVoidMethod(s_EntryPoints_class,
-		s_EntryPoints_invoke, self->func.nonudt.methodHandle);
+	pljava_Function_voidInvoke(self);
 	return s_primitiveParameters[0].z;
 }
 
 jbyte pljava_Function_byteInvoke(Function self)
 {
-	JNI_callStaticVoidMethod(s_EntryPoints_class,
-		s_EntryPoints_invoke, self->func.nonudt.methodHandle);
+	pljava_Function_voidInvoke(self);
 	return s_primitiveParameters[0].b;
 }
 
 jshort pljava_Function_shortInvoke(Function self)
 {
-	JNI_callStaticVoidMethod(s_EntryPoints_class,
-		s_EntryPoints_invoke, self->func.nonudt.methodHandle);
+	pljava_Function_voidInvoke(self);
 	return s_primitiveParameters[0].s;
 }
 
 jchar pljava_Function_charInvoke(Function self)
 {
-	JNI_callStaticVoidMethod(s_EntryPoints_class,
-		s_EntryPoints_invoke, self->func.nonudt.methodHandle);
+	pljava_Function_voidInvoke(self);
 	return s_primitiveParameters[0].c;
 }
 
 jint pljava_Function_intInvoke(Function self)
 {
-	JNI_callStaticVoidMethod(s_EntryPoints_class,
-		s_EntryPoints_invoke, self->func.nonudt.methodHandle);
+	pljava_Function_voidInvoke(self);
 	return s_primitiveParameters[0].i;
 }
 
 jfloat pljava_Function_floatInvoke(Function self)
 {
-	JNI_callStaticVoidMethod(s_EntryPoints_class,
-		s_EntryPoints_invoke, self->func.nonudt.methodHandle);
+	pljava_Function_voidInvoke(self);
 	return s_primitiveParameters[0].f;
 }
 
 jlong pljava_Function_longInvoke(Function self)
 {
-	JNI_callStaticVoidMethod(s_EntryPoints_class,
-		s_EntryPoints_invoke, self->func.nonudt.methodHandle);
+	pljava_Function_voidInvoke(self);
 	return s_primitiveParameters[0].j;
 }
 
 jdouble pljava_Function_doubleInvoke(Function self)
 {
-	JNI_callStaticVoidMethod(s_EntryPoints_class,
-		s_EntryPoints_invoke, self->func.nonudt.methodHandle);
+	pljava_Function_voidInvoke(self);
 	return s_primitiveParameters[0].d;
 }
 
@@ -469,6 +545,8 @@ static Function Function_create(
 	Ptr2Long p2l;
 	Datum d;
 	jobject handle;
+	jclass invoker = NULL;
+	Memo memo = NULL;
 
 	d = heap_copy_tuple_as_datum(procTup, Type_getTupleDesc(s_pgproc_Type, 0));
 
@@ -476,6 +554,10 @@ static Function Function_create(
 
 	self = /* will rely on the fact that allocInstance zeroes memory */
 		(Function)PgObjectClass_allocInstance(s_FunctionClass,TopMemoryContext);
+#if PG_VERSION_NUM >= 90200
+	self->procHash =
+		GetSysCacheHashValue1(PROCOID, ObjectIdGetDatum(funcOid));
+#endif
 	p2l.longVal = 0;
 	p2l.ptrVal = (void *)self;
 
@@ -487,6 +569,18 @@ static Function Function_create(
 			forTrigger ? JNI_TRUE : JNI_FALSE,
 			forValidator ? JNI_TRUE : JNI_FALSE,
 			checkBody ? JNI_TRUE : JNI_FALSE);
+
+		/*
+		 * With pljava.invoker_classes on, a class is generated that invokes
+		 * only this function's handle, which the JIT can then inline. One
+		 * still loaded for this same pg_proc row version is reused.
+		 */
+		if ( NULL != handle && pljavaInvokerClasses )
+			invoker = JNI_callStaticObjectMethod(s_InvokerClasses_class,
+				s_InvokerClasses_invokerClass, handle, schemaName,
+				(jint)funcOid,
+				(jint)HeapTupleHeaderGetRawXmin(procTup->t_data),
+				forTrigger ? JNI_TRUE : JNI_FALSE);
 	}
 	PG_CATCH();
 	{
@@ -498,6 +592,9 @@ static Function Function_create(
 	}
 	PG_END_TRY();
 
+	if ( NULL != handle )
+		memo = pljava_Memo_create(procTup);
+
 	JNI_deleteLocalRef(schemaName);
 	ReleaseSysCache(lngTup);
 	ReleaseSysCache(procTup);
@@ -529,6 +626,16 @@ static Function Function_create(
 	if ( NULL != handle )
 	{
 		self->func.nonudt.methodHandle = JNI_newGlobalRef(handle);
+		self->func.nonudt.memo = memo;
+		if ( NULL != invoker )
+		{
+			self->func.nonudt.invokerClass = JNI_newGlobalRef(invoker);
+			self->func.nonudt.invokerRefInvoke = PgObject_getStaticJavaMethod(
+				invoker, "refInvoke", "()Ljava/lang/Object;");
+			self->func.nonudt.invokerInvoke = PgObject_getStaticJavaMethod(
+				invoker, "invoke", "()V");
+			JNI_deleteLocalRef(invoker);
+		}
 		JNI_deleteLocalRef(handle);
 	}
 	else if ( ! self->isUDT )
@@ -557,6 +664,19 @@ Function Function_getFunction(
 	Function func =
 		forValidator ? NULL : (Function)HashMap_getByOid(s_funcMap, funcOid);
 
+	/*
+	 * A stale Function is replaced once nothing is using it. Call sites may
+	 * have cached it (if they did so after it was marked, while it was in
+	 * use), so the generation changes again as it is freed.
+	 */
+	if ( NULL != func  &&  func->stale  &&  ! Function_inUse(func) )
+	{
+		HashMap_removeByOid(s_funcMap, funcOid);
+		PgObject_free((PgObject)func);
+		++ s_funcCacheGeneration;
+		func = NULL;
+	}
+
 	if ( NULL == func )
 	{
 		func = Function_create(funcOid, forTrigger, forValidator, checkBody);
@@ -568,6 +688,207 @@ Function Function_getFunction(
 	return func;
 }
 
+/*
+ * What is kept in flinfo->fn_extra by Function_getFunctionForCall. The
+ * generation is compared to s_funcCacheGeneration, so a Function freed by
+ * Function_clearFunctionCache is never used through a stale pointer.
+ *
+ * The state is an object the Java code has saved for later calls from the same
+ * call site, held by a global reference that is released when flinfo's memory
+ * context goes away, or when the generation changes, as the object's class may
+ * then be one no longer in use.
+ *
+ * For a function with polymorphic return or parameter types, realTypes holds
+ * the actual Types resolved for this call site (the return type first, then
+ * the parameters, NULL where not yet resolved), which cannot change for the
+ * life of the FmgrInfo. It is allocated in fn_mcxt on first need.
+ *
+ * A set-returning function needs fn_extra for its FuncCallContext, which lasts
+ * only for one scan, so its CallSite is found instead in s_srfCallSites, by
+ * the address of the FmgrInfo (srfInfo), and removed from there when fn_mcxt
+ * goes away. The fn_oid and fn_expr it was made for are kept to be compared,
+ * in case the same FmgrInfo is filled in again for something else.
+ */
+struct CallSite_
+{
+	Function function;
+	uint32 generation;
+	jobject state;
+	Type *realTypes;
+	int realTypeCount;
+#if PG_VERSION_NUM >= 90500
+	MemoryContextCallback callback;
+	bool registered;
+	FmgrInfo *srfInfo;
+	Oid srfOid;
+	fmNodePtr srfExpr;
+#endif
+};
+
+typedef struct CallSite_ *CallSite;
+
+/*
+ * Global references to the states of call sites, and other objects held for
+ * PostgreSQL memory contexts, whose contexts have gone away. That can happen in
+ * error cleanup, outside of any call from or into Java, so the context
+ * callbacks leave the references here with Function_deferGlobalRef, and they
+ * are deleted by Function_releaseDeferredStates as the next invocation
+ * returns, much as the DualState instances enqueued by Java are cleaned.
+ */
+static List *s_deferredStates = NIL;
+
+void Function_deferGlobalRef(jobject ref)
+{
+	MemoryContext curr;
+
+	if ( NULL == ref )
+		return;
+	curr = MemoryContextSwitchTo(TopMemoryContext);
+	s_deferredStates = lappend(s_deferredStates, ref);
+	MemoryContextSwitchTo(curr);
+}
+
+static void _releaseCallSiteState(CallSite cs)
+{
+	if ( NULL != cs->state )
+		JNI_deleteGlobalRef(cs->state);
+	cs->state = NULL;
+}
+
+#if PG_VERSION_NUM >= 90500
+static HashMap s_srfCallSites;
+
+static void _callSiteContextGone(void *arg)
+{
+	CallSite cs = (CallSite)arg;
+
+	if ( NULL != cs->srfInfo )
+		HashMap_removeByOpaque(s_srfCallSites, cs->srfInfo);
+
+	Function_deferGlobalRef(cs->state);
+	cs->state = NULL;
+}
+
+static CallSite getSRFCallSite(FmgrInfo *flinfo)
+{
+	CallSite cs;
+
+	if ( NULL == s_srfCallSites )
+		s_srfCallSites = HashMap_create(13, TopMemoryContext);
+
+	cs = (CallSite)HashMap_getByOpaque(s_srfCallSites, flinfo);
+	if ( NULL != cs
+		&& ( flinfo->fn_oid != cs->srfOid  ||  flinfo->fn_expr != cs->srfExpr ) )
+	{
+		HashMap_removeByOpaque(s_srfCallSites, flinfo);
+		cs->srfInfo = NULL;
+		_releaseCallSiteState(cs);
+		cs = NULL;
+	}
+
+	if ( NULL == cs )
+	{
+		cs = MemoryContextAllocZero(flinfo->fn_mcxt, sizeof *cs);
+		cs->srfInfo = flinfo;
+		cs->srfOid = flinfo->fn_oid;
+		cs->srfExpr = flinfo->fn_expr;
+		cs->callback.func = _callSiteContextGone;
+		cs->callback.arg = cs;
+		MemoryContextRegisterResetCallback(flinfo->fn_mcxt, &cs->callback);
+		cs->registered = true;
+		HashMap_putByOpaque(s_srfCallSites, flinfo, cs);
+	}
+	return cs;
+}
+#endif
+
+void Function_releaseDeferredStates(void)
+{
+	List *refs = s_deferredStates;
+	ListCell *lc;
+
+	if ( NIL == refs )
+		return;
+	s_deferredStates = NIL;
+	foreach(lc, refs)
+		JNI_deleteGlobalRef((jobject)lfirst(lc));
+	list_free(refs);
+}
+
+Function Function_getFunctionForCall(PG_FUNCTION_ARGS, bool forTrigger)
+{
+	FmgrInfo *flinfo = fcinfo->flinfo;
+	CallSite cs;
+	Function func;
+
+	if ( flinfo->fn_retset )
+#if PG_VERSION_NUM >= 90500
+		cs = getSRFCallSite(flinfo);
+#else
+		return Function_getFunction(flinfo->fn_oid, forTrigger, false, true);
+#endif
+	else
+		cs = (CallSite)flinfo->fn_extra;
+
+	if ( NULL != cs  &&  NULL != cs->function
+		&&  s_funcCacheGeneration == cs->generation )
+	{
+		currentInvocation->function = cs->function;
+		currentInvocation->callSite = cs;
+		return cs->function;
+	}
+
+	func = Function_getFunction(flinfo->fn_oid, forTrigger, false, true);
+
+	if ( NULL == cs )
+	{
+		cs = MemoryContextAllocZero(flinfo->fn_mcxt, sizeof *cs);
+		flinfo->fn_extra = cs;
+	}
+	else
+	{
+		_releaseCallSiteState(cs);
+		if ( NULL != cs->realTypes )
+			pfree(cs->realTypes);
+		cs->realTypes = NULL;
+	}
+	cs->function = func;
+	cs->generation = s_funcCacheGeneration;
+	currentInvocation->callSite = cs;
+	return func;
+}
+
+jobject Function_getCallSiteState(void)
+{
+	CallSite cs = currentInvocation->callSite;
+	if ( NULL == cs  ||  NULL == cs->state )
+		return NULL;
+	return JNI_newLocalRef(cs->state);
+}
+
+void Function_setCallSiteState(jobject state)
+{
+	CallSite cs = currentInvocation->callSite;
+	if ( NULL == cs )
+		return;
+#if PG_VERSION_NUM >= 90500
+	_releaseCallSiteState(cs);
+	cs->state = NULL == state ? NULL : JNI_newGlobalRef(state);
+	if ( ! cs->registered )
+	{
+		cs->callback.func = _callSiteContextGone;
+		cs->callback.arg = cs;
+		MemoryContextRegisterResetCallback(
+			GetMemoryChunkContext(cs), &cs->callback);
+		cs->registered = true;
+	}
+#else
+	ereport(ERROR, (
+		errcode(ERRCODE_FEATURE_NOT_SUPPORTED),
+		errmsg("call site state requires PostgreSQL 9.5 or later")));
+#endif
+}
+
 jobject Function_getTypeMap(Function self)
 {
 	return self->func.nonudt.typeMap;
@@ -592,6 +913,7 @@ void Function_clearFunctionCache(void)
 	HashMap oldMap = s_funcMap;
 	Iterator itor = Iterator_create(oldMap);
 
+	++ s_funcCacheGeneration;
 	s_funcMap = HashMap_create(59, TopMemoryContext);
 	while((entry = Iterator_next(itor)) != 0)
 	{
@@ -616,6 +938,105 @@ void Function_clearFunctionCache(void)
 	PgObject_free((PgObject)oldMap);
 }
 
+/*
+ * Evict from the cache only the Functions whose schema loader is one of those
+ * in the given array, which Loader has just discarded. One still in use is
+ * marked stale instead, to be replaced when next looked up.
+ */
+void Function_evictForLoaders(jobjectArray loaders)
+{
+	Entry entry;
+	jsize nLoaders = JNI_getArrayLength(loaders);
+	bool evicted = false;
+
+	HashMap oldMap = s_funcMap;
+	Iterator itor = Iterator_create(oldMap);
+
+	s_funcMap = HashMap_create(59, TopMemoryContext);
+	while((entry = Iterator_next(itor)) != 0)
+	{
+		Function func = (Function)Entry_getValue(entry);
+		bool match = false;
+		jsize i;
+
+		if(func == 0)
+			continue;
+
+		for ( i = 0; i < nLoaders  &&  ! match; ++ i )
+		{
+			jobject loader = JNI_getObjectArrayElement(loaders, i);
+			match = JNI_isSameObject(func->schemaLoader, loader);
+			JNI_deleteLocalRef(loader);
+		}
+
+		if ( match )
+			evicted = true;
+
+		if ( ! match  ||  Function_inUse(func) )
+		{
+			func->stale |= match;
+			HashMap_put(s_funcMap, Entry_getKey(entry), func);
+		}
+		else
+		{
+			Entry_setValue(entry, 0);
+			PgObject_free((PgObject)func);
+		}
+	}
+	PgObject_free((PgObject)itor);
+	PgObject_free((PgObject)oldMap);
+
+	if ( evicted )
+		++ s_funcCacheGeneration;
+}
+
+/*
+ * Create ahead of use the functions named in the comma-separated list, and
+ * call those taking no arguments the given number of times, as the Java
+ * method does. Must be called within an Invocation and a transaction.
+ */
+void Function_preload(char const *list, int warmupCalls)
+{
+	jstring jlist = String_createJavaStringFromNTS(list);
+	JNI_callStaticVoidMethod(s_Function_class, s_Function_preload,
+		jlist, (jint)warmupCalls);
+	JNI_deleteLocalRef(jlist);
+}
+
+#if PG_VERSION_NUM >= 90200
+/*
+ * Syscache callback for pg_proc: mark stale any cached Function whose pg_proc
+ * entry has (or, as the hash value may collide, could have) changed, or all of
+ * them for a zero hash value, which means the whole cache was reset. The
+ * Functions are not freed here, but replaced when next looked up, and call
+ * sites that cached them look them up again because the generation changes.
+ */
+static void _procInvalidated(Datum arg, int cacheId, uint32 hashValue)
+{
+	Entry entry;
+	Iterator itor;
+	bool marked = false;
+
+	if ( NULL == s_funcMap )
+		return;
+
+	itor = Iterator_create(s_funcMap);
+	while((entry = Iterator_next(itor)) != 0)
+	{
+		Function func = (Function)Entry_getValue(entry);
+		if ( func != 0  &&  ( 0 == hashValue  ||  func->procHash == hashValue ) )
+		{
+			func->stale = true;
+			marked = true;
+		}
+	}
+	PgObject_free((PgObject)itor);
+
+	if ( marked )
+		++ s_funcCacheGeneration;
+}
+#endif
+
 /*
  * Type_isPrimitive() by itself returns true for both, say, int and int[].
  * That is sometimes relied on, as in the code that would accept Integer[]
@@ -631,18 +1052,78 @@ static bool passAsPrimitive(Type t)
 	return Type_isPrimitive(t) && (NULL == Type_getElementType(t));
 }
 
+/*
+ * Return the actual Type, at this call site, of a polymorphic return type
+ * (argIdx -1) or parameter type. Resolving it means consulting the call
+ * expression and the type map, and the answer cannot change for the same
+ * FmgrInfo, so it is remembered in the CallSite, when there is one.
+ */
+static Type resolveDynamicType(
+	Function self, Type dynType, int argIdx, PG_FUNCTION_ARGS)
+{
+	CallSite cs = currentInvocation->callSite;
+	Type *slot = NULL;
+	Type realType;
+
+	if ( NULL != cs  &&  self == cs->function )
+	{
+		if ( NULL == cs->realTypes )
+		{
+			cs->realTypeCount = 1 + PG_NARGS();
+			cs->realTypes = MemoryContextAllocZero(fcinfo->flinfo->fn_mcxt,
+				cs->realTypeCount * sizeof *cs->realTypes);
+		}
+		if ( 1 + argIdx < cs->realTypeCount )
+		{
+			slot = cs->realTypes + 1 + argIdx;
+			if ( NULL != *slot )
+				return *slot;
+		}
+	}
+
+	realType = Type_getRealType(dynType,
+		-1 == argIdx
+		? get_fn_expr_rettype(fcinfo->flinfo)
+		: get_fn_expr_argtype(fcinfo->flinfo, argIdx),
+		self->func.nonudt.typeMap);
+
+	if ( NULL != slot )
+		*slot = realType;
+	return realType;
+}
+
 Datum Function_invoke(Function self, PG_FUNCTION_ARGS)
 {
 	Datum retVal;
 	Size passedArgCount;
 	Type invokerType;
 	bool skipParameterConversion = false;
+	Memo memo;
+	MemoKey memoKey;
+	/*
+	 * A window function's method takes a WindowObject ahead of the SQL
+	 * parameters, and those are not in fcinfo, but fetched for the current
+	 * row through the window API.
+	 */
+	WindowObject winobj = WindowObjectIsValid(fcinfo->context)
+		? PG_WINDOW_OBJECT() : NULL;
 
 	fcinfo->isnull = false;
 
 	if(self->isUDT)
 		return self->func.udt.udtFunction(self->func.udt.udt, fcinfo);
 
+	/*
+	 * An IMMUTABLE function's result for the same arguments may be found in
+	 * its memo, without entering Java at all.
+	 */
+	memo = self->func.nonudt.memo;
+	if ( NULL != memo  &&  ( 0 >= pljavaMemoizeCacheSize  ||  NULL != winobj ) )
+		memo = NULL;
+	if ( NULL != memo
+		&&  pljava_Memo_lookup(memo, fcinfo, &memoKey, &retVal) )
+		return retVal;
+
 	if ( self->func.nonudt.isMultiCall )
 	{
 		if ( SRF_IS_FIRSTCALL() )
@@ -697,24 +1178,42 @@ Datum Function_invoke(Function self, PG_FUNCTION_ARGS)
 
 	passedArgCount = PG_NARGS();
 
-	if ( passedArgCount > 0  &&  ! skipParameterConversion )
+	if ( ( passedArgCount > 0  ||  NULL != winobj )
+		&&  ! skipParameterConversion )
 	{
 		int32 idx;
 		int32 refIdx = 0;
 		int32 primIdx = 0;
 		Type* types = self->func.nonudt.paramTypes;
 		jvalue coerced;
+		Datum arg;
+		bool argIsNull;
 
 		if(Type_isDynamic(invokerType))
-			invokerType = Type_getRealType(invokerType,
-				get_fn_expr_rettype(fcinfo->flinfo), self->func.nonudt.typeMap);
+			invokerType = resolveDynamicType(self, invokerType, -1, fcinfo);
+
+		if ( NULL != winobj )
+		{
+			jobject jwo = pljava_WindowObject_create(fcinfo);
+			JNI_setObjectArrayElement(s_referenceParameters, refIdx++, jwo);
+			JNI_deleteLocalRef(jwo);
+			++ types;
+		}
 
 		for(idx = 0; idx < passedArgCount; ++idx)
 		{
 			Type paramType = types[idx];
 			bool passPrimitive = passAsPrimitive(paramType);
 
-			if(PG_ARGISNULL(idx))
+			if ( NULL != winobj )
+				arg = WinGetFuncArgCurrent(winobj, idx, &argIsNull);
+			else
+			{
+				argIsNull = PG_ARGISNULL(idx);
+				arg = PG_GETARG_DATUM(idx);
+			}
+
+			if(argIsNull)
 			{
 				/*
 				 * Set this argument to zero (or null in case of object)
@@ -727,10 +1226,9 @@ Datum Function_invoke(Function self, PG_FUNCTION_ARGS)
 			else
 			{
 				if(Type_isDynamic(paramType))
-					paramType = Type_getRealType(paramType,
-						get_fn_expr_argtype(fcinfo->flinfo, idx),
-						self->func.nonudt.typeMap);
-				coerced = Type_coerceDatum(paramType, PG_GETARG_DATUM(idx));
+					paramType =
+						resolveDynamicType(self, paramType, idx, fcinfo);
+				coerced = Type_coerceDatum(paramType, arg);
 				if ( passPrimitive )
 					s_primitiveParameters[primIdx++] = coerced;
 				else
@@ -744,6 +1242,9 @@ Datum Function_invoke(Function self, PG_FUNCTION_ARGS)
 		? Type_invokeSRF(invokerType, self, fcinfo)
 		: Type_invoke(invokerType, self, fcinfo);
 
+	if ( NULL != memo )
+		pljava_Memo_store(memo, fcinfo, memoKey, retVal);
+
 	return retVal;
 }
 
@@ -992,6 +1493,32 @@ JNIEXPORT jboolean JNICALL
 	return returnTypeIsOutParameter;
 }
 
+/*
+ * Class:     org_postgresql_pljava_internal_Function
+ * Method:    _storeToAggSerial
+ * Signature: (JZ)V
+ *
+ * After _storeToNonUDT has resolved the types of an aggregate's serialize or
+ * deserialize function by their oids, put the aggregate state forms of bytea
+ * in place of the serialize function's return type or the deserialize
+ * function's first parameter type.
+ */
+JNIEXPORT void JNICALL
+	Java_org_postgresql_pljava_internal_Function__1storeToAggSerial(
+	JNIEnv *env, jclass jFunctionClass, jlong wrappedPtr, jboolean isSerialize)
+{
+	Ptr2Long p2l;
+	Function self;
+
+	p2l.longVal = wrappedPtr;
+	self = (Function)p2l.ptrVal;
+
+	if ( JNI_TRUE == isSerialize )
+		self->func.nonudt.returnType = pljava_Internal_aggStateBytes();
+	else
+		self->func.nonudt.paramTypes[0] = pljava_Internal_aggStateInput();
+}
+
 /*
  * Class:     org_postgresql_pljava_internal_Function
  * Method:    _storeToUDT
@@ -1113,17 +1640,34 @@ JNIEXPORT void JNICALL
 		javaNameString = JNI_getObjectArrayElement(explicitTypes,
 			coerceOutAndSingleton ? 0 : index);
 
-		javaName = String_createNTS(javaNameString);
+		/*
+		 * Type internal, as the state of an aggregate implemented in Java,
+		 * stands for whatever class the Java method declares; the type stays
+		 * as it is, and only the class name is recorded. A planner support
+		 * function's SupportRequest parameter and boolean result are the
+		 * exceptions.
+		 */
+		if ( INTERNALOID == Type_getOid(origType) )
+		{
+			javaName = String_createNTS(javaNameString);
+			replType = pljava_SupportRequest_reconcile(
+				origType, javaName, actOnReturnType);
+			pfree(javaName);
+		}
+		else
+		{
+			javaName = String_createNTS(javaNameString);
 
-		replType = Type_fromJavaType(typeId, javaName);
-		pfree(javaName);
+			replType = Type_fromJavaType(typeId, javaName);
+			pfree(javaName);
 
-		if ( ! Type_canReplaceType(replType, origType) )
-		{
-			if ( coerceOutAndSingleton )
-				replType = Type_getCoerceOut(replType, origType);
-			else
-				replType = Type_getCoerceIn(replType, origType);
+			if ( ! Type_canReplaceType(replType, origType) )
+			{
+				if ( coerceOutAndSingleton )
+					replType = Type_getCoerceOut(replType, origType);
+				else
+					replType = Type_getCoerceIn(replType, origType);
+			}
 		}
 
 		if ( actOnReturnType )
@@ -1156,3 +1700,25 @@ JNIEXPORT void JNICALL
 
 	END_NATIVE
 }
+
+/*
+ * Class:     org_postgresql_pljava_internal_Function
+ * Method:    _preload
+ * Signature: (IZ)V
+ */
+JNIEXPORT void JNICALL
+	Java_org_postgresql_pljava_internal_Function__1preload(
+	JNIEnv *env, jclass jFunctionClass, jint funcOid, jboolean forTrigger)
+{
+	BEGIN_NATIVE_NO_ERRCHECK
+	PG_TRY();
+	{
+		Function_getFunction((Oid)funcOid, JNI_TRUE == forTrigger, false, true);
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR(PG_FUNCNAME_MACRO);
+	}
+	PG_END_TRY();
+	END_NATIVE
+}
@@ -12,6 +12,7 @@
  */
 #include <postgres.h>
 #include <executor/spi.h>
+#include <access/xact.h>
 
 #include "org_postgresql_pljava_jdbc_Invocation.h"
 #include "pljava/Invocation.h"
@@ -69,7 +70,12 @@ void Invocation_assertConnect(void)
 	int rslt;
 	if(!currentInvocation->hasConnected)
 	{
+#if PG_VERSION_NUM >= 110000
+		rslt = SPI_connect_ext(
+			currentInvocation->nonAtomic ? SPI_OPT_NONATOMIC : 0);
+#else
 		rslt = SPI_connect();
+#endif
 		if ( SPI_OK_CONNECT != rslt )
 			elog(ERROR, "SPI_connect returned %s",
 						SPI_result_code_string(rslt));
@@ -105,7 +111,9 @@ void Invocation_pushBootContext(Invocation* ctx)
 {
 	ctx->invocation      = 0;
 	ctx->function        = 0;
+	ctx->callSite        = 0;
 	ctx->pushedFrame     = false;
+	ctx->hasDualState    = false;
 	ctx->trusted         = false;
 	ctx->hasConnected    = false;
 	ctx->upperContext    = CurrentMemoryContext;
@@ -114,6 +122,9 @@ void Invocation_pushBootContext(Invocation* ctx)
 	ctx->previous        = 0;
 #if PG_VERSION_NUM >= 100000
 	ctx->triggerData     = 0;
+#endif
+#if PG_VERSION_NUM >= 110000
+	ctx->nonAtomic       = false;
 #endif
 	currentInvocation    = ctx;
 	++s_callLevel;
@@ -130,15 +141,21 @@ void Invocation_pushInvocation(Invocation* ctx, bool trusted)
 	JNI_pushLocalFrame(LOCAL_FRAME_SIZE);
 	ctx->invocation      = 0;
 	ctx->function        = 0;
+	ctx->callSite        = 0;
 	ctx->pushedFrame     = false;
+	ctx->hasDualState    = false;
 	ctx->trusted         = trusted;
 	ctx->hasConnected    = false;
 	ctx->upperContext    = CurrentMemoryContext;
 	ctx->errorOccurred   = false;
 	ctx->inExprContextCB = false;
+	ctx->nestLevel       = GetCurrentTransactionNestLevel();
 	ctx->previous        = currentInvocation;
 #if PG_VERSION_NUM >= 100000
 	ctx->triggerData     = 0;
+#endif
+#if PG_VERSION_NUM >= 110000
+	ctx->nonAtomic       = false;
 #endif
 	currentInvocation   = ctx;
 	Backend_setJavaSecurity(trusted);
@@ -168,14 +185,21 @@ void Invocation_popInvocation(bool wasException)
 
 	/*
 	 * Do nativeRelease for any DualState instances scoped to this invocation.
+	 * Skipped when none were created, sparing the common case the upcall.
 	 */
-	pljava_DualState_nativeRelease(currentInvocation);
+	if ( currentInvocation->hasDualState )
+		pljava_DualState_nativeRelease(currentInvocation);
 
 	/*
 	 * Check for any DualState objects that became unreachable and can be freed.
 	 */
 	pljava_DualState_cleanEnqueuedInstances();
 
+	/*
+	 * Likewise for saved call site states whose memory context went away.
+	 */
+	Function_releaseDeferredStates();
+
 	if(currentInvocation->hasConnected)
 		SPI_finish();
 
@@ -0,0 +1,456 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+#include <postgres.h>
+#include <access/hash.h>
+#if PG_VERSION_NUM >= 90300
+#include <access/htup_details.h>
+#endif
+#include <catalog/pg_proc.h>
+#include <catalog/pg_type.h>
+#include <utils/datum.h>
+#include <utils/lsyscache.h>
+#include <utils/memutils.h>
+
+#include "org_postgresql_pljava_internal_Memo_Statistics.h"
+#include "pljava/pljava.h"
+#include "pljava/Memo.h"
+#include "pljava/PgObject.h"
+#include "pljava/JNICalls.h"
+
+int pljavaMemoizeCacheSize;
+
+/*
+ * An entry holds copies of the arguments and the result, and the collation of
+ * the call. The arguments of a varlena type are kept detoasted, and compared
+ * (as all by-reference arguments are) by their bytes. Equal values with
+ * different bytes only cost a miss.
+ */
+typedef struct MemoEntry_ *MemoEntry;
+
+struct MemoEntry_
+{
+	MemoEntry chain;          /* next in the hash bucket */
+	MemoEntry newer;          /* LRU list, most recently used at the head */
+	MemoEntry older;
+	uint32    hash;
+	Oid       collation;
+	bool      resultIsNull;
+	Datum     result;
+	Datum     args[FLEXIBLE_ARRAY_MEMBER]; /* followed by nargs null flags */
+};
+
+/*
+ * The key of one call, made by pljava_Memo_lookup and used again by
+ * pljava_Memo_store, so each by-reference argument is detoasted only once per
+ * call. It is allocated in the memory context current during the call, as are
+ * the detoasted arguments it points to.
+ */
+struct MemoKey_
+{
+	uint32 hash;
+	Oid    collation;
+	struct
+	{
+		char *bytes;
+		Size  size;
+	}      arg[FLEXIBLE_ARRAY_MEMBER];
+};
+
+/*
+ * The memory context, and the entries in it, are made only when the first
+ * result is stored, so a function that is eligible costs nothing more than
+ * this struct while pljava.memoize_cache_size is zero.
+ */
+struct Memo_
+{
+	MemoryContext cxt;
+	int        nargs;
+	int16     *argLen;
+	bool      *argByVal;
+	int16      resultLen;
+	bool       resultByVal;
+	int        nbuckets; /* a power of two, or zero before first store */
+	int        count;
+	MemoEntry *buckets;
+	MemoEntry  newest;
+	MemoEntry  oldest;
+};
+
+/*
+ * Totals for the backend, read (without locking, from any thread) by the
+ * MemoizationStatistics bean.
+ */
+static volatile int64 s_hits;
+static volatile int64 s_misses;
+static volatile int64 s_evictions;
+static volatile int64 s_entries;
+
+#define ENTRY_NULLS(m, e) ((bool *)&(e)->args[(m)->nargs])
+
+static bool eligibleType(Oid typeId)
+{
+	char typtype = get_typtype(typeId);
+	return TYPTYPE_PSEUDO != typtype  &&  TYPTYPE_COMPOSITE != typtype;
+}
+
+Memo pljava_Memo_create(HeapTuple procTup)
+{
+	Form_pg_proc procStruct = (Form_pg_proc)GETSTRUCT(procTup);
+	int nargs = procStruct->pronargs;
+	Memo self;
+	int i;
+
+	if ( PROVOLATILE_IMMUTABLE != procStruct->provolatile
+		|| procStruct->proretset  ||  0 == nargs
+		|| ! eligibleType(procStruct->prorettype) )
+		return NULL;
+	for ( i = 0; i < nargs; ++ i )
+		if ( ! eligibleType(procStruct->proargtypes.values[i]) )
+			return NULL;
+
+	self = MemoryContextAllocZero(TopMemoryContext, sizeof *self);
+	self->nargs = nargs;
+	self->argLen =
+		MemoryContextAlloc(TopMemoryContext, nargs * sizeof *self->argLen);
+	self->argByVal =
+		MemoryContextAlloc(TopMemoryContext, nargs * sizeof *self->argByVal);
+	for ( i = 0; i < nargs; ++ i )
+		get_typlenbyval(procStruct->proargtypes.values[i],
+			&self->argLen[i], &self->argByVal[i]);
+	get_typlenbyval(procStruct->prorettype,
+		&self->resultLen, &self->resultByVal);
+	return self;
+}
+
+/*
+ * The bytes of a by-reference argument, detoasted if it is a varlena. The
+ * pointer is to the argument itself if it needed no detoasting.
+ */
+static char *argBytes(Datum d, int16 typLen, Size *size)
+{
+	if ( -1 == typLen )
+	{
+		struct varlena *v =
+			pg_detoast_datum_packed((struct varlena *)DatumGetPointer(d));
+		*size = VARSIZE_ANY(v);
+		return (char *)v;
+	}
+	*size = datumGetSize(d, false, typLen);
+	return DatumGetPointer(d);
+}
+
+/*
+ * Make the key of a call: its by-reference arguments detoasted, and its
+ * collation, and the hash of both with the by-value arguments.
+ */
+static MemoKey makeKey(Memo self, PG_FUNCTION_ARGS)
+{
+	MemoKey key = palloc(offsetof(struct MemoKey_, arg)
+		+ self->nargs * sizeof key->arg[0]);
+	uint32 h = DatumGetUInt32(hash_uint32(PG_GET_COLLATION()));
+	int i;
+
+	key->collation = PG_GET_COLLATION();
+	for ( i = 0; i < self->nargs; ++ i )
+	{
+		uint32 ah;
+		h = (h << 1) | (h >> 31);
+		key->arg[i].bytes = NULL;
+		if ( PG_ARGISNULL(i) )
+			ah = 0x9e3779b9;
+		else if ( self->argByVal[i] )
+		{
+			Datum d = PG_GETARG_DATUM(i);
+			ah = DatumGetUInt32(hash_any((unsigned char *)&d, sizeof d));
+		}
+		else
+		{
+			key->arg[i].bytes = argBytes(
+				PG_GETARG_DATUM(i), self->argLen[i], &key->arg[i].size);
+			ah = DatumGetUInt32(hash_any(
+				(unsigned char *)key->arg[i].bytes, key->arg[i].size));
+		}
+		h ^= ah;
+	}
+	key->hash = h;
+	return key;
+}
+
+static bool argsMatch(Memo self, MemoEntry e, MemoKey key, PG_FUNCTION_ARGS)
+{
+	bool *nulls = ENTRY_NULLS(self, e);
+	int i;
+
+	if ( key->collation != e->collation )
+		return false;
+	for ( i = 0; i < self->nargs; ++ i )
+	{
+		if ( PG_ARGISNULL(i) != nulls[i] )
+			return false;
+		if ( nulls[i] )
+			continue;
+		if ( self->argByVal[i] )
+		{
+			if ( PG_GETARG_DATUM(i) != e->args[i] )
+				return false;
+		}
+		else
+		{
+			Size esize;
+			char *ep = argBytes(e->args[i], self->argLen[i], &esize);
+			if ( key->arg[i].size != esize
+				||  0 != memcmp(key->arg[i].bytes, ep, esize) )
+				return false;
+		}
+	}
+	return true;
+}
+
+static void unlinkLRU(Memo self, MemoEntry e)
+{
+	if ( NULL == e->newer )
+		self->newest = e->older;
+	else
+		e->newer->older = e->older;
+	if ( NULL == e->older )
+		self->oldest = e->newer;
+	else
+		e->older->newer = e->newer;
+}
+
+static void linkNewest(Memo self, MemoEntry e)
+{
+	e->newer = NULL;
+	e->older = self->newest;
+	if ( NULL == self->newest )
+		self->oldest = e;
+	else
+		self->newest->newer = e;
+	self->newest = e;
+}
+
+bool pljava_Memo_lookup(
+	Memo self, PG_FUNCTION_ARGS, MemoKey *keyp, Datum *result)
+{
+	MemoEntry e;
+	MemoKey key = makeKey(self, fcinfo);
+	uint32 h = key->hash;
+
+	*keyp = key;
+	if ( 0 == self->nbuckets )
+	{
+		++ s_misses;
+		return false;
+	}
+
+	for ( e = self->buckets[h & (self->nbuckets - 1)]; NULL != e; e = e->chain )
+	{
+		if ( h != e->hash  ||  ! argsMatch(self, e, key, fcinfo) )
+			continue;
+		if ( e != self->newest )
+		{
+			unlinkLRU(self, e);
+			linkNewest(self, e);
+		}
+		++ s_hits;
+		pfree(key);
+		*keyp = NULL;
+		fcinfo->isnull = e->resultIsNull;
+		*result = e->resultIsNull ? (Datum)0
+			: datumCopy(e->result, self->resultByVal, self->resultLen);
+		return true;
+	}
+	++ s_misses;
+	return false;
+}
+
+static void freeEntry(Memo self, MemoEntry e)
+{
+	bool *nulls = ENTRY_NULLS(self, e);
+	int i;
+
+	for ( i = 0; i < self->nargs; ++ i )
+		if ( ! nulls[i]  &&  ! self->argByVal[i] )
+			pfree(DatumGetPointer(e->args[i]));
+	if ( ! e->resultIsNull  &&  ! self->resultByVal )
+		pfree(DatumGetPointer(e->result));
+	pfree(e);
+}
+
+static void evictOldest(Memo self)
+{
+	MemoEntry e = self->oldest;
+	MemoEntry *link = &self->buckets[e->hash & (self->nbuckets - 1)];
+
+	while ( *link != e )
+		link = &(*link)->chain;
+	*link = e->chain;
+	unlinkLRU(self, e);
+	freeEntry(self, e);
+	-- self->count;
+	-- s_entries;
+	++ s_evictions;
+}
+
+void pljava_Memo_store(
+	Memo self, PG_FUNCTION_ARGS, MemoKey key, Datum result)
+{
+	MemoryContext oldcxt;
+	MemoEntry e;
+	bool *nulls;
+	uint32 hash = key->hash;
+	int i;
+
+	if ( 0 == self->nbuckets )
+	{
+		int n = 16;
+		while ( n < pljavaMemoizeCacheSize )
+			n <<= 1;
+		if ( NULL == self->cxt )
+			self->cxt = AllocSetContextCreate(TopMemoryContext,
+				"PL/Java memoized results", ALLOCSET_SMALL_SIZES);
+		self->buckets = MemoryContextAllocZero(self->cxt, n * sizeof (MemoEntry));
+		self->nbuckets = n;
+	}
+
+	while ( 0 < self->count  &&  self->count >= pljavaMemoizeCacheSize )
+		evictOldest(self);
+
+	oldcxt = MemoryContextSwitchTo(self->cxt);
+	e = palloc(offsetof(struct MemoEntry_, args)
+		+ self->nargs * (sizeof (Datum) + sizeof (bool)));
+	nulls = ENTRY_NULLS(self, e);
+	for ( i = 0; i < self->nargs; ++ i )
+	{
+		nulls[i] = PG_ARGISNULL(i);
+		if ( nulls[i] )
+			e->args[i] = (Datum)0;
+		else if ( self->argByVal[i] )
+			e->args[i] = PG_GETARG_DATUM(i);
+		else
+		{
+			char *copy = palloc(key->arg[i].size);
+			memcpy(copy, key->arg[i].bytes, key->arg[i].size);
+			e->args[i] = PointerGetDatum(copy);
+		}
+	}
+	e->hash = hash;
+	e->collation = key->collation;
+	e->resultIsNull = fcinfo->isnull;
+	e->result = e->resultIsNull ? (Datum)0
+		: datumCopy(result, self->resultByVal, self->resultLen);
+	MemoryContextSwitchTo(oldcxt);
+
+	e->chain = self->buckets[hash & (self->nbuckets - 1)];
+	self->buckets[hash & (self->nbuckets - 1)] = e;
+	linkNewest(self, e);
+	++ self->count;
+	++ s_entries;
+	pfree(key);
+}
+
+void pljava_Memo_free(Memo self)
+{
+	s_entries -= self->count;
+	if ( NULL != self->cxt )
+		MemoryContextDelete(self->cxt);
+	pfree(self->argByVal);
+	pfree(self->argLen);
+	pfree(self);
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_Memo_Statistics
+ * Method:    _hits
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL
+Java_org_postgresql_pljava_internal_Memo_00024Statistics__1hits(
+	JNIEnv *env, jclass cls)
+{
+	return s_hits;
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_Memo_Statistics
+ * Method:    _misses
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL
+Java_org_postgresql_pljava_internal_Memo_00024Statistics__1misses(
+	JNIEnv *env, jclass cls)
+{
+	return s_misses;
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_Memo_Statistics
+ * Method:    _evictions
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL
+Java_org_postgresql_pljava_internal_Memo_00024Statistics__1evictions(
+	JNIEnv *env, jclass cls)
+{
+	return s_evictions;
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_Memo_Statistics
+ * Method:    _entries
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL
+Java_org_postgresql_pljava_internal_Memo_00024Statistics__1entries(
+	JNIEnv *env, jclass cls)
+{
+	return s_entries;
+}
+
+void pljava_Memo_initialize(void)
+{
+	jclass cls;
+	JNINativeMethod methods[] =
+	{
+		{
+		"_hits",
+		"()J",
+		Java_org_postgresql_pljava_internal_Memo_00024Statistics__1hits
+		},
+		{
+		"_misses",
+		"()J",
+		Java_org_postgresql_pljava_internal_Memo_00024Statistics__1misses
+		},
+		{
+		"_evictions",
+		"()J",
+		Java_org_postgresql_pljava_internal_Memo_00024Statistics__1evictions
+		},
+		{
+		"_entries",
+		"()J",
+		Java_org_postgresql_pljava_internal_Memo_00024Statistics__1entries
+		},
+		{ 0, 0, 0 }
+	};
+
+	cls = PgObject_getJavaClass(
+		"org/postgresql/pljava/internal/Memo$Statistics");
+	PgObject_registerNatives2(cls, methods);
+	JNI_deleteLocalRef(cls);
+
+	cls = PgObject_getJavaClass("org/postgresql/pljava/internal/Memo");
+	JNI_callStaticVoidMethod(cls,
+		PgObject_getStaticJavaMethod(cls, "register", "()V"));
+	JNI_deleteLocalRef(cls);
+}
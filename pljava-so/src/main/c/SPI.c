@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2004-2019 Tada AB and other contributors, as listed below.
+ * Copyright (c) 2004-2020 Tada AB and other contributors, as listed below.
  *
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the The BSD 3-Clause License
@@ -19,10 +19,15 @@
 
 #include <funcapi.h>
 #include <access/xact.h>
+#include <catalog/pg_type.h>
 #if defined(NEED_MISCADMIN_FOR_STACK_BASE)
 #include <miscadmin.h>
 #endif
 
+static void endTransaction(JNIEnv* env, bool commit);
+static jint doubleToJint(double d);
+static jlong doubleToJlong(double d);
+
 #define CONFIRMCONST(c) \
 StaticAssertStmt((c) == (org_postgresql_pljava_internal_##c), \
 	"Java/C value mismatch for " #c)
@@ -91,10 +96,30 @@ void SPI_initialize(void)
 		Java_org_postgresql_pljava_internal_SPI__1getTupTable
 		},
 		{
+		"_takeTupTable",
+		"(Lorg/postgresql/pljava/internal/TupleDesc;)Lorg/postgresql/pljava/internal/TupleTable;",
+		Java_org_postgresql_pljava_internal_SPI__1takeTupTable
+		},
+		{
 		"_freeTupTable",
 		"()V",
 		Java_org_postgresql_pljava_internal_SPI__1freeTupTable
 		},
+		{
+		"_getColumns",
+		"([I[B[Ljava/lang/Object;[[ZI)I",
+		Java_org_postgresql_pljava_internal_SPI__1getColumns
+		},
+		{
+		"_commit",
+		"()V",
+		Java_org_postgresql_pljava_internal_SPI__1commit
+		},
+		{
+		"_rollback",
+		"()V",
+		Java_org_postgresql_pljava_internal_SPI__1rollback
+		},
 		{ 0, 0, 0 }};
 
 	PgObject_registerNatives("org/postgresql/pljava/internal/SPI", methods);
@@ -179,6 +204,45 @@ Java_org_postgresql_pljava_internal_SPI__1getTupTable(JNIEnv* env, jclass cls, j
 	return tupleTable;
 }
 
+/*
+ * Class:     org_postgresql_pljava_internal_SPI
+ * Method:    _takeTupTable
+ * Signature: (Lorg/postgresql/pljava/internal/TupleDesc;)Lorg/postgresql/pljava/internal/TupleTable;
+ *
+ * Like _getTupTable, but the TupleTable refers to the rows in place, and
+ * becomes responsible for freeing SPI_tuptable, which is then forgotten here.
+ *
+ * That is only safe when the table can live until the Invocation is popped.
+ * One fetched inside a subtransaction begun during the call is freed by
+ * AtEOSubXact_SPI if that subtransaction is rolled back (perhaps as a
+ * lingering savepoint, before the Invocation's DualStates are released), and
+ * a transaction-controlling procedure may commit or roll back under it; in
+ * those cases the rows are copied, as _getTupTable does, and SPI_tuptable is
+ * left for the caller's freeTupTable.
+ */
+JNIEXPORT jobject JNICALL
+Java_org_postgresql_pljava_internal_SPI__1takeTupTable(JNIEnv* env, jclass cls, jobject td)
+{
+	jobject tupleTable = 0;
+	if(SPI_tuptable != 0)
+	{
+		BEGIN_NATIVE
+		if ( GetCurrentTransactionNestLevel() > currentInvocation->nestLevel
+#if PG_VERSION_NUM >= 110000
+			|| currentInvocation->nonAtomic
+#endif
+		)
+			tupleTable = TupleTable_create(SPI_tuptable, td);
+		else
+		{
+			tupleTable = TupleTable_createInPlace(SPI_tuptable, td);
+			SPI_tuptable = 0;
+		}
+		END_NATIVE
+	}
+	return tupleTable;
+}
+
 /*
  * Class:     org_postgresql_pljava_internal_SPI
  * Method:    _freeTupTable
@@ -195,3 +259,235 @@ Java_org_postgresql_pljava_internal_SPI__1freeTupTable(JNIEnv* env, jclass cls)
 		END_NATIVE
 	}
 }
+
+/*
+ * Class:     org_postgresql_pljava_internal_SPI
+ * Method:    _getColumns
+ * Signature: ([I[B[Ljava/lang/Object;[[ZI)I
+ *
+ * Copies the chosen columns of every row in SPI_tuptable into the Java arrays
+ * in values (and nulls, where given), starting at offset, one column at a time
+ * through a buffer, so the JNI cost is per column, not per row or value. The
+ * Java caller has checked the column types and array lengths; kinds holds 'I',
+ * 'J', or 'D' for an int[], long[], or double[] target.
+ */
+JNIEXPORT jint JNICALL
+Java_org_postgresql_pljava_internal_SPI__1getColumns(JNIEnv* env, jclass cls, jintArray columns, jbyteArray kinds, jobjectArray values, jobjectArray nulls, jint offset)
+{
+	jint count = 0;
+	if(SPI_tuptable != 0)
+	{
+		BEGIN_NATIVE
+		PG_TRY();
+		{
+			SPITupleTable* tt = SPI_tuptable;
+			TupleDesc td = tt->tupdesc;
+			jsize ncols = JNI_getArrayLength(columns);
+			jint* cols = (jint*)palloc(ncols * sizeof(jint));
+			jbyte* knds = (jbyte*)palloc(ncols * sizeof(jbyte));
+			jboolean* nullBuf;
+			jlong* longBuf;
+			jint* intBuf;
+			jdouble* doubleBuf;
+			jsize c;
+			jint r;
+
+			count = (jint)SPI_processed;
+			nullBuf = (jboolean*)palloc((count + 1) * sizeof(jboolean));
+			longBuf = (jlong*)palloc((count + 1) * sizeof(jlong));
+			intBuf = (jint*)longBuf;
+			doubleBuf = (jdouble*)longBuf;
+			JNI_getIntArrayRegion(columns, 0, ncols, cols);
+			JNI_getByteArrayRegion(kinds, 0, ncols, knds);
+
+			for ( c = 0 ; c < ncols ; ++ c )
+			{
+				Oid typeId = SPI_gettypeid(td, cols[c]);
+				jobject target;
+				jobject nullTarget;
+
+				for ( r = 0 ; r < count ; ++ r )
+				{
+					bool isNull = false;
+					Datum d = SPI_getbinval(tt->vals[r], td, cols[c], &isNull);
+					jlong l = 0;
+					double f = 0;
+					bool integral = true;
+
+					nullBuf[r] = isNull ? JNI_TRUE : JNI_FALSE;
+					if ( ! isNull )
+					{
+						switch ( typeId )
+						{
+						case INT2OID:
+							l = DatumGetInt16(d);
+							break;
+						case INT4OID:
+							l = DatumGetInt32(d);
+							break;
+						case INT8OID:
+							l = DatumGetInt64(d);
+							break;
+						case FLOAT4OID:
+							f = DatumGetFloat4(d);
+							integral = false;
+							break;
+						case FLOAT8OID:
+							f = DatumGetFloat8(d);
+							integral = false;
+							break;
+						default:
+							ereport(ERROR, (
+								errcode(ERRCODE_DATATYPE_MISMATCH),
+								errmsg("column %d is not of a numeric type "
+									"that can be copied to a Java array",
+									cols[c])));
+						}
+					}
+
+					switch ( knds[c] )
+					{
+					case 'I':
+						intBuf[r] = integral ? (jint)l : doubleToJint(f);
+						break;
+					case 'J':
+						longBuf[r] = integral ? l : doubleToJlong(f);
+						break;
+					default:
+						doubleBuf[r] = integral ? (jdouble)l : f;
+					}
+				}
+
+				target = JNI_getObjectArrayElement(values, c);
+				switch ( knds[c] )
+				{
+				case 'I':
+					JNI_setIntArrayRegion(target, offset, count, intBuf);
+					break;
+				case 'J':
+					JNI_setLongArrayRegion(target, offset, count, longBuf);
+					break;
+				default:
+					JNI_setDoubleArrayRegion(target, offset, count, doubleBuf);
+				}
+				JNI_deleteLocalRef(target);
+
+				if ( 0 != nulls )
+				{
+					nullTarget = JNI_getObjectArrayElement(nulls, c);
+					if ( 0 != nullTarget )
+					{
+						JNI_setBooleanArrayRegion(
+							nullTarget, offset, count, nullBuf);
+						JNI_deleteLocalRef(nullTarget);
+					}
+				}
+			}
+
+			pfree(longBuf);
+			pfree(nullBuf);
+			pfree(knds);
+			pfree(cols);
+		}
+		PG_CATCH();
+		{
+			Exception_throw_ERROR("SPI_getbinval");
+		}
+		PG_END_TRY();
+		END_NATIVE
+	}
+	return count;
+}
+
+/*
+ * Convert as a Java (int) cast would: NaN to zero, out-of-range values to the
+ * nearest limit, where a C cast would be undefined.
+ */
+static jint doubleToJint(double d)
+{
+	if ( d != d )
+		return 0;
+	if ( d >= 2147483647.0 )
+		return 2147483647;
+	if ( d <= -2147483648.0 )
+		return (jint)(-2147483647 - 1);
+	return (jint)d;
+}
+
+/*
+ * As doubleToJint, for a Java (long) cast.
+ */
+static jlong doubleToJlong(double d)
+{
+	if ( d != d )
+		return 0;
+	if ( d >= 9223372036854775807.0 )
+		return (jlong)INT64CONST(0x7FFFFFFFFFFFFFFF);
+	if ( d <= -9223372036854775808.0 )
+		return (jlong)(-INT64CONST(0x7FFFFFFFFFFFFFFF) - 1);
+	return (jlong)d;
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_SPI
+ * Method:    _commit
+ * Signature: ()V
+ */
+JNIEXPORT void JNICALL
+Java_org_postgresql_pljava_internal_SPI__1commit(JNIEnv* env, jclass cls)
+{
+	BEGIN_NATIVE
+	endTransaction(env, true);
+	END_NATIVE
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_SPI
+ * Method:    _rollback
+ * Signature: ()V
+ */
+JNIEXPORT void JNICALL
+Java_org_postgresql_pljava_internal_SPI__1rollback(JNIEnv* env, jclass cls)
+{
+	BEGIN_NATIVE
+	endTransaction(env, false);
+	END_NATIVE
+}
+
+/*
+ * Commit or roll back the current transaction and start a new one, as a
+ * procedure invoked by a CALL that permits it may do. SPI itself reports the
+ * error (invalid transaction termination) if the current invocation is not
+ * such a one, or a subtransaction (a Savepoint) is active.
+ *
+ * Portals are dropped at the end of the transaction, and their Java Portal
+ * objects, like any DualState scoped to a transaction resource owner, are
+ * released with them. ExecutionPlans are kept (SPI_keepplan) and carry across.
+ */
+static void endTransaction(JNIEnv* env, bool commit)
+{
+#if PG_VERSION_NUM >= 110000
+	STACK_BASE_VARS
+	STACK_BASE_PUSH(env)
+	PG_TRY();
+	{
+		Invocation_assertConnect();
+		if ( commit )
+			SPI_commit();
+		else
+			SPI_rollback();
+#if PG_VERSION_NUM < 150000
+		SPI_start_transaction();
+#endif
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR(commit ? "SPI_commit" : "SPI_rollback");
+	}
+	PG_END_TRY();
+	STACK_BASE_POP()
+#else
+	Exception_throw(ERRCODE_FEATURE_NOT_SUPPORTED,
+		"transaction control in a procedure requires PostgreSQL 11 or later");
+#endif
+}
@@ -34,6 +34,7 @@ jobject pljava_SQLInputFromTuple_create(HeapTupleHeader hth)
 
 	p2lht.ptrVal = hth;
 	p2lro.ptrVal = currentInvocation;
+	currentInvocation->hasDualState = true;
 
 	result =
 		JNI_newObjectLocked(s_SQLInputFromTuple_class, s_SQLInputFromTuple_init,
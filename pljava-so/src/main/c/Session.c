@@ -10,6 +10,8 @@
 #include <miscadmin.h>
 #include "org_postgresql_pljava_internal_Session.h"
 #include "pljava/Session.h"
+#include "pljava/Exception.h"
+#include "pljava/Function.h"
 #include "pljava/type/AclId.h"
 
 extern void Session_initialize(void);
@@ -21,6 +23,31 @@ void Session_initialize(void)
 		"(Lorg/postgresql/pljava/internal/AclId;Z)Z",
 	  	Java_org_postgresql_pljava_internal_Session__1setUser
 		},
+		{
+		"_interruptPendingFlag",
+		"()Ljava/nio/ByteBuffer;",
+		Java_org_postgresql_pljava_internal_Session__1interruptPendingFlag
+		},
+		{
+		"_pendingInterrupt",
+		"()I",
+		Java_org_postgresql_pljava_internal_Session__1pendingInterrupt
+		},
+		{
+		"_checkForInterrupts",
+		"()V",
+		Java_org_postgresql_pljava_internal_Session__1checkForInterrupts
+		},
+		{
+		"_getCallSiteState",
+		"()Ljava/lang/Object;",
+		Java_org_postgresql_pljava_internal_Session__1getCallSiteState
+		},
+		{
+		"_setCallSiteState",
+		"(Ljava/lang/Object;)V",
+		Java_org_postgresql_pljava_internal_Session__1setCallSiteState
+		},
 		{ 0, 0, 0 }};
 
 	PgObject_registerNatives("org/postgresql/pljava/internal/Session", methods);
@@ -72,3 +99,111 @@ Java_org_postgresql_pljava_internal_Session__1setUser(
 	return wasLocalChange ? JNI_TRUE : JNI_FALSE;
 }
 
+/*
+ * Class:     org_postgresql_pljava_internal_Session
+ * Method:    _interruptPendingFlag
+ * Signature: ()Ljava/nio/ByteBuffer;
+ */
+JNIEXPORT jobject JNICALL
+Java_org_postgresql_pljava_internal_Session__1interruptPendingFlag(
+	JNIEnv* env, jclass cls)
+{
+	/*
+	 * This native method will use *env directly, not BEGIN_NATIVE / END_NATIVE:
+	 * it only wraps the address of a flag that signal handlers set, and is
+	 * called once, from the initializer of a holder class.
+	 *
+	 * On Windows, signals are only dispatched from CHECK_FOR_INTERRUPTS itself,
+	 * so the flag would never be seen set; return null, and the Java side will
+	 * always take the slow path.
+	 */
+#ifdef WIN32
+	return NULL;
+#else
+	if ( sizeof InterruptPending != sizeof (jint) )
+		return NULL;
+	return (*env)->NewDirectByteBuffer(
+		env, (void *)&InterruptPending, sizeof InterruptPending);
+#endif
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_Session
+ * Method:    _pendingInterrupt
+ * Signature: ()I
+ *
+ * Return 2 if a backend termination is pending, 1 if a query cancel is, or 0.
+ * Only reads flags that signal handlers set, so it needs no BEGIN_NATIVE and
+ * may be called on any thread.
+ */
+JNIEXPORT jint JNICALL
+Java_org_postgresql_pljava_internal_Session__1pendingInterrupt(
+	JNIEnv* env, jclass cls)
+{
+	if ( ProcDiePending )
+		return 2;
+	if ( QueryCancelPending )
+		return 1;
+	return 0;
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_Session
+ * Method:    _checkForInterrupts
+ * Signature: ()V
+ */
+JNIEXPORT void JNICALL
+Java_org_postgresql_pljava_internal_Session__1checkForInterrupts(
+	JNIEnv* env, jclass cls)
+{
+	BEGIN_NATIVE
+	PG_TRY();
+	{
+		CHECK_FOR_INTERRUPTS();
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR("CHECK_FOR_INTERRUPTS");
+	}
+	PG_END_TRY();
+	END_NATIVE
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_Session
+ * Method:    _getCallSiteState
+ * Signature: ()Ljava/lang/Object;
+ */
+JNIEXPORT jobject JNICALL
+Java_org_postgresql_pljava_internal_Session__1getCallSiteState(
+	JNIEnv* env, jclass cls)
+{
+	jobject result = 0;
+
+	BEGIN_NATIVE
+	result = Function_getCallSiteState();
+	END_NATIVE
+	return result;
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_Session
+ * Method:    _setCallSiteState
+ * Signature: (Ljava/lang/Object;)V
+ */
+JNIEXPORT void JNICALL
+Java_org_postgresql_pljava_internal_Session__1setCallSiteState(
+	JNIEnv* env, jclass cls, jobject state)
+{
+	BEGIN_NATIVE
+	PG_TRY();
+	{
+		Function_setCallSiteState(state);
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR("Function_setCallSiteState");
+	}
+	PG_END_TRY();
+	END_NATIVE
+}
@@ -46,6 +46,10 @@ static jclass s_ResultSetHandle_class;
 static jclass s_ResultSetPicker_class;
 static jmethodID s_ResultSetPicker_init;
 
+static jclass s_BatchResultSetProvider_class;
+static jclass s_BatchResultSetPicker_class;
+static jmethodID s_BatchResultSetPicker_init;
+
 static jclass s_SingleRowWriter_class;
 static jmethodID s_SingleRowWriter_init;
 static jmethodID s_SingleRowWriter_getTupleAndClear;
@@ -119,6 +123,15 @@ static jobject _Composite_getSRFProducer(Type self, Function fn)
 		JNI_deleteLocalRef(tmp);
 		tmp = wrapper;
 	}
+	else if(tmp != 0 && JNI_isInstanceOf(tmp, s_BatchResultSetProvider_class))
+	{
+		/* The picker forms each batch of rows into tuples in one native call,
+		 * then hands them out one at a time through the usual protocol.
+		 */
+		jobject wrapper = JNI_newObject(s_BatchResultSetPicker_class, s_BatchResultSetPicker_init, tmp);
+		JNI_deleteLocalRef(tmp);
+		tmp = wrapper;
+	}
 	return tmp;
 }
 
@@ -260,6 +273,10 @@ void Composite_initialize(void)
 	s_ResultSetPicker_class = JNI_newGlobalRef(PgObject_getJavaClass("org/postgresql/pljava/internal/ResultSetPicker"));
 	s_ResultSetPicker_init = PgObject_getJavaMethod(s_ResultSetPicker_class, "<init>", "(Lorg/postgresql/pljava/ResultSetHandle;)V");
 
+	s_BatchResultSetProvider_class = JNI_newGlobalRef(PgObject_getJavaClass("org/postgresql/pljava/BatchResultSetProvider"));
+	s_BatchResultSetPicker_class = JNI_newGlobalRef(PgObject_getJavaClass("org/postgresql/pljava/internal/BatchResultSetPicker"));
+	s_BatchResultSetPicker_init = PgObject_getJavaMethod(s_BatchResultSetPicker_class, "<init>", "(Lorg/postgresql/pljava/BatchResultSetProvider;)V");
+
 	s_CompositeClass = TypeClass_alloc2("type.Composite", sizeof(struct TypeClass_), sizeof(struct Composite_));
 	s_CompositeClass->JNISignature    = "Ljava/sql/ResultSet;";
 	s_CompositeClass->javaTypeName    = "java.sql.ResultSet";
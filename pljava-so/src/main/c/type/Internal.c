@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+#include <postgres.h>
+#include <catalog/pg_type.h>
+#include <utils/memutils.h>
+
+#include "pljava/type/Type_priv.h"
+#include "pljava/type/Internal.h"
+#include "pljava/Function.h"
+#include "pljava/Invocation.h"
+#include "pljava/SQLInputFromChunk.h"
+#include "pljava/SQLOutputToChunk.h"
+
+/*
+ * The pseudo-type internal, as the transition state of an aggregate
+ * implemented in Java. The Datum is a pointer to a JavaAggState, allocated in
+ * the aggregate's memory context, holding a global reference to the live Java
+ * object that is the state. The reference is released by a callback when that
+ * context is reset or deleted (deferred with Function_deferGlobalRef, as the
+ * reset can come in error cleanup), so the Java object lives as long as PG
+ * would have kept a state datum of its own, and is never serialized between
+ * rows.
+ *
+ * When a transition function returns the same Java object it was passed, the
+ * same Datum is returned, so the common case allocates nothing per row. When
+ * it returns a different object, and the state it was passed belongs to the
+ * same aggregate context, that state's reference is replaced in place, so
+ * there is still only the one global reference and callback per group.
+ */
+typedef struct
+{
+	jobject state;
+	MemoryContext context;
+#if PG_VERSION_NUM >= 90500
+	MemoryContextCallback callback;
+#endif
+} JavaAggState;
+
+#if PG_VERSION_NUM >= 90500
+static void _releaseState(void *arg)
+{
+	JavaAggState *s = (JavaAggState *)arg;
+	Function_deferGlobalRef(s->state);
+	s->state = NULL;
+}
+#endif
+
+static jvalue _Internal_coerceDatum(Type self, Datum arg)
+{
+	jvalue result;
+	JavaAggState *s = (JavaAggState *)DatumGetPointer(arg);
+	result.l = NULL == s ? NULL : s->state;
+	return result;
+}
+
+static Datum _Internal_coerceObject(Type self, jobject value)
+{
+	ereport(ERROR, (
+		errcode(ERRCODE_FEATURE_NOT_SUPPORTED),
+		errmsg("PL/Java can only return type internal from an aggregate "
+			"support function")));
+	return 0; /* not reached */
+}
+
+/*
+ * The SQLInputFromChunk made by _AggStateInput_coerceDatum for the parameter
+ * of a deserialize function, to be closed by _Internal_invoke once the
+ * function (and so readSQL) has returned.
+ */
+static jobject s_pendingInput;
+
+static Datum _Internal_invoke(Type self, Function fn, PG_FUNCTION_ARGS)
+{
+	MemoryContext aggcontext;
+	JavaAggState *s;
+	jobject value;
+	jobject input = s_pendingInput;
+
+	s_pendingInput = NULL;
+
+	if ( ! AggCheckCallContext(fcinfo, &aggcontext) )
+		return _Internal_coerceObject(self, NULL);
+
+	value = pljava_Function_refInvoke(fn);
+	if ( NULL != input )
+		SQLInputFromChunk_close(input);
+	if ( NULL == value )
+	{
+		fcinfo->isnull = true;
+		return 0;
+	}
+
+	/*
+	 * If this is a transition function handed back the state it was passed,
+	 * hand back the same Datum. If handed back a different object, make the
+	 * state it was passed refer to that instead, if the state lives in this
+	 * aggregate context (and so would be released along with it anyway).
+	 */
+	if ( 0 < PG_NARGS()  &&  ! PG_ARGISNULL(0)
+		&& INTERNALOID == get_fn_expr_argtype(fcinfo->flinfo, 0) )
+	{
+		s = (JavaAggState *)PG_GETARG_POINTER(0);
+		if ( NULL != s->state  &&  JNI_isSameObject(s->state, value) )
+		{
+			JNI_deleteLocalRef(value);
+			return PG_GETARG_DATUM(0);
+		}
+		if ( aggcontext == s->context )
+		{
+			jobject old = s->state;
+			s->state = JNI_newGlobalRef(value);
+			if ( NULL != old )
+				JNI_deleteGlobalRef(old);
+			JNI_deleteLocalRef(value);
+			return PG_GETARG_DATUM(0);
+		}
+	}
+
+#if PG_VERSION_NUM >= 90500
+	s = MemoryContextAllocZero(aggcontext, sizeof *s);
+	s->state = JNI_newGlobalRef(value);
+	s->context = aggcontext;
+	s->callback.func = _releaseState;
+	s->callback.arg = s;
+	MemoryContextRegisterResetCallback(aggcontext, &s->callback);
+#else
+	ereport(ERROR, (
+		errcode(ERRCODE_FEATURE_NOT_SUPPORTED),
+		errmsg("aggregates implemented in PL/Java require "
+			"PostgreSQL 9.5 or later")));
+#endif
+	JNI_deleteLocalRef(value);
+	return PointerGetDatum(s);
+}
+
+/*
+ * The bytea form of an aggregate state, for the serialize and deserialize
+ * functions that let PostgreSQL pass partial aggregates between parallel
+ * workers. The state class implements SQLData, and the bytes are whatever its
+ * writeSQL writes to an SQLOutputToChunk; going the other way, the Java code
+ * is handed an SQLInputFromChunk over the bytes, to construct the state with
+ * readSQL. These types are not registered; they are put in place only for
+ * those functions, by Function._storeToAggSerial, and never found for bytea
+ * in general.
+ */
+static Type s_AggStateBytes;
+static Type s_AggStateInput;
+
+static Datum _AggStateBytes_coerceObject(Type self, jobject value)
+{
+	jobject outputStream;
+	StringInfoData buffer;
+	int32 dataLen = -1;
+
+	initStringInfo(&buffer);
+	/* Reserve space for the varlena header. */
+	appendBinaryStringInfo(&buffer, (char*)&dataLen, sizeof(int32));
+
+	outputStream = SQLOutputToChunk_create(&buffer, false);
+	pljava_Function_udtWriteInvoke(value, outputStream);
+	SQLOutputToChunk_close(outputStream);
+
+	SET_VARSIZE(buffer.data, buffer.len);
+	return PointerGetDatum(buffer.data);
+}
+
+static jvalue _AggStateBytes_coerceDatum(Type self, Datum arg)
+{
+	jvalue result;
+	ereport(ERROR, (
+		errcode(ERRCODE_FEATURE_NOT_SUPPORTED),
+		errmsg("aggregate state bytes can only be a serialize function result")));
+	result.l = NULL; /* not reached */
+	return result;
+}
+
+/*
+ * The stream is closed by _Internal_invoke after the deserialize function
+ * returns, as the UDT code closes its stream after readSQL, so the detoasted
+ * bytes it covers cannot be read once the call is over.
+ */
+static jvalue _AggStateInput_coerceDatum(Type self, Datum arg)
+{
+	jvalue result;
+	bytea *bytes = DatumGetByteaPP(arg);
+	result.l = SQLInputFromChunk_create(
+		VARDATA_ANY(bytes), VARSIZE_ANY_EXHDR(bytes), false);
+	s_pendingInput = result.l;
+	return result;
+}
+
+static Datum _AggStateInput_coerceObject(Type self, jobject value)
+{
+	ereport(ERROR, (
+		errcode(ERRCODE_FEATURE_NOT_SUPPORTED),
+		errmsg("aggregate state input can only be a deserialize function "
+			"parameter")));
+	return 0; /* not reached */
+}
+
+Type pljava_Internal_aggStateBytes(void)
+{
+	return s_AggStateBytes;
+}
+
+Type pljava_Internal_aggStateInput(void)
+{
+	return s_AggStateInput;
+}
+
+/* Make this datatype available to the postgres system.
+ */
+extern void Internal_initialize(void);
+void Internal_initialize(void)
+{
+	TypeClass cls = TypeClass_alloc("type.internal");
+	cls->JNISignature = "Ljava/lang/Object;";
+	cls->javaTypeName = "java.lang.Object";
+	cls->invoke       = _Internal_invoke;
+	cls->coerceDatum  = _Internal_coerceDatum;
+	cls->coerceObject = _Internal_coerceObject;
+	Type_registerType(0, TypeClass_allocInstance(cls, INTERNALOID));
+
+	cls = TypeClass_alloc("type.internal.bytes");
+	cls->JNISignature = "Ljava/sql/SQLData;";
+	cls->javaTypeName = "java.sql.SQLData";
+	cls->coerceDatum  = _AggStateBytes_coerceDatum;
+	cls->coerceObject = _AggStateBytes_coerceObject;
+	s_AggStateBytes = TypeClass_allocInstance(cls, BYTEAOID);
+
+	cls = TypeClass_alloc("type.internal.input");
+	cls->JNISignature = "Ljava/sql/SQLInput;";
+	cls->javaTypeName = "java.sql.SQLInput";
+	cls->coerceDatum  = _AggStateInput_coerceDatum;
+	cls->coerceObject = _AggStateInput_coerceObject;
+	s_AggStateInput = TypeClass_allocInstance(cls, BYTEAOID);
+}
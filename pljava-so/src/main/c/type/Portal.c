@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2004-2019 Tada AB and other contributors, as listed below.
+ * Copyright (c) 2004-2020 Tada AB and other contributors, as listed below.
  *
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the The BSD 3-Clause License
@@ -12,9 +12,15 @@
  *   Chapman Flack
  */
 #include <postgres.h>
+#include <catalog/pg_type.h>
 #include <commands/portalcmds.h>
 #include <executor/spi.h>
 #include <executor/tuptable.h>
+#include <tcop/dest.h>
+#include <tcop/pquery.h>
+#include <utils/datum.h>
+#include <utils/lsyscache.h>
+#include <utils/memutils.h>
 
 #include "org_postgresql_pljava_internal_Portal.h"
 #include "pljava/Backend.h"
@@ -34,6 +40,62 @@
 static jclass    s_Portal_class;
 static jmethodID s_Portal_init;
 
+/*
+ * A DestReceiver for Portal._push, storing the values of each row, as the
+ * executor produces it, straight into per-column buffers: int2, int4, and int8
+ * values into a jlong buffer, float4 and float8 into a jdouble buffer, and
+ * values of other types, copied, into a Datum buffer in the batch context. No
+ * SPI_tuptable is built, and no tuple copied.
+ *
+ * Nothing here calls into Java. The receiver runs inside the executor, and
+ * coercing a value to Java can run user code (readSQL of an SQLData type, for
+ * one), which could in turn use SPI while the executor is mid-fetch. Only
+ * after PortalRunFetch has returned are the buffers copied to the Java arrays
+ * and the copied Datums coerced to their default Java classes.
+ */
+typedef struct
+{
+	DestReceiver  pub;
+	int           natts;
+	int           capacity;
+	int           count;
+	jbyte*        kinds;
+	Oid*          typeIds;
+	int16*        typLens;
+	bool*         typByVals;
+	jlong**       longs;
+	jdouble**     doubles;
+	Datum**       datums;
+	jboolean**    nulls;
+	MemoryContext batchContext;
+} PushReceiver;
+
+/*
+ * What is kept of a batch after _push returns: the copied Datums of the columns
+ * of other than primitive kinds (the others' entries are null), in the batch
+ * context that also holds this struct.
+ */
+typedef struct
+{
+	MemoryContext context;
+	int           natts;
+	Oid*          typeIds;
+	Datum**       datums;
+} PushedBatch;
+
+#if PG_VERSION_NUM >= 110000
+#define PortalGetHeapMemory(portal) ((portal)->portalContext)
+#endif
+
+#if PG_VERSION_NUM >= 90600
+static bool _PushReceiver_receiveSlot(TupleTableSlot* slot, DestReceiver* self);
+#else
+static void _PushReceiver_receiveSlot(TupleTableSlot* slot, DestReceiver* self);
+#endif
+static void _PushReceiver_startup(
+	DestReceiver* self, int operation, TupleDesc typeinfo);
+static void _PushReceiver_shutdown(DestReceiver* self);
+
 /*
  * org.postgresql.pljava.type.Portal type.
  */
@@ -84,6 +146,16 @@ void pljava_Portal_initialize(void)
 	  	Java_org_postgresql_pljava_internal_Portal__1fetch
 		},
 		{
+		"_push",
+		"(JI[B[Ljava/lang/Object;[[Z[J)I",
+	  	Java_org_postgresql_pljava_internal_Portal__1push
+		},
+		{
+		"_getPushedObject",
+		"(JJIILjava/lang/Class;)Ljava/lang/Object;",
+	  	Java_org_postgresql_pljava_internal_Portal__1getPushedObject
+		},
+		{
 		"_isAtEnd",
 	  	"(J)Z",
 	  	Java_org_postgresql_pljava_internal_Portal__1isAtEnd
@@ -174,6 +246,283 @@ Java_org_postgresql_pljava_internal_Portal__1fetch(JNIEnv* env, jclass clazz, jl
 	return result;
 }
 
+#if PG_VERSION_NUM >= 90600
+static bool
+#else
+static void
+#endif
+_PushReceiver_receiveSlot(TupleTableSlot* slot, DestReceiver* self)
+{
+	PushReceiver* pr = (PushReceiver*)self;
+	int row = pr->count;
+	MemoryContext curr;
+	int i;
+
+	if ( row < pr->capacity )
+	{
+		slot_getallattrs(slot);
+		curr = MemoryContextSwitchTo(pr->batchContext);
+		for ( i = 0 ; i < pr->natts ; ++ i )
+		{
+			Datum d = slot->tts_values[i];
+			bool isNull = slot->tts_isnull[i];
+
+			pr->nulls[i][row] = isNull ? JNI_TRUE : JNI_FALSE;
+			switch ( pr->kinds[i] )
+			{
+			case 'J':
+				if ( isNull )
+					pr->longs[i][row] = 0;
+				else if ( INT2OID == pr->typeIds[i] )
+					pr->longs[i][row] = DatumGetInt16(d);
+				else if ( INT4OID == pr->typeIds[i] )
+					pr->longs[i][row] = DatumGetInt32(d);
+				else
+					pr->longs[i][row] = DatumGetInt64(d);
+				break;
+			case 'D':
+				if ( isNull )
+					pr->doubles[i][row] = 0;
+				else if ( FLOAT4OID == pr->typeIds[i] )
+					pr->doubles[i][row] = DatumGetFloat4(d);
+				else
+					pr->doubles[i][row] = DatumGetFloat8(d);
+				break;
+			default:
+				pr->datums[i][row] = isNull ? 0
+					: datumCopy(d, pr->typByVals[i], pr->typLens[i]);
+			}
+		}
+		MemoryContextSwitchTo(curr);
+		++ pr->count;
+	}
+#if PG_VERSION_NUM >= 90600
+	return true;
+#endif
+}
+
+static void _PushReceiver_startup(
+	DestReceiver* self, int operation, TupleDesc typeinfo)
+{
+}
+
+static void _PushReceiver_shutdown(DestReceiver* self)
+{
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_Portal
+ * Method:    _push
+ * Signature: (JI[B[Ljava/lang/Object;[[Z[J)I
+ *
+ * Runs the portal forward with PortalRunFetch, as SPI_cursor_fetch would, but
+ * with a PushReceiver in place of SPI's own DestReceiver. The Java arrays are
+ * only written here, after the executor has returned. Unlike SPI_cursor_fetch,
+ * this leaves SPI_processed and SPI_tuptable as they were.
+ *
+ * The copied Datums of the columns not of a primitive kind are kept, in a
+ * PushedBatch in a child of the portal's context, for _getPushedObject to
+ * coerce to a class other than the default. batch[0] holds the previous
+ * batch, which is deleted, on entry, and the new one, or 0, on return; the
+ * caller must not use the previous one again, even if this fails.
+ */
+JNIEXPORT jint JNICALL
+Java_org_postgresql_pljava_internal_Portal__1push(JNIEnv* env, jclass clazz, jlong _this, jint count, jbyteArray kinds, jobjectArray columns, jobjectArray nulls, jlongArray batch)
+{
+	jint result = 0;
+	if(_this != 0 && count > 0)
+	{
+		BEGIN_NATIVE
+		Ptr2Long p2l;
+		Ptr2Long p2lb;
+		STACK_BASE_VARS
+		STACK_BASE_PUSH(env)
+
+		/* As in _fetch, a good place to clean up now and then. */
+		pljava_DualState_cleanEnqueuedInstances();
+
+		p2l.longVal = _this;
+		JNI_getLongArrayRegion(batch, 0, 1, &p2lb.longVal);
+		PG_TRY();
+		{
+			Portal portal = (Portal)p2l.ptrVal;
+			TupleDesc td = portal->tupDesc;
+			jobject typeMap = Invocation_getTypeMap();
+			PushReceiver pr;
+			PushedBatch* pb;
+			MemoryContext rowContext;
+			MemoryContext curr;
+			Type type;
+			bool anyObjects = false;
+			int natts;
+			int row;
+			int i;
+
+			Invocation_assertConnect();
+
+			if ( 0 != p2lb.longVal )
+				MemoryContextDelete(((PushedBatch*)p2lb.ptrVal)->context);
+			p2lb.longVal = 0;
+
+			memset(&pr, 0, sizeof pr);
+			pr.pub.receiveSlot = _PushReceiver_receiveSlot;
+			pr.pub.rStartup = _PushReceiver_startup;
+			pr.pub.rShutdown = _PushReceiver_shutdown;
+			pr.pub.rDestroy = _PushReceiver_shutdown;
+			pr.pub.mydest = DestNone;
+
+			pr.batchContext = AllocSetContextCreate(
+				PortalGetHeapMemory(portal),
+				"PL/Java push batch", ALLOCSET_DEFAULT_SIZES);
+
+			pr.natts = natts = td->natts;
+			pr.capacity = count;
+			pr.kinds = (jbyte*)palloc(natts * sizeof(jbyte));
+			pr.typLens = (int16*)palloc(natts * sizeof(int16));
+			pr.typByVals = (bool*)palloc(natts * sizeof(bool));
+			pr.longs = (jlong**)palloc0(natts * sizeof(jlong*));
+			pr.doubles = (jdouble**)palloc0(natts * sizeof(jdouble*));
+			pr.nulls = (jboolean**)palloc(natts * sizeof(jboolean*));
+			pb = (PushedBatch*)MemoryContextAlloc(
+				pr.batchContext, sizeof(PushedBatch));
+			pb->context = pr.batchContext;
+			pb->natts = natts;
+			pr.typeIds = pb->typeIds = (Oid*)MemoryContextAlloc(
+				pr.batchContext, natts * sizeof(Oid));
+			pr.datums = pb->datums = (Datum**)MemoryContextAllocZero(
+				pr.batchContext, natts * sizeof(Datum*));
+			JNI_getByteArrayRegion(kinds, 0, natts, pr.kinds);
+
+			for ( i = 0 ; i < natts ; ++ i )
+			{
+				pr.typeIds[i] = SPI_gettypeid(td, i + 1);
+				pr.nulls[i] = (jboolean*)palloc(count * sizeof(jboolean));
+				switch ( pr.kinds[i] )
+				{
+				case 'J':
+					pr.longs[i] = (jlong*)palloc(count * sizeof(jlong));
+					break;
+				case 'D':
+					pr.doubles[i] = (jdouble*)palloc(count * sizeof(jdouble));
+					break;
+				default:
+					pr.datums[i] = (Datum*)MemoryContextAlloc(
+						pr.batchContext, count * sizeof(Datum));
+					get_typlenbyval(pr.typeIds[i],
+						&pr.typLens[i], &pr.typByVals[i]);
+					anyObjects = true;
+				}
+			}
+
+			PortalRunFetch(portal, FETCH_FORWARD, (long)count,
+				(DestReceiver*)&pr);
+			result = pr.count;
+
+			rowContext = AllocSetContextCreate(CurrentMemoryContext,
+				"PL/Java push row", ALLOCSET_SMALL_SIZES);
+
+			for ( i = 0 ; i < natts ; ++ i )
+			{
+				jobject array = JNI_getObjectArrayElement(nulls, i);
+				JNI_setBooleanArrayRegion(array, 0, result, pr.nulls[i]);
+				JNI_deleteLocalRef(array);
+
+				switch ( pr.kinds[i] )
+				{
+				case 'J':
+					array = JNI_getObjectArrayElement(columns, i);
+					JNI_setLongArrayRegion(array, 0, result, pr.longs[i]);
+					JNI_deleteLocalRef(array);
+					pfree(pr.longs[i]);
+					break;
+				case 'D':
+					array = JNI_getObjectArrayElement(columns, i);
+					JNI_setDoubleArrayRegion(array, 0, result, pr.doubles[i]);
+					JNI_deleteLocalRef(array);
+					pfree(pr.doubles[i]);
+					break;
+				default:
+					type = Type_objectTypeFromOid(pr.typeIds[i], typeMap);
+					array = JNI_getObjectArrayElement(columns, i);
+					for ( row = 0 ; row < result ; ++ row )
+					{
+						jobject value = 0;
+						/* a null also releases the value of an earlier batch */
+						if ( JNI_FALSE == pr.nulls[i][row] )
+						{
+							curr = MemoryContextSwitchTo(rowContext);
+							value = Type_coerceDatum(type, pr.datums[i][row]).l;
+							MemoryContextSwitchTo(curr);
+							MemoryContextReset(rowContext);
+						}
+						JNI_setObjectArrayElement(array, row, value);
+						if ( 0 != value )
+							JNI_deleteLocalRef(value);
+					}
+					JNI_deleteLocalRef(array);
+				}
+				pfree(pr.nulls[i]);
+			}
+
+			MemoryContextDelete(rowContext);
+			if ( anyObjects  &&  0 < result )
+				p2lb.ptrVal = pb;
+			else
+				MemoryContextDelete(pr.batchContext);
+			pfree(pr.nulls);
+			pfree(pr.doubles);
+			pfree(pr.longs);
+			pfree(pr.typByVals);
+			pfree(pr.typLens);
+			pfree(pr.kinds);
+			JNI_setLongArrayRegion(batch, 0, 1, &p2lb.longVal);
+		}
+		PG_CATCH();
+		{
+			Exception_throw_ERROR("PortalRunFetch");
+		}
+		PG_END_TRY();
+		STACK_BASE_POP()
+		END_NATIVE
+	}
+	return result;
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_Portal
+ * Method:    _getPushedObject
+ * Signature: (JJIILjava/lang/Class;)Ljava/lang/Object;
+ *
+ * Coerces one kept Datum of a batch received by _push to the requested class,
+ * as Tuple._getObject would for a row fetched by SPI.
+ */
+JNIEXPORT jobject JNICALL
+Java_org_postgresql_pljava_internal_Portal__1getPushedObject(JNIEnv* env, jclass clazz, jlong _this, jlong _batch, jint column, jint row, jclass rqcls)
+{
+	jobject result = 0;
+	if(_this != 0 && _batch != 0)
+	{
+		BEGIN_NATIVE
+		Ptr2Long p2l;
+		p2l.longVal = _batch;
+		PG_TRY();
+		{
+			PushedBatch* pb = (PushedBatch*)p2l.ptrVal;
+			Type type = Type_objectTypeFromOid(
+				pb->typeIds[column], Invocation_getTypeMap());
+			result = Type_coerceDatumAs(
+				type, pb->datums[column][row], rqcls).l;
+		}
+		PG_CATCH();
+		{
+			Exception_throw_ERROR("Type_coerceDatumAs");
+		}
+		PG_END_TRY();
+		END_NATIVE
+	}
+	return result;
+}
+
 /*
  * Class:     org_postgresql_pljava_internal_Portal
  * Method:    _getName
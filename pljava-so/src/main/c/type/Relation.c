@@ -45,6 +45,7 @@ jobject pljava_Relation_create(Relation r)
 
 	p2lro.longVal = 0L;
 	p2lro.ptrVal = currentInvocation;
+	currentInvocation->hasDualState = true;
 
 	return JNI_newObjectLocked(
 			s_Relation_class,
@@ -16,6 +16,11 @@
 #include "pljava/type/Type_priv.h"
 #include "pljava/type/SingleRowReader.h"
 
+#if PG_VERSION_NUM >= 90300
+#include <access/htup_details.h>
+#else
+#include <access/htup.h>
+#endif
 #include <executor/executor.h>
 #include <executor/spi.h>
 #include <utils/typcache.h>
@@ -23,6 +28,7 @@
 #include "pljava/DualState.h"
 #include "pljava/Exception.h"
 #include "pljava/Invocation.h"
+#include "pljava/type/String.h"
 #include "pljava/type/TupleDesc.h"
 
 #include "org_postgresql_pljava_jdbc_SingleRowReader.h"
@@ -57,6 +63,7 @@ jobject pljava_SingleRowReader_create(HeapTupleHeader ht)
 
 	p2lht.ptrVal = ht;
 	p2lro.ptrVal = currentInvocation;
+	currentInvocation->hasDualState = true;
 
 	result =
 		JNI_newObjectLocked(s_SingleRowReader_class, s_SingleRowReader_init,
@@ -77,6 +84,11 @@ void pljava_SingleRowReader_initialize(void)
 		"(JJILjava/lang/Class;)Ljava/lang/Object;",
 	  	Java_org_postgresql_pljava_jdbc_SingleRowReader__1getObject
 		},
+		{
+		"_getObjects",
+		"(JJ[Ljava/lang/Class;)[Ljava/lang/Object;",
+		Java_org_postgresql_pljava_jdbc_SingleRowReader__1getObjects
+		},
 		{ 0, 0, 0 }
 	};
 	jclass cls =
@@ -133,3 +145,86 @@ Java_org_postgresql_pljava_jdbc_SingleRowReader__1getObject(JNIEnv* env, jclass
 	}
 	return result;
 }
+
+/*
+ * Class:     org_postgresql_pljava_jdbc_SingleRowReader
+ * Method:    _getObjects
+ * Signature: (JJ[Ljava/lang/Class;)[Ljava/lang/Object;
+ */
+JNIEXPORT jobjectArray JNICALL
+Java_org_postgresql_pljava_jdbc_SingleRowReader__1getObjects(JNIEnv* env, jclass clazz, jlong hth, jlong jtd, jobjectArray rqclss)
+{
+	jobjectArray result = 0;
+	if(hth != 0 && jtd != 0)
+	{
+		Ptr2Long p2lhth;
+		Ptr2Long p2ltd;
+		p2lhth.longVal = hth;
+		p2ltd.longVal = jtd;
+		BEGIN_NATIVE
+		PG_TRY();
+		{
+			HeapTupleHeader header = (HeapTupleHeader)p2lhth.ptrVal;
+			TupleDesc tupleDesc = (TupleDesc)p2ltd.ptrVal;
+			int natts = tupleDesc->natts;
+			Datum *values = (Datum*)palloc(natts * sizeof(Datum));
+			bool *nulls = (bool*)palloc(natts * sizeof(bool));
+			HeapTupleData tuple;
+			int i;
+			int live;
+
+			/*
+			 * Deform the whole tuple at once, rather than walking it again from
+			 * the start for each attribute as GetAttributeByNum would.
+			 */
+			tuple.t_len = HeapTupleHeaderGetDatumLength(header);
+			ItemPointerSetInvalid(&(tuple.t_self));
+			tuple.t_tableOid = InvalidOid;
+			tuple.t_data = header;
+			heap_deform_tuple(&tuple, tupleDesc, values, nulls);
+
+			/*
+			 * Only the attributes not dropped are returned, so the values, and
+			 * the requested classes, are in the order of the live attributes.
+			 */
+			live = 0;
+			for(i = 0; i < natts; ++i)
+				if(!TupleDescAttr(tupleDesc, i)->attisdropped)
+					++live;
+
+			result = JNI_newObjectArray(live, s_Object_class, 0);
+			live = 0;
+			for(i = 0; i < natts; ++i)
+			{
+				Type type;
+				jclass rqcls;
+				jobject value;
+
+				if(TupleDescAttr(tupleDesc, i)->attisdropped)
+					continue;
+				++live;
+				if(nulls[i])
+					continue;
+				type = pljava_TupleDesc_getColumnType(tupleDesc, i + 1);
+				if(type == 0)
+					continue;
+				rqcls = 0 == rqclss ? 0 :
+					(jclass)JNI_getObjectArrayElement(rqclss, live - 1);
+				value = Type_coerceDatumAs(type, values[i], rqcls).l;
+				JNI_setObjectArrayElement(result, live - 1, value);
+				JNI_deleteLocalRef(value);
+				if(rqcls != 0)
+					JNI_deleteLocalRef(rqcls);
+			}
+			pfree(values);
+			pfree(nulls);
+		}
+		PG_CATCH();
+		{
+			Exception_throw_ERROR("heap_deform_tuple");
+		}
+		PG_END_TRY();
+		END_NATIVE
+	}
+	return result;
+}
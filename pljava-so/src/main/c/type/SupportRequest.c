@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+#include <postgres.h>
+#include <catalog/pg_type.h>
+#if PG_VERSION_NUM >= 120000
+#include <nodes/supportnodes.h>
+#include <optimizer/cost.h>
+#include <optimizer/optimizer.h>
+#endif
+
+#include "org_postgresql_pljava_internal_SupportRequest.h"
+#include "pljava/Invocation.h"
+#include "pljava/DualState.h"
+#include "pljava/Exception.h"
+#include "pljava/type/Type_priv.h"
+#include "pljava/type/SupportRequest.h"
+
+/*
+ * A planner support function is declared in SQL as taking and returning type
+ * internal. Its Java method takes an org.postgresql.pljava.SupportRequest,
+ * wrapping the request node, and returns boolean: true if it has answered the
+ * request, in which case the node itself is returned to the planner, or false,
+ * for which a null pointer is returned (not an SQL null, which the planner
+ * would reject).
+ */
+#if PG_VERSION_NUM >= 120000
+
+static jclass    s_SupportRequest_class;
+static jmethodID s_SupportRequest_init;
+static Type      s_SupportRequest;
+static Type      s_SupportResult;
+
+/* Kinds of request, as the ordinals of the Java enum. */
+#define KIND_ROWS        0
+#define KIND_COST        1
+#define KIND_SELECTIVITY 2
+#define KIND_OTHER       3
+
+static jvalue _SupportRequest_coerceDatum(Type self, Datum arg)
+{
+	jvalue result;
+	Ptr2Long p2lnode;
+	Ptr2Long p2lro;
+
+	p2lnode.longVal = 0L;
+	p2lnode.ptrVal = DatumGetPointer(arg);
+
+	p2lro.longVal = 0L;
+	p2lro.ptrVal = currentInvocation;
+	currentInvocation->hasDualState = true;
+
+	result.l = JNI_newObjectLocked(
+			s_SupportRequest_class,
+			s_SupportRequest_init,
+			pljava_DualState_key(),
+			p2lro.longVal,
+			p2lnode.longVal);
+	return result;
+}
+
+static Datum _SupportResult_invoke(Type self, Function fn, PG_FUNCTION_ARGS)
+{
+	if ( pljava_Function_booleanInvoke(fn) )
+		PG_RETURN_POINTER(PG_GETARG_POINTER(0));
+	PG_RETURN_POINTER(NULL);
+}
+
+Type pljava_SupportRequest_reconcile(
+	Type origType, const char *javaName, bool isResult)
+{
+	if ( isResult )
+	{
+		if ( 0 == strcmp(javaName, "boolean") )
+			return s_SupportResult;
+	}
+	else if ( 0 == strcmp(javaName, "org.postgresql.pljava.SupportRequest") )
+		return s_SupportRequest;
+	return origType;
+}
+
+static Node *nodeOf(jlong _node)
+{
+	Ptr2Long p2l;
+	p2l.longVal = _node;
+	return (Node *)p2l.ptrVal;
+}
+
+/*
+ * The arguments of the call a request is about, and the PlannerInfo, if any,
+ * with which they can be reduced to constants.
+ */
+static List *arguments(Node *req, PlannerInfo **root)
+{
+	Node *call;
+
+	switch ( nodeTag(req) )
+	{
+	case T_SupportRequestRows:
+		*root = ((SupportRequestRows *)req)->root;
+		call = ((SupportRequestRows *)req)->node;
+		break;
+	case T_SupportRequestCost:
+		*root = ((SupportRequestCost *)req)->root;
+		call = ((SupportRequestCost *)req)->node;
+		break;
+	case T_SupportRequestSelectivity:
+		*root = ((SupportRequestSelectivity *)req)->root;
+		return ((SupportRequestSelectivity *)req)->args;
+	default:
+		*root = NULL;
+		return NIL;
+	}
+
+	if ( NULL == call )
+		return NIL;
+	if ( IsA(call, FuncExpr) )
+		return ((FuncExpr *)call)->args;
+	if ( IsA(call, OpExpr) )
+		return ((OpExpr *)call)->args;
+	return NIL;
+}
+
+/*
+ * The Const an argument reduces to, or NULL if it is not constant.
+ */
+static Const *constantArgument(Node *req, jint argno)
+{
+	PlannerInfo *root;
+	List *args = arguments(req, &root);
+	Node *arg;
+
+	if ( argno < 0  ||  argno >= list_length(args) )
+		ereport(ERROR, (
+			errcode(ERRCODE_INVALID_PARAMETER_VALUE),
+			errmsg("support request argument %d out of range", argno)));
+
+	arg = (Node *)list_nth(args, argno);
+	if ( NULL != root )
+		arg = estimate_expression_value(root, arg);
+	return IsA(arg, Const) ? (Const *)arg : NULL;
+}
+
+static void wrongKind(const char *what)
+{
+	ereport(ERROR, (
+		errcode(ERRCODE_OBJECT_NOT_IN_PREREQUISITE_STATE),
+		errmsg("support request is not a request for %s", what)));
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_SupportRequest
+ * Method:    _getKind
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_postgresql_pljava_internal_SupportRequest__1getKind(
+	JNIEnv* env, jclass clazz, jlong _node)
+{
+	Node *req = nodeOf(_node);
+
+	switch ( nodeTag(req) )
+	{
+	case T_SupportRequestRows:
+		return KIND_ROWS;
+	case T_SupportRequestCost:
+		return KIND_COST;
+	case T_SupportRequestSelectivity:
+		return KIND_SELECTIVITY;
+	default:
+		return KIND_OTHER;
+	}
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_SupportRequest
+ * Method:    _getArgCount
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_postgresql_pljava_internal_SupportRequest__1getArgCount(
+	JNIEnv* env, jclass clazz, jlong _node)
+{
+	PlannerInfo *root;
+	return list_length(arguments(nodeOf(_node), &root));
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_SupportRequest
+ * Method:    _isConstant
+ * Signature: (JI)Z
+ */
+JNIEXPORT jboolean JNICALL
+Java_org_postgresql_pljava_internal_SupportRequest__1isConstant(
+	JNIEnv* env, jclass clazz, jlong _node, jint argno)
+{
+	jboolean result = JNI_FALSE;
+
+	BEGIN_NATIVE
+	PG_TRY();
+	{
+		result = NULL != constantArgument(nodeOf(_node), argno);
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR("estimate_expression_value");
+	}
+	PG_END_TRY();
+	END_NATIVE
+	return result;
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_SupportRequest
+ * Method:    _getConstant
+ * Signature: (JI)Ljava/lang/Object;
+ */
+JNIEXPORT jobject JNICALL
+Java_org_postgresql_pljava_internal_SupportRequest__1getConstant(
+	JNIEnv* env, jclass clazz, jlong _node, jint argno)
+{
+	jobject result = 0;
+
+	BEGIN_NATIVE
+	PG_TRY();
+	{
+		Const *c = constantArgument(nodeOf(_node), argno);
+		if ( NULL != c  &&  ! c->constisnull )
+			result = Type_coerceDatum(
+				Type_objectTypeFromOid(c->consttype, Invocation_getTypeMap()),
+				c->constvalue).l;
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR("estimate_expression_value");
+	}
+	PG_END_TRY();
+	END_NATIVE
+	return result;
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_SupportRequest
+ * Method:    _setRows
+ * Signature: (JD)V
+ */
+JNIEXPORT void JNICALL
+Java_org_postgresql_pljava_internal_SupportRequest__1setRows(
+	JNIEnv* env, jclass clazz, jlong _node, jdouble rows)
+{
+	Node *req = nodeOf(_node);
+
+	BEGIN_NATIVE
+	PG_TRY();
+	{
+		if ( ! IsA(req, SupportRequestRows) )
+			wrongKind("rows");
+		((SupportRequestRows *)req)->rows = rows;
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR("SupportRequestRows");
+	}
+	PG_END_TRY();
+	END_NATIVE
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_SupportRequest
+ * Method:    _setCost
+ * Signature: (JDD)V
+ */
+JNIEXPORT void JNICALL
+Java_org_postgresql_pljava_internal_SupportRequest__1setCost(
+	JNIEnv* env, jclass clazz, jlong _node, jdouble startup, jdouble perTuple)
+{
+	Node *req = nodeOf(_node);
+
+	BEGIN_NATIVE
+	PG_TRY();
+	{
+		if ( ! IsA(req, SupportRequestCost) )
+			wrongKind("cost");
+		((SupportRequestCost *)req)->startup = startup * cpu_operator_cost;
+		((SupportRequestCost *)req)->per_tuple = perTuple * cpu_operator_cost;
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR("SupportRequestCost");
+	}
+	PG_END_TRY();
+	END_NATIVE
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_SupportRequest
+ * Method:    _setSelectivity
+ * Signature: (JD)V
+ */
+JNIEXPORT void JNICALL
+Java_org_postgresql_pljava_internal_SupportRequest__1setSelectivity(
+	JNIEnv* env, jclass clazz, jlong _node, jdouble selectivity)
+{
+	Node *req = nodeOf(_node);
+
+	BEGIN_NATIVE
+	PG_TRY();
+	{
+		if ( ! IsA(req, SupportRequestSelectivity) )
+			wrongKind("selectivity");
+		if ( selectivity < 0.0  ||  selectivity > 1.0 )
+			ereport(ERROR, (
+				errcode(ERRCODE_INVALID_PARAMETER_VALUE),
+				errmsg("selectivity %g is not between 0 and 1",
+					selectivity)));
+		((SupportRequestSelectivity *)req)->selectivity = selectivity;
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR("SupportRequestSelectivity");
+	}
+	PG_END_TRY();
+	END_NATIVE
+}
+
+/* Make this datatype available to the postgres system.
+ */
+void pljava_SupportRequest_initialize(void)
+{
+	TypeClass cls;
+	jclass jcls;
+	JNINativeMethod methods[] =
+	{
+		{
+		"_getKind",
+		"(J)I",
+		Java_org_postgresql_pljava_internal_SupportRequest__1getKind
+		},
+		{
+		"_getArgCount",
+		"(J)I",
+		Java_org_postgresql_pljava_internal_SupportRequest__1getArgCount
+		},
+		{
+		"_isConstant",
+		"(JI)Z",
+		Java_org_postgresql_pljava_internal_SupportRequest__1isConstant
+		},
+		{
+		"_getConstant",
+		"(JI)Ljava/lang/Object;",
+		Java_org_postgresql_pljava_internal_SupportRequest__1getConstant
+		},
+		{
+		"_setRows",
+		"(JD)V",
+		Java_org_postgresql_pljava_internal_SupportRequest__1setRows
+		},
+		{
+		"_setCost",
+		"(JDD)V",
+		Java_org_postgresql_pljava_internal_SupportRequest__1setCost
+		},
+		{
+		"_setSelectivity",
+		"(JD)V",
+		Java_org_postgresql_pljava_internal_SupportRequest__1setSelectivity
+		},
+		{ 0, 0, 0 }
+	};
+
+	jcls = PgObject_getJavaClass(
+		"org/postgresql/pljava/internal/SupportRequest");
+	PgObject_registerNatives2(jcls, methods);
+
+	s_SupportRequest_init = PgObject_getJavaMethod(jcls, "<init>",
+		"(Lorg/postgresql/pljava/internal/DualState$Key;JJ)V");
+	s_SupportRequest_class = JNI_newGlobalRef(jcls);
+	JNI_deleteLocalRef(jcls);
+
+	/* Use interface name for signatures.
+	 */
+	cls = TypeClass_alloc("type.SupportRequest");
+	cls->JNISignature = "Lorg/postgresql/pljava/SupportRequest;";
+	cls->javaTypeName = "org.postgresql.pljava.SupportRequest";
+	cls->coerceDatum  = _SupportRequest_coerceDatum;
+	s_SupportRequest = TypeClass_allocInstance(cls, INTERNALOID);
+
+	cls = TypeClass_alloc("type.SupportRequest.result");
+	cls->JNISignature = "Z";
+	cls->javaTypeName = "boolean";
+	cls->invoke       = _SupportResult_invoke;
+	s_SupportResult = TypeClass_allocInstance(cls, INTERNALOID);
+}
+
+#else
+
+Type pljava_SupportRequest_reconcile(
+	Type origType, const char *javaName, bool isResult)
+{
+	return origType;
+}
+
+void pljava_SupportRequest_initialize(void)
+{
+}
+
+#endif
@@ -42,6 +42,7 @@ jobject pljava_TriggerData_create(TriggerData* triggerData)
 
 	p2lro.longVal = 0L;
 	p2lro.ptrVal = currentInvocation;
+	currentInvocation->hasDualState = true;
 
 	return JNI_newObjectLocked(
 			s_TriggerData_class,
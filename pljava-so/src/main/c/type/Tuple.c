@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2004-2019 Tada AB and other contributors, as listed below.
+ * Copyright (c) 2004-2020 Tada AB and other contributors, as listed below.
  *
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the The BSD 3-Clause License
@@ -13,6 +13,7 @@
  * @author Thomas Hallgren
  */
 #include <postgres.h>
+#include <catalog/pg_type.h>
 #include <executor/spi.h>
 #include <executor/tuptable.h>
 
@@ -95,6 +96,16 @@ void pljava_Tuple_initialize(void)
 		"(JJILjava/lang/Class;)Ljava/lang/Object;",
 	  	Java_org_postgresql_pljava_internal_Tuple__1getObject
 		},
+		{
+		"_getLong",
+		"(JJI[Z)J",
+	  	Java_org_postgresql_pljava_internal_Tuple__1getLong
+		},
+		{
+		"_getDouble",
+		"(JJI[Z)D",
+	  	Java_org_postgresql_pljava_internal_Tuple__1getDouble
+		},
 		{ 0, 0, 0 }};
 
 	s_Tuple_class = JNI_newGlobalRef(PgObject_getJavaClass("org/postgresql/pljava/internal/Tuple"));
@@ -156,3 +167,107 @@ Java_org_postgresql_pljava_internal_Tuple__1getObject(JNIEnv* env, jclass cls, j
 	END_NATIVE
 	return result;
 }
+
+/*
+ * Class:     org_postgresql_pljava_internal_Tuple
+ * Method:    _getLong
+ * Signature: (JJI[Z)J
+ *
+ * Reads an int2, int4, or int8 column straight from its Datum, so no wrapper
+ * object is made; the null flag is returned in the one-element isNull array.
+ */
+JNIEXPORT jlong JNICALL
+Java_org_postgresql_pljava_internal_Tuple__1getLong(JNIEnv* env, jclass cls, jlong _this, jlong _tupleDesc, jint index, jbooleanArray isNull)
+{
+	jlong result = 0;
+	Ptr2Long p2l;
+	p2l.longVal = _this;
+
+	BEGIN_NATIVE
+	HeapTuple self = (HeapTuple)p2l.ptrVal;
+	p2l.longVal = _tupleDesc;
+	PG_TRY();
+	{
+		TupleDesc tupleDesc = (TupleDesc)p2l.ptrVal;
+		bool wasNull = false;
+		jboolean jNull;
+		Datum binVal = SPI_getbinval(self, tupleDesc, (int)index, &wasNull);
+		if ( ! wasNull )
+		{
+			switch ( SPI_gettypeid(tupleDesc, (int)index) )
+			{
+			case INT2OID:
+				result = DatumGetInt16(binVal);
+				break;
+			case INT4OID:
+				result = DatumGetInt32(binVal);
+				break;
+			case INT8OID:
+				result = DatumGetInt64(binVal);
+				break;
+			default:
+				Exception_throw(ERRCODE_DATATYPE_MISMATCH,
+					"column %d is not of an integral type", (int)index);
+			}
+		}
+		jNull = wasNull ? JNI_TRUE : JNI_FALSE;
+		JNI_setBooleanArrayRegion(isNull, 0, 1, &jNull);
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR("SPI_getbinval");
+	}
+	PG_END_TRY();
+	END_NATIVE
+	return result;
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_Tuple
+ * Method:    _getDouble
+ * Signature: (JJI[Z)D
+ *
+ * As _getLong, for a float4 or float8 column.
+ */
+JNIEXPORT jdouble JNICALL
+Java_org_postgresql_pljava_internal_Tuple__1getDouble(JNIEnv* env, jclass cls, jlong _this, jlong _tupleDesc, jint index, jbooleanArray isNull)
+{
+	jdouble result = 0;
+	Ptr2Long p2l;
+	p2l.longVal = _this;
+
+	BEGIN_NATIVE
+	HeapTuple self = (HeapTuple)p2l.ptrVal;
+	p2l.longVal = _tupleDesc;
+	PG_TRY();
+	{
+		TupleDesc tupleDesc = (TupleDesc)p2l.ptrVal;
+		bool wasNull = false;
+		jboolean jNull;
+		Datum binVal = SPI_getbinval(self, tupleDesc, (int)index, &wasNull);
+		if ( ! wasNull )
+		{
+			switch ( SPI_gettypeid(tupleDesc, (int)index) )
+			{
+			case FLOAT4OID:
+				result = DatumGetFloat4(binVal);
+				break;
+			case FLOAT8OID:
+				result = DatumGetFloat8(binVal);
+				break;
+			default:
+				Exception_throw(ERRCODE_DATATYPE_MISMATCH,
+					"column %d is not of a floating type", (int)index);
+			}
+		}
+		jNull = wasNull ? JNI_TRUE : JNI_FALSE;
+		JNI_setBooleanArrayRegion(isNull, 0, 1, &jNull);
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR("SPI_getbinval");
+	}
+	PG_END_TRY();
+	END_NATIVE
+	return result;
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2004-2019 Tada AB and other contributors, as listed below.
+ * Copyright (c) 2004-2020 Tada AB and other contributors, as listed below.
  *
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the The BSD 3-Clause License
@@ -28,6 +28,9 @@
 static jclass    s_TupleDesc_class;
 static jmethodID s_TupleDesc_init;
 
+static jclass    s_TupleBatch_class;
+static jmethodID s_TupleBatch_init;
+
 /*
  * org.postgresql.pljava.TupleDesc type.
  * This makes a non-reference-counted copy in JavaMemoryContext of the supplied
@@ -106,6 +109,11 @@ void pljava_TupleDesc_initialize(void)
 	  	Java_org_postgresql_pljava_internal_TupleDesc__1getColumnName
 		},
 		{
+		"_getLiveColumns",
+		"(J)[I",
+		Java_org_postgresql_pljava_internal_TupleDesc__1getLiveColumns
+		},
+		{
 		"_getColumnIndex",
 		"(JLjava/lang/String;)I",
 		Java_org_postgresql_pljava_internal_TupleDesc__1getColumnIndex
@@ -116,6 +124,11 @@ void pljava_TupleDesc_initialize(void)
 		Java_org_postgresql_pljava_internal_TupleDesc__1formTuple
 		},
 		{
+		"_formTuples",
+		"(J[[Ljava/lang/Object;I)Lorg/postgresql/pljava/internal/TupleBatch;",
+		Java_org_postgresql_pljava_internal_TupleDesc__1formTuples
+		},
+		{
 		"_getOid",
 		"(JI)Lorg/postgresql/pljava/internal/Oid;",
 		Java_org_postgresql_pljava_internal_TupleDesc__1getOid
@@ -127,6 +140,11 @@ void pljava_TupleDesc_initialize(void)
 	s_TupleDesc_init = PgObject_getJavaMethod(s_TupleDesc_class, "<init>",
 		"(Lorg/postgresql/pljava/internal/DualState$Key;JJI)V");
 
+	s_TupleBatch_class = JNI_newGlobalRef(PgObject_getJavaClass(
+		"org/postgresql/pljava/internal/TupleBatch"));
+	s_TupleBatch_init = PgObject_getJavaMethod(s_TupleBatch_class, "<init>",
+		"(Lorg/postgresql/pljava/internal/DualState$Key;JJ[J)V");
+
 	cls = TypeClass_alloc("type.TupleDesc");
 	cls->JNISignature = "Lorg/postgresql/pljava/internal/TupleDesc;";
 	cls->javaTypeName = "org.postgresql.pljava.internal.TupleDesc";
@@ -175,6 +193,44 @@ Java_org_postgresql_pljava_internal_TupleDesc__1getColumnName(JNIEnv* env, jclas
 	return result;
 }
 
+/*
+ * Class:     org_postgresql_pljava_internal_TupleDesc
+ * Method:    _getLiveColumns
+ * Signature: (J)[I
+ */
+JNIEXPORT jintArray JNICALL
+Java_org_postgresql_pljava_internal_TupleDesc__1getLiveColumns(JNIEnv* env, jclass cls, jlong _this)
+{
+	jintArray result = 0;
+
+	BEGIN_NATIVE
+	PG_TRY();
+	{
+		Ptr2Long p2l;
+		TupleDesc self;
+		jint *live;
+		int count = 0;
+		int i;
+
+		p2l.longVal = _this;
+		self = (TupleDesc)p2l.ptrVal;
+		live = (jint *)palloc((self->natts + 1) * sizeof *live);
+		for ( i = 0; i < self->natts; ++ i )
+			if ( ! TupleDescAttr(self, i)->attisdropped )
+				live[count++] = i + 1;
+		result = JNI_newIntArray(count);
+		JNI_setIntArrayRegion(result, 0, count, live);
+		pfree(live);
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR("TupleDescAttr");
+	}
+	PG_END_TRY();
+	END_NATIVE
+	return result;
+}
+
 /*
  * Class:     org_postgresql_pljava_internal_TupleDesc
  * Method:    _getColumnIndex
@@ -266,6 +322,102 @@ Java_org_postgresql_pljava_internal_TupleDesc__1formTuple(JNIEnv* env, jclass cl
 	return result;
 }
 
+/*
+ * Class:     org_postgresql_pljava_internal_TupleDesc
+ * Method:    _formTuples
+ * Signature: (J[[Ljava/lang/Object;I)Lorg/postgresql/pljava/internal/TupleBatch;
+ *
+ * Forms one tuple from each of the first count arrays of values in jrows, all
+ * in a new memory context that is handed to the TupleBatch returned, and will
+ * be deleted when that is closed or becomes unreachable. The column Types are
+ * looked up once for the whole batch.
+ */
+JNIEXPORT jobject JNICALL
+Java_org_postgresql_pljava_internal_TupleDesc__1formTuples(JNIEnv* env, jclass cls, jlong _this, jobjectArray jrows, jint count)
+{
+	jobject result = 0;
+
+	BEGIN_NATIVE
+	Ptr2Long p2l;
+	MemoryContext volatile batchCtx = NULL;
+	p2l.longVal = _this;
+	PG_TRY();
+	{
+		jint   row;
+		jint   idx;
+		MemoryContext curr;
+		TupleDesc self = (TupleDesc)p2l.ptrVal;
+		int    natts   = self->natts;
+		Datum* values  = (Datum*)palloc(natts * sizeof(Datum));
+		bool*  nulls   = palloc(natts * sizeof(bool));
+		Type*  types   = palloc0(natts * sizeof(Type));
+		jlong* tuples  = palloc((count > 0 ? count : 1) * sizeof(jlong));
+		jlongArray jtuples;
+		jobject typeMap = Invocation_getTypeMap(); /* a global ref */
+
+		batchCtx = AllocSetContextCreate(JavaMemoryContext,
+			"PL/Java tuple batch", ALLOCSET_DEFAULT_SIZES);
+
+		for(row = 0; row < count; ++row)
+		{
+			jobjectArray jvalues = JNI_getObjectArrayElement(jrows, row);
+			HeapTuple tuple;
+
+			memset(values, 0,  natts * sizeof(Datum));
+			memset(nulls, true, natts * sizeof(bool));
+			for(idx = 0; idx < natts; ++idx)
+			{
+				jobject value = JNI_getObjectArrayElement(jvalues, idx);
+				if(value != 0)
+				{
+					if(types[idx] == 0)
+						types[idx] =
+							Type_fromOid(SPI_gettypeid(self, idx + 1), typeMap);
+					values[idx] = Type_coerceObjectBridged(types[idx], value);
+					nulls[idx] = false;
+					JNI_deleteLocalRef(value);
+				}
+			}
+			JNI_deleteLocalRef(jvalues);
+
+			curr = MemoryContextSwitchTo(batchCtx);
+			tuple = heap_form_tuple(self, values, nulls);
+			MemoryContextSwitchTo(curr);
+
+			p2l.longVal = 0L;
+			p2l.ptrVal = tuple;
+			tuples[row] = p2l.longVal;
+		}
+
+		jtuples = JNI_newLongArray(count);
+		JNI_setLongArrayRegion(jtuples, 0, count, tuples);
+
+		p2l.longVal = 0L;
+		p2l.ptrVal = batchCtx;
+		/*
+		 * As for a single Tuple, passing (jlong)0 as the ResourceOwner means
+		 * only the Java side (close or unreachability) will release the batch.
+		 */
+		result = JNI_newObjectLocked(s_TupleBatch_class, s_TupleBatch_init,
+			pljava_DualState_key(), (jlong)0, p2l.longVal, jtuples);
+		JNI_deleteLocalRef(jtuples);
+
+		pfree(values);
+		pfree(nulls);
+		pfree(types);
+		pfree(tuples);
+	}
+	PG_CATCH();
+	{
+		if(batchCtx != NULL)
+			MemoryContextDelete(batchCtx);
+		Exception_throw_ERROR("heap_form_tuple");
+	}
+	PG_END_TRY();
+	END_NATIVE
+	return result;
+}
+
 /*
  * Class:     org_postgresql_pljava_internal_TupleDesc
  * Method:    _getOid
@@ -14,6 +14,10 @@
 #include <executor/spi.h>
 #include <executor/tuptable.h>
 
+#include "org_postgresql_pljava_internal_TupleTable.h"
+#include "pljava/DualState.h"
+#include "pljava/Exception.h"
+#include "pljava/Invocation.h"
 #include "pljava/type/Type_priv.h"
 #include "pljava/type/TupleTable.h"
 #include "pljava/type/Tuple.h"
@@ -25,6 +29,8 @@
 
 static jclass    s_TupleTable_class;
 static jmethodID s_TupleTable_init;
+static jmethodID s_TupleTable_initSized;
+static jmethodID s_TupleTable_initInPlace;
 
 jobject TupleTable_createFromSlot(TupleTableSlot* tts)
 {
@@ -50,7 +56,9 @@ jobject TupleTable_createFromSlot(TupleTableSlot* tts)
 jobject TupleTable_create(SPITupleTable* tts, jobject knownTD)
 {
 	jobjectArray tuples;
+	jlong bytes = 0;
 	uint64 tupcount;
+	uint64 i;
 	MemoryContext curr;
 
 	if(tts == 0)
@@ -71,7 +79,66 @@ jobject TupleTable_create(SPITupleTable* tts, jobject knownTD)
 	tuples = pljava_Tuple_createArray(tts->vals, (jint)tupcount, true);
 	MemoryContextSwitchTo(curr);
 
-	return JNI_newObject(s_TupleTable_class, s_TupleTable_init, knownTD, tuples);
+	for ( i = 0 ; i < tupcount ; ++ i )
+		bytes += tts->vals[i]->t_len;
+
+	return JNI_newObject(s_TupleTable_class, s_TupleTable_initSized,
+		knownTD, tuples, bytes);
+}
+
+jobject TupleTable_createInPlace(SPITupleTable* tts, jobject knownTD)
+{
+	jlongArray tuples;
+	jlong* pointers;
+	jlong bytes = 0;
+	uint64 tupcount;
+	uint64 i;
+	Ptr2Long p2l;
+	Ptr2Long p2lro;
+	MemoryContext curr;
+
+	if(tts == 0)
+		return 0;
+
+	tupcount = tts->alloced - tts->free;
+	if ( tupcount > PG_INT32_MAX )
+		ereport(ERROR,
+				(errcode(ERRCODE_FEATURE_NOT_SUPPORTED),
+				 errmsg("a PL/Java TupleTable cannot represent more than "
+					"INT32_MAX rows")));
+
+	if(knownTD == 0)
+	{
+		curr = MemoryContextSwitchTo(JavaMemoryContext);
+		knownTD = pljava_TupleDesc_internalCreate(tts->tupdesc);
+		MemoryContextSwitchTo(curr);
+	}
+
+	tuples = JNI_newLongArray((jsize)tupcount);
+	if ( tupcount > 0 )
+	{
+		pointers = palloc(tupcount * sizeof *pointers);
+		for ( i = 0 ; i < tupcount ; ++ i )
+		{
+			p2l.longVal = 0L;
+			p2l.ptrVal = tts->vals[i];
+			pointers[i] = p2l.longVal;
+			bytes += tts->vals[i]->t_len;
+		}
+		JNI_setLongArrayRegion(tuples, 0, (jsize)tupcount, pointers);
+		pfree(pointers);
+	}
+
+	p2l.longVal = 0L;
+	p2l.ptrVal = tts;
+
+	p2lro.longVal = 0L;
+	p2lro.ptrVal = currentInvocation;
+	currentInvocation->hasDualState = true;
+
+	return JNI_newObjectLocked(s_TupleTable_class, s_TupleTable_initInPlace,
+		pljava_DualState_key(), p2lro.longVal, p2l.longVal, knownTD, tuples,
+		bytes);
 }
 
 /* Make this datatype available to the postgres system.
@@ -79,8 +146,71 @@ jobject TupleTable_create(SPITupleTable* tts, jobject knownTD)
 extern void TupleTable_initialize(void);
 void TupleTable_initialize(void)
 {
+	JNINativeMethod methods[] =
+	{
+		{
+		"_copyTuples",
+		"([J)[Lorg/postgresql/pljava/internal/Tuple;",
+		Java_org_postgresql_pljava_internal_TupleTable__1copyTuples
+		},
+		{ 0, 0, 0 }
+	};
+
 	s_TupleTable_class = JNI_newGlobalRef(PgObject_getJavaClass("org/postgresql/pljava/internal/TupleTable"));
 	s_TupleTable_init = PgObject_getJavaMethod(
 				s_TupleTable_class, "<init>",
 				"(Lorg/postgresql/pljava/internal/TupleDesc;[Lorg/postgresql/pljava/internal/Tuple;)V");
+	s_TupleTable_initSized = PgObject_getJavaMethod(
+				s_TupleTable_class, "<init>",
+				"(Lorg/postgresql/pljava/internal/TupleDesc;[Lorg/postgresql/pljava/internal/Tuple;J)V");
+	s_TupleTable_initInPlace = PgObject_getJavaMethod(
+				s_TupleTable_class, "<init>",
+				"(Lorg/postgresql/pljava/internal/DualState$Key;JJLorg/postgresql/pljava/internal/TupleDesc;[JJ)V");
+	PgObject_registerNatives2(s_TupleTable_class, methods);
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_TupleTable
+ * Method:    _copyTuples
+ * Signature: ([J)[Lorg/postgresql/pljava/internal/Tuple;
+ *
+ * Copy the HeapTuples at the given pointers into Tuple instances of their own,
+ * for rows of an in-place TupleTable that are to outlive it.
+ */
+JNIEXPORT jobjectArray JNICALL
+Java_org_postgresql_pljava_internal_TupleTable__1copyTuples(JNIEnv* env, jclass cls, jlongArray pointers)
+{
+	jobjectArray tuples = 0;
+
+	BEGIN_NATIVE
+	PG_TRY();
+	{
+		jsize count = JNI_getArrayLength(pointers);
+		jlong* longs = palloc((1 + count) * sizeof *longs);
+		HeapTuple* vals = palloc((1 + count) * sizeof *vals);
+		MemoryContext curr;
+		Ptr2Long p2l;
+		jsize i;
+
+		JNI_getLongArrayRegion(pointers, 0, count, longs);
+		for ( i = 0 ; i < count ; ++ i )
+		{
+			p2l.longVal = longs[i];
+			vals[i] = p2l.ptrVal;
+		}
+
+		curr = MemoryContextSwitchTo(JavaMemoryContext);
+		tuples = pljava_Tuple_createArray(vals, count, true);
+		MemoryContextSwitchTo(curr);
+
+		pfree(vals);
+		pfree(longs);
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR("heap_copytuple");
+	}
+	PG_END_TRY();
+	END_NATIVE
+	return tuples;
 }
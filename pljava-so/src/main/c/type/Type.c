@@ -11,12 +11,19 @@
  *   Chapman Flack
  */
 #include <postgres.h>
+#include <float.h>
 #include <fmgr.h>
 #include <funcapi.h>
+#include <miscadmin.h>
+#include <catalog/pg_type.h>
 #include <parser/parse_coerce.h>
 #include <utils/builtins.h>
 #include <utils/typcache.h>
 #include <utils/lsyscache.h>
+#include <utils/tuplestore.h>
+#if PG_VERSION_NUM >= 110000
+#include <utils/format_type.h>
+#endif
 
 #include "pljava/type/String_priv.h"
 #include "pljava/type/Array.h"
@@ -25,6 +32,7 @@
 #include "pljava/type/TupleDesc.h"
 #include "pljava/type/Oid.h"
 #include "pljava/type/UDT.h"
+#include "pljava/Backend.h"
 #include "pljava/Function.h"
 #include "pljava/Invocation.h"
 #include "pljava/HashMap.h"
@@ -78,6 +86,16 @@ static jclass s_Iterator_class;
 static jmethodID s_Iterator_hasNext;
 static jmethodID s_Iterator_next;
 
+static jclass s_PrimitiveIterator_OfInt_class;
+static jmethodID s_PrimitiveIterator_OfInt_nextInt;
+static jclass s_PrimitiveIterator_OfLong_class;
+static jmethodID s_PrimitiveIterator_OfLong_nextLong;
+static jclass s_PrimitiveIterator_OfDouble_class;
+static jmethodID s_PrimitiveIterator_OfDouble_nextDouble;
+
+static jclass s_AutoCloseable_class;
+static jmethodID s_AutoCloseable_close;
+
 static jclass s_TypeBridge_Holder_class;
 static jmethodID s_TypeBridge_Holder_className;
 static jmethodID s_TypeBridge_Holder_defaultOid;
@@ -85,10 +103,11 @@ static jmethodID s_TypeBridge_Holder_payload;
 
 /*
  * Structure used to retain state of set-returning functions using the
- * SFRM_ValuePerCall protocol (the only one PL/Java currently supports). In that
- * protocol, PostgreSQL will make repeated calls arriving at Type_invokeSRF
- * below, which returns one result row on each call (and then a no-more-results
- * result). This struct holds necessary context through the sequence of calls.
+ * SFRM_ValuePerCall protocol (the default one, see _materializeSRF below for
+ * the other one PL/Java supports). In that protocol, PostgreSQL will make
+ * repeated calls arriving at Type_invokeSRF below, which returns one result
+ * row on each call (and then a no-more-results result). This struct holds
+ * necessary context through the sequence of calls.
  *
  * If PostgreSQL is satisfied before the whole set has been returned, the
  * _endOfSetCB below will be invoked to clean up the work in progress, and also
@@ -441,6 +460,137 @@ Datum Type_invoke(Type self, Function fn, PG_FUNCTION_ARGS)
 	return self->typeClass->invoke(self, fn, fcinfo);
 }
 
+/*
+ * Whether a set-returning function can be evaluated by _materializeSRF. That
+ * is the case when pljava.materialize_srf is on (typically by a SET clause on
+ * the function itself) and the caller has said it can accept SFRM_Materialize
+ * and supplied the tuple descriptor it expects. Otherwise, the ValuePerCall
+ * protocol will be used as always.
+ */
+static bool _materializeAllowed(PG_FUNCTION_ARGS)
+{
+	ReturnSetInfo* rsinfo = (ReturnSetInfo*)fcinfo->resultinfo;
+
+	return pljavaMaterializeSRF
+		&& NULL != rsinfo && IsA(rsinfo, ReturnSetInfo)
+		&& 0 != (rsinfo->allowedModes & SFRM_Materialize)
+		&& NULL != rsinfo->expectedDesc;
+}
+
+/*
+ * Evaluate a set-returning function using the SFRM_Materialize protocol: the
+ * row producer is drained completely within this one call from PostgreSQL,
+ * and the rows are accumulated in a tuplestore (which will spill to disk if it
+ * exceeds work_mem) handed back to the executor in rsinfo->setResult.
+ *
+ * Because all of the work happens within a single Invocation, none of the
+ * stashing of call context needed by the ValuePerCall protocol is needed here,
+ * and no end-of-set callback is registered, as the iteration is always closed
+ * before returning.
+ */
+static Datum _materializeSRF(Type self, Function fn, PG_FUNCTION_ARGS)
+{
+	ReturnSetInfo* rsinfo = (ReturnSetInfo*)fcinfo->resultinfo;
+	MemoryContext currCtx = CurrentMemoryContext;
+	MemoryContext rowCtx;
+	Tuplestorestate* tupstore;
+	TupleDesc tupdesc;
+	jobject rowProducer;
+	jobject rowCollector;
+	jlong counter = 0;
+	/*
+	 * A Type with an out parameter (a Composite) produces its rows as complete
+	 * tuples; any other Type produces one-column rows as scalar Datums.
+	 */
+	bool rowIsTuple = Type_isOutParameter(self);
+
+	/*
+	 * The tuplestore and the descriptor handed back to the executor must
+	 * outlive this call, and the executor may free setDesc, so it gets a copy.
+	 */
+	MemoryContextSwitchTo(rsinfo->econtext->ecxt_per_query_memory);
+	tupstore = tuplestore_begin_heap(
+		0 != (rsinfo->allowedModes & SFRM_Materialize_Random), false, work_mem);
+	tupdesc = CreateTupleDescCopy(rsinfo->expectedDesc);
+	MemoryContextSwitchTo(currCtx);
+
+	rsinfo->returnMode = SFRM_Materialize;
+	rsinfo->setResult  = tupstore;
+	rsinfo->setDesc    = tupdesc;
+
+	rowProducer = Type_getSRFProducer(self, fn);
+	if(rowProducer == 0)
+	{
+		Invocation_assertDisconnect();
+		MemoryContextSwitchTo(currCtx);
+		return (Datum)0;
+	}
+	rowCollector = Type_getSRFCollector(self, fcinfo);
+
+	/*
+	 * Rows are produced in a context reset after each one is copied into the
+	 * tuplestore. It is made a child of the caller's context. If SPI should be
+	 * connected while it is current, SPI_finish will want to switch back to
+	 * it, so it is deleted only once SPI is disconnected below; if an error
+	 * leaves SPI connected, to be finished when the Invocation is popped, it
+	 * is left to go with its parent.
+	 */
+	rowCtx = AllocSetContextCreate(currCtx, "PL/Java SRF row",
+		ALLOCSET_DEFAULT_SIZES);
+
+	PG_TRY();
+	{
+		while(Type_hasNextSRF(self, rowProducer, rowCollector, counter++))
+		{
+			Datum value;
+			bool isnull = false;
+
+			MemoryContextSwitchTo(rowCtx);
+			value = Type_nextSRF(self, rowProducer, rowCollector);
+
+			if(rowIsTuple)
+			{
+				HeapTupleData tuple;
+				HeapTupleHeader hth = DatumGetHeapTupleHeader(value);
+				tuple.t_len = HeapTupleHeaderGetDatumLength(hth);
+				ItemPointerSetInvalid(&(tuple.t_self));
+				tuple.t_tableOid = InvalidOid;
+				tuple.t_data = hth;
+				tuplestore_puttuple(tupstore, &tuple);
+			}
+			else
+				tuplestore_putvalues(tupstore, tupdesc, &value, &isnull);
+
+			MemoryContextReset(rowCtx);
+		}
+	}
+	PG_CATCH();
+	{
+		MemoryContextSwitchTo(currCtx);
+		if ( ! currentInvocation->hasConnected )
+			MemoryContextDelete(rowCtx);
+		PG_RE_THROW();
+	}
+	PG_END_TRY();
+
+	Type_closeSRF(self, rowProducer);
+	JNI_deleteLocalRef(rowProducer);
+	if(rowCollector != 0)
+		JNI_deleteLocalRef(rowCollector);
+
+	/*
+	 * As in _closeIteration, disconnecting SPI (if it was connected) switches
+	 * back to whatever context was current when it connected, so switch back
+	 * to the caller's context afterward. Nothing refers to rowCtx after that.
+	 */
+	Invocation_assertDisconnect();
+	MemoryContextSwitchTo(currCtx);
+	MemoryContextDelete(rowCtx);
+
+	/* The result is delivered in rsinfo->setResult; the Datum is ignored. */
+	return (Datum)0;
+}
+
 Datum Type_invokeSRF(Type self, Function fn, PG_FUNCTION_ARGS)
 {
 	bool hasRow;
@@ -454,6 +604,9 @@ Datum Type_invokeSRF(Type self, Function fn, PG_FUNCTION_ARGS)
 	{
 		jobject tmp;
 
+		if(_materializeAllowed(fcinfo))
+			return _materializeSRF(self, fn, fcinfo);
+
 		/* create a function context for cross-call persistence
 		 */
 		context = SRF_FIRSTCALL_INIT();
@@ -751,17 +904,98 @@ static bool _Type_hasNextSRF(Type self, jobject rowProducer, jobject rowCollecto
 	return (JNI_callBooleanMethod(rowProducer, s_Iterator_hasNext) == JNI_TRUE);
 }
 
+/*
+ * Make the datum for a value fetched unboxed from an integral primitive
+ * iterator, raising the SQL cast's out-of-range error rather than truncating
+ * where the result type cannot hold it.
+ */
+static Datum primitiveSRFLong(Oid typeId, jlong v)
+{
+	switch ( typeId )
+	{
+	case INT2OID:
+		if ( (int16)v != v )
+			break;
+		return Int16GetDatum((int16)v);
+	case INT4OID:
+		if ( (int32)v != v )
+			break;
+		return Int32GetDatum((int32)v);
+	case INT8OID:
+		return Int64GetDatum((int64)v);
+	case FLOAT4OID:
+		return Float4GetDatum((float4)v);
+	default:
+		return Float8GetDatum((float8)v);
+	}
+	ereport(ERROR, (
+		errcode(ERRCODE_NUMERIC_VALUE_OUT_OF_RANGE),
+		errmsg("%s out of range", format_type_be(typeId))));
+	return 0; /* Keep compiler happy */
+}
+
 static Datum _Type_nextSRF(Type self, jobject rowProducer, jobject rowCollector)
 {
+	jobject tmp;
+	Datum result;
+	jdouble dv;
+	Oid typeId = Type_getOid(self);
+
+	/*
+	 * A primitive iterator can be asked for its values unboxed when the result
+	 * is one of the primitive SQL types. Where that type is narrower than the
+	 * iterator's values, they are range checked as the SQL casts would be,
+	 * rather than truncated on the way through Number; a floating iterator is
+	 * not accepted for an integral result at all. Other result types (numeric,
+	 * say) still take the boxed path below.
+	 */
+	switch ( typeId )
+	{
+	case INT2OID:
+	case INT4OID:
+	case INT8OID:
+	case FLOAT4OID:
+	case FLOAT8OID:
+		if ( JNI_isInstanceOf(rowProducer, s_PrimitiveIterator_OfInt_class) )
+			return primitiveSRFLong(typeId, JNI_callIntMethod(rowProducer,
+				s_PrimitiveIterator_OfInt_nextInt));
+		if ( JNI_isInstanceOf(rowProducer, s_PrimitiveIterator_OfLong_class) )
+			return primitiveSRFLong(typeId, JNI_callLongMethod(rowProducer,
+				s_PrimitiveIterator_OfLong_nextLong));
+		if ( ! JNI_isInstanceOf(rowProducer,
+			s_PrimitiveIterator_OfDouble_class) )
+			break;
+		if ( FLOAT4OID != typeId  &&  FLOAT8OID != typeId )
+			ereport(ERROR, (
+				errcode(ERRCODE_DATATYPE_MISMATCH),
+				errmsg("PrimitiveIterator.OfDouble cannot produce values "
+					"of type %s", format_type_be(typeId))));
+		dv = JNI_callDoubleMethod(rowProducer,
+			s_PrimitiveIterator_OfDouble_nextDouble);
+		if ( FLOAT8OID == typeId )
+			return Float8GetDatum(dv);
+		if ( ! isinf(dv)  &&  ( dv > FLT_MAX  ||  dv < -FLT_MAX ) )
+			ereport(ERROR, (
+				errcode(ERRCODE_NUMERIC_VALUE_OUT_OF_RANGE),
+				errmsg("value out of range: overflow")));
+		return Float4GetDatum((float4)dv);
+	}
+
 	/* XXX make an entry point */
-	jobject tmp = JNI_callObjectMethod(rowProducer, s_Iterator_next);
-	Datum result = Type_coerceObject(self, tmp);
+	tmp = JNI_callObjectMethod(rowProducer, s_Iterator_next);
+	result = Type_coerceObject(self, tmp);
 	JNI_deleteLocalRef(tmp);
 	return result;
 }
 
 static void _Type_closeSRF(Type self, jobject rowProducer)
 {
+	/*
+	 * An iterator adapted from a stream (or any producer that holds resources)
+	 * gets closed whether the set was completed or abandoned early.
+	 */
+	if ( JNI_isInstanceOf(rowProducer, s_AutoCloseable_class) )
+		JNI_callVoidMethod(rowProducer, s_AutoCloseable_close);
 }
 
 jobject Type_getSRFProducer(Type self, Function fn)
@@ -858,6 +1092,7 @@ static void initializeTypeBridges()
 extern void Any_initialize(void);
 extern void Coerce_initialize(void);
 extern void Void_initialize(void);
+extern void Internal_initialize(void);
 extern void Boolean_initialize(void);
 extern void Byte_initialize(void);
 extern void Short_initialize(void);
@@ -895,6 +1130,7 @@ void Type_initialize(void)
 	Any_initialize();
 	Coerce_initialize();
 	Void_initialize();
+	Internal_initialize();
 	Boolean_initialize();
 	Byte_initialize();
 	Short_initialize();
@@ -926,6 +1162,24 @@ void Type_initialize(void)
 	s_Iterator_hasNext = PgObject_getJavaMethod(s_Iterator_class, "hasNext", "()Z");
 	s_Iterator_next = PgObject_getJavaMethod(s_Iterator_class, "next", "()Ljava/lang/Object;");
 
+	s_PrimitiveIterator_OfInt_class = JNI_newGlobalRef(PgObject_getJavaClass(
+		"java/util/PrimitiveIterator$OfInt"));
+	s_PrimitiveIterator_OfInt_nextInt = PgObject_getJavaMethod(
+		s_PrimitiveIterator_OfInt_class, "nextInt", "()I");
+	s_PrimitiveIterator_OfLong_class = JNI_newGlobalRef(PgObject_getJavaClass(
+		"java/util/PrimitiveIterator$OfLong"));
+	s_PrimitiveIterator_OfLong_nextLong = PgObject_getJavaMethod(
+		s_PrimitiveIterator_OfLong_class, "nextLong", "()J");
+	s_PrimitiveIterator_OfDouble_class = JNI_newGlobalRef(PgObject_getJavaClass(
+		"java/util/PrimitiveIterator$OfDouble"));
+	s_PrimitiveIterator_OfDouble_nextDouble = PgObject_getJavaMethod(
+		s_PrimitiveIterator_OfDouble_class, "nextDouble", "()D");
+
+	s_AutoCloseable_class = JNI_newGlobalRef(PgObject_getJavaClass(
+		"java/lang/AutoCloseable"));
+	s_AutoCloseable_close = PgObject_getJavaMethod(
+		s_AutoCloseable_class, "close", "()V");
+
 	initializeTypeBridges();
 }
 
@@ -0,0 +1,616 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+#include <postgres.h>
+#include <catalog/pg_type.h>
+#include <utils/builtins.h>
+#include <utils/memutils.h>
+#include <windowapi.h>
+#if PG_VERSION_NUM >= 110000
+#include <utils/format_type.h>
+#endif
+
+#include "org_postgresql_pljava_internal_WindowObject.h"
+#include "pljava/Invocation.h"
+#include "pljava/DualState.h"
+#include "pljava/Exception.h"
+#include "pljava/Function.h"
+#include "pljava/type/Type_priv.h"
+#include "pljava/type/WindowObject.h"
+
+static jclass    s_WindowObject_class;
+static jmethodID s_WindowObject_init;
+
+/* Fetch modes, as in the Java class. */
+#define MODE_CURRENT   0
+#define MODE_PARTITION 1
+#define MODE_FRAME     2
+
+/*
+ * An object saved by setPartitionState is held by a global reference in
+ * partition-local memory, released by a callback when the partition's memory
+ * context is reset at the end of the partition. The reset can come in error
+ * cleanup, so the reference is left with Function_deferGlobalRef to be deleted
+ * later.
+ */
+typedef struct
+{
+	jobject state;
+#if PG_VERSION_NUM >= 90500
+	MemoryContextCallback callback;
+	bool registered;
+#endif
+} PartitionState;
+
+#if PG_VERSION_NUM >= 90500
+static void _releasePartitionState(void *arg)
+{
+	PartitionState *ps = (PartitionState *)arg;
+	Function_deferGlobalRef(ps->state);
+	ps->state = NULL;
+	ps->registered = false;
+}
+#endif
+
+jobject pljava_WindowObject_create(FunctionCallInfo fcinfo)
+{
+	Ptr2Long p2lfc;
+	Ptr2Long p2lro;
+
+	p2lfc.longVal = 0L;
+	p2lfc.ptrVal = fcinfo;
+
+	p2lro.longVal = 0L;
+	p2lro.ptrVal = currentInvocation;
+	currentInvocation->hasDualState = true;
+
+	return JNI_newObjectLocked(
+			s_WindowObject_class,
+			s_WindowObject_init,
+			pljava_DualState_key(),
+			p2lro.longVal,
+			p2lfc.longVal);
+}
+
+/*
+ * Fetch one argument at the position described by mode, relpos, seek and
+ * setMark, storing isnull and isout into the Java flags array, and returning
+ * the argument's type in *typeId and whether it is null (or out) in *wasNull.
+ */
+static Datum fetch(jlong _fcinfo, jint argno, jint mode, jlong relpos,
+	jint seek, jboolean setMark, jbooleanArray flags,
+	Oid *typeId, bool *wasNull)
+{
+	Ptr2Long p2l;
+	FunctionCallInfo fcinfo;
+	WindowObject winobj;
+	bool isnull = false;
+	bool isout = false;
+	jboolean jflags[2];
+	Datum d;
+
+	p2l.longVal = _fcinfo;
+	fcinfo = (FunctionCallInfo)p2l.ptrVal;
+	winobj = PG_WINDOW_OBJECT();
+
+	if ( argno < 0  ||  argno >= PG_NARGS() )
+		ereport(ERROR, (
+			errcode(ERRCODE_INVALID_PARAMETER_VALUE),
+			errmsg("window function argument %d does not exist", argno)));
+
+	*typeId = get_fn_expr_argtype(fcinfo->flinfo, argno);
+
+	switch ( mode )
+	{
+	case MODE_PARTITION:
+		d = WinGetFuncArgInPartition(winobj, argno, (int)relpos, seek,
+			JNI_TRUE == setMark, &isnull, &isout);
+		break;
+	case MODE_FRAME:
+		d = WinGetFuncArgInFrame(winobj, argno, (int)relpos, seek,
+			JNI_TRUE == setMark, &isnull, &isout);
+		break;
+	default:
+		d = WinGetFuncArgCurrent(winobj, argno, &isnull);
+	}
+
+	jflags[0] = (isnull || isout) ? JNI_TRUE : JNI_FALSE;
+	jflags[1] = isout ? JNI_TRUE : JNI_FALSE;
+	JNI_setBooleanArrayRegion(flags, 0, 2, jflags);
+	*wasNull = isnull || isout;
+	return *wasNull ? (Datum)0 : d;
+}
+
+static void mismatch(Oid typeId, const char *javaType)
+{
+	ereport(ERROR, (
+		errcode(ERRCODE_DATATYPE_MISMATCH),
+		errmsg("cannot fetch window function argument of type %s as %s",
+			format_type_be(typeId), javaType)));
+}
+
+static int64 asLong(Datum d, Oid typeId)
+{
+	switch ( typeId )
+	{
+	case INT2OID: return DatumGetInt16(d);
+	case INT4OID: return DatumGetInt32(d);
+	case INT8OID: return DatumGetInt64(d);
+	case OIDOID:  return DatumGetObjectId(d);
+	}
+	mismatch(typeId, "long");
+	return 0; /* not reached */
+}
+
+static float8 asDouble(Datum d, Oid typeId)
+{
+	switch ( typeId )
+	{
+	case FLOAT4OID: return DatumGetFloat4(d);
+	case FLOAT8OID: return DatumGetFloat8(d);
+	}
+	return (float8)asLong(d, typeId);
+}
+
+/****************************************
+ * JNI methods
+ ****************************************/
+
+/*
+ * Class:     org_postgresql_pljava_internal_WindowObject
+ * Method:    _getPartitionRowCount
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL
+Java_org_postgresql_pljava_internal_WindowObject__1getPartitionRowCount(
+	JNIEnv* env, jclass clazz, jlong _fcinfo)
+{
+	jlong result = 0;
+	Ptr2Long p2l;
+	p2l.longVal = _fcinfo;
+
+	BEGIN_NATIVE
+	PG_TRY();
+	{
+		FunctionCallInfo fcinfo = (FunctionCallInfo)p2l.ptrVal;
+		result = WinGetPartitionRowCount(PG_WINDOW_OBJECT());
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR("WinGetPartitionRowCount");
+	}
+	PG_END_TRY();
+	END_NATIVE
+	return result;
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_WindowObject
+ * Method:    _getCurrentPosition
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL
+Java_org_postgresql_pljava_internal_WindowObject__1getCurrentPosition(
+	JNIEnv* env, jclass clazz, jlong _fcinfo)
+{
+	jlong result = 0;
+	Ptr2Long p2l;
+	p2l.longVal = _fcinfo;
+
+	BEGIN_NATIVE
+	PG_TRY();
+	{
+		FunctionCallInfo fcinfo = (FunctionCallInfo)p2l.ptrVal;
+		result = WinGetCurrentPosition(PG_WINDOW_OBJECT());
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR("WinGetCurrentPosition");
+	}
+	PG_END_TRY();
+	END_NATIVE
+	return result;
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_WindowObject
+ * Method:    _setMarkPosition
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL
+Java_org_postgresql_pljava_internal_WindowObject__1setMarkPosition(
+	JNIEnv* env, jclass clazz, jlong _fcinfo, jlong pos)
+{
+	Ptr2Long p2l;
+	p2l.longVal = _fcinfo;
+
+	BEGIN_NATIVE
+	PG_TRY();
+	{
+		FunctionCallInfo fcinfo = (FunctionCallInfo)p2l.ptrVal;
+		WinSetMarkPosition(PG_WINDOW_OBJECT(), pos);
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR("WinSetMarkPosition");
+	}
+	PG_END_TRY();
+	END_NATIVE
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_WindowObject
+ * Method:    _rowsArePeers
+ * Signature: (JJJ)Z
+ */
+JNIEXPORT jboolean JNICALL
+Java_org_postgresql_pljava_internal_WindowObject__1rowsArePeers(
+	JNIEnv* env, jclass clazz, jlong _fcinfo, jlong pos1, jlong pos2)
+{
+	jboolean result = JNI_FALSE;
+	Ptr2Long p2l;
+	p2l.longVal = _fcinfo;
+
+	BEGIN_NATIVE
+	PG_TRY();
+	{
+		FunctionCallInfo fcinfo = (FunctionCallInfo)p2l.ptrVal;
+		result = WinRowsArePeers(PG_WINDOW_OBJECT(), pos1, pos2)
+			? JNI_TRUE : JNI_FALSE;
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR("WinRowsArePeers");
+	}
+	PG_END_TRY();
+	END_NATIVE
+	return result;
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_WindowObject
+ * Method:    _getArgCount
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_postgresql_pljava_internal_WindowObject__1getArgCount(
+	JNIEnv* env, jclass clazz, jlong _fcinfo)
+{
+	Ptr2Long p2l;
+	FunctionCallInfo fcinfo;
+	p2l.longVal = _fcinfo;
+	fcinfo = (FunctionCallInfo)p2l.ptrVal;
+	return PG_NARGS();
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_WindowObject
+ * Method:    _getBoolean
+ * Signature: (JIIJIZ[Z)Z
+ */
+JNIEXPORT jboolean JNICALL
+Java_org_postgresql_pljava_internal_WindowObject__1getBoolean(
+	JNIEnv* env, jclass clazz, jlong _fcinfo, jint argno, jint mode,
+	jlong relpos, jint seek, jboolean setMark, jbooleanArray flags)
+{
+	jboolean result = JNI_FALSE;
+
+	BEGIN_NATIVE
+	PG_TRY();
+	{
+		Oid typeId;
+		bool isnull;
+		Datum d = fetch(_fcinfo, argno, mode, relpos, seek, setMark, flags,
+			&typeId, &isnull);
+		if ( BOOLOID != typeId )
+			mismatch(typeId, "boolean");
+		result = DatumGetBool(d) ? JNI_TRUE : JNI_FALSE;
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR("WinGetFuncArg");
+	}
+	PG_END_TRY();
+	END_NATIVE
+	return result;
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_WindowObject
+ * Method:    _getInt
+ * Signature: (JIIJIZ[Z)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_postgresql_pljava_internal_WindowObject__1getInt(
+	JNIEnv* env, jclass clazz, jlong _fcinfo, jint argno, jint mode,
+	jlong relpos, jint seek, jboolean setMark, jbooleanArray flags)
+{
+	jint result = 0;
+
+	BEGIN_NATIVE
+	PG_TRY();
+	{
+		Oid typeId;
+		bool isnull;
+		int64 v;
+		Datum d = fetch(_fcinfo, argno, mode, relpos, seek, setMark, flags,
+			&typeId, &isnull);
+		v = asLong(d, typeId);
+		if ( (jint)v != v )
+			ereport(ERROR, (
+				errcode(ERRCODE_NUMERIC_VALUE_OUT_OF_RANGE),
+				errmsg("window function argument of type %s out of range "
+					"for int", format_type_be(typeId))));
+		result = (jint)v;
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR("WinGetFuncArg");
+	}
+	PG_END_TRY();
+	END_NATIVE
+	return result;
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_WindowObject
+ * Method:    _getLong
+ * Signature: (JIIJIZ[Z)J
+ */
+JNIEXPORT jlong JNICALL
+Java_org_postgresql_pljava_internal_WindowObject__1getLong(
+	JNIEnv* env, jclass clazz, jlong _fcinfo, jint argno, jint mode,
+	jlong relpos, jint seek, jboolean setMark, jbooleanArray flags)
+{
+	jlong result = 0;
+
+	BEGIN_NATIVE
+	PG_TRY();
+	{
+		Oid typeId;
+		bool isnull;
+		Datum d = fetch(_fcinfo, argno, mode, relpos, seek, setMark, flags,
+			&typeId, &isnull);
+		result = asLong(d, typeId);
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR("WinGetFuncArg");
+	}
+	PG_END_TRY();
+	END_NATIVE
+	return result;
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_WindowObject
+ * Method:    _getDouble
+ * Signature: (JIIJIZ[Z)D
+ */
+JNIEXPORT jdouble JNICALL
+Java_org_postgresql_pljava_internal_WindowObject__1getDouble(
+	JNIEnv* env, jclass clazz, jlong _fcinfo, jint argno, jint mode,
+	jlong relpos, jint seek, jboolean setMark, jbooleanArray flags)
+{
+	jdouble result = 0;
+
+	BEGIN_NATIVE
+	PG_TRY();
+	{
+		Oid typeId;
+		bool isnull;
+		Datum d = fetch(_fcinfo, argno, mode, relpos, seek, setMark, flags,
+			&typeId, &isnull);
+		result = asDouble(d, typeId);
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR("WinGetFuncArg");
+	}
+	PG_END_TRY();
+	END_NATIVE
+	return result;
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_WindowObject
+ * Method:    _getObject
+ * Signature: (JIIJIZ[Z)Ljava/lang/Object;
+ */
+JNIEXPORT jobject JNICALL
+Java_org_postgresql_pljava_internal_WindowObject__1getObject(
+	JNIEnv* env, jclass clazz, jlong _fcinfo, jint argno, jint mode,
+	jlong relpos, jint seek, jboolean setMark, jbooleanArray flags)
+{
+	jobject result = 0;
+
+	BEGIN_NATIVE
+	PG_TRY();
+	{
+		Oid typeId;
+		bool isnull;
+		Datum d = fetch(_fcinfo, argno, mode, relpos, seek, setMark, flags,
+			&typeId, &isnull);
+		if ( ! isnull )
+			result = Type_coerceDatum(
+				Type_objectTypeFromOid(typeId, Invocation_getTypeMap()), d).l;
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR("WinGetFuncArg");
+	}
+	PG_END_TRY();
+	END_NATIVE
+	return result;
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_WindowObject
+ * Method:    _getPartitionState
+ * Signature: (J)Ljava/lang/Object;
+ */
+JNIEXPORT jobject JNICALL
+Java_org_postgresql_pljava_internal_WindowObject__1getPartitionState(
+	JNIEnv* env, jclass clazz, jlong _fcinfo)
+{
+	jobject result = 0;
+	Ptr2Long p2l;
+	p2l.longVal = _fcinfo;
+
+	BEGIN_NATIVE
+	PG_TRY();
+	{
+		FunctionCallInfo fcinfo = (FunctionCallInfo)p2l.ptrVal;
+		PartitionState *ps = (PartitionState *)
+			WinGetPartitionLocalMemory(PG_WINDOW_OBJECT(), sizeof *ps);
+		if ( NULL != ps->state )
+			result = JNI_newLocalRef(ps->state);
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR("WinGetPartitionLocalMemory");
+	}
+	PG_END_TRY();
+	END_NATIVE
+	return result;
+}
+
+/*
+ * Class:     org_postgresql_pljava_internal_WindowObject
+ * Method:    _setPartitionState
+ * Signature: (JLjava/lang/Object;)V
+ */
+JNIEXPORT void JNICALL
+Java_org_postgresql_pljava_internal_WindowObject__1setPartitionState(
+	JNIEnv* env, jclass clazz, jlong _fcinfo, jobject state)
+{
+	Ptr2Long p2l;
+	p2l.longVal = _fcinfo;
+
+	BEGIN_NATIVE
+	PG_TRY();
+	{
+#if PG_VERSION_NUM >= 90500
+		FunctionCallInfo fcinfo = (FunctionCallInfo)p2l.ptrVal;
+		PartitionState *ps = (PartitionState *)
+			WinGetPartitionLocalMemory(PG_WINDOW_OBJECT(), sizeof *ps);
+		if ( NULL != ps->state )
+			JNI_deleteGlobalRef(ps->state);
+		ps->state = NULL == state ? NULL : JNI_newGlobalRef(state);
+		if ( ! ps->registered )
+		{
+			ps->callback.func = _releasePartitionState;
+			ps->callback.arg = ps;
+			MemoryContextRegisterResetCallback(
+				GetMemoryChunkContext(ps), &ps->callback);
+			ps->registered = true;
+		}
+#else
+		ereport(ERROR, (
+			errcode(ERRCODE_FEATURE_NOT_SUPPORTED),
+			errmsg("window partition state requires PostgreSQL 9.5 or later")));
+#endif
+	}
+	PG_CATCH();
+	{
+		Exception_throw_ERROR("WinGetPartitionLocalMemory");
+	}
+	PG_END_TRY();
+	END_NATIVE
+}
+
+/* Make this datatype available to the postgres system.
+ */
+void pljava_WindowObject_initialize(void)
+{
+	TypeClass cls;
+	jclass jcls;
+	JNINativeMethod methods[] =
+	{
+		{
+		"_getPartitionRowCount",
+		"(J)J",
+		Java_org_postgresql_pljava_internal_WindowObject__1getPartitionRowCount
+		},
+		{
+		"_getCurrentPosition",
+		"(J)J",
+		Java_org_postgresql_pljava_internal_WindowObject__1getCurrentPosition
+		},
+		{
+		"_setMarkPosition",
+		"(JJ)V",
+		Java_org_postgresql_pljava_internal_WindowObject__1setMarkPosition
+		},
+		{
+		"_rowsArePeers",
+		"(JJJ)Z",
+		Java_org_postgresql_pljava_internal_WindowObject__1rowsArePeers
+		},
+		{
+		"_getArgCount",
+		"(J)I",
+		Java_org_postgresql_pljava_internal_WindowObject__1getArgCount
+		},
+		{
+		"_getBoolean",
+		"(JIIJIZ[Z)Z",
+		Java_org_postgresql_pljava_internal_WindowObject__1getBoolean
+		},
+		{
+		"_getInt",
+		"(JIIJIZ[Z)I",
+		Java_org_postgresql_pljava_internal_WindowObject__1getInt
+		},
+		{
+		"_getLong",
+		"(JIIJIZ[Z)J",
+		Java_org_postgresql_pljava_internal_WindowObject__1getLong
+		},
+		{
+		"_getDouble",
+		"(JIIJIZ[Z)D",
+		Java_org_postgresql_pljava_internal_WindowObject__1getDouble
+		},
+		{
+		"_getObject",
+		"(JIIJIZ[Z)Ljava/lang/Object;",
+		Java_org_postgresql_pljava_internal_WindowObject__1getObject
+		},
+		{
+		"_getPartitionState",
+		"(J)Ljava/lang/Object;",
+		Java_org_postgresql_pljava_internal_WindowObject__1getPartitionState
+		},
+		{
+		"_setPartitionState",
+		"(JLjava/lang/Object;)V",
+		Java_org_postgresql_pljava_internal_WindowObject__1setPartitionState
+		},
+		{ 0, 0, 0 }
+	};
+
+	jcls = PgObject_getJavaClass("org/postgresql/pljava/internal/WindowObject");
+	PgObject_registerNatives2(jcls, methods);
+
+	s_WindowObject_init = PgObject_getJavaMethod(jcls, "<init>",
+		"(Lorg/postgresql/pljava/internal/DualState$Key;JJ)V");
+	s_WindowObject_class = JNI_newGlobalRef(jcls);
+	JNI_deleteLocalRef(jcls);
+
+	/* Use interface name for signatures.
+	 */
+	cls = TypeClass_alloc("type.WindowObject");
+	cls->JNISignature   = "Lorg/postgresql/pljava/WindowObject;";
+	cls->javaTypeName   = "org.postgresql.pljava.WindowObject";
+	Type_registerType("org.postgresql.pljava.WindowObject",
+		TypeClass_allocInstance(cls, InvalidOid));
+}
@@ -29,6 +29,14 @@ void Backend_setJavaSecurity(bool trusted);
 
 int Backend_setJavaLogLevel(int logLevel);
 
+/*
+ * The setting of pljava.materialize_srf, consulted when a set-returning
+ * function is called, to use the SFRM_Materialize protocol if the caller
+ * allows it.
+ */
+extern bool pljavaMaterializeSRF;
+extern bool pljavaInvokerClasses;
+
 #ifdef PG_GETCONFIGOPTION
 #error The macro PG_GETCONFIGOPTION needs to be renamed.
 #endif
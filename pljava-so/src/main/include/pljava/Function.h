@@ -42,6 +42,20 @@ extern "C" {
  */
 extern void Function_clearFunctionCache(void);
 
+/*
+ * Evict only the functions whose schema class loader is one of the loaders in
+ * the given Java array, as discarded by Loader when a jar or class path they
+ * depend on has changed.
+ */
+extern void Function_evictForLoaders(jobjectArray loaders);
+
+/*
+ * Create ahead of their first calls the functions named in a list, as given
+ * in pljava.preload_functions, and call each taking no arguments warmupCalls
+ * times. Must be called within an Invocation and a transaction.
+ */
+extern void Function_preload(char const *list, int warmupCalls);
+
 /*
  * Get a Function using a function Oid. If the function is not found, one
  * will be created based on the class and method name denoted in the "AS"
@@ -57,6 +71,36 @@ extern void Function_clearFunctionCache(void);
 extern Function Function_getFunction(
 	Oid funcOid, bool forTrigger, bool forValidator, bool checkBody);
 
+/*
+ * Get the Function for a call through the PL/Java call handler. The same as
+ * Function_getFunction for the function being called, except that once it has
+ * been found, the Function is remembered in the caller's flinfo->fn_extra, so
+ * later calls through the same FmgrInfo need no hash lookup. Not done for
+ * set-returning functions, which need fn_extra for the SRF protocol.
+ */
+extern Function Function_getFunctionForCall(PG_FUNCTION_ARGS, bool forTrigger);
+
+/*
+ * The object the Java code has saved for the call site (the FmgrInfo) of the
+ * current invocation, or NULL; and saving one.
+ */
+extern jobject Function_getCallSiteState(void);
+extern void Function_setCallSiteState(jobject state);
+
+/*
+ * Leave a global reference to be deleted later by
+ * Function_releaseDeferredStates, for a memory context callback, which can run
+ * in error cleanup, outside of any call from or into Java.
+ */
+extern void Function_deferGlobalRef(jobject ref);
+
+/*
+ * Delete the references left by Function_deferGlobalRef, including those to
+ * saved call site states whose memory contexts have gone away, since last
+ * called. Called as an invocation returns.
+ */
+extern void Function_releaseDeferredStates(void);
+
 extern Type Function_checkTypeUDT(Oid typeId, Form_pg_type typeStruct);
 
 /*
@@ -62,10 +62,22 @@ struct Invocation_
 	 */
 	bool pushedFrame;
 
+	/**
+	 * Whether any DualState instance has been created with this Invocation
+	 * as its resource owner, so must be released when the Invocation is popped.
+	 */
+	bool hasDualState;
+
 	/**
 	 * The currently executing Function.
 	 */
 	Function      function;
+
+	/**
+	 * The call site (what Function_getFunctionForCall keeps for the FmgrInfo)
+	 * of the current call, or NULL if there is none.
+	 */
+	struct CallSite_ *callSite;
 	
 	/**
 	 * Set to true if an elog with a severity >= ERROR
@@ -75,6 +87,13 @@ struct Invocation_
 	 */
 	bool          errorOccurred;
 
+	/**
+	 * The transaction nesting level when the call began. Anything allocated
+	 * in a subtransaction begun since then can vanish with its rollback,
+	 * before the Invocation is popped.
+	 */
+	int           nestLevel;
+
 #if PG_VERSION_NUM >= 100000
 	/**
 	 * TriggerData pointer, if the function is being called as a trigger,
@@ -84,6 +103,15 @@ struct Invocation_
 	TriggerData*  triggerData;
 #endif
 
+#if PG_VERSION_NUM >= 110000
+	/**
+	 * Set if the call is of a procedure by a CALL that permits transaction
+	 * control, so SPI should be connected in non-atomic mode, allowing
+	 * SPI_commit and SPI_rollback.
+	 */
+	bool          nonAtomic;
+#endif
+
 	/**
 	 * The previous call context when nested function calls
 	 * are made or 0 if this call is at the top level.
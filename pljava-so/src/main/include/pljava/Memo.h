@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+#ifndef __pljava_Memo_h
+#define __pljava_Memo_h
+
+#include <postgres.h>
+#include <fmgr.h>
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+/**********************************************************************
+ * A per-function, per-backend LRU cache of the results of an IMMUTABLE
+ * function, keyed by its argument datums, so a repeated call can be
+ * answered without entering Java. Its capacity is pljava.memoize_cache_size
+ * entries per function; zero (the default) turns memoization off.
+ **********************************************************************/
+
+typedef struct Memo_* Memo;
+
+/*
+ * The key of one call, from pljava_Memo_lookup to pljava_Memo_store.
+ */
+typedef struct MemoKey_* MemoKey;
+
+/*
+ * The setting of pljava.memoize_cache_size.
+ */
+extern int pljavaMemoizeCacheSize;
+
+/*
+ * Create a Memo for a function with the given argument and result types, or
+ * return NULL if the function is not eligible: it must be IMMUTABLE, not
+ * return a set, and have at least one argument, and none of its argument or
+ * result types may be pseudo-types or composite.
+ */
+extern Memo pljava_Memo_create(HeapTuple procTup);
+
+/*
+ * Look up the arguments and collation of a call. On a hit, return true with
+ * the result in *result (and fcinfo->isnull set); the result is copied into
+ * the current memory context. On a miss, return false, with *key set for use
+ * in a following pljava_Memo_store in the same call.
+ */
+extern bool pljava_Memo_lookup(
+	Memo self, PG_FUNCTION_ARGS, MemoKey *key, Datum *result);
+
+/*
+ * Remember the result (and fcinfo->isnull) of a call that missed, evicting
+ * the least recently used entry if the cache is full.
+ */
+extern void pljava_Memo_store(
+	Memo self, PG_FUNCTION_ARGS, MemoKey key, Datum result);
+
+extern void pljava_Memo_free(Memo self);
+
+extern void pljava_Memo_initialize(void);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
@@ -72,6 +72,14 @@ extern int vsnprintf(char* buf, size_t count, const char* format, va_list arg);
 #include "access/htup_details.h"
 #endif
 
+/*
+ * TupleDescAttr appears in PG 11 (and was added in later minor releases of
+ * some earlier versions); before it, the attributes were an array of pointers.
+ */
+#ifndef TupleDescAttr
+#define TupleDescAttr(tupdesc, i) ((tupdesc)->attrs[(i)])
+#endif
+
 /*
  * PG_*_{MIN,MAX} macros (which happen, conveniently, to match Java's datatypes
  * (the signed ones, anyway), appear in PG 9.5. Could test for them directly,
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+#ifndef __pljava_Internal_h
+#define __pljava_Internal_h
+
+#include "pljava/type/Type.h"
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+/*
+ * The types standing for bytea as the return of an aggregate's serialize
+ * function (written from the SQLData state) and as the first parameter of its
+ * deserialize function (read as an SQLInput). They are not registered, and
+ * are used only by Function for those functions.
+ */
+extern Type pljava_Internal_aggStateBytes(void);
+extern Type pljava_Internal_aggStateInput(void);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+#ifndef __pljava_type_SupportRequest_h
+#define __pljava_type_SupportRequest_h
+
+#include "pljava/type/Type.h"
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+/**********************************************************************
+ * The SupportRequest java class lets a planner support function written
+ * in Java answer the planner's requests for rows, cost and selectivity
+ * estimates.
+ **********************************************************************/
+
+/*
+ * The type to use for a parameter or the result of a function declared with
+ * SQL type internal, given the Java type name in its AS string: the
+ * SupportRequest type for a parameter of type
+ * org.postgresql.pljava.SupportRequest, a type for a boolean result that
+ * returns the request node when true, or else origType unchanged.
+ */
+extern Type pljava_SupportRequest_reconcile(
+	Type origType, const char *javaName, bool isResult);
+
+extern void pljava_SupportRequest_initialize(void);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
@@ -30,6 +30,14 @@ extern "C" {
 extern jobject TupleTable_createFromSlot(TupleTableSlot* tupleTableSlot);
 extern jobject TupleTable_create(SPITupleTable* tupleTable, jobject knownTD);
 
+/*
+ * Create the org.postgresql.pljava.TupleTable instance referring to the rows
+ * of the SPITupleTable in place, and responsible for freeing it. The table
+ * must belong to the current Invocation's SPI connection.
+ */
+extern jobject TupleTable_createInPlace(
+	SPITupleTable* tupleTable, jobject knownTD);
+
 #ifdef __cplusplus
 }
 #endif
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+#ifndef __pljava_type_WindowObject_h
+#define __pljava_type_WindowObject_h
+
+#include "pljava/type/Type.h"
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+/**********************************************************************
+ * The WindowObject java class gives a window function access to the
+ * rows of its partition and frame through PostgreSQL's window API.
+ **********************************************************************/
+
+/*
+ * Create the org.postgresql.pljava.WindowObject object for a call of a window
+ * function; it is valid for the duration of the call.
+ */
+extern jobject pljava_WindowObject_create(FunctionCallInfo fcinfo);
+
+extern void pljava_WindowObject_initialize(void);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
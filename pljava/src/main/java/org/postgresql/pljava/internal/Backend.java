@@ -271,6 +271,16 @@ public class Backend
 		return doInPG(Backend::_getStatementCacheSize);
 	}
 
+	/**
+	 * Returns the memory, in kilobytes, that each batch of rows fetched for a
+	 * result set should aim to use, from {@code pljava.fetch_memory_budget};
+	 * zero if fetches are not to be sized that way.
+	 */
+	public static int getFetchMemoryBudget()
+	{
+		return doInPG(Backend::_getFetchMemoryBudget);
+	}
+
 	/**
 	 * Log a message using the internal elog command.
 	 * @param logLevel The log level as defined in
@@ -439,6 +449,15 @@ public class Backend
 		doInPG(Backend::_clearFunctionCache);
 	}
 
+	/**
+	 * Evict from the function cache only the functions whose schema class
+	 * loader is one of {@code loaders}.
+	 */
+	public static void evictFunctions(ClassLoader[] loaders)
+	{
+		doInPG(() -> _evictFunctions(loaders));
+	}
+
 	public static boolean isCreatingExtension()
 	{
 		return doInPG(Backend::_isCreatingExtension);
@@ -482,8 +501,10 @@ public class Backend
 	private native static String _getConfigOption(String key);
 
 	private native static int  _getStatementCacheSize();
+	private native static int  _getFetchMemoryBudget();
 	private native static void _log(int logLevel, String str);
 	private native static void _clearFunctionCache();
+	private native static void _evictFunctions(ClassLoader[] loaders);
 	private native static boolean _isCreatingExtension();
 
 	private static class EarlyNatives
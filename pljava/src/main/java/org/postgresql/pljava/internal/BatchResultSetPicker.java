@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.internal;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.postgresql.pljava.BatchResultSetProvider;
+import org.postgresql.pljava.ResultSetProvider;
+import org.postgresql.pljava.jdbc.BatchRowWriter;
+import org.postgresql.pljava.jdbc.SingleRowWriter;
+
+/**
+ * Presents a {@link BatchResultSetProvider} to the native set-returning
+ * function code as an ordinary {@link ResultSetProvider}.
+ *<p>
+ * When its current batch is used up, it has the {@code BatchResultSetProvider}
+ * fill a new one, which is formed into native tuples in one call. Each call of
+ * {@link #assignRowValues assignRowValues} then simply hands the native code
+ * the next already-formed tuple, by way of the {@code SingleRowWriter} it
+ * passes as receiver.
+ *<p>
+ * A batch is kept until the next one is formed, as the native code may still
+ * be using the last tuple returned from it until then.
+ */
+public class BatchResultSetPicker implements ResultSetProvider
+{
+	/**
+	 * Number of rows requested from the provider in each batch.
+	 */
+	public static final int BATCH_SIZE = 256;
+
+	private final BatchResultSetProvider m_provider;
+	private BatchRowWriter m_writer;
+	private TupleBatch m_batch;
+	private int m_next;
+	private boolean m_more = true;
+
+	public BatchResultSetPicker(BatchResultSetProvider provider)
+	{
+		m_provider = provider;
+	}
+
+	public boolean assignRowValues(ResultSet receiver, int currentRow)
+	throws SQLException
+	{
+		while(m_batch == null || m_next == m_batch.size())
+		{
+			if(!m_more)
+				return false;
+
+			if(m_writer == null)
+				m_writer = new BatchRowWriter(
+					(SingleRowWriter)receiver, BATCH_SIZE);
+
+			m_more = m_provider.assignRowValues(
+				m_writer, currentRow, BATCH_SIZE);
+			TupleBatch batch = m_writer.formTuplesAndClear();
+			if(m_batch != null)
+				m_batch.close();
+			m_batch = batch;
+			m_next = 0;
+		}
+
+		((SingleRowWriter)receiver).presetTuple(
+			m_batch.getNativePointer(m_next++));
+		return true;
+	}
+
+	public void close()
+	throws SQLException
+	{
+		if(m_batch != null)
+		{
+			m_batch.close();
+			m_batch = null;
+		}
+		m_provider.close();
+	}
+}
@@ -2046,6 +2046,49 @@ public abstract class DualState<T> extends WeakReference<T>
 		private native void _spiCursorClose(long pointer);
 	}
 
+	/**
+	 * A {@code DualState} subclass whose only native resource releasing action
+	 * needed is {@code SPI_freetuptable} of a single pointer.
+	 */
+	public static abstract class SingleSPIfreetuptable<T>
+	extends SingleGuardedLong<T>
+	{
+		protected SingleSPIfreetuptable(
+			Key cookie, T referent, long resourceOwner, long fttTarget)
+		{
+			super(cookie, referent, resourceOwner, fttTarget);
+		}
+
+		@Override
+		public String formatString()
+		{
+			return "%s SPI_freetuptable(%x)";
+		}
+
+		/**
+		 * When the Java state is released or unreachable, an
+		 * {@code SPI_freetuptable}
+		 * call is made so the native memory is released without having to wait
+		 * for release of its containing context.
+		 *<p>
+		 * The resource owner of an instance of this class must be the
+		 * {@code Invocation} whose SPI connection produced the table. As
+		 * {@code SPI_freetuptable} only frees a table of the innermost SPI
+		 * connection (and complains of any other), the native code does nothing
+		 * unless that {@code Invocation} is the current one, leaving the table
+		 * otherwise to be freed by {@code SPI_finish} when it returns.
+		 */
+		@Override
+		protected void javaStateUnreachable(boolean nativeStateLive)
+		{
+			assert Backend.threadMayEnterPG();
+			if ( nativeStateLive )
+				_spiFreeTupTable(guardedLong(), m_resourceOwner);
+		}
+
+		private native void _spiFreeTupTable(long pointer, long invocation);
+	}
+
 	/**
 	 * Bean exposing some {@code DualState} allocation and lifecycle statistics
 	 * for viewing in a JMX management client.
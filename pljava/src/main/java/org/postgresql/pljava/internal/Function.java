@@ -49,21 +49,28 @@ import java.sql.SQLOutput;
 import java.sql.SQLNonTransientException;
 import java.sql.SQLSyntaxErrorException;
 
-import static java.util.Arrays.copyOf;
+import static java.util.Arrays.fill;
 import static java.util.Collections.addAll;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PrimitiveIterator;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import static java.util.regex.Pattern.compile;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
+import org.postgresql.pljava.BatchResultSetProvider;
 import org.postgresql.pljava.ResultSetHandle;
 import org.postgresql.pljava.ResultSetProvider;
 import static org.postgresql.pljava.internal.Backend.doInPG;
 import static org.postgresql.pljava.jdbc.TypeOid.INVALID;
 import static org.postgresql.pljava.jdbc.TypeOid.TRIGGEROID;
+import org.postgresql.pljava.jdbc.SQLUtils;
 import org.postgresql.pljava.management.Commands;
 import org.postgresql.pljava.sqlj.Loader;
 
@@ -132,13 +139,13 @@ public class Function
 		ResultSet procTup, String schemaName)
 	throws SQLException
 	{
-		Matcher info = parse(procTup);
+		ClassLoader schemaLoader = Loader.getSchemaLoader(schemaName);
+		Spec info = parse(procTup, schemaLoader);
 		String className = info.group("udtcls");
 		if ( null == className )
 			return null;
 		return
-			loadClass(Loader.getSchemaLoader(schemaName), className)
-				.asSubclass(SQLData.class);
+			loadClass(schemaLoader, className).asSubclass(SQLData.class);
 	}
 
 	/**
@@ -246,12 +253,17 @@ public class Function
 	 * This may modify the last element (the return type) of the {@code jTypes}
 	 * array, in the course of hunting for the right return type of the method.
 	 *<p>
+	 * If {@code declared} is not null, it is the method's type as recorded in
+	 * a signature index, and only that type is looked up; the other candidates
+	 * are passed over without the cost of a failed lookup.
+	 *<p>
 	 * For now, this is a near-facsimile of the C implementation. A further step
 	 * of refactoring into clearer idiomatic Java can come later.
 	 */
 	private static MethodHandle getMethodHandle(
 		ClassLoader schemaLoader, Class<?> clazz, String methodName,
-		String[] jTypes, boolean retTypeIsOutParameter, boolean isMultiCall)
+		String[] jTypes, boolean retTypeIsOutParameter, boolean isMultiCall,
+		MethodType declared)
 	throws SQLException
 	{
 		MethodType mt =
@@ -261,13 +273,79 @@ public class Function
 		ReflectiveOperationException ex1 = null;
 		try
 		{
-			return lookupFor(clazz).findStatic(clazz, methodName, mt);
+			return findStatic(clazz, methodName, mt, declared);
 		}
 		catch ( ReflectiveOperationException e )
 		{
 			ex1 = e;
 		}
 
+		/*
+		 * Where a ResultSetProvider is expected, the method may be declared to
+		 * return the BatchResultSetProvider subinterface, in which case the
+		 * handle is simply adapted to the expected return type, or a Stream of
+		 * Object[] rows, which is adapted by a return filter.
+		 */
+		if ( ResultSetProvider.class == mt.returnType() )
+		{
+			try
+			{
+				return findStatic(clazz, methodName,
+					mt.changeReturnType(BatchResultSetProvider.class), declared)
+					.asType(mt);
+			}
+			catch ( ReflectiveOperationException e )
+			{
+			}
+			try
+			{
+				return filterReturnValue(
+					findStatic(clazz, methodName,
+						mt.changeReturnType(Stream.class), declared),
+					s_streamProviderAdapter);
+			}
+			catch ( ReflectiveOperationException e )
+			{
+			}
+		}
+
+		/*
+		 * Where an Iterator is expected (a set-returning function of a scalar
+		 * type), the method may be declared to return one of the primitive
+		 * iterators, which already are Iterators, or a Stream or one of the
+		 * primitive streams, which are adapted to iterators by a return filter.
+		 */
+		if ( Iterator.class == mt.returnType() )
+		{
+			for ( int i = 0; i < s_iteratorAlternatives.length; ++ i )
+			{
+				MethodHandle h;
+				try
+				{
+					h = findStatic(clazz, methodName,
+						mt.changeReturnType(s_iteratorAlternatives[i]),
+						declared);
+				}
+				catch ( ReflectiveOperationException e )
+				{
+					continue;
+				}
+				if ( null != s_iteratorAdapters[i] )
+					h = filterReturnValue(h, s_iteratorAdapters[i]);
+				return h.asType(mt);
+			}
+		}
+
+		/*
+		 * The method may take Java records in place of ResultSet for composite
+		 * parameters, or produce them for a composite result or set of rows.
+		 */
+		MethodHandle recordHandle = RecordAdapter.adaptMethod(lookupFor(clazz),
+			clazz, methodName, mt, retTypeIsOutParameter, isMultiCall,
+			declared);
+		if ( null != recordHandle )
+			return recordHandle;
+
 		MethodType origMT = mt;
 		Class<?> altType = null;
 		Class<?> realRetType = loadClass(schemaLoader, jTypes[jTypes.length-1]);
@@ -300,7 +378,7 @@ public class Function
 					isMultiCall, true); // this time altForm = true
 			try
 			{
-				return lookupFor(clazz).findStatic(clazz, methodName, mt);
+				return findStatic(clazz, methodName, mt, declared);
 			}
 			catch ( ReflectiveOperationException e )
 			{
@@ -319,6 +397,26 @@ public class Function
 			.initCause(ex1);
 	}
 
+	/**
+	 * Look up a static method of the given type, unless a {@code declared}
+	 * type is known and is not that one.
+	 */
+	private static MethodHandle findStatic(
+		Class<?> clazz, String methodName, MethodType mt, MethodType declared)
+	throws ReflectiveOperationException
+	{
+		if ( null != declared  &&  ! declared.equals(mt) )
+			throw s_notDeclared;
+		return lookupFor(clazz).findStatic(clazz, methodName, mt);
+	}
+
+	/**
+	 * Thrown, without the expense of a new one, for a candidate type that is
+	 * not the declared type.
+	 */
+	private static final NoSuchMethodException s_notDeclared =
+		new NoSuchMethodException("not the indexed method type");
+
 	/**
 	 * Produce an exception for a class member not found, with a message similar
 	 * to that of the C {@code PgObject_throwMemberError}.
@@ -554,6 +652,25 @@ public class Function
 	private static final int s_sizeof_jvalue = 8; // Function.c StaticAssertStmt
 	private static final MethodHandle s_readSQL_mh;
 
+	/*
+	 * Return types accepted in place of Iterator for a set-returning function
+	 * of a scalar type, and for each, the filter adapting it to an Iterator, or
+	 * null if it already is one. The native code recognizes the primitive
+	 * iterators and fetches their values without boxing.
+	 */
+	private static final Class<?>[] s_iteratorAlternatives =
+	{
+		PrimitiveIterator.OfInt.class,
+		PrimitiveIterator.OfLong.class,
+		PrimitiveIterator.OfDouble.class,
+		IntStream.class,
+		LongStream.class,
+		DoubleStream.class,
+		Stream.class
+	};
+	private static final MethodHandle[] s_iteratorAdapters;
+	private static final MethodHandle s_streamProviderAdapter;
+
 	/*
 	 * Static areas for passing reference and primitive parameters. A Java
 	 * method can have no more than 255 parameters, so each area gets the
@@ -603,32 +720,44 @@ public class Function
 	static class ParameterFrame
 	{
 		private static ParameterFrame s_stack = null;
+		/**
+		 * Frames popped earlier, kept for reuse so that a steady state of
+		 * nested calls allocates nothing.
+		 */
+		private static ParameterFrame s_free = null;
 		private ParameterFrame m_prev;
 		private Object[] m_refs;
 		private byte[] m_prims;
+		private int m_nRefs;
+		private int m_nPrims;
 
 		/**
-		 * Construct a copy of the current in-progress parameter area.
+		 * Save a copy of the current in-progress parameter area into this
+		 * frame, reusing its arrays when they are large enough.
 		 */
-		private ParameterFrame()
+		private void save()
 		{
 			short counts = s_primitiveParameters.getShort(s_offset_paramCounts);
-			assert 0 != counts : "ParameterFrame() called when no parameters";
-
-			int refs = counts >>> 8;
-			int prims = counts & 0xff;
+			assert 0 != counts : "ParameterFrame saved when no parameters";
 
-			if ( 0 < refs )
-				m_refs = copyOf(s_referenceParameters, refs);
+			m_nRefs = counts >>> 8;
+			m_nPrims = counts & 0xff;
 
-			if ( 0 < prims )
+			if ( 0 < m_nRefs )
 			{
-				m_prims = new byte [ prims * s_sizeof_jvalue ];
-				// Java 13: s_primitiveParameters.get(0, m_prims);
-				s_primitiveParameters.get(m_prims).position(0);
+				if ( null == m_refs  ||  m_refs.length < m_nRefs )
+					m_refs = new Object [ m_nRefs ];
+				System.arraycopy(s_referenceParameters, 0, m_refs, 0, m_nRefs);
 			}
 
-			m_prev = s_stack;
+			if ( 0 < m_nPrims )
+			{
+				int len = m_nPrims * s_sizeof_jvalue;
+				if ( null == m_prims  ||  m_prims.length < len )
+					m_prims = new byte [ len ];
+				// Java 13: s_primitiveParameters.get(0, m_prims, 0, len);
+				s_primitiveParameters.get(m_prims, 0, len).position(0);
+			}
 		}
 
 		/**
@@ -639,7 +768,15 @@ public class Function
 		 */
 		private static void push()
 		{
-			s_stack = new ParameterFrame();
+			ParameterFrame f = s_free;
+			if ( null == f )
+				f = new ParameterFrame();
+			else
+				s_free = f.m_prev;
+
+			f.save();
+			f.m_prev = s_stack;
+			s_stack = f;
 			s_primitiveParameters.putShort(s_offset_paramCounts, (short)0);
 		}
 
@@ -652,25 +789,27 @@ public class Function
 			ParameterFrame f = s_stack;
 			s_stack = f.m_prev;
 
-			int refs = 0;
-			int prims = 0;
+			int refs = f.m_nRefs;
+			int prims = f.m_nPrims;
 
-			if ( null != f.m_refs )
+			if ( 0 < refs )
 			{
-				refs = f.m_refs.length;
 				System.arraycopy(f.m_refs, 0, s_referenceParameters, 0, refs);
+				fill(f.m_refs, 0, refs, null);
 			}
 
-			if ( null != f.m_prims )
+			if ( 0 < prims )
 			{
-				int len = f.m_prims.length;
-				prims = len / s_sizeof_jvalue;
-				// Java 13: s_primitiveParameters.put(0, f.m_prims);
-				s_primitiveParameters.put(f.m_prims).position(0);
+				// Java 13: s_primitiveParameters.put(0, f.m_prims, 0, len);
+				s_primitiveParameters.put(f.m_prims, 0, prims * s_sizeof_jvalue)
+					.position(0);
 			}
 
 			s_primitiveParameters.putShort(s_offset_paramCounts,
 				(short)((refs << 8) | (prims & 0xff)));
+
+			f.m_prev = s_free;
+			s_free = f;
 		}
 	}
 
@@ -767,6 +906,23 @@ public class Function
 
 			s_readSQL_mh = l.findVirtual(SQLData.class, "readSQL",
 					methodType(void.class, SQLInput.class, String.class));
+
+			s_iteratorAdapters = new MethodHandle[]
+			{
+				null, null, null,
+				myL.findStatic(StreamIterators.class, "ofInt", methodType(
+					PrimitiveIterator.OfInt.class, IntStream.class)),
+				myL.findStatic(StreamIterators.class, "ofLong", methodType(
+					PrimitiveIterator.OfLong.class, LongStream.class)),
+				myL.findStatic(StreamIterators.class, "ofDouble", methodType(
+					PrimitiveIterator.OfDouble.class, DoubleStream.class)),
+				myL.findStatic(StreamIterators.class, "of", methodType(
+					Iterator.class, Stream.class))
+			};
+
+			s_streamProviderAdapter = myL.findStatic(
+				StreamResultSetProvider.class, "of",
+				methodType(ResultSetProvider.class, Stream.class));
 		}
 		catch ( ReflectiveOperationException e )
 		{
@@ -882,29 +1038,168 @@ public class Function
 		boolean calledAsTrigger, boolean forValidator, boolean checkBody)
 	throws SQLException
 	{
-		Matcher info = parse(procTup);
-
+		/*
+		 * A validator not checking the body only checks the AS string's
+		 * syntax, which is done without consulting any class loader.
+		 */
 		if ( forValidator  &&  ! checkBody )
+		{
+			parse(procTup, null);
 			return null;
+		}
+
+		Spec info = parse(procTup, Loader.getSchemaLoader(schemaName));
 
 		return init(wrappedPtr, info, procTup, schemaName, calledAsTrigger,
 				forValidator);
 	}
 
+	/**
+	 * Create, ahead of their first calls, the functions named in
+	 * {@code pljava.preload_functions}, and call each of them that takes no
+	 * arguments {@code warmupCalls} times.
+	 *<p>
+	 * Called from native code once, as soon as PL/Java has started, within a
+	 * transaction. The work is done by {@link Preload Preload}, which reports
+	 * through PostgreSQL's {@code elog}: a warning for each entry that cannot
+	 * be found or created, and the counts and time taken at {@code LOG}.
+	 */
+	private static void preload(String list, int warmupCalls)
+	{
+		new Preload(Function::_preload, Backend::log)
+			.run(SQLUtils::getDefaultConnection, list, warmupCalls);
+	}
+
+	private static native void _preload(int funcOid, boolean forTrigger)
+	throws SQLException;
+
 	/**
 	 * Retrieve the {@code prosrc} field from the provided {@code procTup}, and
-	 * return it parsed as a {@code Matcher} object with named capturing groups.
+	 * return it parsed as a {@code Spec}, from the signature index of the
+	 * {@code schemaLoader} if it has the function (and is not null) in a
+	 * well-formed entry, otherwise by matching the {@code specForms} pattern.
 	 */
-	private static Matcher parse(ResultSet procTup) throws SQLException
+	private static Spec parse(ResultSet procTup, ClassLoader schemaLoader)
+	throws SQLException
 	{
 		String spec = getAS(procTup);
 
+		if ( null != schemaLoader )
+		{
+			String descriptor = SignatureIndex.descriptor(schemaLoader, spec);
+			if ( null != descriptor )
+			{
+				Spec indexed = Spec.indexed(spec, descriptor);
+				if ( null != indexed )
+					return indexed;
+			}
+		}
+
 		Matcher m = specForms.matcher(spec);
 		if ( ! m.matches() )
 			throw new SQLSyntaxErrorException(
 				"cannot parse AS string", "42601");
 
-		return m;
+		return new Spec(m);
+	}
+
+	/**
+	 * The parts of an AS string, by the names of the capturing groups in
+	 * {@code specForms}.
+	 *<p>
+	 * For a function found in a signature index, the AS string is the one the
+	 * annotation processor wrote, always in the ordinary form, so its parts
+	 * are found by position without the pattern, and the method's type is
+	 * known.
+	 */
+	private static final class Spec
+	{
+		private final Matcher m_matcher;
+		private final String m_ret;
+		private final String m_cls;
+		private final String m_meth;
+		private final String m_sig;
+		private final String m_descriptor;
+
+		Spec(Matcher m)
+		{
+			m_matcher = m;
+			m_ret = m_cls = m_meth = m_sig = m_descriptor = null;
+		}
+
+		private Spec(String ret, String cls, String meth, String sig,
+			String descriptor)
+		{
+			m_matcher = null;
+			m_ret = ret;
+			m_cls = cls;
+			m_meth = meth;
+			m_sig = sig;
+			m_descriptor = descriptor;
+		}
+
+		/**
+		 * Split an AS string found in a signature index by position, or
+		 * return null if it is not of the ordinary form
+		 * {@code [ret=]cls.meth[(sig)]} (as from a damaged or hand-edited
+		 * index), so it will be parsed as if not found there.
+		 */
+		static Spec indexed(String as, String descriptor)
+		{
+			int paren = as.indexOf('(');
+			int end = -1 == paren ? as.length() : paren;
+			int eq = as.lastIndexOf('=', end);
+			int dot = as.lastIndexOf('.', end);
+
+			if ( 0 == eq  ||  dot <= eq + 1  ||  dot + 1 >= end
+				||  -1 != paren  &&  ! as.endsWith(")")
+				||  -1 != as.substring(eq + 1, end).indexOf('[')
+				||  ! descriptor.startsWith("(") )
+				return null;
+
+			return new Spec(
+				-1 == eq ? null : as.substring(0, eq),
+				as.substring(eq + 1, dot),
+				as.substring(dot + 1, end),
+				-1 == paren ? null : as.substring(paren+1, as.length()-1),
+				descriptor);
+		}
+
+		String group(String name)
+		{
+			if ( null != m_matcher )
+				return m_matcher.group(name);
+
+			switch ( name )
+			{
+			case  "ret": return m_ret;
+			case  "cls": return m_cls;
+			case "meth": return m_meth;
+			case  "sig": return m_sig;
+			default:     return null;
+			}
+		}
+
+		/**
+		 * The method's type from the signature index, or null if the function
+		 * was not found there, or the type cannot be resolved by
+		 * {@code schemaLoader}.
+		 */
+		MethodType declaredType(ClassLoader schemaLoader)
+		{
+			if ( null == m_descriptor )
+				return null;
+			try
+			{
+				return
+					MethodType.fromMethodDescriptorString(
+						m_descriptor, schemaLoader);
+			}
+			catch ( IllegalArgumentException | TypeNotPresentException e )
+			{
+				return null;
+			}
+		}
 	}
 
 	/**
@@ -916,15 +1211,22 @@ public class Function
 	 * case of a UDT
 	 */
 	private static MethodHandle init(
-		long wrappedPtr, Matcher info, ResultSet procTup, String schemaName,
+		long wrappedPtr, Spec info, ResultSet procTup, String schemaName,
 		boolean calledAsTrigger, boolean forValidator)
 	throws SQLException
 	{
 		Map<Oid,Class<? extends SQLData>> typeMap = null;
 		String className = info.group("udtcls");
 		boolean isUDT = (null != className);
+		boolean isAggSerial = false;
 
 		if ( ! isUDT )
+		{
+			className = info.group("aggcls");
+			isAggSerial = (null != className);
+		}
+
+		if ( ! isUDT  &&  ! isAggSerial )
 		{
 			className = info.group("cls");
 			typeMap = Loader.getTypeMap(schemaName);
@@ -942,6 +1244,10 @@ public class Function
 			return null;
 		}
 
+		if ( isAggSerial )
+			return adaptHandle(setupAggSerial(wrappedPtr, info, procTup,
+				schemaLoader, clazz.asSubclass(SQLData.class), readOnly));
+
 		String[] resolvedTypes;
 		boolean isMultiCall = false;
 		boolean retTypeIsOutParameter = false;
@@ -966,10 +1272,30 @@ public class Function
 		}
 
 		String methodName = info.group("meth");
+		MethodType declared = info.declaredType(schemaLoader);
+
+		/*
+		 * An index entry can be stale, if a class was changed and recompiled
+		 * without the jar's index being regenerated. If the indexed type is
+		 * not found, search as if there were no index.
+		 */
+		if ( null != declared )
+		{
+			try
+			{
+				return
+					adaptHandle(getMethodHandle(schemaLoader, clazz,
+						methodName, resolvedTypes.clone(),
+						retTypeIsOutParameter, isMultiCall, declared));
+			}
+			catch ( SQLException e )
+			{
+			}
+		}
 
 		return
 			adaptHandle(getMethodHandle(schemaLoader, clazz, methodName,
-				resolvedTypes, retTypeIsOutParameter, isMultiCall));
+				resolvedTypes, retTypeIsOutParameter, isMultiCall, null));
 	}
 
 	/**
@@ -987,11 +1313,31 @@ public class Function
 				procTup.getInt("prorettype"); // type Oid, but implements Number
 	}
 
+	/**
+	 * Determine from a function's {@code pg_proc} entry whether it is a
+	 * window function: {@code prokind} is {@code w} in PostgreSQL 11 and
+	 * later, which earlier versions indicate with {@code proiswindow}.
+	 */
+	private static boolean isWindow(ResultSet procTup)
+	throws SQLException
+	{
+		int prokind;
+		try
+		{
+			prokind = procTup.findColumn("prokind");
+		}
+		catch ( SQLException e )
+		{
+			return procTup.getBoolean("proiswindow");
+		}
+		return (byte)'w' == procTup.getByte(prokind);
+	}
+
 	/**
 	 * The initialization specific to a UDT function.
 	 */
 	private static void setupUDT(
-		long wrappedPtr, Matcher info, ResultSet procTup,
+		long wrappedPtr, Spec info, ResultSet procTup,
 		ClassLoader schemaLoader, Class<? extends SQLData> clazz,
 		boolean readOnly)
 	throws SQLException
@@ -1021,11 +1367,53 @@ public class Function
 			parseMH, readMH));
 	}
 
+	/**
+	 * The initialization specific to the serialize or deserialize function of
+	 * an aggregate whose Java state class implements {@code SQLData}.
+	 *<p>
+	 * The state, passed to or from PostgreSQL as {@code internal}, is written
+	 * by its {@code writeSQL} to a {@code bytea} through the same
+	 * {@code SQLOutputToChunk} used for UDTs, or read back by {@code readSQL}
+	 * through {@code SQLInputFromChunk}. The C code does the conversions, with
+	 * types for the {@code bytea} return or parameter that it puts in place
+	 * for these functions only, so the handle returned here only passes the
+	 * state through, or constructs and reads it.
+	 */
+	private static MethodHandle setupAggSerial(
+		long wrappedPtr, Spec info, ResultSet procTup,
+		ClassLoader schemaLoader, Class<? extends SQLData> clazz,
+		boolean readOnly)
+	throws SQLException
+	{
+		Oid returnType = (Oid)procTup.getObject("prorettype");
+		Oid[] paramTypes = (Oid[])procTup.getObject("proargtypes");
+		boolean isSerialize =
+			's' == Character.toLowerCase(info.group("aggfun").charAt(0));
+
+		MethodHandle mh;
+
+		if ( isSerialize ) // (internal) -> bytea
+			mh = identity(clazz);
+		else // (bytea, internal) -> internal
+		{
+			mh = insertArguments(udtReadHandle(clazz), 1, clazz.getName());
+			mh = dropArguments(mh, 1, Object.class);
+		}
+
+		storeToNonUDT(wrappedPtr, schemaLoader, clazz, readOnly,
+			false /* isMultiCall */, null /* typeMap */,
+			returnType, null, paramTypes, null,
+			null /* [returnTypeIsOutputParameter] */);
+		doInPG(() -> _storeToAggSerial(wrappedPtr, isSerialize));
+
+		return mh;
+	}
+
 	/**
 	 * The initialization specific to a trigger function.
 	 */
 	private static String[] setupTriggerParams(
-		long wrappedPtr, Matcher info,
+		long wrappedPtr, Spec info,
 		ClassLoader schemaLoader, Class<?> clazz, boolean readOnly)
 	throws SQLException
 	{
@@ -1049,7 +1437,7 @@ public class Function
 	 * The initialization specific to an ordinary function.
 	 */
 	private static String[] setupFunctionParams(
-		long wrappedPtr, Matcher info, ResultSet procTup,
+		long wrappedPtr, Spec info, ResultSet procTup,
 		ClassLoader schemaLoader, Class<?> clazz,
 		boolean readOnly, Map<Oid,Class<? extends SQLData>> typeMap,
 		boolean[] multi, boolean[] returnTypeIsOP)
@@ -1060,15 +1448,33 @@ public class Function
 		multi [ 0 ] = isMultiCall;
 		Oid[] paramTypes = null;
 
+		String[] paramJTypes = null;
+
 		Oid returnType = (Oid)procTup.getObject("prorettype");
 
 		if ( 0 < numParams )
 			paramTypes = (Oid[])procTup.getObject("proargtypes");
 
+		if ( isWindow(procTup) )
+		{
+			/*
+			 * The method of a window function takes a WindowObject ahead of
+			 * the SQL parameters.
+			 */
+			Oid[] windowParamTypes = new Oid [ 1 + numParams ];
+			windowParamTypes[0] = INVALID;
+			if ( 0 < numParams )
+				System.arraycopy(
+					paramTypes, 0, windowParamTypes, 1, numParams);
+			paramTypes = windowParamTypes;
+			paramJTypes = new String [ 1 + numParams ];
+			paramJTypes[0] = "org.postgresql.pljava.WindowObject";
+		}
+
 		String[] resolvedTypes = storeToNonUDT(wrappedPtr, schemaLoader, clazz,
 			readOnly, isMultiCall, typeMap,
 			returnType, null /* returnJType */,
-			paramTypes, null /* paramJTypes */,
+			paramTypes, paramJTypes,
 			returnTypeIsOP);
 
 		boolean returnTypeIsOutputParameter = returnTypeIsOP[0];
@@ -1081,8 +1487,9 @@ public class Function
 			 * to parseParameters to reconcile those types with the ones in
 			 * resolvedTypes that the mapping from SQL types suggested above.
 			 */
-			parseParameters( wrappedPtr, resolvedTypes, explicitSignature,
-				isMultiCall, returnTypeIsOutputParameter);
+			parseParameters( wrappedPtr, schemaLoader, resolvedTypes,
+				explicitSignature, isMultiCall, returnTypeIsOutputParameter,
+				namesRecord(schemaLoader, info.group("ret")));
 		}
 
 		/* As in the original C setupFunctionParams, if an explicit Java return
@@ -1101,8 +1508,14 @@ public class Function
 		 * original behavior.
 		 */
 
+		/*
+		 * An explicit return type naming a record class, for a function
+		 * returning a composite, is left alone here; the record is bound to
+		 * the composite result when the method handle is made.
+		 */
 		String explicitReturnType = info.group("ret");
-		if ( null != explicitReturnType )
+		if ( null != explicitReturnType
+			&& ! namesRecord(schemaLoader, explicitReturnType) )
 		{
 			String resolvedReturnType = resolvedTypes[resolvedTypes.length - 1];
 			if ( ! explicitReturnType.equals(resolvedReturnType) )
@@ -1127,11 +1540,17 @@ public class Function
 	 * declaration of the function with those in the Java method signature.
 	 */
 	private static void parseParameters(
-		long wrappedPtr, String[] resolvedTypes, String explicitSignature,
-		boolean isMultiCall, boolean returnTypeIsOutputParameter)
+		long wrappedPtr, ClassLoader schemaLoader, String[] resolvedTypes,
+		String explicitSignature, boolean isMultiCall,
+		boolean returnTypeIsOutputParameter, boolean returnsRecord)
 		throws SQLException
 	{
-		boolean lastIsOut = ( ! isMultiCall ) && returnTypeIsOutputParameter;
+		/*
+		 * A method returning a record in place of a composite does not have
+		 * the appended ResultSet parameter.
+		 */
+		boolean lastIsOut =
+			( ! isMultiCall ) && returnTypeIsOutputParameter && ! returnsRecord;
 		String[] explicitTypes = explicitSignature.isEmpty() ?
 			new String[0] : COMMA.split(explicitSignature);
 
@@ -1148,6 +1567,9 @@ public class Function
 			{
 				if ( resolvedTypes[i].equals(explicitTypes[i]) )
 					continue;
+				if ( "java.sql.ResultSet".equals(resolvedTypes[i])
+					&& namesRecord(schemaLoader, explicitTypes[i]) )
+					continue;
 				_reconcileTypes(wrappedPtr, resolvedTypes, explicitTypes, i);
 			}
 		});
@@ -1164,6 +1586,24 @@ public class Function
 		}
 	}
 
+	/**
+	 * Whether a Java type name given in an AS string names a record class
+	 * (which is only possible on a Java runtime that has records).
+	 */
+	private static boolean namesRecord(ClassLoader schemaLoader, String name)
+	{
+		if ( null == name )
+			return false;
+		try
+		{
+			return RecordAdapter.isRecord(loadClass(schemaLoader, name));
+		}
+		catch ( SQLException e )
+		{
+			return false;
+		}
+	}
+
 	/**
 	 * Pattern for splitting an explicit signature on commas, relying on
 	 * whitespace already being stripped by {@code getAS}. Will not match
@@ -1291,8 +1731,12 @@ public class Function
 		/* the UDT notation, which is case insensitive */
 		"(?i:udt\\[(?<udtcls>%1$s)\\](?<udtfun>input|output|receive|send))" +
 
-		/* or the non-UDT form (which can't begin, insensitively, with UDT) */
-		"|(?!(?i:udt\\[))" +
+		/* the aggregate state notation, likewise */
+		"|(?i:agg\\[(?<aggcls>%1$s)\\](?<aggfun>serialize|deserialize))" +
+
+		/* or the ordinary form (which can't begin, insensitively, with
+		 * UDT or AGG) */
+		"|(?!(?i:udt\\[|agg\\[))" +
 		"(?:(?<ret>%2$s)=)?+(?<cls>%1$s)\\.(?<meth>%3$s)" +
 		"(?:\\((?<sig>(?:(?:%2$s,)*+%2$s)?+)\\))?+",
 		javaTypeName,
@@ -1500,6 +1944,9 @@ public class Function
 		int numParams, int returnType, String returnJType,
 		int[] paramTypes, String[] paramJTypes, String[] outJTypes);
 
+	private static native void _storeToAggSerial(
+		long wrappedPtr, boolean isSerialize);
+
 	private static native void _storeToUDT(
 		long wrappedPtr, ClassLoader schemaLoader,
 		Class<? extends SQLData> clazz,
@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.ref.WeakReference;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+
+import org.postgresql.pljava.sqlj.Loader;
+
+/**
+ * Generates a small class per function, holding the function's method handle
+ * in a {@code static final} field, with entry points matching those of
+ * {@link EntryPoints} but invoking that constant handle.
+ *<p>
+ * Through the shared {@code EntryPoints} methods, every function's handle is
+ * invoked from the same call site, where the JIT sees a different handle on
+ * nearly every call and cannot inline any of them. In a class of its own, the
+ * handle is a constant to the JIT, which can then inline the whole chain of
+ * parameter-fetching combinators and the target method itself.
+ *<p>
+ * A generated class has the form:
+ *<pre>
+ * final class Invoker<em>n</em>
+ * {
+ *     private static final MethodHandle mh = (MethodHandle)
+ *         ((Supplier)Invoker<em>n</em>.class.getClassLoader()).get();
+ *     static Object refInvoke() throws Throwable { ... mh.invokeExact() ... }
+ *     static void invoke() throws Throwable { ... mh.invokeExact() ... }
+ * }
+ *</pre>
+ * with whichever of the two methods does not match the handle's return type
+ * simply discarding the result, or returning null.
+ *<p>
+ * Each class is defined in a class loader of its own, which hands it the
+ * handle, so that the class, and through its handle the function's class and
+ * schema loader, can be unloaded once no {@code Function} refers to it. (A
+ * class defined in PL/Java's own loader never could be.) The generated code
+ * refers only to classes of {@code java.base}, so it needs no access to this
+ * package. While a class for the same {@code pg_proc} row and schema loader is
+ * still loaded, it is reused, rather than another generated, when the function
+ * is created again, as after a cache invalidation that did not change it.
+ */
+class InvokerClasses
+{
+	private InvokerClasses() { } // do not instantiate
+
+	private static final String PACKAGE = "org/postgresql/pljava/invoker/";
+	private static final String MH = "java/lang/invoke/MethodHandle";
+
+	private static int s_serial;
+
+	/**
+	 * Invoker classes still loaded, by schema loader and by function oid,
+	 * {@code pg_proc} row version, and trigger flag. Only weakly held, so as
+	 * not to keep either the classes or (through them) the loaders alive.
+	 */
+	private static final Map<ClassLoader,Map<String,WeakReference<Class<?>>>>
+		s_invokers = new WeakHashMap<>();
+
+	/**
+	 * The loader of one generated class, which supplies the class its handle,
+	 * once.
+	 */
+	private static final class InvokerLoader
+	extends ClassLoader implements Supplier<Object>
+	{
+		private MethodHandle m_handle;
+
+		private InvokerLoader(MethodHandle mh)
+		{
+			super(null);
+			m_handle = mh;
+		}
+
+		@Override
+		public Object get()
+		{
+			MethodHandle mh = m_handle;
+			m_handle = null;
+			return mh;
+		}
+
+		private Class<?> define(String name, byte[] bytes)
+		{
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+	/**
+	 * Return an invoker class for a handle obtained from
+	 * {@code Function.create}, which takes no parameters and returns
+	 * {@code Object} or {@code void}: one already loaded for the same version
+	 * of the same function, if there is one, or else a new one.
+	 */
+	static synchronized Class<?> invokerClass(MethodHandle mh,
+		String schemaName, int funcOid, int procXmin, boolean forTrigger)
+	throws SQLException
+	{
+		boolean returnsRef = Object.class == mh.type().returnType();
+		assert returnsRef || void.class == mh.type().returnType();
+		assert 0 == mh.type().parameterCount();
+
+		Map<String,WeakReference<Class<?>>> invokers = s_invokers
+			.computeIfAbsent(Loader.getSchemaLoader(schemaName),
+				l -> new HashMap<>());
+		invokers.values().removeIf(r -> null == r.get());
+
+		String key = Integer.toUnsignedString(funcOid) + '/' +
+			Integer.toUnsignedString(procXmin) + (forTrigger ? "/t" : "");
+		WeakReference<Class<?>> ref = invokers.get(key);
+		Class<?> c = null == ref ? null : ref.get();
+		if ( null != c )
+			return c;
+
+		String name = PACKAGE + "Invoker" + (++ s_serial);
+		try
+		{
+			c = new InvokerLoader(mh).define(
+				name.replace('/', '.'), classBytes(name, returnsRef));
+			Class.forName(c.getName(), true, c.getClassLoader());
+		}
+		catch ( ReflectiveOperationException | IOException | LinkageError e )
+		{
+			throw new SQLNonTransientException(
+				"Unable to generate function invoker class", "XX000", e);
+		}
+		invokers.put(key, new WeakReference<>(c));
+		return c;
+	}
+
+	/*
+	 * Constant pool indices used in the generated code.
+	 */
+	private static final int CP_THIS        =  2;
+	private static final int CP_OBJECT      =  4;
+	private static final int CP_FIELDNAME   =  5;
+	private static final int CP_FIELDTYPE   =  6;
+	private static final int CP_CLINIT      =  7;
+	private static final int CP_VOIDDESC    =  8;
+	private static final int CP_CODE        =  9;
+	private static final int CP_GETLOADER   = 15;
+	private static final int CP_FIELD       = 17;
+	private static final int CP_MHCLASS     = 19;
+	private static final int CP_OBJDESC     = 21;
+	private static final int CP_INVOKEREF   = 23;
+	private static final int CP_INVOKEVOID  = 25;
+	private static final int CP_REFINVOKE   = 26;
+	private static final int CP_INVOKE      = 27;
+	private static final int CP_SUPPLIER    = 29;
+	private static final int CP_GET         = 32;
+	private static final int CP_COUNT       = 33;
+
+	private static final int ACC_PRIVATE = 0x0002;
+	private static final int ACC_STATIC  = 0x0008;
+	private static final int ACC_FINAL   = 0x0010;
+	private static final int ACC_SUPER   = 0x0020;
+
+	private static final int ACONST_NULL   = 0x01;
+	private static final int LDC           = 0x12;
+	private static final int POP           = 0x57;
+	private static final int ARETURN       = 0xb0;
+	private static final int RETURN        = 0xb1;
+	private static final int GETSTATIC     = 0xb2;
+	private static final int PUTSTATIC     = 0xb3;
+	private static final int INVOKEVIRTUAL = 0xb6;
+	private static final int INVOKEINTERFACE = 0xb9;
+	private static final int CHECKCAST     = 0xc0;
+
+	private static byte[] classBytes(String name, boolean returnsRef)
+	throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bos);
+
+		out.writeInt(0xCAFEBABE);
+		out.writeShort(0);  // minor version
+		out.writeShort(53); // major version: Java 9
+
+		out.writeShort(CP_COUNT);
+		utf8(out, name);                                           //  1
+		classRef(out, 1);                                          //  2
+		utf8(out, "java/lang/Object");                             //  3
+		classRef(out, 3);                                          //  4
+		utf8(out, "mh");                                           //  5
+		utf8(out, "L" + MH + ";");                                 //  6
+		utf8(out, "<clinit>");                                     //  7
+		utf8(out, "()V");                                          //  8
+		utf8(out, "Code");                                         //  9
+		utf8(out, "java/lang/Class");                              // 10
+		classRef(out, 10);                                         // 11
+		utf8(out, "getClassLoader");                               // 12
+		utf8(out, "()Ljava/lang/ClassLoader;");                    // 13
+		nameAndType(out, 12, 13);                                  // 14
+		memberRef(out, 10, 11, 14); /* Methodref */                // 15
+		nameAndType(out, CP_FIELDNAME, CP_FIELDTYPE);              // 16
+		memberRef(out,  9, CP_THIS, 16); /* Fieldref */            // 17
+		utf8(out, MH);                                             // 18
+		classRef(out, 18);                                         // 19
+		utf8(out, "invokeExact");                                  // 20
+		utf8(out, "()Ljava/lang/Object;");                         // 21
+		nameAndType(out, 20, CP_OBJDESC);                          // 22
+		memberRef(out, 10, 19, 22); /* Methodref */                // 23
+		nameAndType(out, 20, CP_VOIDDESC);                         // 24
+		memberRef(out, 10, 19, 24); /* Methodref */                // 25
+		utf8(out, "refInvoke");                                    // 26
+		utf8(out, "invoke");                                       // 27
+		utf8(out, "java/util/function/Supplier");                  // 28
+		classRef(out, 28);                                         // 29
+		utf8(out, "get");                                          // 30
+		nameAndType(out, 30, CP_OBJDESC);                          // 31
+		memberRef(out, 11, CP_SUPPLIER, 31); /* InterfaceMethodref */ // 32
+
+		out.writeShort(ACC_FINAL | ACC_SUPER);
+		out.writeShort(CP_THIS);
+		out.writeShort(CP_OBJECT);
+		out.writeShort(0); // interfaces
+
+		out.writeShort(1); // fields
+		out.writeShort(ACC_PRIVATE | ACC_STATIC | ACC_FINAL);
+		out.writeShort(CP_FIELDNAME);
+		out.writeShort(CP_FIELDTYPE);
+		out.writeShort(0); // attributes
+
+		int invoke = returnsRef ? CP_INVOKEREF : CP_INVOKEVOID;
+
+		out.writeShort(3); // methods
+
+		method(out, CP_CLINIT, CP_VOIDDESC,
+			LDC, CP_THIS,
+			INVOKEVIRTUAL, 0, CP_GETLOADER,
+			CHECKCAST, 0, CP_SUPPLIER,
+			INVOKEINTERFACE, 0, CP_GET, 1, 0,
+			CHECKCAST, 0, CP_MHCLASS,
+			PUTSTATIC, 0, CP_FIELD,
+			RETURN);
+
+		if ( returnsRef )
+			method(out, CP_REFINVOKE, CP_OBJDESC,
+				GETSTATIC, 0, CP_FIELD,
+				INVOKEVIRTUAL, 0, invoke,
+				ARETURN);
+		else
+			method(out, CP_REFINVOKE, CP_OBJDESC,
+				GETSTATIC, 0, CP_FIELD,
+				INVOKEVIRTUAL, 0, invoke,
+				ACONST_NULL,
+				ARETURN);
+
+		if ( returnsRef )
+			method(out, CP_INVOKE, CP_VOIDDESC,
+				GETSTATIC, 0, CP_FIELD,
+				INVOKEVIRTUAL, 0, invoke,
+				POP,
+				RETURN);
+		else
+			method(out, CP_INVOKE, CP_VOIDDESC,
+				GETSTATIC, 0, CP_FIELD,
+				INVOKEVIRTUAL, 0, invoke,
+				RETURN);
+
+		out.writeShort(0); // class attributes
+		out.flush();
+		return bos.toByteArray();
+	}
+
+	private static void utf8(DataOutputStream out, String s)
+	throws IOException
+	{
+		out.writeByte(1);
+		out.writeUTF(s);
+	}
+
+	private static void classRef(DataOutputStream out, int nameIndex)
+	throws IOException
+	{
+		out.writeByte(7);
+		out.writeShort(nameIndex);
+	}
+
+	private static void nameAndType(DataOutputStream out, int name, int desc)
+	throws IOException
+	{
+		out.writeByte(12);
+		out.writeShort(name);
+		out.writeShort(desc);
+	}
+
+	private static void memberRef(
+		DataOutputStream out, int tag, int classIndex, int nameAndType)
+	throws IOException
+	{
+		out.writeByte(tag);
+		out.writeShort(classIndex);
+		out.writeShort(nameAndType);
+	}
+
+	/**
+	 * Write a static method with the given straight-line code, which never
+	 * needs more than one stack slot, nor any locals.
+	 */
+	private static void method(
+		DataOutputStream out, int name, int desc, int... code)
+	throws IOException
+	{
+		out.writeShort(ACC_STATIC);
+		out.writeShort(name);
+		out.writeShort(desc);
+		out.writeShort(1); // attributes
+		out.writeShort(CP_CODE);
+		out.writeInt(12 + code.length); // attribute length
+		out.writeShort(1); // max stack
+		out.writeShort(0); // max locals
+		out.writeInt(code.length);
+		for ( int b : code )
+			out.writeByte(b);
+		out.writeShort(0); // exception table
+		out.writeShort(0); // code attributes
+	}
+}
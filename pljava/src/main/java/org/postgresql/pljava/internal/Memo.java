@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.internal;
+
+import static java.lang.management.ManagementFactory.getPlatformMBeanServer;
+import javax.management.ObjectName;
+import javax.management.JMException;
+
+import org.postgresql.pljava.mbeans.MemoizationStatistics;
+
+/**
+ * Java side of the caches kept in native code of the results of IMMUTABLE
+ * functions, which only has the statistics bean to register.
+ *<p>
+ * The caches are used, and their counters updated, without entering Java at
+ * all; the bean's getters read the native counters directly, which is safe
+ * from any thread, as they touch nothing else in PostgreSQL.
+ */
+class Memo
+{
+	private Memo() { }
+
+	/**
+	 * Called once from native code to register the statistics bean.
+	 */
+	private static void register()
+	{
+		try
+		{
+			ObjectName n = new ObjectName(
+				"org.postgresql.pljava:type=Memoization,name=Statistics");
+			getPlatformMBeanServer().registerMBean(new Statistics(), n);
+		}
+		catch ( JMException e ) { /* XXX */ }
+	}
+
+	static class Statistics implements MemoizationStatistics
+	{
+		public long getHits()
+		{
+			return _hits();
+		}
+
+		public long getMisses()
+		{
+			return _misses();
+		}
+
+		public long getEvictions()
+		{
+			return _evictions();
+		}
+
+		public long getEntries()
+		{
+			return _entries();
+		}
+
+		private static native long _hits();
+		private static native long _misses();
+		private static native long _evictions();
+		private static native long _entries();
+	}
+}
@@ -151,6 +151,56 @@ public class Portal
 		return fetched;
 	}
 
+	/**
+	 * Runs the portal forward for up to {@code count} rows, receiving them
+	 * with a custom {@code DestReceiver} that stores each row's values
+	 * straight into the given column arrays, instead of into an
+	 * <code>SPI_tuptable</code>.
+	 * @param count Maximum number of rows to receive, no more than the
+	 * length of the column arrays.
+	 * @param kinds For each column, {@code 'J'}, {@code 'D'}, or {@code 'L'}
+	 * as {@code columns} holds a {@code long[]} for an {@code int2},
+	 * {@code int4}, or {@code int8} column, a {@code double[]} for a
+	 * {@code float4} or {@code float8} column, or an {@code Object[]} for a
+	 * column of any type, to receive its values in their default Java class.
+	 * @param columns Arrays to receive the values of each column, by row.
+	 * @param nulls Arrays to receive the null flags of each column, by row.
+	 * @param batch One-element array holding, on entry, the handle returned
+	 * by the previous push, or zero, which is no longer valid after this call
+	 * (even if it fails); and, on return, the handle for
+	 * {@link #getPushedObject getPushedObject} to use with the rows of this
+	 * push, or zero. A handle is valid only until the next push or the
+	 * closing of this portal.
+	 * @return The number of rows received.
+	 * @throws SQLException if the handle to the native structure is stale.
+	 */
+	public int push(int count, byte[] kinds, Object[] columns, boolean[][] nulls,
+		long[] batch)
+	throws SQLException
+	{
+		return doInPG(() ->
+			_push(m_state.getPortalPtr(), count, kinds, columns, nulls, batch));
+	}
+
+	/**
+	 * Returns the value in a column of {@code 'L'} kind, of a row received by
+	 * {@link #push push}, coerced to the requested class, as
+	 * {@link Tuple#getObject(TupleDesc,int,Class) Tuple.getObject} would.
+	 * @param batch The handle returned by the push that received the row.
+	 * @param column Index of the column (zero based).
+	 * @param row Index of the row in the batch (zero based).
+	 * @param type The requested class.
+	 * @throws SQLException if the handle to the native structure is stale,
+	 * or the value cannot be coerced to the class.
+	 */
+	public Object getPushedObject(long batch, int column, int row,
+		Class<?> type)
+	throws SQLException
+	{
+		return doInPG(() ->
+			_getPushedObject(m_state.getPortalPtr(), batch, column, row, type));
+	}
+
 	/**
 	 * Returns the value of the <code>atEnd</code> attribute.
 	 * @throws SQLException if the handle to the native structure is stale.
@@ -201,6 +251,15 @@ public class Portal
 	private static native long _fetch(long pointer, boolean forward, long count)
 	throws SQLException;
 
+	private static native int _push(long pointer,
+		int count, byte[] kinds, Object[] columns, boolean[][] nulls,
+		long[] batch)
+	throws SQLException;
+
+	private static native Object _getPushedObject(long pointer,
+		long batch, int column, int row, Class<?> type)
+	throws SQLException;
+
 	private static native void _close(long pointer);
 
 	private static native boolean _isAtEnd(long pointer)
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.internal;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.List;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import static org.postgresql.pljava.elog.ELogHandler.LOG_LOG;
+import static org.postgresql.pljava.elog.ELogHandler.LOG_WARNING;
+
+/**
+ * The work of {@code pljava.preload_functions}: finding the functions each
+ * entry of the list names, having each one created, and calling those that
+ * take no arguments to warm them up.
+ *<p>
+ * This is kept apart from {@link Function Function}, whose initialization
+ * needs the native library, and is given the steps that do need it (creating
+ * a function, and writing to PostgreSQL's log), so that what it does with the
+ * list can be checked with no backend.
+ */
+final class Preload
+{
+	/**
+	 * Creates the function with the given Oid, as its first call would.
+	 */
+	@FunctionalInterface
+	interface Creator
+	{
+		void create(int funcOid, boolean forTrigger) throws SQLException;
+	}
+
+	/**
+	 * Reports a message at a level as defined in
+	 * {@link org.postgresql.pljava.elog.ELogHandler ELogHandler}.
+	 */
+	@FunctionalInterface
+	interface Reporter
+	{
+		void report(int level, String message);
+	}
+
+	private final Creator m_creator;
+	private final Reporter m_reporter;
+
+	Preload(Creator creator, Reporter reporter)
+	{
+		m_creator = creator;
+		m_reporter = reporter;
+	}
+
+	/**
+	 * Preload the functions named in {@code list}, and call each of them that
+	 * takes no arguments {@code warmupCalls} times.
+	 *<p>
+	 * Each entry of the list, and each function found, is handled under its
+	 * own savepoint, so one that cannot be found or created is reported as a
+	 * warning and the rest are still preloaded. The counts and the time taken
+	 * are then reported at {@code LOG}.
+	 */
+	void run(
+		Checked.Supplier<Connection,SQLException> connection,
+		String list, int warmupCalls)
+	{
+		long start = System.nanoTime();
+		int created = 0;
+		int failed = 0;
+		int calls = 0;
+
+		try
+		{
+			Connection c = connection.get();
+			for ( String item : splitList(list) )
+			{
+				List<Object[]> found = new ArrayList<>();
+				if ( ! underSavepoint(c, item, () ->
+					findPreloadable(c, item, found)) )
+				{
+					++ failed;
+					continue;
+				}
+				for ( Object[] f : found )
+				{
+					int oid = (Integer)f[0];
+					boolean forTrigger = (Boolean)f[1];
+					String callable = (String)f[2];
+					if ( ! underSavepoint(c, item, () ->
+						m_creator.create(oid, forTrigger)) )
+					{
+						++ failed;
+						continue;
+					}
+					++ created;
+					if ( null == callable  ||  0 >= warmupCalls )
+						continue;
+					if ( underSavepoint(c, item, () ->
+						{
+							try ( Statement s = c.createStatement() )
+							{
+								for ( int i = 0; i < warmupCalls; ++ i )
+									s.execute(callable);
+							}
+						}) )
+						calls += warmupCalls;
+				}
+			}
+		}
+		catch ( SQLException e )
+		{
+			m_reporter.report(LOG_WARNING,
+				"pljava.preload_functions: " + e.getMessage());
+		}
+
+		m_reporter.report(LOG_LOG, String.format(
+			"pljava.preload_functions: %d functions created, %d failed, " +
+			"%d warm-up calls, in %d ms",
+			created, failed, calls,
+			NANOSECONDS.toMillis(System.nanoTime() - start)));
+	}
+
+	/**
+	 * Split the {@code pljava.preload_functions} list on the commas that are
+	 * not within parentheses or double quotes.
+	 */
+	static List<String> splitList(String list)
+	{
+		List<String> items = new ArrayList<>();
+		int depth = 0;
+		boolean quoted = false;
+		int from = 0;
+
+		for ( int i = 0; i <= list.length(); ++ i )
+		{
+			char ch = i < list.length() ? list.charAt(i) : ',';
+			if ( '"' == ch )
+				quoted = ! quoted;
+			else if ( quoted )
+				continue;
+			else if ( '(' == ch )
+				++ depth;
+			else if ( ')' == ch )
+				-- depth;
+			else if ( ',' == ch  &&  0 == depth )
+			{
+				String item = list.substring(from, i).trim();
+				if ( ! item.isEmpty() )
+					items.add(item);
+				from = i + 1;
+			}
+		}
+		return items;
+	}
+
+	/**
+	 * Find the PL/Java functions an entry of the preload list names: one
+	 * function, by its {@code regprocedure} signature, or all of those in a
+	 * schema, for an entry of the form <var>schema</var>{@code .*}. For each,
+	 * add to {@code found} its Oid, whether it is a trigger function, and, if
+	 * it takes no arguments and returns no set, a query that calls it.
+	 */
+	private static void findPreloadable(
+		Connection c, String item, List<Object[]> found)
+	throws SQLException
+	{
+		boolean wildcard = item.endsWith(".*");
+		String query =
+			"SELECT" +
+			" CAST(p.oid AS pg_catalog.int8)," +
+			" p.prorettype = CAST('pg_catalog.trigger' AS pg_catalog.regtype)," +
+			" p.pronargs = 0 AND NOT p.proretset," +
+			" pg_catalog.quote_ident(n.nspname) || '.' ||" +
+			" pg_catalog.quote_ident(p.proname)" +
+			" FROM" +
+			"  pg_catalog.pg_proc p" +
+			"  JOIN pg_catalog.pg_namespace n ON n.oid = p.pronamespace" +
+			"  JOIN pg_catalog.pg_language l ON l.oid = p.prolang" +
+			"  JOIN pg_catalog.pg_proc h ON h.oid = l.lanplcallfoid" +
+			" WHERE" +
+			"  h.proname IN ('java_call_handler', 'javau_call_handler')" +
+			(wildcard
+				? "  AND n.nspname = ?"
+				: "  AND p.oid = CAST(? AS pg_catalog.regprocedure)") +
+			" ORDER BY p.oid";
+
+		String arg = item;
+		if ( wildcard )
+		{
+			arg = item.substring(0, item.length() - 2).trim();
+			if ( arg.length() > 1  &&  arg.startsWith("\"")
+				&&  arg.endsWith("\"") )
+				arg = arg.substring(1, arg.length() - 1).replace("\"\"", "\"");
+			else
+				arg = arg.toLowerCase();
+		}
+
+		try ( PreparedStatement ps = c.prepareStatement(query) )
+		{
+			ps.setString(1, arg);
+			try ( ResultSet rs = ps.executeQuery() )
+			{
+				while ( rs.next() )
+				{
+					boolean forTrigger = rs.getBoolean(2);
+					found.add(new Object[] {
+						(int)rs.getLong(1),
+						forTrigger,
+						rs.getBoolean(3) && ! forTrigger
+							? "SELECT " + rs.getString(4) + "()" : null
+					});
+				}
+			}
+		}
+	}
+
+	/**
+	 * Run {@code step} under a savepoint, rolling back to it and reporting a
+	 * warning if it fails.
+	 * @return whether the step succeeded
+	 */
+	private boolean underSavepoint(
+		Connection c, String item, Checked.Runnable<SQLException> step)
+	throws SQLException
+	{
+		Savepoint sp = c.setSavepoint();
+		try
+		{
+			step.run();
+			c.releaseSavepoint(sp);
+			return true;
+		}
+		catch ( SQLException e )
+		{
+			c.rollback(sp);
+			m_reporter.report(LOG_WARNING,
+				"pljava.preload_functions: " + item + ": " + e.getMessage());
+			return false;
+		}
+	}
+}
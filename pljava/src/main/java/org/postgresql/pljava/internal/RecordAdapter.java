@@ -0,0 +1,467 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.internal;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles.Lookup;
+import static java.lang.invoke.MethodHandles.collectArguments;
+import static java.lang.invoke.MethodHandles.filterArguments;
+import static java.lang.invoke.MethodHandles.filterReturnValue;
+import static java.lang.invoke.MethodHandles.lookup;
+import static java.lang.invoke.MethodHandles.publicLookup;
+import java.lang.invoke.MethodType;
+import static java.lang.invoke.MethodType.methodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+import java.sql.ResultSet;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientException;
+
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import org.postgresql.pljava.ResultSetProvider;
+import org.postgresql.pljava.jdbc.SingleRowReader;
+import org.postgresql.pljava.jdbc.SingleRowResultSet;
+
+import static org.postgresql.pljava.internal.UncheckedException.unchecked;
+
+/**
+ * Binds a Java record class to PostgreSQL composite values, so a record can
+ * be a function's composite parameter, its composite return type, or the
+ * element type of a set of composite rows.
+ *<p>
+ * The components of the record correspond, by position, to the attributes of
+ * the composite type that have not been dropped. The canonical constructor and the component accessors
+ * are found once, when the function's signature is resolved, and bound into
+ * the function's method handle. A composite parameter is deformed into all of
+ * its values in a single native call.
+ *<p>
+ * Records are recognized reflectively, so that this class is usable (and
+ * simply never finds a record) on a Java runtime that predates them.
+ */
+final class RecordAdapter
+{
+	private static final Method s_isRecord;
+	private static final Method s_getRecordComponents;
+	private static final Method s_getComponentType;
+	private static final Method s_getAccessor;
+
+	private static final MethodHandle s_read;
+	private static final MethodHandle s_write;
+	private static final MethodHandle s_iteratorProvider;
+	private static final MethodHandle s_streamProvider;
+
+	private final Class<?> m_class;
+	private final Class<?>[] m_requestTypes;
+	private final boolean[] m_primitive;
+	private final MethodHandle m_constructor;
+	private final MethodHandle[] m_accessors;
+
+	/**
+	 * Whether the class is a record class, always false on a Java runtime
+	 * without records.
+	 */
+	static boolean isRecord(Class<?> c)
+	{
+		if ( null == s_isRecord )
+			return false;
+		try
+		{
+			return (Boolean)s_isRecord.invoke(c);
+		}
+		catch ( ReflectiveOperationException e )
+		{
+			throw unchecked(e);
+		}
+	}
+
+	/**
+	 * Find a static method of {@code clazz} that matches {@code mt}, the
+	 * method type expected for a function, except in using record classes in
+	 * place of {@code ResultSet} for composite parameters or results, and
+	 * return a handle to it adapted to {@code mt}; return null if there is no
+	 * such method.
+	 * @param l Lookup to use on {@code clazz}
+	 * @param clazz Class in which to find the method
+	 * @param name Name of the method
+	 * @param mt Method type expected for the function
+	 * @param retTypeIsOutParameter Whether the function returns a composite
+	 * @param isMultiCall Whether the function returns a set
+	 * @param declared The method's type from a signature index, if known;
+	 * only a method of that type is then considered
+	 */
+	static MethodHandle adaptMethod(Lookup l, Class<?> clazz, String name,
+		MethodType mt, boolean retTypeIsOutParameter, boolean isMultiCall,
+		MethodType declared)
+	throws SQLException
+	{
+		if ( null == s_isRecord )
+			return null;
+
+		boolean lastIsOut = retTypeIsOutParameter && ! isMultiCall;
+		Class<?>[] want = mt.parameterArray();
+		int nIn = want.length - (lastIsOut ? 1 : 0);
+
+		candidates: for ( Method m : clazz.getMethods() )
+		{
+			if ( ! Modifier.isStatic(m.getModifiers())
+				|| ! name.equals(m.getName())
+				|| nIn != m.getParameterCount() )
+				continue;
+
+			Class<?>[] have = m.getParameterTypes();
+			if ( null != declared  &&  ! declared.equals(
+				MethodType.methodType(m.getReturnType(), have)) )
+				continue;
+			boolean anyRecord = false;
+			for ( int i = 0; i < nIn; ++ i )
+			{
+				if ( want[i] == have[i] )
+					continue;
+				if ( ResultSet.class != want[i] || ! isRecord(have[i]) )
+					continue candidates;
+				anyRecord = true;
+			}
+
+			Class<?> rt = m.getReturnType();
+			Class<?> rowClass = null;
+			if ( lastIsOut )
+			{
+				if ( ! isRecord(rt) )
+					continue;
+				rowClass = rt;
+			}
+			else if ( retTypeIsOutParameter )
+			{
+				if ( Iterator.class != rt && Stream.class != rt )
+					continue;
+				rowClass = typeArgument(m.getGenericReturnType());
+				if ( null == rowClass || ! isRecord(rowClass) )
+					continue;
+			}
+			else if ( ! mt.returnType().isAssignableFrom(rt) )
+				continue;
+
+			if ( ! anyRecord && null == rowClass )
+				continue;
+
+			MethodHandle h;
+			try
+			{
+				h = l.unreflect(m);
+			}
+			catch ( IllegalAccessException e )
+			{
+				continue;
+			}
+
+			for ( int i = 0; i < nIn; ++ i )
+				if ( want[i] != have[i] )
+					h = filterArguments(h, i, forClass(have[i]).reader());
+
+			if ( lastIsOut )
+				h = collectArguments(forClass(rowClass).writer(), 0, h);
+			else if ( null != rowClass )
+				h = filterReturnValue(h,
+					(Stream.class == rt ? s_streamProvider : s_iteratorProvider)
+					.bindTo(forClass(rowClass)));
+
+			return h.asType(mt);
+		}
+		return null;
+	}
+
+	/**
+	 * Return the class that is the single type argument of a parameterized
+	 * type, or null.
+	 */
+	private static Class<?> typeArgument(Type t)
+	{
+		if ( ! ( t instanceof ParameterizedType ) )
+			return null;
+		Type[] args = ((ParameterizedType)t).getActualTypeArguments();
+		if ( 1 != args.length || ! ( args[0] instanceof Class ) )
+			return null;
+		return (Class<?>)args[0];
+	}
+
+	/**
+	 * Return a {@code RecordAdapter} for a record class, binding its
+	 * canonical constructor and its accessors.
+	 */
+	static RecordAdapter forClass(Class<?> c) throws SQLException
+	{
+		try
+		{
+			Object[] components = (Object[])s_getRecordComponents.invoke(c);
+			int n = components.length;
+			Class<?>[] types = new Class<?>[n];
+			MethodHandle[] accessors = new MethodHandle[n];
+			Lookup l = publicLookup().in(c);
+			for ( int i = 0; i < n; ++ i )
+			{
+				types[i] = (Class<?>)s_getComponentType.invoke(components[i]);
+				accessors[i] = l.unreflect(
+					(Method)s_getAccessor.invoke(components[i]))
+					.asType(methodType(Object.class, Object.class));
+			}
+			Constructor<?> ctor = c.getDeclaredConstructor(types);
+			MethodHandle constructor = l.unreflectConstructor(ctor)
+				.asSpreader(Object[].class, n)
+				.asType(methodType(Object.class, Object[].class));
+			return new RecordAdapter(c, types, constructor, accessors);
+		}
+		catch ( ReflectiveOperationException e )
+		{
+			throw (SQLException)new SQLNonTransientException(
+				"Unable to bind record class " + c.getCanonicalName(),
+				"38000").initCause(e);
+		}
+	}
+
+	private RecordAdapter(Class<?> c, Class<?>[] types,
+		MethodHandle constructor, MethodHandle[] accessors)
+	{
+		m_class = c;
+		m_constructor = constructor;
+		m_accessors = accessors;
+		m_requestTypes = new Class<?>[types.length];
+		m_primitive = new boolean[types.length];
+		for ( int i = 0; i < types.length; ++ i )
+		{
+			m_primitive[i] = types[i].isPrimitive();
+			m_requestTypes[i] = m_primitive[i]
+				? methodType(types[i]).wrap().returnType() : types[i];
+		}
+	}
+
+	/**
+	 * A handle taking a {@code ResultSet} for a composite value and returning
+	 * an instance of the record class.
+	 */
+	MethodHandle reader()
+	{
+		return s_read.bindTo(this)
+			.asType(methodType(m_class, ResultSet.class));
+	}
+
+	/**
+	 * A handle taking an instance of the record class and a {@code ResultSet}
+	 * receiver, and returning true if it assigned the record's values to the
+	 * receiver, false if the record was null.
+	 */
+	MethodHandle writer()
+	{
+		return s_write.bindTo(this)
+			.asType(methodType(boolean.class, m_class, ResultSet.class));
+	}
+
+	/**
+	 * Construct an instance of the record class from a composite value.
+	 */
+	private Object read(ResultSet rs) throws SQLException
+	{
+		if ( null == rs )
+			return null;
+
+		int n = m_requestTypes.length;
+		Object[] values;
+		if ( rs instanceof SingleRowReader )
+			values = ((SingleRowReader)rs).getRowValues(m_requestTypes);
+		else
+		{
+			int[] columns = columns(rs, n);
+			values = new Object[columns.length];
+			for ( int i = 0; i < n  &&  i < columns.length; ++ i )
+				values[i] = rs.getObject(columns[i], m_requestTypes[i]);
+		}
+
+		if ( n != values.length )
+			throw new SQLDataException(String.format(
+				"Composite value has %d attributes where record %s has %d " +
+				"components", values.length, m_class.getCanonicalName(), n),
+				"22000");
+
+		for ( int i = 0; i < n; ++ i )
+			if ( m_primitive[i] && null == values[i] )
+				throw new SQLDataException(String.format(
+					"Null attribute %d for primitive component of record %s",
+					i + 1, m_class.getCanonicalName()), "22004");
+
+		try
+		{
+			return m_constructor.invokeExact(values);
+		}
+		catch ( Throwable t )
+		{
+			throw unchecked(t);
+		}
+	}
+
+	/**
+	 * The (one-based) columns of a composite value corresponding to the
+	 * record's components: those of its attributes not dropped, for PL/Java's
+	 * own result sets, otherwise the first {@code n}.
+	 */
+	private static int[] columns(ResultSet rs, int n) throws SQLException
+	{
+		if ( rs instanceof SingleRowResultSet )
+			return ((SingleRowResultSet)rs).getLiveColumns();
+		int[] columns = new int[n];
+		for ( int i = 0; i < n; ++ i )
+			columns[i] = i + 1;
+		return columns;
+	}
+
+	/**
+	 * Assign the components of a record to a receiver for a composite value.
+	 */
+	private boolean write(Object record, ResultSet receiver)
+	throws SQLException
+	{
+		if ( null == record )
+			return false;
+
+		int n = m_accessors.length;
+		int[] columns = columns(receiver, n);
+		if ( n != columns.length )
+			throw new SQLDataException(String.format(
+				"Composite type has %d attributes where record %s has %d " +
+				"components", columns.length, m_class.getCanonicalName(), n),
+				"22000");
+
+		try
+		{
+			for ( int i = 0; i < n; ++ i )
+				receiver.updateObject(columns[i],
+					(Object)m_accessors[i].invokeExact(record));
+		}
+		catch ( SQLException e )
+		{
+			throw e;
+		}
+		catch ( Throwable t )
+		{
+			throw unchecked(t);
+		}
+		return true;
+	}
+
+	/**
+	 * {@code ResultSetProvider} supplying rows from an {@code Iterator} of
+	 * records.
+	 */
+	static final class Provider implements ResultSetProvider
+	{
+		private final RecordAdapter m_adapter;
+		private final Iterator<?> m_rows;
+
+		Provider(RecordAdapter adapter, Iterator<?> rows)
+		{
+			m_adapter = adapter;
+			m_rows = rows;
+		}
+
+		static ResultSetProvider of(
+			RecordAdapter adapter, Iterator<?> rows)
+		{
+			return null == rows ? null : new Provider(adapter, rows);
+		}
+
+		static ResultSetProvider of(
+			RecordAdapter adapter, Stream<?> rows)
+		{
+			return null == rows ?
+				null : new Provider(adapter, StreamIterators.of(rows));
+		}
+
+		@Override
+		public boolean assignRowValues(ResultSet receiver, int currentRow)
+		throws SQLException
+		{
+			if ( ! m_rows.hasNext() )
+				return false;
+			m_adapter.write(m_rows.next(), receiver);
+			return true;
+		}
+
+		@Override
+		public void close() throws SQLException
+		{
+			if ( m_rows instanceof AutoCloseable )
+			{
+				try
+				{
+					((AutoCloseable)m_rows).close();
+				}
+				catch ( SQLException | RuntimeException e )
+				{
+					throw e;
+				}
+				catch ( Exception e )
+				{
+					throw unchecked(e);
+				}
+			}
+		}
+	}
+
+	static
+	{
+		Method isRecord = null;
+		Method getRecordComponents = null;
+		Method getComponentType = null;
+		Method getAccessor = null;
+		try
+		{
+			Class<?> rc = Class.forName("java.lang.reflect.RecordComponent");
+			isRecord = Class.class.getMethod("isRecord");
+			getRecordComponents = Class.class.getMethod("getRecordComponents");
+			getComponentType = rc.getMethod("getType");
+			getAccessor = rc.getMethod("getAccessor");
+		}
+		catch ( ReflectiveOperationException e )
+		{
+			/* a Java runtime without records */
+			isRecord = null;
+		}
+		s_isRecord = isRecord;
+		s_getRecordComponents = getRecordComponents;
+		s_getComponentType = getComponentType;
+		s_getAccessor = getAccessor;
+
+		Lookup l = lookup();
+		try
+		{
+			s_read = l.findVirtual(RecordAdapter.class, "read",
+				methodType(Object.class, ResultSet.class));
+			s_write = l.findVirtual(RecordAdapter.class, "write",
+				methodType(boolean.class, Object.class, ResultSet.class));
+			s_iteratorProvider = l.findStatic(Provider.class, "of",
+				methodType(ResultSetProvider.class,
+					RecordAdapter.class, Iterator.class));
+			s_streamProvider = l.findStatic(Provider.class, "of",
+				methodType(ResultSetProvider.class,
+					RecordAdapter.class, Stream.class));
+		}
+		catch ( ReflectiveOperationException e )
+		{
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+}
@@ -12,6 +12,8 @@
  */
 package org.postgresql.pljava.internal;
 
+import java.sql.SQLException;
+
 import static org.postgresql.pljava.internal.Backend.doInPG;
 
 /**
@@ -74,6 +76,26 @@ public class SPI
 		doInPG(SPI::_freeTupTable);
 	}
 
+	/**
+	 * Commit the current transaction and start a new one, which is only
+	 * possible in a procedure invoked by a {@code CALL} that permits
+	 * transaction control.
+	 */
+	public static void commit() throws SQLException
+	{
+		doInPG(SPI::_commit);
+	}
+
+	/**
+	 * Roll back the current transaction and start a new one, which is only
+	 * possible in a procedure invoked by a {@code CALL} that permits
+	 * transaction control.
+	 */
+	public static void rollback() throws SQLException
+	{
+		doInPG(SPI::_rollback);
+	}
+
 	/**
 	 * Returns the value of the global variable <code>SPI_processed</code>.
 	 */
@@ -102,6 +124,47 @@ public class SPI
 		return doInPG(() -> _getTupTable(known));
 	}
 
+	/**
+	 * Takes over <code>SPI_tuptable</code> as a {@link TupleTable} whose
+	 * {@link Tuple}s refer to its rows in place, without copying them. The
+	 * native table is freed when the {@code TupleTable} is
+	 * {@link TupleTable#invalidate invalidated} or becomes unreachable, or
+	 * else by <code>SPI_finish</code>, and is no longer
+	 * <code>SPI_tuptable</code>, so {@link #freeTupTable} will not free it.
+	 *<p>
+	 * Within a subtransaction begun since the current invocation was entered,
+	 * or in a procedure that controls transactions, the rows are copied
+	 * instead, as by {@link #getTupTable getTupTable}, and
+	 * <code>SPI_tuptable</code> is left to be freed as usual.
+	 */
+	public static TupleTable takeTupTable(TupleDesc known)
+	{
+		return doInPG(() -> _takeTupTable(known));
+	}
+
+	/**
+	 * Copies values of the given columns, for all the rows in
+	 * <code>SPI_tuptable</code>, into primitive arrays, without making a
+	 * {@link Tuple} of any row.
+	 * @param columns Indices (one based) of the columns to copy.
+	 * @param kinds For each column, {@code 'I'}, {@code 'J'}, or {@code 'D'}
+	 * as {@code values} holds an {@code int[]}, {@code long[]}, or
+	 * {@code double[]} for it.
+	 * @param values Arrays to receive the values.
+	 * @param nulls Null, or arrays (any of which may be null) to receive the
+	 * null flags.
+	 * @param offset Position in the arrays of the first row's value.
+	 * @return The number of rows copied.
+	 * @throws SQLException if a column is not of type {@code int2},
+	 * {@code int4}, {@code int8}, {@code float4}, or {@code float8}.
+	 */
+	public static int getColumns(int[] columns, byte[] kinds,
+		Object[] values, boolean[][] nulls, int offset)
+	throws SQLException
+	{
+		return doInPG(() -> _getColumns(columns, kinds, values, nulls, offset));
+	}
+
 	/**
 	 * Returns a textual representation of a result code.
 	 */
@@ -156,4 +219,10 @@ public class SPI
 	private native static int _getResult();
 	private native static void _freeTupTable();
 	private native static TupleTable _getTupTable(TupleDesc known);
+	private native static TupleTable _takeTupTable(TupleDesc known);
+	private native static int _getColumns(int[] columns, byte[] kinds,
+		Object[] values, boolean[][] nulls, int offset)
+	throws SQLException;
+	private native static void _commit() throws SQLException;
+	private native static void _rollback() throws SQLException;
 }
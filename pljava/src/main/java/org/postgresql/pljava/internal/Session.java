@@ -12,6 +12,11 @@
  */
 package org.postgresql.pljava.internal;
 
+import java.lang.invoke.VarHandle;
+import static java.lang.invoke.MethodHandles.byteBufferViewVarHandle;
+
+import java.nio.ByteBuffer;
+import static java.nio.ByteOrder.nativeOrder;
 import java.nio.charset.Charset;
 
 import java.sql.Connection;
@@ -105,6 +110,61 @@ public class Session implements org.postgresql.pljava.Session
 		return m_attributes.get(attributeName);
 	}
 
+	@Override
+	public void checkForInterrupts() throws SQLException
+	{
+		if ( null != InterruptFlag.s_buffer
+			&& 0 == (int)InterruptFlag.s_pending.getVolatile(
+				InterruptFlag.s_buffer, 0) )
+			return;
+
+		if ( Boolean.TRUE == Backend.IAMPGTHREAD.get() )
+		{
+			doInPG(Session::_checkForInterrupts);
+			return;
+		}
+
+		switch ( _pendingInterrupt() )
+		{
+		case 1:
+			throw new SQLException(
+				"canceling statement due to pending cancel request", "57014");
+		case 2:
+			throw new SQLException(
+				"terminating connection due to pending termination request",
+				"57P01");
+		default:
+			return;
+		}
+	}
+
+	/**
+	 * Holder of a {@code ByteBuffer} over PostgreSQL's {@code InterruptPending}
+	 * flag, which is set by signal handlers and can be read from any thread
+	 * with no lock held, and of the handle that reads it.
+	 *<p>
+	 * The buffer is null where the flag is not usable this way (on Windows,
+	 * where it is only set when PostgreSQL checks for interrupts itself).
+	 */
+	private static class InterruptFlag
+	{
+		static final ByteBuffer s_buffer = _interruptPendingFlag();
+		static final VarHandle s_pending =
+			byteBufferViewVarHandle(int[].class, nativeOrder());
+	}
+
+	@Override
+	public Object getCallSiteState() throws SQLException
+	{
+		return doInPG(Session::_getCallSiteState);
+	}
+
+	@Override
+	public void setCallSiteState(Object state) throws SQLException
+	{
+		doInPG(() -> _setCallSiteState(state));
+	}
+
 	public <T extends PooledObject> ObjectPool<T> getObjectPool(Class<T> cls)
 	{
 		return ObjectPoolImpl.getObjectPool(cls);
@@ -269,4 +329,15 @@ public class Session implements org.postgresql.pljava.Session
 	}
 
 	private static native boolean _setUser(AclId userId, boolean isLocalChange);
+
+	private static native ByteBuffer _interruptPendingFlag();
+
+	private static native int _pendingInterrupt();
+
+	private static native void _checkForInterrupts() throws SQLException;
+
+	private static native Object _getCallSiteState();
+
+	private static native void _setCallSiteState(Object state)
+	throws SQLException;
 }
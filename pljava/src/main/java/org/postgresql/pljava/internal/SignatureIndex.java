@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.internal;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import java.net.URL;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import static
+	org.postgresql.pljava.annotation.processing.DDRWriter.SIGNATURE_INDEX;
+
+/**
+ * The signature indexes written by the annotation processor into the jars on
+ * a schema's class path, merged for each schema class loader.
+ *<p>
+ * An index maps the AS string of each annotated function, with whitespace
+ * removed as {@link Function} does, to the JVM descriptor of its method, so
+ * the method can be found without parsing the AS string with the regular
+ * expressions {@code Function} otherwise uses, or trying the signatures the
+ * method might have one by one.
+ *<p>
+ * An index is read once per class loader, when first needed. A loader is
+ * replaced whenever a jar on its path changes, so an index never outlives the
+ * jars it was read from. Only used on the PG thread, as functions are only
+ * created there.
+ */
+final class SignatureIndex
+{
+	private SignatureIndex() { }
+
+	private static final Map<ClassLoader,Map<String,String>> s_indexes =
+		new WeakHashMap<>();
+
+	/**
+	 * Return the indexed method descriptor for the given (whitespace-free) AS
+	 * string, or null if no jar on the loader's path has one for it.
+	 */
+	static String descriptor(ClassLoader loader, String as)
+	{
+		Map<String,String> index = s_indexes.get(loader);
+		if ( null == index )
+		{
+			index = load(loader);
+			s_indexes.put(loader, index);
+		}
+		return index.get(as);
+	}
+
+	/**
+	 * Read and merge the indexes of all jars visible to the loader. Where two
+	 * jars index the same AS string, the first on the path wins, as it would
+	 * in class loading.
+	 */
+	private static Map<String,String> load(ClassLoader loader)
+	{
+		Map<String,String> index = new HashMap<>();
+		try
+		{
+			Enumeration<URL> urls = loader.getResources(SIGNATURE_INDEX);
+			while ( urls.hasMoreElements() )
+			{
+				try ( BufferedReader r = new BufferedReader(
+					new InputStreamReader(urls.nextElement().openStream(),
+						UTF_8)) )
+				{
+					String line;
+					while ( null != (line = r.readLine()) )
+					{
+						int tab = line.indexOf('\t');
+						if ( 0 < tab )
+							index.putIfAbsent(
+								line.substring(0, tab), line.substring(tab+1));
+					}
+				}
+			}
+		}
+		catch ( IOException e )
+		{
+			/*
+			 * An index that can't be read is only a missed shortcut; the
+			 * functions are found by parsing their AS strings, as without one.
+			 */
+		}
+		return index.isEmpty() ? Map.of() : index;
+	}
+}
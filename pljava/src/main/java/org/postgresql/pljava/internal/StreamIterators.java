@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.internal;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.BaseStream;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Adapters presenting the streams a set-returning function may return as the
+ * iterators the native set-returning function code expects.
+ *<p>
+ * Each adapter is also {@link AutoCloseable}, closing its stream, which the
+ * native code will do when the set is complete or abandoned early.
+ *<p>
+ * Elements are pulled from the stream one at a time, only as the native code
+ * asks for them, so a stream pipeline stays lazy all the way to PostgreSQL,
+ * and one that is infinite or costly to complete is not drawn upon further
+ * once a {@code LIMIT} has been satisfied.
+ */
+final class StreamIterators
+{
+	private StreamIterators() { } // do not instantiate
+
+	/**
+	 * Adapt a {@code Stream} to an {@code Iterator}.
+	 */
+	static <T> Iterator<T> of(Stream<T> s)
+	{
+		return null == s ? null : new OfObject<>(s);
+	}
+
+	/**
+	 * Adapt an {@code IntStream} to a {@code PrimitiveIterator.OfInt}.
+	 */
+	static PrimitiveIterator.OfInt ofInt(IntStream s)
+	{
+		return null == s ? null : new OfInt(s);
+	}
+
+	/**
+	 * Adapt a {@code LongStream} to a {@code PrimitiveIterator.OfLong}.
+	 */
+	static PrimitiveIterator.OfLong ofLong(LongStream s)
+	{
+		return null == s ? null : new OfLong(s);
+	}
+
+	/**
+	 * Adapt a {@code DoubleStream} to a {@code PrimitiveIterator.OfDouble}.
+	 */
+	static PrimitiveIterator.OfDouble ofDouble(DoubleStream s)
+	{
+		return null == s ? null : new OfDouble(s);
+	}
+
+	/**
+	 * Common ancestor holding the stream to be closed.
+	 */
+	private static abstract class Closing implements AutoCloseable
+	{
+		private final BaseStream<?,?> m_stream;
+
+		Closing(BaseStream<?,?> stream)
+		{
+			m_stream = stream;
+		}
+
+		@Override
+		public void close()
+		{
+			m_stream.close();
+		}
+	}
+
+	/**
+	 * Iterator over a {@code Stream}, advancing its {@code Spliterator} at
+	 * most one element ahead of the consumer.
+	 */
+	static final class OfObject<T> extends Closing
+	implements Iterator<T>, Consumer<T>
+	{
+		private final Spliterator<T> m_spliterator;
+		private boolean m_ready;
+		private T m_next;
+
+		OfObject(Stream<T> s)
+		{
+			super(s);
+			m_spliterator = s.spliterator();
+		}
+
+		@Override
+		public void accept(T t)
+		{
+			m_next = t;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			if ( ! m_ready )
+				m_ready = m_spliterator.tryAdvance(this);
+			return m_ready;
+		}
+
+		@Override
+		public T next()
+		{
+			if ( ! hasNext() )
+				throw new NoSuchElementException();
+			T t = m_next;
+			m_next = null;
+			m_ready = false;
+			return t;
+		}
+	}
+
+	static final class OfInt extends Closing
+	implements PrimitiveIterator.OfInt
+	{
+		private final PrimitiveIterator.OfInt m_iterator;
+
+		OfInt(IntStream s)
+		{
+			super(s);
+			m_iterator = s.iterator();
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return m_iterator.hasNext();
+		}
+
+		@Override
+		public int nextInt()
+		{
+			return m_iterator.nextInt();
+		}
+	}
+
+	static final class OfLong extends Closing
+	implements PrimitiveIterator.OfLong
+	{
+		private final PrimitiveIterator.OfLong m_iterator;
+
+		OfLong(LongStream s)
+		{
+			super(s);
+			m_iterator = s.iterator();
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return m_iterator.hasNext();
+		}
+
+		@Override
+		public long nextLong()
+		{
+			return m_iterator.nextLong();
+		}
+	}
+
+	static final class OfDouble extends Closing
+	implements PrimitiveIterator.OfDouble
+	{
+		private final PrimitiveIterator.OfDouble m_iterator;
+
+		OfDouble(DoubleStream s)
+		{
+			super(s);
+			m_iterator = s.iterator();
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return m_iterator.hasNext();
+		}
+
+		@Override
+		public double nextDouble()
+		{
+			return m_iterator.nextDouble();
+		}
+	}
+}
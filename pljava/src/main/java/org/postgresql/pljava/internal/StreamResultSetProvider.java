@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.internal;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import org.postgresql.pljava.ResultSetProvider;
+
+/**
+ * Presents a {@code Stream} of rows, each an {@code Object[]} of column
+ * values, as a {@link ResultSetProvider} for a function returning a set of a
+ * composite type.
+ *<p>
+ * Rows are pulled from the stream only as they are needed, and the stream is
+ * closed when the set is complete or abandoned early.
+ */
+public class StreamResultSetProvider implements ResultSetProvider
+{
+	private final Stream<Object[]> m_stream;
+	private final Iterator<Object[]> m_rows;
+
+	public StreamResultSetProvider(Stream<Object[]> stream)
+	{
+		m_stream = stream;
+		m_rows = StreamIterators.of(stream);
+	}
+
+	/**
+	 * Adapter suitable for a method handle return filter, passing null through.
+	 */
+	static ResultSetProvider of(Stream<Object[]> stream)
+	{
+		return null == stream ? null : new StreamResultSetProvider(stream);
+	}
+
+	public boolean assignRowValues(ResultSet receiver, int currentRow)
+	throws SQLException
+	{
+		if(!m_rows.hasNext())
+			return false;
+
+		Object[] row = m_rows.next();
+		if(row != null)
+		{
+			for(int i = 0; i < row.length; ++i)
+				receiver.updateObject(i + 1, row[i]);
+		}
+		return true;
+	}
+
+	public void close()
+	{
+		m_stream.close();
+	}
+}
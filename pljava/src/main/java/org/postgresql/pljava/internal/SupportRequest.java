@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.internal;
+
+import java.sql.SQLException;
+
+import static org.postgresql.pljava.internal.Backend.doInPG;
+
+/**
+ * The {@code SupportRequest} passed to a PL/Java planner support function,
+ * wrapping the PostgreSQL {@code SupportRequest*} node.
+ */
+public class SupportRequest implements org.postgresql.pljava.SupportRequest
+{
+	private static final Kind[] KINDS = Kind.values();
+
+	private final State m_state;
+
+	SupportRequest(DualState.Key cookie, long resourceOwner, long node)
+	{
+		m_state = new State(cookie, this, resourceOwner, node);
+	}
+
+	private static class State
+	extends DualState.SingleGuardedLong<SupportRequest>
+	{
+		private State(
+			DualState.Key cookie, SupportRequest sr, long ro, long node)
+		{
+			super(cookie, sr, ro, node);
+		}
+
+		/**
+		 * Return the node pointer, in the same transitional manner as
+		 * {@code TriggerData}: only used on the PG thread during the call,
+		 * which keeps the Invocation scoping it from being popped.
+		 */
+		private long getNodePtr() throws SQLException
+		{
+			pin();
+			try
+			{
+				return guardedLong();
+			}
+			finally
+			{
+				unpin();
+			}
+		}
+	}
+
+	private long getNativePointer() throws SQLException
+	{
+		return m_state.getNodePtr();
+	}
+
+	@Override
+	public Kind getKind() throws SQLException
+	{
+		return KINDS[doInPG(() -> _getKind(getNativePointer()))];
+	}
+
+	@Override
+	public int getArgCount() throws SQLException
+	{
+		return doInPG(() -> _getArgCount(getNativePointer()));
+	}
+
+	@Override
+	public boolean isConstant(int argno) throws SQLException
+	{
+		return doInPG(() -> _isConstant(getNativePointer(), argno));
+	}
+
+	@Override
+	public Object getConstant(int argno) throws SQLException
+	{
+		return doInPG(() -> _getConstant(getNativePointer(), argno));
+	}
+
+	@Override
+	public void setRows(double rows) throws SQLException
+	{
+		doInPG(() -> _setRows(getNativePointer(), rows));
+	}
+
+	@Override
+	public void setCost(double startup, double perTuple) throws SQLException
+	{
+		doInPG(() -> _setCost(getNativePointer(), startup, perTuple));
+	}
+
+	@Override
+	public void setSelectivity(double selectivity) throws SQLException
+	{
+		doInPG(() -> _setSelectivity(getNativePointer(), selectivity));
+	}
+
+	private static native int _getKind(long pointer)
+	throws SQLException;
+	private static native int _getArgCount(long pointer)
+	throws SQLException;
+	private static native boolean _isConstant(long pointer, int argno)
+	throws SQLException;
+	private static native Object _getConstant(long pointer, int argno)
+	throws SQLException;
+	private static native void _setRows(long pointer, double rows)
+	throws SQLException;
+	private static native void _setCost(
+		long pointer, double startup, double perTuple)
+	throws SQLException;
+	private static native void _setSelectivity(long pointer, double selectivity)
+	throws SQLException;
+}
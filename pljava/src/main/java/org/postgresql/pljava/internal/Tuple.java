@@ -19,16 +19,32 @@ import java.sql.SQLException;
 /**
  * The <code>Tuple</code> correspons to the internal PostgreSQL
  * <code>HeapTuple</code>.
+ *<p>
+ * A {@code Tuple} obtained from a {@link TupleTable} made by
+ * {@link SPI#takeTupTable SPI.takeTupTable} has no native state of its own,
+ * but refers to the row in that table, and can be read only as long as the
+ * table can; {@link #retain retain} returns one that can be kept longer.
  *
  * @author Thomas Hallgren
  */
 public class Tuple
 {
 	private final State m_state;
+	private final TupleTable m_table;
+	private final int m_index;
 
 	Tuple(DualState.Key cookie, long resourceOwner, long pointer)
 	{
 		m_state = new State(cookie, this, resourceOwner, pointer);
+		m_table = null;
+		m_index = -1;
+	}
+
+	Tuple(TupleTable table, int index)
+	{
+		m_state = null;
+		m_table = table;
+		m_index = index;
 	}
 
 	private static class State
@@ -75,9 +91,24 @@ public class Tuple
 	 */
 	public final long getNativePointer() throws SQLException
 	{
+		if ( null == m_state )
+			return m_table.tuplePointer(m_index);
 		return m_state.getHeapTuplePtr();
 	}
 
+	/**
+	 * Return a {@code Tuple} for this row that stays valid independently of
+	 * the {@link TupleTable} it was read from: this one, if it already has its
+	 * own native copy of the row, and otherwise a new one, with a copy.
+	 * @throws SQLException If the underlying native structure has gone stale.
+	 */
+	public Tuple retain() throws SQLException
+	{
+		if ( null == m_state )
+			return m_table.retain(m_index);
+		return this;
+	}
+
 	/**
 	 * Obtains a value from the underlying native <code>HeapTuple</code>
 	 * structure.
@@ -100,7 +131,55 @@ public class Tuple
 				tupleDesc.getNativePointer(), index, type));
 	}
 
+	/**
+	 * Obtains the value of a column of type {@code int2}, {@code int4}, or
+	 * {@code int8} as a {@code long}, without boxing it.
+	 * @param tupleDesc The Tuple descriptor for this instance.
+	 * @param index Index of value in the structure (one based).
+	 * @param isNull One-element array in which to store whether the value is
+	 * null, in which case zero is returned.
+	 * @return The value, or zero if null.
+	 * @throws SQLException If the underlying native structure has gone stale,
+	 * or the column is not of one of those types.
+	 * @see TupleDesc#getPrimitiveKind
+	 */
+	public long getLong(TupleDesc tupleDesc, int index, boolean[] isNull)
+	throws SQLException
+	{
+		return doInPG(() ->
+			_getLong(this.getNativePointer(),
+				tupleDesc.getNativePointer(), index, isNull));
+	}
+
+	/**
+	 * Obtains the value of a column of type {@code float4} or {@code float8}
+	 * as a {@code double}, without boxing it.
+	 * @param tupleDesc The Tuple descriptor for this instance.
+	 * @param index Index of value in the structure (one based).
+	 * @param isNull One-element array in which to store whether the value is
+	 * null, in which case zero is returned.
+	 * @return The value, or zero if null.
+	 * @throws SQLException If the underlying native structure has gone stale,
+	 * or the column is not of one of those types.
+	 * @see TupleDesc#getPrimitiveKind
+	 */
+	public double getDouble(TupleDesc tupleDesc, int index, boolean[] isNull)
+	throws SQLException
+	{
+		return doInPG(() ->
+			_getDouble(this.getNativePointer(),
+				tupleDesc.getNativePointer(), index, isNull));
+	}
+
 	private static native Object _getObject(
 		long pointer, long tupleDescPointer, int index, Class<?> type)
 	throws SQLException;
+
+	private static native long _getLong(
+		long pointer, long tupleDescPointer, int index, boolean[] isNull)
+	throws SQLException;
+
+	private static native double _getDouble(
+		long pointer, long tupleDescPointer, int index, boolean[] isNull)
+	throws SQLException;
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.internal;
+
+import java.sql.SQLException;
+
+/**
+ * A batch of native {@code HeapTuple}s formed together by
+ * {@link TupleDesc#formTuples TupleDesc.formTuples}, all allocated in one
+ * memory context of their own, which is deleted when the batch is closed or
+ * becomes unreachable.
+ *<p>
+ * Unlike a {@link Tuple}, the individual tuples have no Java objects of their
+ * own; their native pointers are available only while the batch is open.
+ */
+public class TupleBatch implements AutoCloseable
+{
+	private final State m_state;
+	private final long[] m_tuples;
+
+	TupleBatch(DualState.Key cookie, long resourceOwner, long memContext,
+		long[] tuples)
+	{
+		m_state = new State(cookie, this, resourceOwner, memContext);
+		m_tuples = tuples;
+	}
+
+	private static class State
+	extends DualState.SingleMemContextDelete<TupleBatch>
+	{
+		private State(
+			DualState.Key cookie, TupleBatch tb, long ro, long cxt)
+		{
+			super(cookie, tb, ro, cxt);
+		}
+
+		/**
+		 * Check that the native state is still live, in the same transitional
+		 * manner as {@code Tuple.getHeapTuplePtr}.
+		 */
+		private void check() throws SQLException
+		{
+			pin();
+			unpin();
+		}
+
+		private void release()
+		{
+			releaseFromJava();
+		}
+	}
+
+	/**
+	 * Returns the number of tuples in the batch.
+	 */
+	public int size()
+	{
+		return m_tuples.length;
+	}
+
+	/**
+	 * Return pointer to the native HeapTuple at {@code index} (zero based) as
+	 * a long; use only while a reference to this batch is live, it has not been
+	 * closed, and the THREADLOCK is held.
+	 */
+	public long getNativePointer(int index) throws SQLException
+	{
+		m_state.check();
+		return m_tuples[index];
+	}
+
+	/**
+	 * Releases the native memory holding the tuples of this batch.
+	 */
+	@Override
+	public void close()
+	{
+		m_state.release();
+	}
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2004-2019 Tada AB and other contributors, as listed below.
+ * Copyright (c) 2004-2020 Tada AB and other contributors, as listed below.
  *
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the The BSD 3-Clause License
@@ -16,6 +16,16 @@ import static org.postgresql.pljava.internal.Backend.doInPG;
 
 import java.sql.SQLException;
 
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.postgresql.pljava.jdbc.TypeOid.FLOAT4OID;
+import static org.postgresql.pljava.jdbc.TypeOid.FLOAT8OID;
+import static org.postgresql.pljava.jdbc.TypeOid.INT2OID;
+import static org.postgresql.pljava.jdbc.TypeOid.INT4OID;
+import static org.postgresql.pljava.jdbc.TypeOid.INT8OID;
+
 /**
  * The <code>TupleDesc</code> correspons to the internal PostgreSQL
  * <code>TupleDesc</code>.
@@ -27,6 +37,29 @@ public class TupleDesc
 	private final State m_state;
 	private final int m_size;
 	private Class[] m_columnClasses;
+	private byte[] m_primitiveKinds;
+	private ColumnIndex m_columnIndex;
+	private int[] m_liveColumns;
+
+	/**
+	 * {@link #getPrimitiveKind getPrimitiveKind} of a column whose values
+	 * have no primitive Java form that can be had without boxing.
+	 */
+	public static final byte NOT_PRIMITIVE = 0;
+
+	/**
+	 * {@link #getPrimitiveKind getPrimitiveKind} of a column of type
+	 * {@code int2}, {@code int4}, or {@code int8}, whose values can be read
+	 * with {@link Tuple#getLong Tuple.getLong}.
+	 */
+	public static final byte INTEGRAL = 1;
+
+	/**
+	 * {@link #getPrimitiveKind getPrimitiveKind} of a column of type
+	 * {@code float4} or {@code float8}, whose values can be read with
+	 * {@link Tuple#getDouble Tuple.getDouble}.
+	 */
+	public static final byte FLOATING = 2;
 
 	TupleDesc(DualState.Key cookie, long resourceOwner, long pointer, int size)
 	throws SQLException
@@ -97,6 +130,13 @@ public class TupleDesc
 
 	/**
 	 * Returns the index of the column named <code>colName</code>.
+	 *<p>
+	 * The column names are retrieved once, on first use, so a lookup is
+	 * made without a native call, and is shared by every result set using
+	 * this descriptor. A name is matched exactly first; then, if it is in
+	 * double quotes, only as the quoted identifier; otherwise, in lower case,
+	 * as PostgreSQL folds an unquoted identifier, and finally without regard
+	 * to case. Where several columns match, the first is returned.
 	 * @param colName The name of the column.
 	 * @return The index for column <code>colName</code>.
 	 * @throws SQLException If no column with the given name can
@@ -105,10 +145,67 @@ public class TupleDesc
 	public int getColumnIndex(String colName)
 	throws SQLException
 	{
+		ColumnIndex ci = m_columnIndex;
+		if ( null == ci )
+		{
+			ColumnIndex built = new ColumnIndex();
+			doInPG(() ->
+			{
+				long _this = this.getNativePointer();
+				for ( int idx = 1; idx <= m_size; ++ idx )
+					built.add(_getColumnName(_this, idx), idx);
+			});
+			m_columnIndex = ci = built;
+		}
+
+		Integer index = ci.lookup(colName);
+		if ( null != index )
+			return index;
+
+		/*
+		 * Not a column of the result; the native lookup reports the error (or
+		 * finds a system column, as it always has).
+		 */
 		return doInPG(() ->
 			_getColumnIndex(this.getNativePointer(), colName.toLowerCase()));
 	}
 
+	/**
+	 * The column names of a {@code TupleDesc}, by exact name and by name
+	 * folded to lower case, each mapped to the first (one-based) index having
+	 * it.
+	 */
+	private static final class ColumnIndex
+	{
+		private final Map<String,Integer> m_exact = new HashMap<>();
+		private final Map<String,Integer> m_folded = new HashMap<>();
+
+		void add(String name, int index)
+		{
+			m_exact.putIfAbsent(name, index);
+			m_folded.putIfAbsent(name.toLowerCase(Locale.ROOT), index);
+		}
+
+		Integer lookup(String name)
+		{
+			Integer index = m_exact.get(name);
+			if ( null != index )
+				return index;
+
+			int len = name.length();
+			if ( len > 1  &&  '"' == name.charAt(0)
+				&&  '"' == name.charAt(len - 1) )
+				return m_exact.get(
+					name.substring(1, len - 1).replace("\"\"", "\""));
+
+			String folded = name.toLowerCase(Locale.ROOT);
+			index = m_exact.get(folded);
+			if ( null != index )
+				return index;
+			return m_folded.get(folded);
+		}
+	}
+
 	/**
 	 * Creates a <code>Tuple</code> that is described by this descriptor and
 	 * initialized with the supplied <code>values</code>.
@@ -123,6 +220,21 @@ public class TupleDesc
 		return doInPG(() -> _formTuple(this.getNativePointer(), values));
 	}
 
+	/**
+	 * Creates a {@code TupleBatch} of tuples described by this descriptor, one
+	 * initialized with each of the first {@code count} elements of
+	 * {@code rows}, all in one call into the native code.
+	 * @return The created {@code TupleBatch}.
+	 * @throws SQLException If the length of any values array does not
+	 * match the size of the descriptor or if the handle of this descriptor
+	 * has gone stale.
+	 */
+	public TupleBatch formTuples(Object[][] rows, int count)
+	throws SQLException
+	{
+		return doInPG(() -> _formTuples(this.getNativePointer(), rows, count));
+	}
+
 	/**
 	 * Returns the number of columns in this tuple descriptor.
 	 */
@@ -131,6 +243,20 @@ public class TupleDesc
 		return m_size;
 	}
 
+	/**
+	 * Returns the (one-based) indices of the columns whose attributes have not
+	 * been dropped, in order; retrieved once, on first use.
+	 */
+	public int[] getLiveColumns()
+	throws SQLException
+	{
+		int[] live = m_liveColumns;
+		if ( null == live )
+			m_liveColumns = live =
+				doInPG(() -> _getLiveColumns(this.getNativePointer()));
+		return live.clone();
+	}
+
 	/**
 	 * Returns the Java class of the column at index
 	 */
@@ -150,6 +276,47 @@ public class TupleDesc
 		return m_columnClasses[index-1];
 	}
 
+	/**
+	 * Returns which of the primitive getters of {@link Tuple}, if any, can
+	 * read values of the column at the given (one-based) index: one of
+	 * {@link #INTEGRAL}, {@link #FLOATING}, or {@link #NOT_PRIMITIVE}, which
+	 * is also returned for an index out of range. The column types are
+	 * retrieved once, on first use.
+	 */
+	public byte getPrimitiveKind(int index)
+	throws SQLException
+	{
+		if ( null == m_primitiveKinds )
+		{
+			byte[] kinds = new byte [ m_size ];
+			doInPG(() ->
+			{
+				long _this = this.getNativePointer();
+				for ( int idx = 0; idx < m_size; ++ idx )
+				{
+					switch ( _getOid(_this, idx+1).intValue() )
+					{
+					case INT2OID:
+					case INT4OID:
+					case INT8OID:
+						kinds[idx] = INTEGRAL;
+						break;
+					case FLOAT4OID:
+					case FLOAT8OID:
+						kinds[idx] = FLOATING;
+						break;
+					default:
+						kinds[idx] = NOT_PRIMITIVE;
+					}
+				}
+			});
+			m_primitiveKinds = kinds;
+		}
+		if ( index < 1  ||  index > m_size )
+			return NOT_PRIMITIVE;
+		return m_primitiveKinds[index-1];
+	}
+
 	/**
 	 * Returns OID of the column type.
 	 */
@@ -159,8 +326,10 @@ public class TupleDesc
 		return doInPG(() -> _getOid(this.getNativePointer(), index));
 	}
 
+	private static native int[] _getLiveColumns(long _this) throws SQLException;
 	private static native String _getColumnName(long _this, int index) throws SQLException;
 	private static native int _getColumnIndex(long _this, String colName) throws SQLException;
 	private static native Tuple _formTuple(long _this, Object[] values) throws SQLException;
+	private static native TupleBatch _formTuples(long _this, Object[][] rows, int count) throws SQLException;
 	private static native Oid _getOid(long _this, int index) throws SQLException;
 }
@@ -6,9 +6,24 @@
  */
 package org.postgresql.pljava.internal;
 
+import static org.postgresql.pljava.internal.Backend.doInPG;
+
+import java.sql.SQLException;
+
 /**
  * The <code>SPITupleTable</code> correspons to the internal PostgreSQL
  * <code>SPITupleTable</code> type.
+ *<p>
+ * A table obtained from {@link SPI#takeTupTable SPI.takeTupTable} does not
+ * copy its rows; its {@link Tuple}s refer to the rows in the
+ * {@code SPITupleTable} itself, and are valid only until the table is
+ * {@link #invalidate invalidated}. A row needed for longer must be
+ * {@link Tuple#retain retained}, which copies it. Should the table still be in
+ * use when the invocation that fetched it returns, its remaining rows are
+ * copied then, so its {@code Tuple}s stay readable as they always have.
+ * Rows fetched in a subtransaction begun during the invocation (which could
+ * free them by rolling back), or by a procedure that controls transactions,
+ * are copied at once instead, as for {@link SPI#getTupTable SPI.getTupTable}.
  *
  * @author Thomas Hallgren
  */
@@ -16,11 +31,102 @@ public class TupleTable
 {
 	private final TupleDesc m_tupleDesc;
 	private final Tuple[] m_tuples;
+	private final State m_state;
+	private final long m_byteSize;
 
 	TupleTable(TupleDesc tupleDesc, Tuple[] tuples)
+	{
+		this(tupleDesc, tuples, 0);
+	}
+
+	TupleTable(TupleDesc tupleDesc, Tuple[] tuples, long byteSize)
 	{
 		m_tupleDesc = tupleDesc;
 		m_tuples = tuples;
+		m_state = null;
+		m_byteSize = byteSize;
+	}
+
+	TupleTable(DualState.Key cookie, long resourceOwner, long tupTable,
+		TupleDesc tupleDesc, long[] tuples, long byteSize)
+	{
+		m_tupleDesc = tupleDesc;
+		m_tuples = new Tuple[tuples.length];
+		m_state = new State(cookie, this, resourceOwner, tupTable, tuples);
+		m_byteSize = byteSize;
+	}
+
+	private static class State
+	extends DualState.SingleSPIfreetuptable<TupleTable>
+	{
+		private final long[] m_tuples;
+		private volatile Tuple[] m_copies;
+
+		private State(
+			DualState.Key cookie, TupleTable tt, long ro, long spitt,
+			long[] tuples)
+		{
+			super(cookie, tt, ro, spitt);
+			m_tuples = tuples;
+		}
+
+		/**
+		 * Return the HeapTuple pointer of the row at {@code index}, in the
+		 * same transitional manner as {@code Tuple.getHeapTuplePtr}, or of its
+		 * copy, if the rows have been copied.
+		 */
+		private long tuplePointer(int index) throws SQLException
+		{
+			Tuple[] copies = m_copies;
+			if ( null != copies )
+				return copies[index].getNativePointer();
+			pin();
+			try
+			{
+				return m_tuples[index];
+			}
+			finally
+			{
+				unpin();
+			}
+		}
+
+		private Tuple retain(int index) throws SQLException
+		{
+			Tuple[] copies = m_copies;
+			if ( null != copies )
+				return copies[index];
+			return _copyTuples(new long[] { tuplePointer(index) })[0];
+		}
+
+		private void release()
+		{
+			releaseFromJava();
+		}
+
+		/**
+		 * If the table is still in use when its invocation returns, copy its
+		 * rows before {@code SPI_finish} frees them.
+		 */
+		@Override
+		protected void nativeStateReleased(boolean javaStateLive)
+		{
+			assert Backend.threadMayEnterPG();
+			super.nativeStateReleased(javaStateLive);
+			if ( ! javaStateLive )
+				return;
+			try
+			{
+				m_copies = _copyTuples(m_tuples);
+			}
+			catch ( SQLException e )
+			{
+				/*
+				 * Likely an error already pending in the invocation; its rows
+				 * will then be reported as no longer valid, if read.
+				 */
+			}
+		}
 	}
 
 	public final TupleDesc getTupleDesc()
@@ -36,12 +142,58 @@ public class TupleTable
 		return m_tuples.length;
 	}
 
+	/**
+	 * Returns the total length, in bytes, of the rows of a table obtained
+	 * from {@link SPI#takeTupTable SPI.takeTupTable}, as fetched (values
+	 * stored out of line by TOAST are counted only by their pointers); zero
+	 * if not known.
+	 */
+	public final long getByteSize()
+	{
+		return m_byteSize;
+	}
+
 	/**
 	 * Returns the <code>Tuple</code> at the given index.
-	 * @param position Index of desired slot. First slot has index zero. 
+	 * @param position Index of desired slot. First slot has index zero.
 	 */
 	public final Tuple getSlot(int position)
 	{
-		return m_tuples[position];
+		Tuple t = m_tuples[position];
+		if ( null == t )
+			m_tuples[position] = t = new Tuple(this, position);
+		return t;
+	}
+
+	/**
+	 * Free the {@code SPITupleTable} of a table obtained from
+	 * {@link SPI#takeTupTable SPI.takeTupTable}; its {@code Tuple}s, other than
+	 * those {@link Tuple#retain retained}, can no longer be read. Does nothing
+	 * for a table of copied rows.
+	 */
+	public final void invalidate()
+	{
+		if ( null != m_state )
+			doInPG(m_state::release);
 	}
+
+	/**
+	 * Return pointer to the native HeapTuple at the given index, for a
+	 * {@code Tuple} of this table.
+	 */
+	final long tuplePointer(int index) throws SQLException
+	{
+		return m_state.tuplePointer(index);
+	}
+
+	/**
+	 * Return a {@code Tuple} with its own copy of the row at the given index.
+	 */
+	final Tuple retain(int index) throws SQLException
+	{
+		return doInPG(() -> m_state.retain(index));
+	}
+
+	private static native Tuple[] _copyTuples(long[] tuples)
+	throws SQLException;
 }
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.internal;
+
+import java.sql.SQLException;
+
+import static org.postgresql.pljava.internal.Backend.doInPG;
+
+/**
+ * The {@code WindowObject} passed to a PL/Java window function, wrapping the
+ * {@code FunctionCallInfo} of the call, from which the native code finds
+ * PostgreSQL's {@code WindowObject} and the argument types.
+ *<p>
+ * Seek positions and the flags of the last fetch are kept here, so that only
+ * the getters themselves cross into native code.
+ */
+public class WindowObject implements org.postgresql.pljava.WindowObject
+{
+	private static final int MODE_CURRENT   = 0;
+	private static final int MODE_PARTITION = 1;
+	private static final int MODE_FRAME     = 2;
+
+	private final State m_state;
+
+	private int m_mode = MODE_CURRENT;
+	private long m_relpos;
+	private int m_seek;
+	private boolean m_setMark;
+
+	/** Set by the native getters: [0] isnull, [1] isout. */
+	private final boolean[] m_flags = new boolean[2];
+
+	WindowObject(DualState.Key cookie, long resourceOwner, long fcinfo)
+	{
+		m_state = new State(cookie, this, resourceOwner, fcinfo);
+	}
+
+	private static class State
+	extends DualState.SingleGuardedLong<WindowObject>
+	{
+		private State(
+			DualState.Key cookie, WindowObject wo, long ro, long fcinfo)
+		{
+			super(cookie, wo, ro, fcinfo);
+		}
+
+		/**
+		 * Return the FunctionCallInfo pointer, in the same transitional manner
+		 * as {@code TriggerData}: only used on the PG thread during the call,
+		 * which keeps the Invocation scoping it from being popped.
+		 */
+		private long getFcinfoPtr() throws SQLException
+		{
+			pin();
+			try
+			{
+				return guardedLong();
+			}
+			finally
+			{
+				unpin();
+			}
+		}
+	}
+
+	private long getNativePointer() throws SQLException
+	{
+		return m_state.getFcinfoPtr();
+	}
+
+	@Override
+	public long getPartitionRowCount() throws SQLException
+	{
+		return doInPG(() -> _getPartitionRowCount(getNativePointer()));
+	}
+
+	@Override
+	public long getCurrentPosition() throws SQLException
+	{
+		return doInPG(() -> _getCurrentPosition(getNativePointer()));
+	}
+
+	@Override
+	public void setMarkPosition(long pos) throws SQLException
+	{
+		doInPG(() -> _setMarkPosition(getNativePointer(), pos));
+	}
+
+	@Override
+	public boolean rowsArePeers(long pos1, long pos2) throws SQLException
+	{
+		return doInPG(() -> _rowsArePeers(getNativePointer(), pos1, pos2));
+	}
+
+	@Override
+	public int getArgCount() throws SQLException
+	{
+		return doInPG(() -> _getArgCount(getNativePointer()));
+	}
+
+	@Override
+	public void seekCurrent()
+	{
+		m_mode = MODE_CURRENT;
+	}
+
+	@Override
+	public void seekInPartition(long relpos, Seek seek, boolean setMark)
+	{
+		m_mode = MODE_PARTITION;
+		m_relpos = relpos;
+		m_seek = seek.ordinal();
+		m_setMark = setMark;
+	}
+
+	@Override
+	public void seekInFrame(long relpos, Seek seek, boolean setMark)
+	{
+		m_mode = MODE_FRAME;
+		m_relpos = relpos;
+		m_seek = seek.ordinal();
+		m_setMark = setMark;
+	}
+
+	@Override
+	public boolean wasNull()
+	{
+		return m_flags[0];
+	}
+
+	@Override
+	public boolean isOut()
+	{
+		return m_flags[1];
+	}
+
+	@Override
+	public boolean getBoolean(int argno) throws SQLException
+	{
+		return doInPG(() -> _getBoolean(getNativePointer(),
+			argno, m_mode, m_relpos, m_seek, m_setMark, m_flags));
+	}
+
+	@Override
+	public int getInt(int argno) throws SQLException
+	{
+		return doInPG(() -> _getInt(getNativePointer(),
+			argno, m_mode, m_relpos, m_seek, m_setMark, m_flags));
+	}
+
+	@Override
+	public long getLong(int argno) throws SQLException
+	{
+		return doInPG(() -> _getLong(getNativePointer(),
+			argno, m_mode, m_relpos, m_seek, m_setMark, m_flags));
+	}
+
+	@Override
+	public float getFloat(int argno) throws SQLException
+	{
+		return (float)getDouble(argno);
+	}
+
+	@Override
+	public double getDouble(int argno) throws SQLException
+	{
+		return doInPG(() -> _getDouble(getNativePointer(),
+			argno, m_mode, m_relpos, m_seek, m_setMark, m_flags));
+	}
+
+	@Override
+	public Object getObject(int argno) throws SQLException
+	{
+		return doInPG(() -> _getObject(getNativePointer(),
+			argno, m_mode, m_relpos, m_seek, m_setMark, m_flags));
+	}
+
+	@Override
+	public Object getPartitionState() throws SQLException
+	{
+		return doInPG(() -> _getPartitionState(getNativePointer()));
+	}
+
+	@Override
+	public void setPartitionState(Object state) throws SQLException
+	{
+		doInPG(() -> _setPartitionState(getNativePointer(), state));
+	}
+
+	private static native long _getPartitionRowCount(long pointer)
+	throws SQLException;
+	private static native long _getCurrentPosition(long pointer)
+	throws SQLException;
+	private static native void _setMarkPosition(long pointer, long pos)
+	throws SQLException;
+	private static native boolean _rowsArePeers(
+		long pointer, long pos1, long pos2)
+	throws SQLException;
+	private static native int _getArgCount(long pointer)
+	throws SQLException;
+	private static native boolean _getBoolean(long pointer, int argno,
+		int mode, long relpos, int seek, boolean setMark, boolean[] flags)
+	throws SQLException;
+	private static native int _getInt(long pointer, int argno,
+		int mode, long relpos, int seek, boolean setMark, boolean[] flags)
+	throws SQLException;
+	private static native long _getLong(long pointer, int argno,
+		int mode, long relpos, int seek, boolean setMark, boolean[] flags)
+	throws SQLException;
+	private static native double _getDouble(long pointer, int argno,
+		int mode, long relpos, int seek, boolean setMark, boolean[] flags)
+	throws SQLException;
+	private static native Object _getObject(long pointer, int argno,
+		int mode, long relpos, int seek, boolean setMark, boolean[] flags)
+	throws SQLException;
+	private static native Object _getPartitionState(long pointer)
+	throws SQLException;
+	private static native void _setPartitionState(long pointer, Object state)
+	throws SQLException;
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.jdbc;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.postgresql.pljava.internal.TupleBatch;
+import org.postgresql.pljava.internal.TupleDesc;
+
+/**
+ * A {@link SingleRowWriter} that accumulates a batch of rows, each one ended by
+ * a call of {@link #insertRow}, for a
+ * {@link org.postgresql.pljava.BatchResultSetProvider BatchResultSetProvider}.
+ *<p>
+ * The accumulated rows are formed into native tuples all at once by
+ * {@link #formTuplesAndClear}.
+ */
+public class BatchRowWriter extends SingleRowWriter
+{
+	private final Object[][] m_rows;
+	private int m_count;
+
+	/**
+	 * Construct a {@code BatchRowWriter} given a descriptor of the tuple
+	 * structure it should produce, and the greatest number of rows it should
+	 * accept in one batch.
+	 */
+	public BatchRowWriter(TupleDesc tupleDesc, int batchSize)
+	throws SQLException
+	{
+		super(tupleDesc);
+		m_rows = new Object[batchSize][];
+	}
+
+	/**
+	 * Construct a {@code BatchRowWriter} producing the same tuple structure as
+	 * an existing {@code SingleRowWriter}.
+	 */
+	public BatchRowWriter(SingleRowWriter template, int batchSize)
+	throws SQLException
+	{
+		this(template.getTupleDesc(), batchSize);
+	}
+
+	/**
+	 * Returns the greatest number of rows this writer accepts in one batch.
+	 */
+	public int getBatchSize()
+	{
+		return m_rows.length;
+	}
+
+	/**
+	 * This is a no-op; the writer is always positioned on the row being
+	 * inserted.
+	 */
+	@Override
+	public void moveToInsertRow()
+	throws SQLException
+	{
+	}
+
+	/**
+	 * Adds the current row values to the batch, and clears them to prepare
+	 * for the next row.
+	 * @throws SQLException if the batch is already full.
+	 */
+	@Override
+	public void insertRow()
+	throws SQLException
+	{
+		if(m_count == m_rows.length)
+			throw new SQLException(
+				"More than " + m_rows.length + " rows inserted in one batch",
+				"54000");
+		m_rows[m_count++] = takeRowValues();
+	}
+
+	/**
+	 * Will return true if any row has been inserted in the current batch.
+	 */
+	@Override
+	public boolean rowInserted()
+	throws SQLException
+	{
+		return m_count > 0;
+	}
+
+	/**
+	 * Forms native tuples from all rows inserted in the current batch, and
+	 * clears the batch. This method is called by the set-returning function
+	 * machinery and should not be called in any other way.
+	 *
+	 * @return A {@code TupleBatch} holding the formed tuples, which may be
+	 * empty.
+	 * @throws SQLException
+	 */
+	public TupleBatch formTuplesAndClear()
+	throws SQLException
+	{
+		TupleBatch batch = getTupleDesc().formTuples(m_rows, m_count);
+		Arrays.fill(m_rows, 0, m_count, null);
+		m_count = 0;
+		return batch;
+	}
+}
@@ -641,6 +641,15 @@ public abstract class ObjectResultSet extends AbstractResultSet
 	// Implementation methods
 	// ************************************************************
 
+	/**
+	 * Record {@code wasNull} for a subclass that has retrieved a value
+	 * without going through the methods here, as a primitive getter may.
+	 */
+	protected final void setWasNull(boolean wasNull)
+	{
+		m_wasNull = wasNull;
+	}
+
 	/**
 	 * Implemented over {@link #getObjectValue}, tracks {@code wasNull},
 	 * applies {@link SPIConnection#basicNumericCoercion} to {@code cls}.
@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.postgresql.pljava.internal.Portal;
+import org.postgresql.pljava.internal.TupleDesc;
+import static org.postgresql.pljava.internal.TupleDesc.FLOATING;
+import static org.postgresql.pljava.internal.TupleDesc.INTEGRAL;
+
+/**
+ * A read-only view, one row at a time, of a batch of rows received from a
+ * {@link Portal} by {@link Portal#push Portal.push}, for
+ * {@link SPIStatement#forEachRow(String,org.postgresql.pljava.RowConsumer)
+ * forEachRow}.
+ *<p>
+ * The batch is held by column, in arrays allocated once and reused for every
+ * batch: a {@code long[]} for an {@code int2}, {@code int4}, or {@code int8}
+ * column, a {@code double[]} for a {@code float4} or {@code float8} column,
+ * which the primitive getters read without boxing, and an {@code Object[]} of
+ * values already in their default Java classes for a column of any other
+ * type. A value of such a column requested as some other class is coerced
+ * from the value PostgreSQL produced, which the portal keeps until the next
+ * batch, as it would be by an {@code SPIResultSet}.
+ */
+final class PushedRowReader extends SingleRowResultSet
+{
+	private final TupleDesc m_tupleDesc;
+	private final byte[] m_kinds;
+	private final Object[] m_columns;
+	private final boolean[][] m_nulls;
+	private long m_batch;
+	private Portal m_portal;
+	private int m_row;
+
+	PushedRowReader(TupleDesc tupleDesc, int capacity)
+	throws SQLException
+	{
+		int size = tupleDesc.size();
+		m_tupleDesc = tupleDesc;
+		m_kinds = new byte[size];
+		m_columns = new Object[size];
+		m_nulls = new boolean[size][capacity];
+
+		for ( int i = 0; i < size; ++ i )
+		{
+			switch ( tupleDesc.getPrimitiveKind(i + 1) )
+			{
+			case INTEGRAL:
+				m_kinds[i] = 'J';
+				m_columns[i] = new long[capacity];
+				break;
+			case FLOATING:
+				m_kinds[i] = 'D';
+				m_columns[i] = new double[capacity];
+				break;
+			default:
+				m_kinds[i] = 'L';
+				m_columns[i] = new Object[capacity];
+			}
+		}
+	}
+
+	/**
+	 * Receive the next batch of up to {@code count} rows from the portal,
+	 * which must be no more than the capacity given at construction.
+	 * @return The number of rows received, zero when the portal is exhausted.
+	 */
+	int receive(Portal portal, int count)
+	throws SQLException
+	{
+		long[] batch = { m_batch };
+		m_batch = 0;
+		m_portal = portal;
+		int received = portal.push(count, m_kinds, m_columns, m_nulls, batch);
+		m_batch = batch[0];
+		return received;
+	}
+
+	/**
+	 * Position this view on the given (zero-based) row of the current batch.
+	 */
+	void moveTo(int row)
+	{
+		m_row = row;
+	}
+
+	/**
+	 * Return the zero-based array index for a column index, or throw.
+	 */
+	private int column(int columnIndex)
+	throws SQLException
+	{
+		if ( columnIndex < 1  ||  columnIndex > m_kinds.length )
+			throw new SQLException(
+				"Invalid column index: " + columnIndex, "07009");
+		return columnIndex - 1;
+	}
+
+	@Override
+	public void close()
+	{
+	}
+
+	@Override // defined in ObjectResultSet
+	protected Object getObjectValue(int columnIndex, Class<?> type)
+	throws SQLException
+	{
+		int i = column(columnIndex);
+		if ( m_nulls[i][m_row] )
+			return null;
+
+		if ( 'L' == m_kinds[i] )
+		{
+			Object o = ((Object[])m_columns[i])[m_row];
+			if ( null == type  ||  type.isInstance(o) )
+				return o;
+			return m_portal.getPushedObject(m_batch, i, m_row, type);
+		}
+
+		/*
+		 * Box a primitive column's value as the class its type maps to,
+		 * as getObject on an SPIResultSet would.
+		 */
+		Class<?> c = m_tupleDesc.getColumnClass(columnIndex);
+		if ( 'D' == m_kinds[i] )
+		{
+			double d = ((double[])m_columns[i])[m_row];
+			if ( Float.class == c  ||  float.class == c )
+				return (float)d;
+			return d;
+		}
+		long l = ((long[])m_columns[i])[m_row];
+		if ( Short.class == c  ||  short.class == c )
+			return (short)l;
+		if ( Integer.class == c  ||  int.class == c )
+			return (int)l;
+		return l;
+	}
+
+	/**
+	 * Reads an {@code int2}, {@code int4}, {@code int8}, {@code float4}, or
+	 * {@code float8} column without boxing, or any other as the superclass
+	 * does; as are the other primitive numeric getters.
+	 */
+	@Override
+	public long getLong(int columnIndex)
+	throws SQLException
+	{
+		int i = column(columnIndex);
+		switch ( m_kinds[i] )
+		{
+		case 'J': return ((long[])m_columns[i])[read(i)];
+		case 'D': return (long)((double[])m_columns[i])[read(i)];
+		default:  return super.getLong(columnIndex);
+		}
+	}
+
+	@Override
+	public int getInt(int columnIndex)
+	throws SQLException
+	{
+		int i = column(columnIndex);
+		switch ( m_kinds[i] )
+		{
+		case 'J': return (int)((long[])m_columns[i])[read(i)];
+		case 'D': return (int)((double[])m_columns[i])[read(i)];
+		default:  return super.getInt(columnIndex);
+		}
+	}
+
+	@Override
+	public short getShort(int columnIndex)
+	throws SQLException
+	{
+		int i = column(columnIndex);
+		switch ( m_kinds[i] )
+		{
+		case 'J': return (short)((long[])m_columns[i])[read(i)];
+		case 'D': return (short)(int)((double[])m_columns[i])[read(i)];
+		default:  return super.getShort(columnIndex);
+		}
+	}
+
+	@Override
+	public byte getByte(int columnIndex)
+	throws SQLException
+	{
+		int i = column(columnIndex);
+		switch ( m_kinds[i] )
+		{
+		case 'J': return (byte)((long[])m_columns[i])[read(i)];
+		case 'D': return (byte)(int)((double[])m_columns[i])[read(i)];
+		default:  return super.getByte(columnIndex);
+		}
+	}
+
+	@Override
+	public double getDouble(int columnIndex)
+	throws SQLException
+	{
+		int i = column(columnIndex);
+		switch ( m_kinds[i] )
+		{
+		case 'J': return (double)((long[])m_columns[i])[read(i)];
+		case 'D': return ((double[])m_columns[i])[read(i)];
+		default:  return super.getDouble(columnIndex);
+		}
+	}
+
+	@Override
+	public float getFloat(int columnIndex)
+	throws SQLException
+	{
+		int i = column(columnIndex);
+		switch ( m_kinds[i] )
+		{
+		case 'J': return (float)((long[])m_columns[i])[read(i)];
+		case 'D': return (float)((double[])m_columns[i])[read(i)];
+		default:  return super.getFloat(columnIndex);
+		}
+	}
+
+	/**
+	 * Record {@code wasNull} for column array index {@code i} in the current
+	 * row, and return the row, for the primitive getters.
+	 */
+	private int read(int i)
+	{
+		setWasNull(m_nulls[i][m_row]);
+		return m_row;
+	}
+
+	/**
+	 * Returns {@link ResultSet#CONCUR_READ_ONLY}.
+	 */
+	@Override
+	public int getConcurrency()
+	throws SQLException
+	{
+		return ResultSet.CONCUR_READ_ONLY;
+	}
+
+	/**
+	 * Not supported; the rows are pushed to the consumer one by one.
+	 * @throws SQLException indicating that this feature is not supported.
+	 */
+	@Override
+	public boolean next()
+	throws SQLException
+	{
+		throw new UnsupportedFeatureException(
+			"next() on a row passed to a RowConsumer");
+	}
+
+	/**
+	 * This feature is not supported on a read-only row.
+	 * @throws SQLException indicating that this feature is not supported.
+	 */
+	@Override
+	public void cancelRowUpdates()
+	throws SQLException
+	{
+		throw readOnlyException();
+	}
+
+	/**
+	 * This feature is not supported on a read-only row.
+	 * @throws SQLException indicating that this feature is not supported.
+	 */
+	@Override
+	public void deleteRow()
+	throws SQLException
+	{
+		throw readOnlyException();
+	}
+
+	/**
+	 * This feature is not supported on a read-only row.
+	 * @throws SQLException indicating that this feature is not supported.
+	 */
+	@Override
+	public void insertRow()
+	throws SQLException
+	{
+		throw readOnlyException();
+	}
+
+	/**
+	 * This feature is not supported on a read-only row.
+	 * @throws SQLException indicating that this feature is not supported.
+	 */
+	@Override
+	public void moveToInsertRow()
+	throws SQLException
+	{
+		throw readOnlyException();
+	}
+
+	/**
+	 * This feature is not supported on a read-only row.
+	 * @throws SQLException indicating that this feature is not supported.
+	 */
+	@Override
+	public void updateRow()
+	throws SQLException
+	{
+		throw readOnlyException();
+	}
+
+	/**
+	 * Always returns false.
+	 */
+	@Override
+	public boolean rowUpdated()
+	throws SQLException
+	{
+		return false;
+	}
+
+	/**
+	 * This feature is not supported on a read-only row.
+	 * @throws SQLException indicating that this feature is not supported.
+	 */
+	@Override
+	public void updateObject(int columnIndex, Object x) throws SQLException
+	{
+		throw readOnlyException();
+	}
+
+	/**
+	 * This feature is not supported on a read-only row.
+	 * @throws SQLException indicating that this feature is not supported.
+	 */
+	@Override
+	public void updateObject(int columnIndex, Object x, int scale)
+	throws SQLException
+	{
+		throw readOnlyException();
+	}
+
+	private static SQLException readOnlyException()
+	{
+		return new UnsupportedFeatureException("ResultSet is read-only");
+	}
+
+	@Override
+	public boolean isClosed()
+	throws SQLException
+	{
+		return false;
+	}
+
+	@Override // defined in SingleRowResultSet
+	protected final TupleDesc getTupleDesc()
+	{
+		return m_tupleDesc;
+	}
+}
@@ -52,6 +52,7 @@ import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 import org.postgresql.pljava.internal.Oid;
 import org.postgresql.pljava.internal.PgSavepoint;
+import org.postgresql.pljava.internal.SPI;
 
 /**
  * Provides access to the current connection (session) the Java stored
@@ -61,11 +62,12 @@ import org.postgresql.pljava.internal.PgSavepoint;
  * and cannot be managed in any way since it's already running inside
  * a transaction.  This means the following methods cannot be used.
  * <ul>
- * <li><code>commit()</code></li>
- * <li><code>rollback()</code></li>
  * <li><code>setAutoCommit()</code></li>
  * <li><code>setTransactionIsolation()</code></li>
  * </ul>
+ * The methods <code>commit()</code> and <code>rollback()</code> can only be
+ * used in a procedure invoked by a <code>CALL</code> that permits transaction
+ * control.
  * @author Thomas Hallgren
  */
 public class SPIConnection implements Connection
@@ -187,25 +189,36 @@ public class SPIConnection implements Connection
 	}
 
 	/**
-	 * It's not legal to do a commit within a call from SQL.
-	 * @throws SQLException indicating that this feature is not supported.
+	 * Commit the current transaction and start a new one.
+	 *<p>
+	 * This is only legal in a procedure (PostgreSQL 11 or later) invoked by a
+	 * {@code CALL} that permits transaction control, that is, not from within
+	 * an explicit transaction block, a function, or a {@code Savepoint} still
+	 * active. Any {@code ResultSet} still open is closed by the commit;
+	 * prepared statements remain usable.
+	 * @throws SQLException if transaction control is not permitted here.
 	 */
 	@Override
 	public void commit()
 	throws SQLException
 	{
-		throw new UnsupportedFeatureException("Connection.commit");
+		SPI.commit();
 	}
 
 	/**
-	 * It's not legal to do a rollback within a call from SQL.
-	 * @throws SQLException indicating that this feature is not supported.
+	 * Roll back the current transaction and start a new one.
+	 *<p>
+	 * This is only legal where {@link #commit commit} is. It may also be used
+	 * after an exception from PostgreSQL has been caught, to discard the work
+	 * of the failed transaction and continue.
+	 * @throws SQLException if transaction control is not permitted here.
 	 */
 	@Override
 	public void rollback()
 	throws SQLException
 	{
-		throw new UnsupportedFeatureException("Connection.rollback");
+		Invocation.clearErrorCondition();
+		SPI.rollback();
 	}
 
 	/**
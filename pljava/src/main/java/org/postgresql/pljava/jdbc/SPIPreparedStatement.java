@@ -39,6 +39,7 @@ import java.sql.SQLXML;
 import java.util.Arrays;
 import java.util.Calendar;
 
+import org.postgresql.pljava.RowConsumer;
 import org.postgresql.pljava.internal.ExecutionPlan;
 import org.postgresql.pljava.internal.Oid;
 
@@ -345,6 +346,35 @@ public class SPIPreparedStatement extends SPIStatement implements PreparedStatem
 		return result;
 	}
 
+	@Override
+	public long forEachRow(RowConsumer consumer)
+	throws SQLException
+	{
+		int[] sqlTypes = m_sqlTypes;
+		int idx = sqlTypes.length;
+		while(--idx >= 0)
+			if(sqlTypes[idx] == Types.NULL)
+				throw new SQLException("Not all parameters have been set");
+
+		if(m_plan == null)
+			m_plan = ExecutionPlan.prepare(m_statement, m_typeIds);
+
+		long result = pushPlan(m_plan, m_values, consumer);
+		clearParameters(); // Parameters are cleared upon successful completion.
+		return result;
+	}
+
+	/**
+	 * The prepared statement cannot be used for executing other statements.
+	 * @throws SQLException indicating that this feature is not supported.
+	 */
+	@Override
+	public long forEachRow(String statement, RowConsumer consumer)
+	throws SQLException
+	{
+		throw new UnsupportedFeatureException("Can't execute other statements using a prepared statement");
+	}
+
 	/**
 	 * The prepared statement cannot be used for executing oter statements.
 	 * @throws SQLException indicating that this feature is not supported.
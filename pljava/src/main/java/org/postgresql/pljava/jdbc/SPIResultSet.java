@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2004-2018 Tada AB and other contributors, as listed below.
+ * Copyright (c) 2004-2020 Tada AB and other contributors, as listed below.
  *
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the The BSD 3-Clause License
@@ -16,21 +16,33 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.ResultSetMetaData;
 
+import org.postgresql.pljava.ColumnarResultSet;
+import org.postgresql.pljava.internal.Backend;
 import org.postgresql.pljava.internal.Portal;
 import org.postgresql.pljava.internal.SPI;
 import org.postgresql.pljava.internal.TupleTable;
 import org.postgresql.pljava.internal.Tuple;
 import org.postgresql.pljava.internal.TupleDesc;
+import static org.postgresql.pljava.internal.TupleDesc.FLOATING;
+import static org.postgresql.pljava.internal.TupleDesc.INTEGRAL;
+import static org.postgresql.pljava.internal.TupleDesc.NOT_PRIMITIVE;
 
 /**
  * A Read-only ResultSet that provides direct access to a {@link
  * org.postgresql.pljava.internal.Portal Portal}. At present, only
  * forward positioning is implemented. Attempts to use reverse or
  * absolute positioning will fail.
+ *<p>
+ * Numeric columns can also be read many rows at a time into primitive arrays,
+ * through the {@link ColumnarResultSet} interface.
+ *<p>
+ * When {@code pljava.fetch_memory_budget} is set, only the first batch has
+ * {@link #getFetchSize} rows; each later one has as many rows as should fit
+ * the budget, judging by the average width of the rows in the batch before.
  *
  * @author Thomas Hallgren
  */
-public class SPIResultSet extends ResultSetBase
+public class SPIResultSet extends ResultSetBase implements ColumnarResultSet
 {
 	private final SPIStatement m_statement;
 	private final Portal    m_portal;
@@ -38,11 +50,22 @@ public class SPIResultSet extends ResultSetBase
 	private final long      m_maxRows;
 
 	private Tuple m_currentRow;
+
+	/**
+	 * Receives the null flag from the primitive getters of {@link Tuple}.
+	 */
+	private final boolean[] m_isNull = new boolean[1];
 	private Tuple m_nextRow;
 
 	private TupleTable m_table;
 	private int m_tableRow;
 
+	/**
+	 * From {@code pljava.fetch_memory_budget}, in bytes, or zero.
+	 */
+	private final long m_fetchBudget;
+	private int m_adaptiveFetchSize;
+
 	private boolean m_open;
 
 	SPIResultSet(SPIStatement statement, Portal portal, long maxRows)
@@ -54,6 +77,7 @@ public class SPIResultSet extends ResultSetBase
 		m_maxRows = maxRows;
 		m_tupleDesc = portal.getTupleDesc();
 		m_tableRow = -1;
+		m_fetchBudget = 1024L * Backend.getFetchMemoryBudget();
 		m_open = true;
 	}
 
@@ -66,10 +90,10 @@ public class SPIResultSet extends ResultSetBase
 			m_open = false;
 			m_portal.close();
 			m_statement.resultSetClosed(this);
-			m_table      = null;
-			m_tableRow   = -1;
 			m_currentRow = null;
 			m_nextRow    = null;
+			this.releaseTable();
+			m_tableRow   = -1;
 			super.close();
 		}
 	}
@@ -130,7 +154,12 @@ public class SPIResultSet extends ResultSetBase
 
 	/**
 	 * Get a(nother) table of {@link #getFetchSize} rows from the
-	 * {@link Portal}.
+	 * {@link Portal}, or of as many as {@link #adaptFetchSize adaptFetchSize}
+	 * has chosen.
+	 *<p>
+	 * The rows are not copied; the {@link Tuple}s of the table refer to them
+	 * where SPI fetched them, until the table is released by
+	 * {@link #releaseTable releaseTable}.
 	 */
 	protected final TupleTable getTupleTable()
 	throws SQLException
@@ -142,7 +171,8 @@ public class SPIResultSet extends ResultSetBase
 				return null;
 
 			long mx;
-			int fetchSize = this.getFetchSize();
+			int fetchSize = m_adaptiveFetchSize > 0
+				? m_adaptiveFetchSize : this.getFetchSize();
 			if(m_maxRows > 0)
 			{
 				mx = m_maxRows - portal.getPortalPos();
@@ -158,7 +188,11 @@ public class SPIResultSet extends ResultSetBase
 			{
 				long result = portal.fetch(true, mx);
 				if(result > 0)
-					m_table = SPI.getTupTable(m_tupleDesc);
+				{
+					m_table = SPI.takeTupTable(m_tupleDesc);
+					if(m_fetchBudget > 0 && m_table != null)
+						this.adaptFetchSize(m_table);
+				}
 				m_tableRow = -1;
 			}
 			finally
@@ -169,6 +203,35 @@ public class SPIResultSet extends ResultSetBase
 		return m_table;
 	}
 
+	/**
+	 * Choose the size of the next fetch so that, if its rows are as wide on
+	 * average as those of {@code table}, they take about
+	 * {@code pljava.fetch_memory_budget}.
+	 */
+	private void adaptFetchSize(TupleTable table)
+	{
+		if(table.getByteSize() <= 0)
+			return;
+		long width = Math.max(1L, table.getByteSize() / table.getCount());
+		m_adaptiveFetchSize = (int)Math.max(1L,
+			Math.min(Integer.MAX_VALUE, m_fetchBudget / width));
+	}
+
+	/**
+	 * Free the current table's rows, other than the current row, which (as it
+	 * may still be read) is first copied.
+	 */
+	private void releaseTable()
+	throws SQLException
+	{
+		if(m_table == null)
+			return;
+		if(m_currentRow != null)
+			m_currentRow = m_currentRow.retain();
+		m_table.invalidate();
+		m_table = null;
+	}
+
 	/**
 	 * Return the {@link Tuple} most recently returned by {@link #next}.
 	 */
@@ -199,7 +262,7 @@ public class SPIResultSet extends ResultSetBase
 			// Current table is exhausted, get the next
 			// one.
 			//
-			m_table = null;
+			this.releaseTable();
 			table = this.getTupleTable();
 			if(table == null)
 				return null;
@@ -219,6 +282,303 @@ public class SPIResultSet extends ResultSetBase
 		return this.getCurrentRow().getObject(m_tupleDesc, columnIndex, type);
 	}
 
+	/**
+	 * Copies values of {@code int2}, {@code int4}, {@code int8},
+	 * {@code float4}, or {@code float8} columns into primitive arrays: first,
+	 * one value at a time, from any rows already fetched as {@link Tuple}s,
+	 * and then from the portal, with one native call for each batch fetched,
+	 * and no {@code Tuple} made for any row.
+	 */
+	@Override
+	public int fetchColumns(
+		int[] columns, Object[] values, boolean[][] nulls, int offset, int rows)
+	throws SQLException
+	{
+		Portal portal = this.getPortal();
+		byte[] kinds = columnKinds(columns, values, nulls, offset, rows);
+		int done = 0;
+
+		m_currentRow = null;
+		while ( done < rows && this.hasBufferedRow() )
+		{
+			Tuple t = this.peekNext();
+			m_nextRow = null;
+			copyRow(t, columns, kinds, values, nulls, offset + done++);
+		}
+
+		/*
+		 * If rows already fetched are left over, the request has been met from
+		 * them, and they stay for the next call of this method or next().
+		 */
+		if ( this.hasBufferedRow() )
+		{
+			if(done > 0)
+				this.setRow(this.getRow() + done);
+			return done;
+		}
+		this.releaseTable();
+		m_tableRow = -1;
+
+		while ( done < rows && ! portal.isAtEnd() )
+		{
+			long mx = rows - done;
+			if(m_maxRows > 0)
+			{
+				long left = m_maxRows - portal.getPortalPos();
+				if(left <= 0)
+					break;
+				if(mx > left)
+					mx = left;
+			}
+
+			int got = 0;
+			try
+			{
+				if(portal.fetch(true, mx) > 0)
+					got = SPI.getColumns(
+						columns, kinds, values, nulls, offset + done);
+			}
+			finally
+			{
+				SPI.freeTupTable();
+			}
+			if(got == 0)
+				break;
+			done += got;
+		}
+
+		if(done > 0)
+			this.setRow(this.getRow() + done);
+		return done;
+	}
+
+	/**
+	 * Whether a row already fetched from the portal remains to be returned.
+	 */
+	private boolean hasBufferedRow()
+	{
+		return null != m_nextRow
+			|| null != m_table && m_tableRow < m_table.getCount() - 1;
+	}
+
+	/**
+	 * Check the arguments to {@link #fetchColumns fetchColumns}, and return,
+	 * for each column, {@code 'I'}, {@code 'J'}, or {@code 'D'} as its values
+	 * go into an {@code int[]}, {@code long[]}, or {@code double[]}.
+	 */
+	private byte[] columnKinds(
+		int[] columns, Object[] values, boolean[][] nulls, int offset, int rows)
+	throws SQLException
+	{
+		if ( values.length != columns.length
+			|| null != nulls && nulls.length != columns.length )
+			throw new SQLException(
+				"fetchColumns needs one values (and nulls) array per column",
+				"22023");
+		if ( offset < 0 || rows < 0 )
+			throw new SQLException(
+				"fetchColumns offset and rows must not be negative", "22023");
+
+		byte[] kinds = new byte[columns.length];
+		for ( int i = 0; i < columns.length; ++ i )
+		{
+			if ( NOT_PRIMITIVE == m_tupleDesc.getPrimitiveKind(columns[i]) )
+				throw new SQLException("column " + columns[i] + " is not of " +
+					"type smallint, integer, bigint, real, or double precision",
+					"42804");
+
+			Object a = values[i];
+			int length;
+			if ( a instanceof int[] )
+			{
+				kinds[i] = 'I';
+				length = ((int[])a).length;
+			}
+			else if ( a instanceof long[] )
+			{
+				kinds[i] = 'J';
+				length = ((long[])a).length;
+			}
+			else if ( a instanceof double[] )
+			{
+				kinds[i] = 'D';
+				length = ((double[])a).length;
+			}
+			else
+				throw new SQLException("fetchColumns values for column " +
+					columns[i] + " must be int[], long[], or double[]",
+					"22023");
+
+			if ( length - offset < rows || null != nulls && null != nulls[i]
+				&& nulls[i].length - offset < rows )
+				throw new SQLException("fetchColumns arrays for column " +
+					columns[i] + " have no room for " + rows + " rows at " +
+					offset, "22023");
+		}
+		return kinds;
+	}
+
+	/**
+	 * Copy the chosen columns of one {@link Tuple} into position {@code row}
+	 * of the arrays, for {@link #fetchColumns fetchColumns}.
+	 */
+	private void copyRow(Tuple t, int[] columns, byte[] kinds,
+		Object[] values, boolean[][] nulls, int row)
+	throws SQLException
+	{
+		for ( int i = 0; i < columns.length; ++ i )
+		{
+			long l = 0;
+			double d = 0;
+			boolean integral =
+				INTEGRAL == m_tupleDesc.getPrimitiveKind(columns[i]);
+			if ( integral )
+				l = t.getLong(m_tupleDesc, columns[i], m_isNull);
+			else
+				d = t.getDouble(m_tupleDesc, columns[i], m_isNull);
+
+			switch ( kinds[i] )
+			{
+			case 'I': ((int[])values[i])[row] = integral ? (int)l : (int)d;
+				break;
+			case 'J': ((long[])values[i])[row] = integral ? l : (long)d;
+				break;
+			default: ((double[])values[i])[row] = integral ? (double)l : d;
+			}
+
+			if ( null != nulls && null != nulls[i] )
+				nulls[i][row] = m_isNull[0];
+		}
+	}
+
+	/**
+	 * Read a column of integral type as a {@code long}, without boxing,
+	 * recording {@code wasNull}.
+	 */
+	private long getIntegral(int columnIndex)
+	throws SQLException
+	{
+		long v =
+			this.getCurrentRow().getLong(m_tupleDesc, columnIndex, m_isNull);
+		setWasNull(m_isNull[0]);
+		return v;
+	}
+
+	/**
+	 * Read a column of floating type as a {@code double}, without boxing,
+	 * recording {@code wasNull}.
+	 */
+	private double getFloating(int columnIndex)
+	throws SQLException
+	{
+		double v =
+			this.getCurrentRow().getDouble(m_tupleDesc, columnIndex, m_isNull);
+		setWasNull(m_isNull[0]);
+		return v;
+	}
+
+	/**
+	 * Reads columns of {@code int2}, {@code int4}, {@code int8},
+	 * {@code float4}, or {@code float8} type without boxing, with the same
+	 * narrowing as {@link Number#byteValue}; others as in the superclass.
+	 */
+	@Override
+	public byte getByte(int columnIndex)
+	throws SQLException
+	{
+		switch ( m_tupleDesc.getPrimitiveKind(columnIndex) )
+		{
+		case INTEGRAL: return (byte)getIntegral(columnIndex);
+		case FLOATING: return (byte)(int)getFloating(columnIndex);
+		default:       return super.getByte(columnIndex);
+		}
+	}
+
+	/**
+	 * Reads columns of {@code int2}, {@code int4}, {@code int8},
+	 * {@code float4}, or {@code float8} type without boxing, with the same
+	 * narrowing as {@link Number#shortValue}; others as in the superclass.
+	 */
+	@Override
+	public short getShort(int columnIndex)
+	throws SQLException
+	{
+		switch ( m_tupleDesc.getPrimitiveKind(columnIndex) )
+		{
+		case INTEGRAL: return (short)getIntegral(columnIndex);
+		case FLOATING: return (short)(int)getFloating(columnIndex);
+		default:       return super.getShort(columnIndex);
+		}
+	}
+
+	/**
+	 * Reads columns of {@code int2}, {@code int4}, {@code int8},
+	 * {@code float4}, or {@code float8} type without boxing, with the same
+	 * narrowing as {@link Number#intValue}; others as in the superclass.
+	 */
+	@Override
+	public int getInt(int columnIndex)
+	throws SQLException
+	{
+		switch ( m_tupleDesc.getPrimitiveKind(columnIndex) )
+		{
+		case INTEGRAL: return (int)getIntegral(columnIndex);
+		case FLOATING: return (int)getFloating(columnIndex);
+		default:       return super.getInt(columnIndex);
+		}
+	}
+
+	/**
+	 * Reads columns of {@code int2}, {@code int4}, {@code int8},
+	 * {@code float4}, or {@code float8} type without boxing, with the same
+	 * conversion as {@link Number#longValue}; others as in the superclass.
+	 */
+	@Override
+	public long getLong(int columnIndex)
+	throws SQLException
+	{
+		switch ( m_tupleDesc.getPrimitiveKind(columnIndex) )
+		{
+		case INTEGRAL: return getIntegral(columnIndex);
+		case FLOATING: return (long)getFloating(columnIndex);
+		default:       return super.getLong(columnIndex);
+		}
+	}
+
+	/**
+	 * Reads columns of {@code int2}, {@code int4}, {@code int8},
+	 * {@code float4}, or {@code float8} type without boxing, with the same
+	 * conversion as {@link Number#floatValue}; others as in the superclass.
+	 */
+	@Override
+	public float getFloat(int columnIndex)
+	throws SQLException
+	{
+		switch ( m_tupleDesc.getPrimitiveKind(columnIndex) )
+		{
+		case INTEGRAL: return (float)getIntegral(columnIndex);
+		case FLOATING: return (float)getFloating(columnIndex);
+		default:       return super.getFloat(columnIndex);
+		}
+	}
+
+	/**
+	 * Reads columns of {@code int2}, {@code int4}, {@code int8},
+	 * {@code float4}, or {@code float8} type without boxing, with the same
+	 * conversion as {@link Number#doubleValue}; others as in the superclass.
+	 */
+	@Override
+	public double getDouble(int columnIndex)
+	throws SQLException
+	{
+		switch ( m_tupleDesc.getPrimitiveKind(columnIndex) )
+		{
+		case INTEGRAL: return (double)getIntegral(columnIndex);
+		case FLOATING: return getFloating(columnIndex);
+		default:       return super.getDouble(columnIndex);
+		}
+	}
+
 	/**
 	 * Returns an {@link SPIResultSetMetaData} instance.
 	 */
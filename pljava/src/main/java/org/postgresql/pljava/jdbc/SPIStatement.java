@@ -21,6 +21,8 @@ import java.sql.SQLWarning;
 import java.sql.Statement;
 import java.util.ArrayList;
 
+import org.postgresql.pljava.RowConsumer;
+import org.postgresql.pljava.StreamingStatement;
 import org.postgresql.pljava.internal.ExecutionPlan;
 import org.postgresql.pljava.internal.Portal;
 import org.postgresql.pljava.internal.SPI;
@@ -30,7 +32,8 @@ import org.postgresql.pljava.internal.SPIException;
  *
  * @author Thomas Hallgren
  */
-public class SPIStatement implements Statement, SPIReadOnlyControl
+public class SPIStatement
+implements Statement, SPIReadOnlyControl, StreamingStatement
 {
 	private final SPIConnection m_connection;
 	
@@ -150,6 +153,86 @@ public class SPIStatement implements Statement, SPIReadOnlyControl
 		return isResultSet;
 	}
 
+	@Override
+	public long forEachRow(String statement, RowConsumer consumer)
+	throws SQLException
+	{
+		this.clear();
+
+		ExecutionPlan plan = ExecutionPlan.prepare(
+			m_connection.nativeSQL(statement), null);
+
+		int result = SPI.getResult();
+		if(plan == null)
+			throw new SPIException(result);
+
+		try
+		{
+			return this.pushPlan(plan, null, consumer);
+		}
+		finally
+		{
+			try { plan.close(); } catch(Exception e) {}
+ 		}
+	}
+
+	/**
+	 * Not supported on a statement that is not prepared.
+	 * @throws SQLException indicating that this feature is not supported.
+	 */
+	@Override
+	public long forEachRow(RowConsumer consumer)
+	throws SQLException
+	{
+		throw new UnsupportedFeatureException(
+			"forEachRow(RowConsumer) on an unprepared Statement");
+	}
+
+	/**
+	 * Run the plan as {@link #executePlan executePlan} would, but pass its
+	 * rows to {@code consumer}, as received in batches of the fetch size by
+	 * {@link PushedRowReader}, rather than returning a {@code ResultSet}.
+	 */
+	protected long pushPlan(
+		ExecutionPlan plan, Object[] paramValues, RowConsumer consumer)
+	throws SQLException
+	{
+		m_updateCount = -1;
+		m_resultSet   = null;
+
+		if(!plan.isCursorPlan())
+			throw new SQLException(
+				"forEachRow with a statement that returns no rows", "0A000");
+
+		int batch = m_fetchSize > 0 ? m_fetchSize : 1000;
+		Portal portal = plan.cursorOpen(null, paramValues, m_readonly_spec);
+		try
+		{
+			PushedRowReader reader =
+				new PushedRowReader(portal.getTupleDesc(), batch);
+			long total = 0;
+			for(;;)
+			{
+				int count = batch;
+				if(m_maxRows > 0 && m_maxRows - total < count)
+					count = (int)(m_maxRows - total);
+				int received = count > 0 ? reader.receive(portal, count) : 0;
+				if(received == 0)
+					return total;
+				for(int row = 0; row < received; ++row)
+				{
+					reader.moveTo(row);
+					consumer.accept(reader);
+				}
+				total += received;
+			}
+		}
+		finally
+		{
+			portal.close();
+		}
+	}
+
 	/**
 	 * Return of auto generated keys is not yet supported.
 	 * @throws SQLException indicating that this feature is not supported.
@@ -102,6 +102,25 @@ public class SingleRowReader extends SingleRowResultSet
 				columnIndex, type));
 	}
 
+	/**
+	 * Returns the values of all columns at once, deforming the native tuple
+	 * only one time. Attributes that have been dropped from the type are
+	 * skipped, so the values are those of the columns listed by
+	 * {@link #getLiveColumns getLiveColumns}, in that order.
+	 * @param types Java classes requested for the live columns, in column
+	 * order, with null for any column whose default mapping will do; the array
+	 * itself may be null.
+	 * @return An array with one element per live column; a null column is
+	 * null.
+	 */
+	public Object[] getRowValues(Class<?>[] types)
+	throws SQLException
+	{
+		return doInPG(() -> _getObjects(
+				m_state.getHeapTupleHeaderPtr(), m_tupleDesc.getNativePointer(),
+				types));
+	}
+
 	/**
 	 * Returns {@link ResultSet#CONCUR_READ_ONLY}.
 	 */
@@ -217,4 +236,8 @@ public class SingleRowReader extends SingleRowResultSet
 	private static native Object _getObject(
 		long pointer, long tupleDescPointer, int index, Class<?> type)
 	throws SQLException;
+
+	private static native Object[] _getObjects(
+		long pointer, long tupleDescPointer, Class<?>[] types)
+	throws SQLException;
 }
@@ -38,6 +38,16 @@ public abstract class SingleRowResultSet extends ObjectResultSet
 		return this.getTupleDesc().getColumnIndex(columnName);
 	}
 
+	/**
+	 * Returns the (one-based) indices of the columns whose attributes have not
+	 * been dropped from the row type, in order.
+	 */
+	public int[] getLiveColumns()
+	throws SQLException
+	{
+		return this.getTupleDesc().getLiveColumns();
+	}
+
 	public int getFetchDirection()
 	throws SQLException
 	{
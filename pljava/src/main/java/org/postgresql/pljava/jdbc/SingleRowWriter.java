@@ -39,6 +39,7 @@ public class SingleRowWriter extends SingleRowResultSet
 	private final TupleDesc m_tupleDesc;
 	private final Object[] m_values;
 	private Tuple m_tuple;
+	private long m_presetTuple;
 
 	/**
 	 * Construct a {@code SingleRowWriter} given a descriptor of the tuple
@@ -145,6 +146,13 @@ public class SingleRowWriter extends SingleRowResultSet
 	public long getTupleAndClear()
 	throws SQLException
 	{
+		if(m_presetTuple != 0)
+		{
+			long tuple = m_presetTuple;
+			m_presetTuple = 0;
+			return tuple;
+		}
+
 		// We hold on to the tuple as an instance variable so that it doesn't
 		// get garbage collected until this result set is closed or we create
 		// another tuple. This behavior is connected to the internal behavior
@@ -155,6 +163,29 @@ public class SingleRowWriter extends SingleRowResultSet
 		return m_tuple.getNativePointer();
 	}
 
+	/**
+	 * Arranges for the next call of {@link #getTupleAndClear} to return the
+	 * native pointer of an already-formed tuple (from a {@code TupleBatch})
+	 * instead of forming one from the current row values. Like
+	 * {@code getTupleAndClear}, this is for use by the set-returning function
+	 * machinery only.
+	 */
+	public void presetTuple(long pointer)
+	{
+		m_presetTuple = pointer;
+	}
+
+	/**
+	 * Returns the current row values and clears them to prepare for a new row,
+	 * for use by {@link BatchRowWriter}.
+	 */
+	Object[] takeRowValues()
+	{
+		Object[] values = m_values.clone();
+		Arrays.fill(m_values, null);
+		return values;
+	}
+
 	@Override // defined in SingleRowResultSet
 	protected final TupleDesc getTupleDesc()
 	{
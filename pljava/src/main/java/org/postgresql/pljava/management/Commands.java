@@ -726,7 +726,7 @@ public class Commands
 		{
 			SQLUtils.close(stmt);
 		}
-		Loader.clearSchemaLoaders();
+		Loader.clearSchemaLoaders(jarId);
 	}
 
 	/**
@@ -878,7 +878,7 @@ public class Commands
 				}
 			}
 		}
-		Loader.clearSchemaLoaders();
+		Loader.clearSchemaLoader(schemaName);
 	}
 
 	private static boolean assertInPath(String jarName,
@@ -1166,7 +1166,7 @@ public class Commands
 			InputStream imageStream = new ByteArrayInputStream(image);
 			addClassImages(jarId, imageStream, image.length);
 		}
-		Loader.clearSchemaLoaders();
+		Loader.clearSchemaLoaders(jarId);
 		if(!deploy)
 			return;
 
@@ -1237,7 +1237,7 @@ public class Commands
 			InputStream imageStream = new ByteArrayInputStream(image);
 			addClassImages(jarId, imageStream, image.length);
 		}
-		Loader.clearSchemaLoaders();
+		Loader.clearSchemaLoaders(jarId);
 		if(!redeploy)
 			return;
 
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.mbeans;
+
+import javax.management.MXBean;
+
+/**
+ * Bean exposing the totals, for this backend, of the caches of results of
+ * IMMUTABLE functions kept when {@code pljava.memoize_cache_size} is nonzero,
+ * for viewing in a JMX management client.
+ */
+@MXBean
+public interface MemoizationStatistics
+{
+	long getHits();
+	long getMisses();
+	long getEvictions();
+	long getEntries();
+}
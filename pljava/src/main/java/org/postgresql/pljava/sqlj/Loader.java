@@ -32,8 +32,13 @@ import java.sql.Statement;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Predicate;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -131,6 +136,64 @@ public class Loader extends ClassLoader
 		Backend.clearFunctionCache();
 	}
 
+	/**
+	 * Removes only the cached schema loaders that have the jar with the given
+	 * id on their class paths, with the type maps and functions of their
+	 * schemas. Called by the utility functions that replace or remove a jar;
+	 * functions in schemas not depending on the jar keep their resolved
+	 * methods. It is not intended to be called from user code.
+	 */
+	public static void clearSchemaLoaders(int jarId)
+	{
+		evictSchemaLoaders(l ->
+			l instanceof Loader  &&  ((Loader)l).m_jarIds.contains(jarId));
+	}
+
+	/**
+	 * Removes the cached loader for one schema, and for any other schema
+	 * sharing it (as all schemas with no class path of their own share that of
+	 * the public schema), with their type maps and functions. Called by the
+	 * utility function that sets a schema's class path. It is not intended to
+	 * be called from user code.
+	 */
+	public static void clearSchemaLoader(String schemaName)
+	{
+		ClassLoader old = s_schemaLoaders.get(normalizedSchema(schemaName));
+		if ( null != old )
+			evictSchemaLoaders(l -> l == old);
+	}
+
+	private static void evictSchemaLoaders(Predicate<ClassLoader> p)
+	{
+		Set<ClassLoader> evicted =
+			Collections.newSetFromMap(new IdentityHashMap<>());
+		Set<String> schemas = new HashSet<>();
+
+		Iterator<Map.Entry<String,ClassLoader>> it =
+			s_schemaLoaders.entrySet().iterator();
+		while ( it.hasNext() )
+		{
+			Map.Entry<String,ClassLoader> e = it.next();
+			if ( ! p.test(e.getValue()) )
+				continue;
+			evicted.add(e.getValue());
+			schemas.add(e.getKey());
+			it.remove();
+		}
+
+		if ( evicted.isEmpty() )
+			return;
+		s_typeMap.keySet().removeIf(k -> schemas.contains(normalizedSchema(k)));
+		Backend.evictFunctions(evicted.toArray(new ClassLoader[0]));
+	}
+
+	private static String normalizedSchema(String schemaName)
+	{
+		if(schemaName == null || schemaName.length() == 0)
+			return PUBLIC_SCHEMA;
+		return schemaName.toLowerCase();
+	}
+
 	/**
 	 * Obtains the loader that is in effect for the current schema (i.e. the
 	 * schema that is first in the search path).
@@ -164,16 +227,14 @@ public class Loader extends ClassLoader
 	public static ClassLoader getSchemaLoader(String schemaName)
 	throws SQLException
 	{
-		if(schemaName == null || schemaName.length() == 0)
-			schemaName = PUBLIC_SCHEMA;
-		else
-			schemaName = schemaName.toLowerCase();
+		schemaName = normalizedSchema(schemaName);
 
 		ClassLoader loader = s_schemaLoaders.get(schemaName);
 		if(loader != null)
 			return loader;
 
 		Map<String,int[]> classImages = new HashMap<>();
+		Set<Integer> jarIds = new HashSet<>();
 		Connection conn = getDefaultConnection();
 		try (
 			// Read the entries so that the one with highest prio is read last.
@@ -198,6 +259,7 @@ public class Loader extends ClassLoader
 			{
 				while(rs.next())
 				{
+					jarIds.add(rs.getInt(1));
 					inner.setInt(1, rs.getInt(1));
 					try ( ResultSet rs2 = inner.executeQuery() )
 					{
@@ -232,7 +294,7 @@ public class Loader extends ClassLoader
 			loader = schemaName.equals(PUBLIC_SCHEMA)
 				? parent : getSchemaLoader(PUBLIC_SCHEMA);
 		else
-			loader = new Loader(classImages, parent);
+			loader = new Loader(classImages, jarIds, parent);
 
 		s_schemaLoaders.put(schemaName, loader);
 		return loader;
@@ -329,15 +391,22 @@ public class Loader extends ClassLoader
 	 */
 	private final Map<String,int[]> m_entries;
 
+	/**
+	 * The ids of the jars on this loader's jar path.
+	 */
+	private final Set<Integer> m_jarIds;
+
 	/**
 	 * Create a new Loader.
 	 * @param entries
+	 * @param jarIds
 	 * @param parent
 	 */
-	Loader(Map<String,int[]> entries, ClassLoader parent)
+	Loader(Map<String,int[]> entries, Set<Integer> jarIds, ClassLoader parent)
 	{
 		super(parent);
 		m_entries = entries;
+		m_jarIds = jarIds;
 		m_j9Helper = ifJ9getHelper(); // null if not under OpenJ9 with sharing
 	}
 
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2020 Tada AB and other contributors, as listed below.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the The BSD 3-Clause License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/BSD-3-Clause
+ *
+ * Contributors:
+ *   Tada AB
+ */
+package org.postgresql.pljava.internal;
+
+import junit.framework.TestCase;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.postgresql.pljava.elog.ELogHandler.LOG_LOG;
+import static org.postgresql.pljava.elog.ELogHandler.LOG_WARNING;
+
+/**
+ * Checks of what {@link Preload Preload} does with a
+ * {@code pljava.preload_functions} list, against a stand-in connection whose
+ * catalog knows one PL/Java function, {@code javatest.ready()}, with Oid 42.
+ */
+public class PreloadTest extends TestCase
+{
+	public PreloadTest(String name) { super(name); }
+
+	private final List<Integer> m_created = new ArrayList<>();
+	private final List<String> m_executed = new ArrayList<>();
+	private final List<String> m_reports = new ArrayList<>();
+	private int m_rollbacks;
+
+	public void testSplitList() throws Exception
+	{
+		assertEquals(
+			Arrays.asList("a.f(integer, text)", "\"b,c\".*", "d.g()"),
+			Preload.splitList(" a.f(integer, text), \"b,c\".* ,,d.g() "));
+	}
+
+	public void testResolvedAndBadEntries() throws Exception
+	{
+		Preload p = new Preload(
+			(oid, forTrigger) -> m_created.add(oid),
+			(level, message) -> m_reports.add(level + " " + message));
+
+		p.run(this::connection,
+			"javatest.ready(), javatest.missing(integer)", 2);
+
+		assertEquals(Arrays.asList(42), m_created);
+		assertEquals(
+			Arrays.asList("SELECT javatest.ready()", "SELECT javatest.ready()"),
+			m_executed);
+		assertEquals(1, m_rollbacks);
+		assertEquals(2, m_reports.size());
+		assertEquals(
+			LOG_WARNING + " pljava.preload_functions: " +
+			"javatest.missing(integer): " +
+			"function \"javatest.missing(integer)\" does not exist",
+			m_reports.get(0));
+		assertTrue(m_reports.get(1), m_reports.get(1).startsWith(
+			LOG_LOG + " pljava.preload_functions: " +
+			"1 functions created, 1 failed, 2 warm-up calls, in "));
+	}
+
+	private Connection connection()
+	{
+		return proxy(Connection.class, (method, args) ->
+		{
+			switch ( method )
+			{
+			case "setSavepoint":
+				return proxy(Savepoint.class, (m, a) -> null);
+			case "rollback":
+				++ m_rollbacks;
+				return null;
+			case "prepareStatement":
+				return catalogQuery();
+			case "createStatement":
+				return proxy(Statement.class, (m, a) ->
+				{
+					if ( "execute".equals(m) )
+						m_executed.add((String)a[0]);
+					return "execute".equals(m) ? false : null;
+				});
+			default:
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Stands in for the catalog query, finding {@code javatest.ready()} and
+	 * failing, as the cast to {@code regprocedure} would, for any other name.
+	 */
+	private PreparedStatement catalogQuery()
+	{
+		String[] name = new String[1];
+		return proxy(PreparedStatement.class, (method, args) ->
+		{
+			switch ( method )
+			{
+			case "setString":
+				name[0] = (String)args[1];
+				return null;
+			case "executeQuery":
+				if ( ! "javatest.ready()".equals(name[0]) )
+					throw new SQLException(
+						"function \"" + name[0] + "\" does not exist",
+						"42883");
+				return row(42L, false, true, "javatest.ready");
+			default:
+				return null;
+			}
+		});
+	}
+
+	private ResultSet row(Object... values)
+	{
+		boolean[] before = { true };
+		return proxy(ResultSet.class, (method, args) ->
+		{
+			switch ( method )
+			{
+			case "next":
+				boolean had = before[0];
+				before[0] = false;
+				return had;
+			case "getLong":
+			case "getBoolean":
+			case "getString":
+				return values[(Integer)args[0] - 1];
+			default:
+				return null;
+			}
+		});
+	}
+
+	@FunctionalInterface
+	interface Answer
+	{
+		Object answer(String method, Object[] args) throws SQLException;
+	}
+
+	private static <T> T proxy(Class<T> iface, Answer answer)
+	{
+		return iface.cast(Proxy.newProxyInstance(
+			PreloadTest.class.getClassLoader(), new Class<?>[] { iface },
+			(p, m, a) -> answer.answer(m.getName(), a)));
+	}
+}